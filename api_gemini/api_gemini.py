@@ -457,6 +457,44 @@ def ai_approval():
             "content": [f"Lỗi server: {str(e)}"]
         }), 500
 
+# API duyệt nhiều phòng trong 1 request (batch mode của GeminiApprovalClient)
+@app.route('/ai_approval_batch', methods=['POST'])
+def ai_approval_batch():
+    """
+    Input: { "rooms": [ <cùng interface với /ai_approval>, ... ] }
+    Output: { "results": [ { "id": "room_id", "status": 0/1/2, "content": [...] }, ... ] }
+
+    Gặp 429 thì các phòng còn lại trả status 0 luôn để Spring retry sau,
+    không gọi tiếp Gemini.
+    """
+    try:
+        rooms = (request.get_json() or {}).get('rooms') or []
+
+        prompt = load_approval_prompt()
+        if not prompt:
+            return jsonify({
+                "results": [{"id": room.get('id'), "status": 2,
+                             "content": ["Không thể tải file prompt duyệt phòng (promt_approval.md)"]}
+                            for room in rooms]
+            }), 500
+
+        results = []
+        rate_limited = False
+        for room_data in rooms:
+            if rate_limited:
+                result = {"status": 0, "content": ["Too many requests - Rate limit exceeded"]}
+            else:
+                result = approve_room_with_gemini(room_data, prompt)
+                rate_limited = result.get('status') == 0
+            results.append({"id": room_data.get('id'), **result})
+
+        print(f"[DEBUG] Batch duyệt {len(rooms)} phòng")
+        return jsonify({"results": results})
+
+    except Exception as e:
+        print(f"[ERROR] Lỗi trong API ai_approval_batch: {e}")
+        return jsonify({"results": [], "error": str(e)}), 500
+
 # API search giữ nguyên
 if __name__ == '__main__':
     app.run(host="0.0.0.0", port=5001, debug=True)
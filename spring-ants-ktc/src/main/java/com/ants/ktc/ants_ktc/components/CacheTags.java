@@ -0,0 +1,119 @@
+package com.ants.ktc.ants_ktc.components;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Version theo tag cho các nhóm key cache cần xóa cùng lúc (vd. mọi trang danh
+ * sách tài khoản). Key cache chứa version của tag, vd.
+ * {@code key = "'paginated-' + @cacheTags.version('account-lists') + ..."};
+ * {@link #bump} tăng version nên các key cũ không còn được đọc tới và tự hết
+ * hạn theo TTL, thay cho {@code allEntries = true} (SCAN + DEL cả cache).
+ * <p>
+ * Version đọc từ bộ nhớ local (không tốn round trip Redis mỗi lần đọc cache),
+ * đồng bộ giữa các node qua {@code cache:tags} và lưu ở {@code cache:tag:{tag}}.
+ * Bản local chỉ dùng trong {@code cache.tags.local-ttl-ms} rồi đọc lại từ
+ * Redis, nên node lỡ mất message pub/sub chỉ đọc trang cũ trong vài giây.
+ */
+@Component("cacheTags")
+public class CacheTags {
+
+    private static final String KEY_PREFIX = "cache:tag:";
+    private static final String CHANNEL = "cache:tags";
+
+    private record LocalVersion(long version, long loadedAt) {
+    }
+
+    private final Map<String, LocalVersion> versions = new ConcurrentHashMap<>();
+
+    @Value("${cache.tags.local-ttl-ms:5000}")
+    private long localTtlMs;
+
+    @Autowired(required = false)
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired(required = false)
+    private RedisMessageListenerContainer chatListenerContainer;
+
+    @PostConstruct
+    public void subscribe() {
+        if (chatListenerContainer == null) {
+            return;
+        }
+        chatListenerContainer.addMessageListener((message, pattern) -> {
+            // tag|version
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 2);
+            if (parts.length == 2) {
+                try {
+                    remember(parts[0], Long.parseLong(parts[1]));
+                } catch (NumberFormatException ignored) {
+                    // message lạ, bỏ qua
+                }
+            }
+        }, new ChannelTopic(CHANNEL));
+    }
+
+    public long version(String tag) {
+        LocalVersion local = versions.get(tag);
+        if (local != null && System.currentTimeMillis() - local.loadedAt() < localTtlMs) {
+            return local.version();
+        }
+        Long loaded = loadVersion(tag);
+        if (loaded == null) {
+            // Redis lỗi: dùng tạm bản local (hoặc 0) nhưng không ghi lại, lần sau đọc lại Redis
+            return local != null ? local.version() : 0L;
+        }
+        return remember(tag, loaded);
+    }
+
+    public void bump(String tag) {
+        long next;
+        try {
+            Long value = redisTemplate != null ? redisTemplate.opsForValue().increment(KEY_PREFIX + tag) : null;
+            next = value != null ? value : version(tag) + 1;
+        } catch (Exception e) {
+            System.err.println("[CacheTags] Cannot bump " + tag + " in Redis: " + e.getMessage());
+            next = version(tag) + 1;
+        }
+        remember(tag, next);
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(CHANNEL, tag + "|" + next);
+        } catch (Exception e) {
+            System.err.println("[CacheTags] Cannot publish " + tag + ": " + e.getMessage());
+        }
+    }
+
+    // Version không bao giờ lùi: bản local mới hơn Redis (vd. bump lúc Redis
+    // lỗi) vẫn được giữ, chỉ làm mới thời điểm đọc
+    private long remember(String tag, long version) {
+        long now = System.currentTimeMillis();
+        return versions.merge(tag, new LocalVersion(version, now),
+                (old, fresh) -> new LocalVersion(Math.max(old.version(), fresh.version()), now)).version();
+    }
+
+    // null = không đọc được Redis
+    private Long loadVersion(String tag) {
+        if (redisTemplate == null) {
+            return versions.containsKey(tag) ? versions.get(tag).version() : 0L;
+        }
+        try {
+            String value = redisTemplate.opsForValue().get(KEY_PREFIX + tag);
+            return value != null ? Long.parseLong(value) : 0L;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.ants.ktc.ants_ktc.components;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Cache LRU có giới hạn cho tên hiển thị trong chat (userId -> fullName hoặc
+ * username), để mỗi tin nhắn không phải load User + profile. Khi profile đổi
+ * tên, ProfileService gọi {@link #invalidateProfile(UUID)}; lệnh xóa được
+ * publish qua Redis để các node khác cũng bỏ entry cũ.
+ */
+@Component
+public class ChatDisplayNameCache {
+
+    private static final String INVALIDATE_CHANNEL = "chat:display-name:invalidate";
+
+    private final UserJpaRepository userJpaRepository;
+    private final Map<String, String> names;
+
+    @Autowired(required = false)
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired(required = false)
+    private RedisMessageListenerContainer chatListenerContainer;
+
+    public ChatDisplayNameCache(UserJpaRepository userJpaRepository,
+            @Value("${chat.display-name-cache.size:10000}") int maxSize) {
+        this.userJpaRepository = userJpaRepository;
+        this.names = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    @PostConstruct
+    public void subscribeInvalidations() {
+        if (chatListenerContainer == null) {
+            return;
+        }
+        chatListenerContainer.addMessageListener(
+                (message, pattern) -> names.remove(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    public String get(String userId) {
+        String name = names.get(userId);
+        if (name != null) {
+            return name;
+        }
+        try {
+            name = userJpaRepository.findDisplayNameById(UUID.fromString(userId)).orElse(userId);
+        } catch (Exception e) {
+            // userId sai định dạng hoặc DB lỗi: dùng tạm userId, không cache
+            return userId;
+        }
+        names.put(userId, name);
+        return name;
+    }
+
+    public void invalidateProfile(UUID profileId) {
+        userJpaRepository.findIdByProfileId(profileId).ifPresent(userId -> invalidate(userId.toString()));
+    }
+
+    public void invalidate(String userId) {
+        names.remove(userId);
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(INVALIDATE_CHANNEL, userId);
+        } catch (Exception e) {
+            System.err.println("[ChatDisplayNameCache] Cannot publish invalidation: " + e.getMessage());
+        }
+    }
+
+    public int size() {
+        return names.size();
+    }
+}
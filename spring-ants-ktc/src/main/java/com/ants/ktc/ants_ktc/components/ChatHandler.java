@@ -1,56 +1,73 @@
 package com.ants.ktc.ants_ktc.components;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.LocalDateTime;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import com.ants.ktc.ants_ktc.entities.User;
+import com.ants.ktc.ants_ktc.dtos.message.ChatInboundMessage;
+import com.ants.ktc.ants_ktc.dtos.message.MessageResponseDto;
 import com.ants.ktc.ants_ktc.services.MessagesService;
-import com.ants.ktc.ants_ktc.services.UserService;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.transaction.annotation.Transactional;
+import com.fasterxml.jackson.databind.ObjectReader;
 
+/**
+ * Hot path của chat: người gửi lấy từ attributes của session (gắn lúc
+ * handshake), tên hiển thị lấy từ {@link ChatDisplayNameCache}, payload được
+ * serialize 1 lần rồi dùng chung cho người nhận và bản echo. Không có
+ * transaction DB trên thread socket: tin nhắn đi qua pipeline ghi theo lô
+ * (ChatMessageWriter), đánh dấu đã đọc chạy @Async.
+ */
 @Component
 @RestController
 public class ChatHandler extends TextWebSocketHandler {
-    @Autowired
-    private UserService userService;
     @Autowired
     private MessagesService messagesService;
+    @Autowired
+    private ChatSessionRegistry sessionRegistry;
+    @Autowired
+    private ChatDisplayNameCache displayNameCache;
 
-    // REST API: Lấy danh sách userId đang online
+    // REST API: Lấy danh sách userId đang online (toàn cluster)
     @GetMapping("/api/online-users")
     public java.util.Set<String> getOnlineUsers() {
-        return userSessions.keySet();
+        return sessionRegistry.getOnlineUsers();
+    }
+
+    @GetMapping("/api/chat/delivery-status")
+    public java.util.Map<String, Object> getDeliveryStatus() {
+        java.util.Map<String, Object> status = new java.util.HashMap<>(sessionRegistry.getMetrics());
+        status.put("displayNameCacheSize", displayNameCache.size());
+        return status;
     }
 
-    private final ConcurrentHashMap<String, WebSocketSession> userSessions = new ConcurrentHashMap<>();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectReader inboundReader = objectMapper.readerFor(ChatInboundMessage.class);
+    private static final JsonFactory jsonFactory = objectMapper.getFactory();
+    private static final String BUSY_PAYLOAD = "{\"type\":\"error\",\"code\":\"busy\","
+            + "\"message\":\"Hệ thống đang bận, vui lòng gửi lại tin nhắn\"}";
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         try {
-            String query = session.getUri() != null ? session.getUri().getQuery() : null;
-            String userId = null;
-            if (query != null && query.startsWith("userId=")) {
-                userId = query.substring(7);
-            } else if (query != null && query.contains("userId=")) {
-                userId = query.split("userId=")[1].split("&")[0];
-            }
+            String userId = ChatHandshakeInterceptor.userIdOf(session);
             if (userId == null || userId.isEmpty()) {
-                System.err.println("[WebSocket] userId missing in query: " + query);
+                System.err.println("[WebSocket] userId missing in session attributes");
                 session.close();
                 return;
             }
-            userSessions.put(userId, session);
+            sessionRegistry.register(userId, session);
             System.out.println("User " + userId + " connected.");
         } catch (Exception e) {
             System.err.println("[WebSocket] Error in afterConnectionEstablished: " + e.getMessage());
@@ -59,125 +76,108 @@ public class ChatHandler extends TextWebSocketHandler {
         }
     }
 
-    @Transactional
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        String userId = ChatHandshakeInterceptor.userIdOf(session);
+        if (userId != null) {
+            sessionRegistry.unregister(userId, session);
+            System.out.println("User " + userId + " disconnected.");
+        }
+    }
+
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
         try {
-            System.out.println("=== ======================WebSocket payload: " + message.getPayload());
-            JsonNode json = objectMapper.readTree(message.getPayload());
-            String type = json.has("type") ? json.get("type").asText() : "message";
-            System.out.println("========================" + type + "=====================");
-
-            if ("read".equals(type)) {
-                // Handle read event
-                String readFromUserId = json.has("fromUserId") && !json.get("fromUserId").isNull()
-                        ? json.get("fromUserId").asText()
-                        : null; // viewer
-                String readToUserId = json.has("toUserId") && !json.get("toUserId").isNull()
-                        ? json.get("toUserId").asText()
-                        : null; // sender
-                System.out.println("DEBUG: readFromUserId=" + readFromUserId + ", readToUserId=" + readToUserId);
-                if (readFromUserId == null || readToUserId == null) {
-                    System.err.println("[WebSocket] read event missing fromUserId or toUserId");
-                    return;
-                }
-                UUID fromUUID = UUID.fromString(readToUserId); // sender
-                UUID toUUID = UUID.fromString(readFromUserId); // viewer
-                java.util.List<com.ants.ktc.ants_ktc.entities.Messages> unreadMessages = messagesService
-                        .getUnreadMessages(fromUUID, toUUID);
-                messagesService.markMessagesAsRead(fromUUID, toUUID);
-                System.out.println("===============================================");
-                System.out.println("[WebSocket] Mark messages as read: " + readFromUserId + " -> " + readToUserId);
-                WebSocketSession senderSession = userSessions.get(readToUserId);
-                if (senderSession != null && senderSession.isOpen()) {
-                    for (com.ants.ktc.ants_ktc.entities.Messages m : unreadMessages) {
-                        String notifyMsg = objectMapper.createObjectNode()
-                                .put("fromUserId", m.getFromUser().getId().toString())
-                                .put("fromUserName",
-                                        m.getFromUser().getProfile() != null
-                                                && m.getFromUser().getProfile().getFullName() != null
-                                                        ? m.getFromUser().getProfile().getFullName()
-                                                        : m.getFromUser().getUsername())
-                                .put("toUserId", m.getToUser().getId().toString())
-                                .put("message", m.getContent())
-                                .put("sentAt", m.getSentAt() != null ? m.getSentAt().toString() : "")
-                                .put("isRead", true)
-                                .toString();
-                        senderSession.sendMessage(new TextMessage(notifyMsg));
-                    }
-                }
+            ChatInboundMessage inbound = inboundReader.readValue(message.getPayload());
+            if ("read".equals(inbound.getType())) {
+                handleRead(inbound);
                 return;
             }
 
             // Handle normal message event
-            String toUserId = json.has("toUserId") && !json.get("toUserId").isNull() ? json.get("toUserId").asText()
-                    : null;
-            String msg = json.has("message") && !json.get("message").isNull() ? json.get("message").asText() : null;
-            System.out.println("[WebSocket] userSessions keys: " + userSessions.keySet());
-            // Find fromUserId from session
-            String fromUserId = null;
-            for (var entry : userSessions.entrySet()) {
-                if (entry.getValue().equals(session)) {
-                    fromUserId = entry.getKey();
-                    break;
-                }
-            }
+            String toUserId = inbound.getToUserId();
+            String msg = inbound.getMessage();
+            String fromUserId = ChatHandshakeInterceptor.userIdOf(session);
             if (fromUserId == null) {
                 System.err.println("[WebSocket] fromUserId not found for session");
                 return;
             }
+            LocalDateTime now = LocalDateTime.now();
 
-            // Get fromUserName
-            String fromUserName = null;
-            try {
-                java.util.UUID uuid = java.util.UUID.fromString(fromUserId);
-                User user = userService.findNameById(uuid);
-                if (user != null && user.getProfile() != null && user.getProfile().getFullName() != null) {
-                    fromUserName = user.getProfile().getFullName();
-                } else if (user != null) {
-                    fromUserName = user.getUsername();
+            // Đưa vào pipeline ghi DB trước; buffer đầy thì báo người gửi thử lại
+            // thay vì phát tin mà không lưu được
+            if (toUserId != null && msg != null && !msg.trim().isEmpty()) {
+                boolean accepted;
+                try {
+                    accepted = messagesService.saveMessageAsync(msg, UUID.fromString(fromUserId),
+                            UUID.fromString(toUserId));
+                } catch (Exception ex) {
+                    System.err.println("[WebSocket] Error saving message to DB (async): " + ex.getMessage());
+                    accepted = false;
+                }
+                if (!accepted) {
+                    session.sendMessage(new TextMessage(BUSY_PAYLOAD));
+                    return;
                 }
-            } catch (Exception e) {
-                fromUserName = fromUserId;
             }
 
-            // Send to recipient and sender
-            String jsonMsg = objectMapper.createObjectNode()
-                    .put("fromUserId", fromUserId)
-                    .put("fromUserName", fromUserName)
-                    .put("toUserId", toUserId)
-                    .put("message", msg)
-                    .put("sentAt", java.time.LocalDateTime.now().toString())
-                    .put("isRead", false)
-                    .toString();
-            WebSocketSession targetSession = userSessions.get(toUserId);
-            if (targetSession != null && targetSession.isOpen()) {
-                System.out.println("[WebSocket] Send to " + toUserId + ": from " + fromUserId + ", msg: " + msg);
-                targetSession.sendMessage(new TextMessage(jsonMsg));
-            } else {
-                System.err.println("[WebSocket] Target user " + toUserId + " not online or session closed.");
+            String fromUserName = displayNameCache.get(fromUserId);
+            // Serialize 1 lần, gửi cho người nhận và echo cho người gửi
+            String jsonMsg = writeChatPayload(fromUserId, fromUserName, toUserId, msg, now.toString(), false);
+            if (toUserId != null) {
+                sessionRegistry.sendToUser(toUserId, jsonMsg);
             }
             if (!fromUserId.equals(toUserId)) {
-                WebSocketSession senderSession = userSessions.get(fromUserId);
-                if (senderSession != null && senderSession.isOpen()) {
-                    System.out.println("[WebSocket] Echo to sender " + fromUserId + ": msg: " + msg);
-                    senderSession.sendMessage(new TextMessage(jsonMsg));
-                }
-            }
-            // Save message to database asynchronously
-            try {
-                if (fromUserId != null && toUserId != null && msg != null && !msg.trim().isEmpty()) {
-                    java.util.UUID fromUUID = java.util.UUID.fromString(fromUserId);
-                    java.util.UUID toUUID = java.util.UUID.fromString(toUserId);
-                    messagesService.saveMessageAsync(msg, fromUUID, toUUID);
-                }
-            } catch (Exception ex) {
-                System.err.println("[WebSocket] Error saving message to DB (async): " + ex.getMessage());
-                ex.printStackTrace();
+                sessionRegistry.sendToUser(fromUserId, jsonMsg);
             }
         } catch (Exception e) {
             System.err.println("[WebSocket] Error in handleTextMessage: " + e.getMessage());
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    private void handleRead(ChatInboundMessage inbound) {
+        String readFromUserId = inbound.getFromUserId(); // viewer
+        String readToUserId = inbound.getToUserId(); // sender
+        if (readFromUserId == null || readToUserId == null) {
+            System.err.println("[WebSocket] read event missing fromUserId or toUserId");
+            return;
+        }
+        UUID fromUUID = UUID.fromString(readToUserId); // sender
+        UUID toUUID = UUID.fromString(readFromUserId); // viewer
+        messagesService.markMessagesAsReadAsync(fromUUID, toUUID).whenComplete((readMessages, error) -> {
+            if (error != null) {
+                System.err.println("[WebSocket] Mark messages as read failed: " + error.getMessage());
+                return;
+            }
+            if (readMessages.isEmpty()) {
+                return;
+            }
+            // Gửi xác nhận đã đọc cho người gửi qua kênh Redis của họ
+            String senderName = displayNameCache.get(readToUserId);
+            for (MessageResponseDto m : readMessages) {
+                sessionRegistry.sendToUser(readToUserId, writeChatPayload(readToUserId, senderName, readFromUserId,
+                        m.getContent(), m.getSentAt() != null ? m.getSentAt().toString() : "", true));
+            }
+        });
+    }
+
+    // Ghi JSON thẳng bằng streaming generator, không dựng ObjectNode trung gian
+    static String writeChatPayload(String fromUserId, String fromUserName, String toUserId, String message,
+            String sentAt, boolean isRead) {
+        StringWriter writer = new StringWriter(128 + (message != null ? message.length() : 0));
+        try (JsonGenerator gen = jsonFactory.createGenerator(writer)) {
+            gen.writeStartObject();
+            gen.writeStringField("fromUserId", fromUserId);
+            gen.writeStringField("fromUserName", fromUserName);
+            gen.writeStringField("toUserId", toUserId);
+            gen.writeStringField("message", message);
+            gen.writeStringField("sentAt", sentAt);
+            gen.writeBooleanField("isRead", isRead);
+            gen.writeEndObject();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize chat payload", e);
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package com.ants.ktc.ants_ktc.components;
+
+import java.util.Map;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Đọc userId từ query (?userId=...) 1 lần lúc handshake và gắn vào attributes
+ * của session, để mỗi tin nhắn lấy được người gửi trong O(1).
+ */
+@Component
+public class ChatHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String USER_ID_ATTRIBUTE = "userId";
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+            WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String userId = UriComponentsBuilder.fromUri(request.getURI()).build()
+                .getQueryParams().getFirst(USER_ID_ATTRIBUTE);
+        if (userId == null || userId.isEmpty()) {
+            System.err.println("[WebSocket] userId missing in query: " + request.getURI().getQuery());
+            return false;
+        }
+        attributes.put(USER_ID_ATTRIBUTE, userId);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler,
+            Exception exception) {
+    }
+
+    public static String userIdOf(org.springframework.web.socket.WebSocketSession session) {
+        Object userId = session.getAttributes().get(USER_ID_ATTRIBUTE);
+        return userId != null ? userId.toString() : null;
+    }
+}
@@ -0,0 +1,221 @@
+package com.ants.ktc.ants_ktc.components;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Quản lý session WebSocket của node hiện tại và định tuyến tin nhắn chat qua
+ * Redis pub/sub để chạy được nhiều replica sau load balancer:
+ * - Mỗi user có 1 kênh riêng chat:user:{userId}. Node nào đang giữ session của
+ * user thì subscribe kênh đó và tự gửi xuống session local.
+ * - Presence dùng chung trong ZSET chat:presence (member = userId@nodeId,
+ * score = hạn sống), mỗi node gia hạn định kỳ cho các user của mình nên node
+ * chết thì user tự hết online sau ttl.
+ * - Session được bọc bởi {@link ConcurrentWebSocketSessionDecorator} để mỗi
+ * client có buffer gửi giới hạn, client chậm không chặn thread gửi.
+ */
+@Component
+public class ChatSessionRegistry implements MessageListener {
+
+    private static final String CHANNEL_PREFIX = "chat:user:";
+    private static final String PRESENCE_KEY = "chat:presence";
+    private static final int LOCK_STRIPES = 64;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer chatListenerContainer;
+
+    @Value("${chat.session.send-time-limit-ms:5000}")
+    private int sendTimeLimitMs;
+
+    @Value("${chat.session.buffer-size-limit:524288}")
+    private int bufferSizeLimit;
+
+    @Value("${chat.presence.ttl-ms:60000}")
+    private long presenceTtlMs;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, WebSocketSession> localSessions = new ConcurrentHashMap<>();
+    // Khóa theo user (chia sọc): đổi session, subscribe/unsubscribe kênh và
+    // presence của cùng 1 user phải đi cùng nhau, nếu không thì unregister của
+    // session cũ có thể gỡ kênh / presence mà session mới vừa đăng ký
+    private final Object[] userLocks = new Object[LOCK_STRIPES];
+
+    {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            userLocks[i] = new Object();
+        }
+    }
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Đăng ký session của user trên node này. Session cũ của cùng user (nếu có) bị
+     * thay thế như trước đây.
+     */
+    public WebSocketSession register(String userId, WebSocketSession session) {
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs,
+                bufferSizeLimit);
+        synchronized (lockOf(userId)) {
+            WebSocketSession previous = localSessions.put(userId, decorated);
+            if (previous == null) {
+                chatListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL_PREFIX + userId));
+            }
+            touchPresence(userId);
+        }
+        return decorated;
+    }
+
+    public void unregister(String userId, WebSocketSession session) {
+        synchronized (lockOf(userId)) {
+            WebSocketSession current = localSessions.get(userId);
+            if (current == null || !current.getId().equals(session.getId())) {
+                return;
+            }
+            localSessions.remove(userId);
+            chatListenerContainer.removeMessageListener(this, new ChannelTopic(CHANNEL_PREFIX + userId));
+            try {
+                redisTemplate.opsForZSet().remove(PRESENCE_KEY, presenceMember(userId));
+            } catch (Exception e) {
+                System.err.println("[ChatSessionRegistry] Cannot clear presence of " + userId + ": "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    private Object lockOf(String userId) {
+        return userLocks[Math.floorMod(userId.hashCode(), LOCK_STRIPES)];
+    }
+
+    /**
+     * Gửi payload tới user dù user đang kết nối ở node nào. Nếu Redis lỗi thì vẫn
+     * cố gửi cho session local.
+     */
+    public void sendToUser(String userId, String payload) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL_PREFIX + userId, payload);
+            published.increment();
+        } catch (Exception e) {
+            System.err.println("[ChatSessionRegistry] Publish failed, local delivery only: " + e.getMessage());
+            deliverLocal(userId, payload);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        String userId = channel.substring(CHANNEL_PREFIX.length());
+        deliverLocal(userId, new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private void deliverLocal(String userId, String payload) {
+        WebSocketSession session = localSessions.get(userId);
+        if (session == null || !session.isOpen()) {
+            dropped.increment();
+            return;
+        }
+        try {
+            // Decorator: nếu thread khác đang gửi thì chỉ đưa vào buffer; vượt giới hạn
+            // thì session bị đóng thay vì chặn thread này
+            session.sendMessage(new TextMessage(payload));
+            delivered.increment();
+        } catch (Exception e) {
+            dropped.increment();
+            System.err.println("[ChatSessionRegistry] Cannot deliver to " + userId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Danh sách userId đang online trên toàn cluster.
+     */
+    public Set<String> getOnlineUsers() {
+        Set<String> members = redisTemplate.opsForZSet().rangeByScore(PRESENCE_KEY, System.currentTimeMillis(),
+                Double.POSITIVE_INFINITY);
+        Set<String> users = new HashSet<>();
+        if (members != null) {
+            for (String member : members) {
+                int at = member.lastIndexOf('@');
+                users.add(at > 0 ? member.substring(0, at) : member);
+            }
+        }
+        return users;
+    }
+
+    // Gia hạn presence cho các user của node này và dọn member đã hết hạn
+    @Scheduled(fixedDelayString = "${chat.presence.heartbeat-ms:20000}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        double expiresAt = now + presenceTtlMs;
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String userId : localSessions.keySet()) {
+                    conn.zAdd(PRESENCE_KEY, expiresAt, presenceMember(userId));
+                }
+                conn.zRemRangeByScore(PRESENCE_KEY, Double.NEGATIVE_INFINITY, now);
+                return null;
+            });
+        } catch (Exception e) {
+            System.err.println("[ChatSessionRegistry] Presence heartbeat failed: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        return Map.of(
+                "nodeId", nodeId,
+                "localSessions", localSessions.size(),
+                "published", published.sum(),
+                "delivered", delivered.sum(),
+                "dropped", dropped.sum());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            for (String userId : localSessions.keySet()) {
+                redisTemplate.opsForZSet().remove(PRESENCE_KEY, presenceMember(userId));
+            }
+        } catch (Exception e) {
+            System.err.println("[ChatSessionRegistry] Cannot clear presence on shutdown: " + e.getMessage());
+        }
+    }
+
+    private void touchPresence(String userId) {
+        try {
+            redisTemplate.opsForZSet().add(PRESENCE_KEY, presenceMember(userId),
+                    System.currentTimeMillis() + presenceTtlMs);
+        } catch (Exception e) {
+            System.err.println("[ChatSessionRegistry] Cannot update presence of " + userId + ": " + e.getMessage());
+        }
+    }
+
+    private String presenceMember(String userId) {
+        return userId + "@" + nodeId;
+    }
+}
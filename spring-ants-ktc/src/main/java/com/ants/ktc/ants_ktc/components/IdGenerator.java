@@ -0,0 +1,121 @@
+package com.ants.ktc.ants_ktc.components;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Sinh id 64 bit kiểu Snowflake, không cần round trip DB:
+ * {@code [41 bit ms từ 2025-01-01][10 bit node][12 bit sequence]}.
+ * <ul>
+ * <li>Tăng dần trên 1 node; khác node thì khác bit node nên không trùng.</li>
+ * <li>Hết 4096 sequence trong 1 ms thì mượn ms kế tiếp, đồng hồ lùi thì tiếp
+ * tục từ ms cuối cùng đã cấp, không chờ và không trùng.</li>
+ * <li>Chỉ 1 CAS trên AtomicLong mỗi id, không lock.</li>
+ * </ul>
+ * Node id: {@code id-generator.node-id} nếu có (0..1023), nếu không thì xin
+ * từ Redis ({@code INCR id-generator:node}) lúc khởi động, Redis lỗi thì băm
+ * hostname + pid.
+ */
+@Component
+public class IdGenerator {
+
+    // 2025-01-01T00:00:00Z
+    public static final long EPOCH_MS = 1735689600000L;
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final String NODE_KEY = "id-generator:node";
+
+    // (ms - EPOCH_MS) << SEQUENCE_BITS | sequence của id cấp gần nhất
+    private final AtomicLong state = new AtomicLong();
+
+    @Value("${id-generator.node-id:-1}")
+    private long configuredNodeId = -1;
+
+    @Autowired(required = false)
+    private StringRedisTemplate redisTemplate;
+
+    private long nodeId;
+
+    public IdGenerator() {
+    }
+
+    public IdGenerator(long nodeId) {
+        this.nodeId = checkNodeId(nodeId);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (configuredNodeId >= 0) {
+            nodeId = checkNodeId(configuredNodeId);
+        } else {
+            nodeId = allocateNodeId();
+        }
+        System.out.println("[IdGenerator] Node id " + nodeId);
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public long nextId() {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            long now = System.currentTimeMillis() - EPOCH_MS;
+            // ms mới thì sequence về 0; cùng ms, đồng hồ lùi hoặc hết sequence thì +1
+            // (tràn sequence tự cộng sang ms kế tiếp)
+            next = now > (current >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : current + 1;
+        } while (!state.compareAndSet(current, next));
+        return ((next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS))
+                | (nodeId << SEQUENCE_BITS)
+                | (next & SEQUENCE_MASK);
+    }
+
+    /**
+     * Mã giao dịch ngắn (~12 ký tự 0-9A-Z), vd. {@code 1L9QZC4KW0XS}.
+     */
+    public String nextCode() {
+        return Long.toString(nextId(), Character.MAX_RADIX).toUpperCase(Locale.ROOT);
+    }
+
+    private long allocateNodeId() {
+        if (redisTemplate != null) {
+            try {
+                Long value = redisTemplate.opsForValue().increment(NODE_KEY);
+                if (value != null) {
+                    return value & MAX_NODE_ID;
+                }
+            } catch (Exception e) {
+                System.err.println("[IdGenerator] Cannot allocate node id from Redis: " + e.getMessage());
+            }
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        String seed = host + "/" + ManagementFactory.getRuntimeMXBean().getName();
+        return seed.hashCode() & MAX_NODE_ID;
+    }
+
+    private static long checkNodeId(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        return nodeId;
+    }
+}
@@ -1,8 +1,6 @@
 package com.ants.ktc.ants_ktc.config;
 
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,17 +8,12 @@ import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import com.ants.ktc.ants_ktc.models.ApprovalMessage;
-
 @Configuration
 @EnableAsync
 @EnableScheduling
 public class ApprovalQueueConfig {
 
-    @Bean("approvalQueue")
-    public BlockingQueue<ApprovalMessage> approvalQueue() {
-        return new LinkedBlockingQueue<>(100); // Max 100 phòng chờ duyệt trong queue
-    }
+    // Hàng đợi duyệt phòng nằm ở Redis, xem ApprovalQueueService
 
     @Bean("approvalTaskExecutor")
     public Executor approvalTaskExecutor() {
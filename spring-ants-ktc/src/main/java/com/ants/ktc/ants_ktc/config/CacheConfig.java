@@ -7,9 +7,12 @@ import java.util.Map;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 
@@ -17,7 +20,9 @@ import org.springframework.data.redis.serializer.RedisSerializationContext;
 @Configuration
 public class CacheConfig {
         @Bean
-        public RedisCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory) {
+        public TwoLevelCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory,
+                        StringRedisTemplate redisTemplate, RedisMessageListenerContainer chatListenerContainer,
+                        Environment env) {
                 RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
                                 .entryTtl(Duration.ofMinutes(60))
                                 .serializeValuesWith(
@@ -28,11 +33,29 @@ public class CacheConfig {
                 Map<String, RedisCacheConfiguration> cacheConfigs = new HashMap<>();
                 cacheConfigs.put("typeposts", config.entryTtl(Duration.ofMinutes(24 * 60))); // TTL 24 giờ
                 cacheConfigs.put("manage-accounts", config.entryTtl(Duration.ofMinutes(24 * 60))); // TTL 24 giờ
+                // Địa giới hành chính gần như không đổi
+                cacheConfigs.put("provinces", config.entryTtl(Duration.ofDays(7)));
+                cacheConfigs.put("districts", config.entryTtl(Duration.ofDays(7)));
+                cacheConfigs.put("wards", config.entryTtl(Duration.ofDays(7)));
 
-                return RedisCacheManager.builder(redisConnectionFactory)
+                RedisCacheManager redisCacheManager = RedisCacheManager.builder(redisConnectionFactory)
                                 .cacheDefaults(config)
                                 .withInitialCacheConfigurations(cacheConfigs)
                                 .build();
+                redisCacheManager.initializeCaches();
+
+                // L1 Caffeine: cache.local.<name>.max-size / ttl-seconds, thiếu thì lấy
+                // cache.local.default.*. TTL L1 ngắn để nếu lỡ mất message pub/sub thì dữ
+                // liệu cũ cũng không sống lâu.
+                long defaultSize = env.getProperty("cache.local.default.max-size", Long.class, 1000L);
+                long defaultTtl = env.getProperty("cache.local.default.ttl-seconds", Long.class, 60L);
+                return new TwoLevelCacheManager(redisCacheManager, redisTemplate, chatListenerContainer,
+                                name -> new TwoLevelCacheManager.LocalSpec(
+                                                env.getProperty("cache.local." + name + ".max-size", Long.class,
+                                                                defaultSize),
+                                                Duration.ofSeconds(env.getProperty(
+                                                                "cache.local." + name + ".ttl-seconds", Long.class,
+                                                                defaultTtl))));
         }
 
-}
\ No newline at end of file
+}
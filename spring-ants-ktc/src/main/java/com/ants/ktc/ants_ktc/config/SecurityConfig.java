@@ -75,7 +75,13 @@ public class SecurityConfig {
                                                 // .requestMatchers(HttpMethod.GET,
                                                 // "/api/rooms/*/feedback-access").authenticated() // check quyền
 
+                                                // bill PDF jobs (ZIP hóa đơn của landlord)
+                                                .requestMatchers("/api/bills/pdf-jobs/**")
+                                                .hasAnyRole("Landlords", "Administrators")
                                                 // contract
+                                                .requestMatchers(HttpMethod.GET, "/api/contracts/bills/export",
+                                                                "/api/contracts/landlord/*/bills/export")
+                                                .hasAnyRole("Landlords", "Administrators")
                                                 .requestMatchers("/api/contracts/**").permitAll()
                                                 .requestMatchers(HttpMethod.GET, "/api/rooms/landlords/*/feedbacks")
                                                 .hasRole("Landlords") // landlord xem feedback
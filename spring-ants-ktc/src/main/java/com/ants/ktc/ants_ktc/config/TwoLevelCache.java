@@ -0,0 +1,158 @@
+package com.ants.ktc.ants_ktc.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Cache 2 tầng: L1 Caffeine trong process, L2 là RedisCache dùng chung giữa
+ * các node. Đọc L1 -> L2 -> loader; ghi/xóa cập nhật L2 rồi L1, sau đó phát
+ * lệnh xóa L1 cho các node khác qua {@link TwoLevelCacheManager}.
+ * <p>
+ * Key L1 là {@code String.valueOf(key)} để khớp với key nhận qua pub/sub. Giá
+ * trị L1 là instance dùng chung giữa các request, không được sửa object lấy
+ * từ cache.
+ */
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+    private final Cache remote;
+    private final Consumer<String> evictBroadcaster;
+
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder remoteMisses = new LongAdder();
+    private final LongAdder remoteErrors = new LongAdder();
+
+    /**
+     * @param evictBroadcaster nhận key cần xóa ở L1 các node khác, null = xóa
+     *                         toàn bộ cache
+     */
+    public TwoLevelCache(String name, com.github.benmanes.caffeine.cache.Cache<String, Object> local, Cache remote,
+            Consumer<String> evictBroadcaster) {
+        super(true);
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.evictBroadcaster = evictBroadcaster;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return local;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        String localKey = String.valueOf(key);
+        Object value = local.getIfPresent(localKey);
+        if (value != null) {
+            return value;
+        }
+        try {
+            ValueWrapper wrapper = remote.get(key);
+            if (wrapper == null) {
+                remoteMisses.increment();
+                return null;
+            }
+            remoteHits.increment();
+            Object stored = toStoreValue(wrapper.get());
+            local.put(localKey, stored);
+            return stored;
+        } catch (Exception e) {
+            // Redis lỗi: coi như miss, request đọc thẳng DB
+            remoteErrors.increment();
+            System.err.println("[TwoLevelCache] " + name + " L2 read failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper existing = get(key);
+        if (existing != null) {
+            return (T) existing.get();
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        try {
+            remote.put(key, value);
+        } catch (Exception e) {
+            remoteErrors.increment();
+            System.err.println("[TwoLevelCache] " + name + " L2 write failed: " + e.getMessage());
+        }
+        local.put(String.valueOf(key), toStoreValue(value));
+        evictBroadcaster.accept(String.valueOf(key));
+    }
+
+    @Override
+    public void evict(Object key) {
+        try {
+            remote.evict(key);
+        } catch (Exception e) {
+            remoteErrors.increment();
+            System.err.println("[TwoLevelCache] " + name + " L2 evict failed: " + e.getMessage());
+        }
+        evictLocal(String.valueOf(key));
+        evictBroadcaster.accept(String.valueOf(key));
+    }
+
+    @Override
+    public void clear() {
+        try {
+            remote.clear();
+        } catch (Exception e) {
+            remoteErrors.increment();
+            System.err.println("[TwoLevelCache] " + name + " L2 clear failed: " + e.getMessage());
+        }
+        clearLocal();
+        evictBroadcaster.accept(null);
+    }
+
+    // Chỉ xóa L1, dùng khi nhận lệnh từ node khác
+    void evictLocal(String key) {
+        local.invalidate(key);
+    }
+
+    void clearLocal() {
+        local.invalidateAll();
+    }
+
+    public Map<String, Object> getMetrics() {
+        CacheStats stats = local.stats();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("localSize", local.estimatedSize());
+        metrics.put("localHits", stats.hitCount());
+        metrics.put("localMisses", stats.missCount());
+        metrics.put("localEvictions", stats.evictionCount());
+        metrics.put("redisHits", remoteHits.sum());
+        metrics.put("redisMisses", remoteMisses.sum());
+        metrics.put("redisErrors", remoteErrors.sum());
+        long lookups = stats.requestCount();
+        metrics.put("hitRatio", lookups == 0 ? 0.0 : (double) (stats.hitCount() + remoteHits.sum()) / lookups);
+        return metrics;
+    }
+}
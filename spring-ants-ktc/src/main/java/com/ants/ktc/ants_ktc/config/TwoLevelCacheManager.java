@@ -0,0 +1,107 @@
+package com.ants.ktc.ants_ktc.config;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Bọc RedisCacheManager: mỗi cache name có thêm 1 L1 Caffeine với size/TTL
+ * riêng. Khi 1 node put/evict/clear, node đó publish lên
+ * {@code cache:invalidate} để các node khác bỏ entry L1 tương ứng (L2 đã được
+ * cập nhật trực tiếp).
+ * <p>
+ * Message: {@code nodeId|K|cacheName|key} (xóa 1 key) hoặc
+ * {@code nodeId|C|cacheName} (xóa cả cache).
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    static final String INVALIDATE_CHANNEL = "cache:invalidate";
+
+    private final RedisCacheManager redisCacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final Function<String, LocalSpec> localSpecs;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    public record LocalSpec(long maxSize, Duration ttl) {
+    }
+
+    public TwoLevelCacheManager(RedisCacheManager redisCacheManager, StringRedisTemplate redisTemplate,
+            RedisMessageListenerContainer listenerContainer, Function<String, LocalSpec> localSpecs) {
+        this.redisCacheManager = redisCacheManager;
+        this.redisTemplate = redisTemplate;
+        this.localSpecs = localSpecs;
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onInvalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return caches.keySet();
+    }
+
+    private TwoLevelCache createCache(String name) {
+        Cache remote = redisCacheManager.getCache(name);
+        LocalSpec spec = localSpecs.apply(name);
+        com.github.benmanes.caffeine.cache.Cache<String, Object> local = Caffeine.newBuilder()
+                .maximumSize(spec.maxSize())
+                .expireAfterWrite(spec.ttl())
+                .recordStats()
+                .build();
+        return new TwoLevelCache(name, local, remote, key -> publish(name, key));
+    }
+
+    private void publish(String cacheName, String key) {
+        String message = key == null
+                ? nodeId + "|C|" + cacheName
+                : nodeId + "|K|" + cacheName + "|" + key;
+        try {
+            redisTemplate.convertAndSend(INVALIDATE_CHANNEL, message);
+        } catch (Exception e) {
+            // L1 các node khác tự hết hạn theo TTL
+            System.err.println("[TwoLevelCacheManager] Cannot publish invalidation: " + e.getMessage());
+        }
+    }
+
+    private void onInvalidate(String message) {
+        String[] parts = message.split("\\|", 4);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(parts[2]);
+        if (cache == null) {
+            return;
+        }
+        if ("C".equals(parts[1])) {
+            cache.clearLocal();
+        } else if (parts.length == 4) {
+            cache.evictLocal(parts[3]);
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        caches.forEach((name, cache) -> metrics.put(name, cache.getMetrics()));
+        return metrics;
+    }
+}
@@ -6,20 +6,24 @@ import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 
 import com.ants.ktc.ants_ktc.components.ChatHandler;
+import com.ants.ktc.ants_ktc.components.ChatHandshakeInterceptor;
 
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final ChatHandler chatHandler;
+    private final ChatHandshakeInterceptor chatHandshakeInterceptor;
 
-    public WebSocketConfig(ChatHandler chatHandler) {
+    public WebSocketConfig(ChatHandler chatHandler, ChatHandshakeInterceptor chatHandshakeInterceptor) {
         this.chatHandler = chatHandler;
+        this.chatHandshakeInterceptor = chatHandshakeInterceptor;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(chatHandler, "/ws/chat")
+                .addInterceptors(chatHandshakeInterceptor)
                 .setAllowedOrigins("*"); // Cho phép tất cả domain
     }
-}
\ No newline at end of file
+}
@@ -16,6 +16,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import com.ants.ktc.ants_ktc.services.ApprovalQueueService;
 import com.ants.ktc.ants_ktc.services.ApprovalQueueService.QueueStatus;
+import com.ants.ktc.ants_ktc.services.GeminiApprovalClient;
 import com.ants.ktc.ants_ktc.worker.ApprovalWorker;
 
 @RestController
@@ -28,6 +29,9 @@ public class ApprovalQueueController {
     @Autowired
     private ApprovalWorker approvalWorker;
 
+    @Autowired
+    private GeminiApprovalClient geminiApprovalClient;
+
     @PostMapping("/enqueue/{roomId}")
     public ResponseEntity<Map<String, Object>> enqueueRoom(@PathVariable UUID roomId) {
         boolean success = approvalQueueService.enqueueRoomForApproval(roomId);
@@ -61,12 +65,16 @@ public class ApprovalQueueController {
 
         return ResponseEntity.ok(Map.of(
                 "currentSize", status.getCurrentSize(),
-                "totalCapacity", status.getTotalCapacity(),
-                "remainingCapacity", status.getRemainingCapacity(),
-                "usagePercentage", status.getUsagePercentage(),
+                "waiting", status.getWaiting(),
+                "inFlight", status.getInFlight(),
                 "status", status.toString()));
     }
 
+    @GetMapping("/client-status")
+    public ResponseEntity<Map<String, Object>> getClientStatus() {
+        return ResponseEntity.ok(geminiApprovalClient.getMetrics());
+    }
+
     @DeleteMapping("/clear")
     public ResponseEntity<Map<String, Object>> clearQueue() {
         int clearedCount = approvalQueueService.clearQueue();
@@ -1,21 +1,28 @@
 package com.ants.ktc.ants_ktc.controllers;
 
+import java.nio.file.Path;
 import java.util.List;
 import java.util.UUID;
 
 import com.ants.ktc.ants_ktc.enums.BillStatus;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.ants.ktc.ants_ktc.dtos.bill.BillPdfJobResponseDto;
 import com.ants.ktc.ants_ktc.dtos.bill.BillRequestDto;
 import com.ants.ktc.ants_ktc.dtos.bill.BillResponseDto;
 import com.ants.ktc.ants_ktc.dtos.bill.BillUpdateDto;
+import com.ants.ktc.ants_ktc.services.BillPdfBatchService;
 import com.ants.ktc.ants_ktc.services.BillPdfService;
 import com.ants.ktc.ants_ktc.services.BillService;
+import com.ants.ktc.ants_ktc.services.UserService;
 
 import jakarta.validation.Valid;
 
@@ -26,6 +33,10 @@ public class BillController {
     private BillService billService;
     @Autowired
     private BillPdfService billPdfService;
+    @Autowired
+    private BillPdfBatchService billPdfBatchService;
+    @Autowired
+    private UserService userService;
 
     @PostMapping
     public ResponseEntity<BillResponseDto> createBill(@RequestBody @Valid BillRequestDto dto) {
@@ -74,6 +85,39 @@ public class BillController {
                 .body(pdf);
     }
 
+    // Render mọi hóa đơn của landlord trong tháng thành 1 file ZIP, chạy nền.
+    // Landlord chỉ tạo job cho chính mình, admin tạo được cho mọi landlord
+    @PostMapping("/pdf-jobs")
+    public ResponseEntity<BillPdfJobResponseDto> createBillPdfJob(
+            @RequestParam("landlordId") UUID landlordId,
+            @RequestParam("month") String month) {
+        UUID currentUserId = userService.getAuthenticatedUserId();
+        if (!userService.isAuthenticatedAdministrator() && !landlordId.equals(currentUserId)) {
+            throw new IllegalArgumentException("Landlord does not match the current user.");
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(billPdfBatchService.submit(landlordId, month, currentUserId));
+    }
+
+    @GetMapping("/pdf-jobs/{jobId}")
+    public ResponseEntity<BillPdfJobResponseDto> getBillPdfJob(@PathVariable("jobId") UUID jobId) {
+        return ResponseEntity.ok(billPdfBatchService.getStatus(jobId, jobOwnerFilter()));
+    }
+
+    @GetMapping("/pdf-jobs/{jobId}/download")
+    public ResponseEntity<Resource> downloadBillPdfJob(@PathVariable("jobId") UUID jobId) {
+        Path zip = billPdfBatchService.getResult(jobId, jobOwnerFilter());
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=bills-" + jobId + ".zip")
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(new FileSystemResource(zip));
+    }
+
+    // Admin xem được mọi job, landlord chỉ job của mình
+    private UUID jobOwnerFilter() {
+        return userService.isAuthenticatedAdministrator() ? null : userService.getAuthenticatedUserId();
+    }
+
     @PostMapping("/{billId}/upload-image-proof")
     public ResponseEntity<String> uploadBillImageProof(
             @PathVariable("billId") UUID billId,
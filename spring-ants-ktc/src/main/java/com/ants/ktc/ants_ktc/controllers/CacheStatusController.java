@@ -0,0 +1,41 @@
+package com.ants.ktc.ants_ktc.controllers;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.ants.ktc.ants_ktc.config.TwoLevelCacheManager;
+import com.ants.ktc.ants_ktc.services.HomeFeedService;
+
+@RestController
+@RequestMapping("/api/admin/cache")
+public class CacheStatusController {
+
+    @Autowired
+    private TwoLevelCacheManager cacheManager;
+
+    @Autowired
+    private HomeFeedService homeFeedService;
+
+    // hit/miss/eviction của L1 (Caffeine) và L2 (Redis) theo từng cache name
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getCacheStatus() {
+        return ResponseEntity.ok(cacheManager.getMetrics());
+    }
+
+    @GetMapping("/home-feed")
+    public ResponseEntity<Map<String, Object>> getHomeFeedStatus() {
+        return ResponseEntity.ok(homeFeedService.getMetrics());
+    }
+
+    @PostMapping("/home-feed/refresh")
+    public ResponseEntity<Map<String, Object>> refreshHomeFeed() {
+        homeFeedService.refreshAll(false);
+        return ResponseEntity.ok(homeFeedService.getMetrics());
+    }
+}
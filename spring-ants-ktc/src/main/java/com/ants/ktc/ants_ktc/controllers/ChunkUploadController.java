@@ -1,20 +1,12 @@
 package com.ants.ktc.ants_ktc.controllers;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.stream.IntStream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -32,36 +24,23 @@ import org.springframework.web.multipart.MultipartFile;
 import com.ants.ktc.ants_ktc.dtos.chunkupload.CompleteRequestDto;
 import com.ants.ktc.ants_ktc.dtos.chunkupload.InitRequestDto;
 import com.ants.ktc.ants_ktc.models.ImageUploadMessage;
+import com.ants.ktc.ants_ktc.models.UploadSession;
 import com.ants.ktc.ants_ktc.services.RoomService;
+import com.ants.ktc.ants_ktc.services.UploadSessionService;
+import com.ants.ktc.ants_ktc.services.UploadSessionService.ChunkHashMismatchException;
 
 @Controller
 @RequestMapping("/api/upload")
 public class ChunkUploadController {
-    private final Path tempRoot;
-    private final Path finalRoot;
 
     @Autowired
     private RoomService roomService;
 
-    // Constructor
-    public ChunkUploadController() {
-        try {
-            this.tempRoot = Paths.get(System.getProperty("java.io.tmpdir"), "chunks");
-
-            // Use configurable upload directory or fallback to temp directory
-            String uploadDir = System.getProperty("app.upload.directory",
-                    System.getProperty("java.io.tmpdir") + "/uploads");
-            this.finalRoot = Paths.get(uploadDir);
-
-            Files.createDirectories(tempRoot);
-            Files.createDirectories(finalRoot);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to create upload directories", e);
-        }
-    }
+    @Autowired
+    private UploadSessionService uploadSessionService;
 
     @PostMapping(value = "/init", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Map<String, Object>> init(@RequestBody InitRequestDto request) {
+    public ResponseEntity<Map<String, Object>> init(@RequestBody InitRequestDto request) throws IOException {
         // Validate required fields
         System.out.println("================== Request init: " + request + "============================");
         if (request.getFilename() == null || request.getFilename().trim().isEmpty()) {
@@ -70,10 +49,17 @@ public class ChunkUploadController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResp);
         }
 
-        String uploadId = UUID.randomUUID().toString();
+        UploadSession session = uploadSessionService.create(
+                request.getFilename(),
+                request.getTotalChunks() != null ? request.getTotalChunks() : 0,
+                request.getChunkSize(),
+                request.getTotalSize(),
+                request.getFileHash() != null && !request.getFileHash().trim().isEmpty() ? request.getFileHash()
+                        : null);
+
         Map<String, Object> resp = new HashMap<>();
-        resp.put("uploadId", uploadId);
-        resp.put("chunkSize", 2 * 1024 * 1024); // gợi ý 2MB
+        resp.put("uploadId", session.getUploadId());
+        resp.put("chunkSize", session.getChunkSize());
         resp.put("filename", request.getFilename());
 
         // Include optional parameters if provided
@@ -83,14 +69,15 @@ public class ChunkUploadController {
         if (request.getTotalSize() != null) {
             resp.put("totalSize", request.getTotalSize());
         }
-        if (request.getFileHash() != null && !request.getFileHash().trim().isEmpty()) {
-            resp.put("fileHash", request.getFileHash());
+        if (session.getFileHash() != null) {
+            resp.put("fileHash", session.getFileHash());
         }
 
         return ResponseEntity.ok(resp);
     }
 
-    // Dùng để upload từng phần của file với hỗ trợ resume
+    // Dùng để upload từng phần của file với hỗ trợ resume; các chunk có thể gửi
+    // song song và không theo thứ tự
     @PostMapping(value = "/chunk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<?> uploadChunk(
             @RequestParam(value = "uploadId") String uploadId,
@@ -105,110 +92,67 @@ public class ChunkUploadController {
     // chunks
     ) throws Exception {
 
-        Path dir = tempRoot.resolve(uploadId);
-        Files.createDirectories(dir);
-        Path chunkPath = dir.resolve(String.format("%06d.part", chunkIndex));
+        UploadSession session = uploadSessionService.getOrCreate(uploadId, filename, totalChunks);
 
-        // Check if chunk already exists and handle accordingly
-        if (Files.exists(chunkPath) && !overwrite) {
+        String hash;
+        try {
+            hash = uploadSessionService.writeChunk(session, chunkIndex, chunk, chunkHash, overwrite);
+        } catch (ChunkHashMismatchException e) {
+            Map<String, Object> errorResp = new HashMap<>();
+            errorResp.put("error", "Chunk hash verification failed");
+            errorResp.put("expected", e.getExpected());
+            errorResp.put("actual", e.getActual());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResp);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResp = new HashMap<>();
+            errorResp.put("error", e.getMessage());
+            errorResp.put("chunkIndex", chunkIndex);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResp);
+        }
+
+        // Chunk already exists and overwrite is not allowed
+        if (hash == null) {
             Map<String, Object> resp = new HashMap<>();
             resp.put("message", "Chunk already exists");
             resp.put("chunkIndex", chunkIndex);
             resp.put("skipped", true);
-            resp.put("existing_size", Files.size(chunkPath));
+            resp.put("existing_size", chunk.getSize());
             return ResponseEntity.ok(resp);
         }
 
-        // Verify chunk hash if provided
-        if (chunkHash != null && !chunkHash.trim().isEmpty()) {
-            String actualHash = calcSha256(chunk.getBytes());
-            if (!chunkHash.equalsIgnoreCase(actualHash)) {
-                Map<String, Object> errorResp = new HashMap<>();
-                errorResp.put("error", "Chunk hash verification failed");
-                errorResp.put("expected", chunkHash);
-                errorResp.put("actual", actualHash);
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResp);
-            }
-        }
-
-        // Save chunk atomically
-        Path tmp = Files.createTempFile(dir, "part-", ".tmp");
-        try (InputStream in = chunk.getInputStream()) {
-            Files.copy(in, tmp, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-        }
-        Files.move(tmp, chunkPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING,
-                java.nio.file.StandardCopyOption.ATOMIC_MOVE);
-
+        long received = uploadSessionService.receivedCount(uploadId);
         Map<String, Object> ok = new HashMap<>();
         ok.put("received", chunkIndex);
         ok.put("size", chunk.getSize());
         ok.put("filename", filename);
         ok.put("uploadId", uploadId);
-        ok.put("progress", String.format("%.2f%%", ((chunkIndex + 1) * 100.0) / totalChunks));
+        ok.put("chunkHash", hash);
+        ok.put("progress", String.format("%.2f%%", (received * 100.0) / session.getTotalChunks()));
         return ResponseEntity.ok(ok);
     }
 
     // Dùng để kiểm tra trạng thái upload và hỗ trợ resume
     @GetMapping(value = "/status", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Map<String, Object>> status(@RequestParam(value = "uploadId") String uploadId) {
-        System.out.println("=== STATUS ENDPOINT CALLED ===");
-        System.out.println("uploadId: " + uploadId);
-        System.out.println("tempRoot: " + tempRoot.toAbsolutePath());
-
         if (uploadId == null || uploadId.trim().isEmpty()) {
             Map<String, Object> errorResp = new HashMap<>();
             errorResp.put("error", "Upload ID is required");
-            System.out.println("ERROR: Upload ID is null or empty");
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResp);
         }
 
         try {
-            Path dir = tempRoot.resolve(uploadId);
-            System.out.println("Upload directory: " + dir.toAbsolutePath());
-            System.out.println("Directory exists: " + Files.exists(dir));
-            System.out.println("Is directory: " + Files.isDirectory(dir));
-
-            List<Integer> have = new ArrayList<>();
-            long totalUploadedSize = 0;
-
-            if (Files.isDirectory(dir)) {
-                try (var s = Files.list(dir)) {
-                    s.filter(p -> p.getFileName().toString().endsWith(".part"))
-                            .forEach(p -> {
-                                try {
-                                    String name = p.getFileName().toString();
-                                    int idx = Integer.parseInt(name.substring(0, 6));
-                                    have.add(idx);
-                                } catch (NumberFormatException e) {
-                                    // Skip invalid chunk files
-                                }
-                            });
-                }
-
-                // Calculate total uploaded size
-                for (Integer chunkIndex : have) {
-                    Path chunkPath = dir.resolve(String.format("%06d.part", chunkIndex));
-                    try {
-                        totalUploadedSize += Files.size(chunkPath);
-                    } catch (IOException e) {
-                        // Chunk file might be corrupted, ignore for size calculation
-                    }
-                }
-            }
-
-            // Sort chunks for better readability
-            have.sort(Integer::compareTo);
+            UploadSession session = uploadSessionService.get(uploadId);
+            List<Integer> have = session == null ? List.of() : uploadSessionService.receivedChunks(session);
 
             Map<String, Object> resp = new HashMap<>();
             resp.put("uploadId", uploadId);
             resp.put("chunks", have);
             resp.put("totalChunks", have.size());
-            resp.put("uploadedSize", totalUploadedSize);
+            resp.put("expectedChunks", session == null ? 0 : session.getTotalChunks());
+            resp.put("uploadedSize", session == null ? 0 : session.getReceivedBytes());
             resp.put("canResume", !have.isEmpty());
-
-            // Calculate missing chunks if we know the total expected
-            // This would require storing metadata, for now just return what we have
-            resp.put("status", have.isEmpty() ? "not_started" : "in_progress");
+            resp.put("status", have.isEmpty() ? "not_started"
+                    : have.size() >= session.getTotalChunks() ? "completed" : "in_progress");
 
             return ResponseEntity.ok(resp);
         } catch (Exception e) {
@@ -223,45 +167,32 @@ public class ChunkUploadController {
     @GetMapping(value = "/resume", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Map<String, Object>> resume(
             @RequestParam(value = "uploadId") String uploadId,
-            @RequestParam(value = "totalChunks") int totalChunks) {
+            @RequestParam(value = "totalChunks", required = false) Integer totalChunks) {
         try {
-            Path dir = tempRoot.resolve(uploadId);
-            List<Integer> have = new ArrayList<>();
-            List<Integer> missing = new ArrayList<>();
-
-            if (Files.isDirectory(dir)) {
-                try (var s = Files.list(dir)) {
-                    s.filter(p -> p.getFileName().toString().endsWith(".part"))
-                            .forEach(p -> {
-                                try {
-                                    String name = p.getFileName().toString();
-                                    int idx = Integer.parseInt(name.substring(0, 6));
-                                    have.add(idx);
-                                } catch (NumberFormatException e) {
-                                    // Skip invalid chunk files
-                                }
-                            });
-                }
-            }
-
-            // Calculate missing chunks
-            for (int i = 0; i < totalChunks; i++) {
-                if (!have.contains(i)) {
-                    missing.add(i);
-                }
+            UploadSession session = uploadSessionService.get(uploadId);
+            int expected = session != null && session.getTotalChunks() > 0 ? session.getTotalChunks()
+                    : totalChunks != null ? totalChunks : 0;
+
+            List<Integer> have;
+            List<Integer> missing;
+            if (session == null) {
+                have = List.of();
+                missing = IntStream.range(0, expected).boxed().toList();
+            } else {
+                session.setTotalChunks(expected);
+                have = uploadSessionService.receivedChunks(session);
+                missing = uploadSessionService.missingChunks(session);
             }
 
-            have.sort(Integer::compareTo);
-            missing.sort(Integer::compareTo);
-
             Map<String, Object> resp = new HashMap<>();
             resp.put("uploadId", uploadId);
-            resp.put("totalChunks", totalChunks);
+            resp.put("totalChunks", expected);
             resp.put("completedChunks", have);
             resp.put("missingChunks", missing);
-            resp.put("progress", String.format("%.2f%%", (have.size() * 100.0) / totalChunks));
+            resp.put("chunkHashes", session == null ? Map.of() : uploadSessionService.chunkHashes(uploadId));
+            resp.put("progress", String.format("%.2f%%", expected == 0 ? 0.0 : (have.size() * 100.0) / expected));
             resp.put("canResume", true);
-            resp.put("isComplete", missing.isEmpty());
+            resp.put("isComplete", expected > 0 && missing.isEmpty());
 
             return ResponseEntity.ok(resp);
         } catch (Exception e) {
@@ -275,44 +206,12 @@ public class ChunkUploadController {
     // Endpoint to cleanup abandoned uploads
     @PostMapping(value = "/cleanup", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Map<String, Object>> cleanup(@RequestParam(value = "uploadId") String uploadId) {
-        try {
-            Path dir = tempRoot.resolve(uploadId);
-
-            if (!Files.isDirectory(dir)) {
-                Map<String, Object> resp = new HashMap<>();
-                resp.put("message", "Upload directory not found");
-                resp.put("uploadId", uploadId);
-                return ResponseEntity.ok(resp);
-            }
-
-            // Remove all chunk files
-            int deletedFiles = 0;
-            try (var s = Files.list(dir)) {
-                for (Path p : s.toList()) {
-                    try {
-                        Files.deleteIfExists(p);
-                        deletedFiles++;
-                    } catch (IOException e) {
-                        // Log warning but continue cleanup
-                    }
-                }
-            }
-
-            // Remove directory
-            Files.deleteIfExists(dir);
+        boolean existed = uploadSessionService.delete(uploadId);
 
-            Map<String, Object> resp = new HashMap<>();
-            resp.put("message", "Upload cleaned up successfully");
-            resp.put("uploadId", uploadId);
-            resp.put("deletedFiles", deletedFiles);
-            return ResponseEntity.ok(resp);
-
-        } catch (IOException e) {
-            Map<String, Object> errorResp = new HashMap<>();
-            errorResp.put("error", "Failed to cleanup upload");
-            errorResp.put("message", e.getMessage());
-            return ResponseEntity.internalServerError().body(errorResp);
-        }
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("message", existed ? "Upload cleaned up successfully" : "Upload session not found");
+        resp.put("uploadId", uploadId);
+        return ResponseEntity.ok(resp);
     }
 
     @PostMapping(value = "/complete", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -333,180 +232,65 @@ public class ChunkUploadController {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResp);
             }
 
-            Path dir = tempRoot.resolve(request.getUploadId());
-            System.out.println("Upload directory: " + dir.toAbsolutePath());
-            System.out.println("Directory exists: " + Files.exists(dir));
-            System.out.println("Is directory: " + Files.isDirectory(dir));
-
-            if (!Files.isDirectory(dir)) {
+            UploadSession session = uploadSessionService.get(request.getUploadId());
+            if (session == null) {
                 Map<String, Object> errorResp = new HashMap<>();
                 errorResp.put("error", "Upload not found");
                 errorResp.put("uploadId", request.getUploadId());
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResp);
             }
 
-            // Merge chunks into final file
-            Path finalPath = finalRoot.resolve(request.getFilename());
-            System.out.println("Final path: " + finalPath.toAbsolutePath());
-            System.out.println("Final directory exists: " + Files.exists(finalPath.getParent()));
-
-            try (OutputStream out = Files.newOutputStream(finalPath)) {
-                var parts = Files.list(dir)
-                        .filter(p -> p.getFileName().toString().endsWith(".part"))
-                        .sorted(Comparator.comparing(Path::getFileName))
-                        .toList();
-
-                System.out.println("Found " + parts.size() + " chunks to merge:");
-                for (Path p : parts) {
-                    System.out.println("  - " + p.getFileName() + " (" + Files.size(p) + " bytes)");
-                }
-
-                for (Path p : parts) {
-                    Files.copy(p, out);
-                }
-                System.out.println("Chunks merged successfully");
+            if (!uploadSessionService.isComplete(session)) {
+                Map<String, Object> errorResp = new HashMap<>();
+                errorResp.put("error", "Upload is missing chunks");
+                errorResp.put("missingChunks", uploadSessionService.missingChunks(session));
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResp);
             }
 
-            // Verify whole file hash if provided
-            if (request.getFileHash() != null && !request.getFileHash().trim().isEmpty()) {
-                try {
-                    String actualHash = sha256OfFile(finalPath);
-                    if (!request.getFileHash().equalsIgnoreCase(actualHash)) {
-                        Files.deleteIfExists(finalPath);
-                        Map<String, Object> errorResp = new HashMap<>();
-                        errorResp.put("error", "File hash verification failed");
-                        errorResp.put("expected", request.getFileHash());
-                        errorResp.put("actual", actualHash);
-                        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResp);
-                    }
-                } catch (IOException e) {
-                    Files.deleteIfExists(finalPath);
+            // Chunks were written in place, only trim the preallocated file
+            Path finalPath = uploadSessionService.finalizeDataFile(session);
+
+            // Verify whole file hash if provided (at init or complete)
+            String expectedHash = request.getFileHash() != null && !request.getFileHash().trim().isEmpty()
+                    ? request.getFileHash()
+                    : session.getFileHash();
+            if (expectedHash != null) {
+                String actualHash = uploadSessionService.sha256Of(finalPath);
+                if (!expectedHash.equalsIgnoreCase(actualHash)) {
+                    uploadSessionService.delete(session.getUploadId());
                     Map<String, Object> errorResp = new HashMap<>();
-                    errorResp.put("error", "Failed to verify file hash");
-                    errorResp.put("message", e.getMessage());
-                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResp);
+                    errorResp.put("error", "File hash verification failed");
+                    errorResp.put("expected", expectedHash);
+                    errorResp.put("actual", actualHash);
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResp);
                 }
             }
-            // Create a simple MultipartFile implementation
-            MultipartFile mergedFile = null;
-            System.out.println("Creating custom MultipartFile from merged file...");
-            try {
-                final Path finalFilePath = finalPath;
-                final String fileName = request.getFilename();
-
-                @SuppressWarnings("null")
-                MultipartFile tempFile = new MultipartFile() {
-                    @Override
-                    public String getName() {
-                        return fileName != null ? fileName : "";
-                    }
-
-                    @Override
-                    public String getOriginalFilename() {
-                        return fileName;
-                    }
-
-                    @Override
-                    public String getContentType() {
-                        return MediaType.APPLICATION_OCTET_STREAM_VALUE;
-                    }
-
-                    @Override
-                    public boolean isEmpty() {
-                        try {
-                            return Files.size(finalFilePath) == 0;
-                        } catch (IOException e) {
-                            return true;
-                        }
-                    }
-
-                    @Override
-                    public long getSize() {
-                        try {
-                            return Files.size(finalFilePath);
-                        } catch (IOException e) {
-                            return 0;
-                        }
-                    }
-
-                    @Override
-                    public byte[] getBytes() throws IOException {
-                        byte[] bytes = Files.readAllBytes(finalFilePath);
-                        return bytes != null ? bytes : new byte[0];
-                    }
-
-                    @Override
-                    public InputStream getInputStream() throws IOException {
-                        InputStream stream = Files.newInputStream(finalFilePath);
-                        if (stream == null) {
-                            throw new IOException("Cannot create InputStream from file");
-                        }
-                        return stream;
-                    }
-
-                    @Override
-                    public void transferTo(java.io.File dest) throws IOException {
-                        if (dest == null) {
-                            throw new IllegalArgumentException("Destination file cannot be null");
-                        }
-                        Files.copy(finalFilePath, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    }
-                };
-                mergedFile = tempFile;
-                System.out.println("Custom MultipartFile created successfully");
-            } catch (Exception e) {
-                System.out.println("ERROR creating custom MultipartFile: " + e.getMessage());
-                Map<String, Object> errorResp = new HashMap<>();
-                errorResp.put("error", "Failed to create MultipartFile from merged chunks");
-                errorResp.put("message", e.getMessage());
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResp);
-            }
-
-            // Fetch Room entity by roomId using a public method (RoomResponseDto or
-            // similar)
+            long finalSize = Files.size(finalPath);
 
-            // Call the async image upload method via a public wrapper
+            // Hand off the file by path; the worker reads it from disk
             System.out.println("Calling roomService.prepareAsyncImageUpload with roomId: " + request.getRoomId());
-            ImageUploadMessage result = roomService.prepareAsyncImageUpload(mergedFile, request.getRoomId());
+            ImageUploadMessage result = roomService.prepareAsyncImageUpload(finalPath, request.getFilename(),
+                    request.getRoomId());
             System.out.println("RoomService result: " + result);
 
             // IMPORTANT: Enqueue the upload job to Redis for async processing
             System.out.println("Enqueuing upload job for async processing...");
             roomService.enqueueImageUpload(result);
             System.out.println("Upload job enqueued successfully");
-            // Cleanup chunks
-            try (var s = Files.list(dir)) {
-                s.forEach(p -> {
-                    try {
-                        Files.deleteIfExists(p);
-                    } catch (IOException ignored) {
-                        // Log warning but continue cleanup
-                    }
-                });
-            }
-            Files.deleteIfExists(dir);
 
-            // Save upload info to database
-            // code here ...
+            // Data file was moved, drop the session metadata
+            uploadSessionService.delete(session.getUploadId());
 
             // return to client
             Map<String, Object> resp = new HashMap<>();
             resp.put("file", request.getFilename());
-            resp.put("path", finalPath.toString());
-            resp.put("size", Files.size(finalPath));
-            if (request.getFileHash() != null && !request.getFileHash().trim().isEmpty()) {
+            resp.put("path", result.getLocalTempPath());
+            resp.put("size", finalSize);
+            if (expectedHash != null) {
                 resp.put("verified", true);
-                resp.put("hash", request.getFileHash());
+                resp.put("hash", expectedHash);
             }
 
-            // Delete the final file after successful upload to save disk space
-            try {
-                Files.deleteIfExists(finalPath);
-                System.out.println("Final file deleted successfully: " + finalPath);
-            } catch (IOException e) {
-                System.out.println("Warning: Failed to delete final file: " + e.getMessage());
-            }
-            
             return ResponseEntity.ok(resp);
 
         } catch (Exception e) {
@@ -520,55 +304,4 @@ public class ChunkUploadController {
         }
     }
 
-    /**
-     * Calculate SHA-256 hash of a byte array
-     */
-    private String calcSha256(byte[] data) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data);
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not available", e);
-        }
-    }
-
-    /**
-     * Calculate SHA-256 hash of a file
-     */
-    private String sha256OfFile(Path filePath) throws IOException {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-
-            try (InputStream inputStream = Files.newInputStream(filePath)) {
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    digest.update(buffer, 0, bytesRead);
-                }
-            }
-
-            byte[] hash = digest.digest();
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not available", e);
-        }
-    }
-
 }
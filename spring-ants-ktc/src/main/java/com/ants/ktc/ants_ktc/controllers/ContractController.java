@@ -5,6 +5,7 @@ import com.ants.ktc.ants_ktc.dtos.contract.ContractResponseDto;
 import com.ants.ktc.ants_ktc.dtos.contract.ContractUpdateRequestDto;
 import com.ants.ktc.ants_ktc.services.BillExportService;
 import com.ants.ktc.ants_ktc.services.ContractService;
+import com.ants.ktc.ants_ktc.services.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -14,8 +15,11 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 @RestController
@@ -28,6 +32,9 @@ public class ContractController {
     @Autowired
     private BillExportService billExportService;
 
+    @Autowired
+    private UserService userService;
+
     @PostMapping
     public ResponseEntity<ContractResponseDto> createContract(@RequestBody @Valid ContractRequestDto dto) {
         return ResponseEntity.ok(contractService.createContract(dto));
@@ -76,15 +83,50 @@ public class ContractController {
     }
 
     @GetMapping("/{contractId}/bills/export")
-    public ResponseEntity<byte[]> exportBills(
+    public ResponseEntity<StreamingResponseBody> exportBills(
             @PathVariable UUID contractId,
             @RequestParam("fromMonth") String fromMonth,
-            @RequestParam("toMonth") String toMonth) throws Exception {
-        byte[] data = billExportService.exportBillsToExcel(contractId, fromMonth, toMonth);
+            @RequestParam("toMonth") String toMonth) {
+        billExportService.checkMonths(fromMonth, toMonth);
+        return excel("bills.xlsx",
+                out -> billExportService.writeContractBills(List.of(contractId), fromMonth, toMonth, out));
+    }
+
+    // Nhiều hợp đồng: ?contractIds=id1,id2&fromMonth=2024-01&toMonth=2024-12
+    // Landlord chỉ export được hợp đồng của mình, admin export được mọi hợp đồng
+    @GetMapping("/bills/export")
+    public ResponseEntity<StreamingResponseBody> exportBillsOfContracts(
+            @RequestParam("contractIds") List<UUID> contractIds,
+            @RequestParam(value = "fromMonth", required = false) String fromMonth,
+            @RequestParam(value = "toMonth", required = false) String toMonth) {
+        Set<UUID> ids = new LinkedHashSet<>(contractIds);
+        billExportService.checkMonths(fromMonth, toMonth);
+        billExportService.checkContracts(ids,
+                userService.isAuthenticatedAdministrator() ? null : userService.getAuthenticatedUserId());
+        return excel("bills.xlsx",
+                out -> billExportService.writeContractBills(ids, fromMonth, toMonth, out));
+    }
+
+    // Mọi phòng của landlord; không truyền tháng = mọi tháng
+    @GetMapping("/landlord/{landlordId}/bills/export")
+    public ResponseEntity<StreamingResponseBody> exportBillsOfLandlord(
+            @PathVariable("landlordId") UUID landlordId,
+            @RequestParam(value = "fromMonth", required = false) String fromMonth,
+            @RequestParam(value = "toMonth", required = false) String toMonth) {
+        if (!userService.isAuthenticatedAdministrator() && !landlordId.equals(userService.getAuthenticatedUserId())) {
+            throw new IllegalArgumentException("Landlord does not match the current user.");
+        }
+        billExportService.checkMonths(fromMonth, toMonth);
+        return excel("landlord-bills.xlsx",
+                out -> billExportService.writeLandlordBills(landlordId, fromMonth, toMonth, out));
+    }
+
+    // Ghi thẳng vào response, không dựng byte[] trong heap
+    private ResponseEntity<StreamingResponseBody> excel(String fileName, StreamingResponseBody body) {
         return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=bills.xlsx")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName)
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(data);
+                .body(body);
     }
 
     @DeleteMapping("/{id}")
@@ -96,6 +138,6 @@ public class ContractController {
     @GetMapping("/test")
     public String runAutoTask() {
         contractService.autoTaskBillsGeneration();
-        return "Task completed";
+        return "Task started";
     }
 }
@@ -1,5 +1,6 @@
 package com.ants.ktc.ants_ktc.controllers;
 
+import java.util.List;
 import java.util.UUID;
 
 import org.springframework.data.domain.Page;
@@ -15,16 +16,20 @@ import org.springframework.web.bind.annotation.RestController;
 
 import com.ants.ktc.ants_ktc.dtos.favorite.FavoriteRoomProjection;
 import com.ants.ktc.ants_ktc.dtos.favorite.PageResponse;
+import com.ants.ktc.ants_ktc.dtos.room.RoomSuggestionInfoDto;
 import com.ants.ktc.ants_ktc.services.FavoriteService;
+import com.ants.ktc.ants_ktc.services.RoomSuggestionService;
 
 @RestController
 @RequestMapping("/api/favorites")
 public class FavoriteController {
 
     private final FavoriteService favoriteService;
+    private final RoomSuggestionService roomSuggestionService;
 
-    public FavoriteController(FavoriteService favoriteService) {
+    public FavoriteController(FavoriteService favoriteService, RoomSuggestionService roomSuggestionService) {
         this.favoriteService = favoriteService;
+        this.roomSuggestionService = roomSuggestionService;
     }
 
     @PostMapping("/rooms/{roomId}")
@@ -61,4 +66,13 @@ public class FavoriteController {
         long count = favoriteService.countFavoriteByRoom(roomId);
         return ResponseEntity.ok(count);
     }
-}
\ No newline at end of file
+
+    // Gợi ý phòng dựa trên phòng yêu thích (kết quả tính trước hằng ngày)
+    @GetMapping("/suggestions")
+    public ResponseEntity<List<RoomSuggestionInfoDto>> getSuggestedRooms(Authentication authentication) {
+        if (authentication == null) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok(roomSuggestionService.getSuggestedRoomsForUsername(authentication.getName()));
+    }
+}
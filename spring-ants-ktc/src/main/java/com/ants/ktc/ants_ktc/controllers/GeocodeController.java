@@ -0,0 +1,37 @@
+package com.ants.ktc.ants_ktc.controllers;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.ants.ktc.ants_ktc.services.AddressGeocodingService;
+import com.ants.ktc.ants_ktc.services.LocationIQService;
+
+@RestController
+@RequestMapping("/api/admin/geocode")
+public class GeocodeController {
+
+    @Autowired
+    private LocationIQService locationIQService;
+
+    @Autowired
+    private AddressGeocodingService addressGeocodingService;
+
+    @GetMapping("/cache/status")
+    public ResponseEntity<Map<String, Object>> getCacheStatus() {
+        return ResponseEntity.ok(locationIQService.getCacheMetrics());
+    }
+
+    @PostMapping("/backfill")
+    public ResponseEntity<Map<String, Object>> backfill() {
+        int updated = addressGeocodingService.backfillMissingCoordinates();
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "updatedAddresses", updated));
+    }
+}
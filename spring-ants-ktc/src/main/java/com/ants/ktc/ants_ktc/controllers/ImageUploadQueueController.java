@@ -0,0 +1,24 @@
+package com.ants.ktc.ants_ktc.controllers;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.ants.ktc.ants_ktc.worker.ImageUploadWorker;
+
+@RestController
+@RequestMapping("/api/image-upload-queue")
+public class ImageUploadQueueController {
+
+    @Autowired
+    private ImageUploadWorker imageUploadWorker;
+
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getQueueStatus() {
+        return ResponseEntity.ok(imageUploadWorker.getMetrics());
+    }
+}
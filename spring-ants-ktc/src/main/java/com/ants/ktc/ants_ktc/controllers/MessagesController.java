@@ -25,16 +25,19 @@ public class MessagesController {
             @RequestParam(value = "user1") UUID user1,
             @RequestParam(value = "user2") UUID user2,
             @RequestParam(value = "size", required = false) Integer size,
-            @RequestParam(value = "before", required = false) String before) {
+            @RequestParam(value = "before", required = false) String before,
+            @RequestParam(value = "beforeId", required = false) UUID beforeId) {
         java.time.LocalDateTime beforeTime = null;
         if (before != null && !before.isEmpty()) {
             beforeTime = java.time.LocalDateTime.parse(before);
         }
-        return messagesService.getMessagesBetweenUsers(user1, user2, size, beforeTime);
+        return messagesService.getMessagesBetweenUsers(user1, user2, size, beforeTime, beforeId);
     }
 
     @GetMapping("/users")
-    public List<Map<String, Object>> getChatUsers(@RequestParam(value = "userId") UUID userId) {
-        return messagesService.getChatUsers(userId);
+    public List<Map<String, Object>> getChatUsers(@RequestParam(value = "userId") UUID userId,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "50") int size) {
+        return messagesService.getChatUsers(userId, page, size);
     }
 }
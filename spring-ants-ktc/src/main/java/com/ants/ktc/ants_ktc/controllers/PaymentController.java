@@ -29,8 +29,10 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.ants.ktc.ants_ktc.components.IdGenerator;
 import com.ants.ktc.ants_ktc.dtos.transaction.CreateTransactionRequestDto;
 import com.ants.ktc.ants_ktc.services.TransactionService;
+import com.ants.ktc.ants_ktc.services.WalletLedgerService;
 
 import jakarta.servlet.http.HttpServletRequest;
 
@@ -53,6 +55,9 @@ public class PaymentController {
     @Autowired
     private TransactionService transactionService;
 
+    @Autowired
+    private IdGenerator idGenerator;
+
     @PostMapping("/create")
     public ResponseEntity<?> createPayment(@RequestBody Map<String, Object> body, HttpServletRequest request) {
         try {
@@ -60,7 +65,8 @@ public class PaymentController {
             String description = body.get("description") != null ? body.get("description").toString() : "";
             UUID userId = UUID.fromString(body.get("userId").toString());
 
-            String transactionId = String.valueOf(System.currentTimeMillis());
+            // vnp_TxnRef không được trùng, kể cả khi 2 request cùng ms hoặc trên 2 node
+            String transactionId = String.valueOf(idGenerator.nextId());
 
             Map<String, String> vnp_Params = new HashMap<>();
             vnp_Params.put("vnp_Version", "2.1.0");
@@ -194,12 +200,8 @@ public class PaymentController {
                         "message", "Invalid UUID in OrderInfo",
                         "raw", parts[1]));
             }
-            if (transactionService.existsByTransactionCode(vnpParams.get("vnp_TransactionNo"))) {
-                return ResponseEntity.ok(Map.of(
-                        "success", true,
-                        "message", "Transaction already processed"));
-            }
-            // 4) Save to DB
+            // 4) Save to DB - confirm gọi lại với cùng vnp_TransactionNo chỉ cộng tiền 1 lần
+            // (unique index của wallet_ledger), trả về giao dịch đã lưu
             CreateTransactionRequestDto dto = new CreateTransactionRequestDto();
             dto.setAmount(Double.parseDouble(vnpParams.get("vnp_Amount")) / 100.0);
             dto.setTransactionDate(new java.sql.Date(System.currentTimeMillis()));
@@ -209,7 +211,8 @@ public class PaymentController {
             dto.setStatus(1);
             dto.setDescription(description);
 
-            var saved = transactionService.createTransactionByUserId(userId, dto);
+            var saved = transactionService.createTransactionByUserId(userId, dto,
+                    WalletLedgerService.vnpayKey(vnpParams.get("vnp_TransactionNo")));
 
             return ResponseEntity.ok(Map.of(
                     "success", true,
@@ -7,6 +7,8 @@ import java.util.Set;
 import java.util.UUID;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -21,6 +23,7 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.ants.ktc.ants_ktc.dtos.filters.FilterRoomRequestDto;
+import com.ants.ktc.ants_ktc.dtos.filters.RoomFacetResponseDto;
 import com.ants.ktc.ants_ktc.dtos.rating.RatingCreateDto;
 import com.ants.ktc.ants_ktc.dtos.rating.RatingReplyDto;
 import com.ants.ktc.ants_ktc.dtos.rating.RatingResponseDto;
@@ -39,6 +42,7 @@ import com.ants.ktc.ants_ktc.dtos.room.RoomUpdateExpireDateRequestDto;
 import com.ants.ktc.ants_ktc.dtos.room.RoomUpdateExpireDateResponseDto;
 import com.ants.ktc.ants_ktc.dtos.user.LandlordResponseByRoomDto;
 import com.ants.ktc.ants_ktc.enums.FeedbackAccess;
+import com.ants.ktc.ants_ktc.services.HomeFeedService;
 import com.ants.ktc.ants_ktc.services.RatingService;
 import com.ants.ktc.ants_ktc.services.RoomService;
 import com.ants.ktc.ants_ktc.services.UserService;
@@ -65,6 +69,8 @@ public class RoomController {
     private UserService userService;
     @Autowired
     private RatingService ratingService;
+    @Autowired
+    private HomeFeedService homeFeedService;
 
     @PostMapping
     @Operation(summary = "Create a new room", description = "Creates a new room")
@@ -191,43 +197,49 @@ public class RoomController {
     }
 
     @GetMapping("allroom-vip")
-    public ResponseEntity<PaginationRoomInUserResponseDto> getRoomVipPaginated(
+    public ResponseEntity<?> getRoomVipPaginated(
             @RequestParam(name = "page", defaultValue = "0") int pageNumber,
             @RequestParam(name = "size", defaultValue = "5") int pageSize,
-            @RequestParam(name = "userId", required = false) UUID userId) {
-        String code = "VIP";
-        PaginationRoomInUserResponseDto response;
-
-        // Nếu có userId, sử dụng sorting theo khoảng cách
-        if (userId != null) {
-            response = roomService.getAllRoomInUserSortedByDistance(pageNumber, pageSize, code, userId);
-        } else {
-            // Fallback về method cũ nếu không có userId
-            response = roomService.getAllRoomInUser(pageNumber, pageSize, code);
-        }
-
-        return ResponseEntity.ok(response);
+            @RequestParam(name = "userId", required = false) UUID userId,
+            @RequestParam(name = "provinceId", required = false) Long provinceId) {
+        return homeFeedPage("VIP", pageNumber, pageSize, userId, provinceId);
     }
 
     @GetMapping("allroom-normal")
-    public ResponseEntity<PaginationRoomInUserResponseDto> getRoomNormalPaginated(
+    public ResponseEntity<?> getRoomNormalPaginated(
             @RequestParam(name = "page", defaultValue = "0") int pageNumber,
             @RequestParam(name = "size", defaultValue = "5") int pageSize,
-            @RequestParam(name = "userId", required = false) UUID userId) {
-        String code = "NORMAL";
-        PaginationRoomInUserResponseDto response;
+            @RequestParam(name = "userId", required = false) UUID userId,
+            @RequestParam(name = "provinceId", required = false) Long provinceId) {
+        return homeFeedPage("NORMAL", pageNumber, pageSize, userId, provinceId);
+    }
 
+    private ResponseEntity<?> homeFeedPage(String code, int pageNumber, int pageSize, UUID userId,
+            Long provinceId) {
         // Nếu có userId, sử dụng sorting theo khoảng cách
         if (userId != null) {
-            response = roomService.getAllRoomInUserSortedByDistance(pageNumber, pageSize, code, userId);
-        } else {
-            // Fallback về method cũ nếu không có userId
-            response = roomService.getAllRoomInUser(pageNumber, pageSize, code);
+            return ResponseEntity.ok(roomService.getAllRoomInUserSortedByDistance(pageNumber, pageSize, code, userId));
         }
-
+        // Khách chưa đăng nhập: trả trang dựng sẵn, client/CDN gửi If-None-Match sẽ nhận 304
+        HomeFeedService.RenderedPage page = homeFeedService.getRoomPage(code, provinceId, pageNumber, pageSize);
+        if (page != null) {
+            return renderedFeed(page);
+        }
+        PaginationRoomInUserResponseDto response = provinceId != null
+                ? roomService.getAllRoomInUserByProvince(pageNumber, pageSize, code, provinceId)
+                : roomService.getAllRoomInUser(pageNumber, pageSize, code);
         return ResponseEntity.ok(response);
     }
 
+    private ResponseEntity<byte[]> renderedFeed(HomeFeedService.RenderedPage page) {
+        return ResponseEntity.ok()
+                .eTag(page.etag())
+                .lastModified(page.lastModified())
+                .cacheControl(CacheControl.noCache().cachePublic())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(page.body());
+    }
+
     // API mới - Lấy rooms VIP với tọa độ trực tiếp (cho user chưa đăng nhập)
     @GetMapping("allroom-vip-location")
     public ResponseEntity<PaginationRoomInUserResponseDto> getRoomVipWithLocation(
@@ -263,8 +275,18 @@ public class RoomController {
         return ResponseEntity.ok(response);
     }
 
+    @PostMapping("filter-rooms/facets")
+    public ResponseEntity<RoomFacetResponseDto> getFilterFacets(@Valid @RequestBody FilterRoomRequestDto filterDto) {
+        RoomFacetResponseDto response = roomService.getFilterFacets(filterDto);
+        return ResponseEntity.ok(response);
+    }
+
     @GetMapping("recent-rooms")
-    public ResponseEntity<List<RoomRecentResponseDto>> getRecentRooms() {
+    public ResponseEntity<?> getRecentRooms() {
+        HomeFeedService.RenderedPage page = homeFeedService.getRecentRooms();
+        if (page != null) {
+            return renderedFeed(page);
+        }
         List<RoomRecentResponseDto> recentRooms = roomService.findRecentRooms();
         return ResponseEntity.ok(recentRooms);
     }
@@ -1,5 +1,7 @@
 package com.ants.ktc.ants_ktc.controllers;
 
+import java.util.Map;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -7,6 +9,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.ants.ktc.ants_ktc.services.RoomSuggestionBatchService;
 import com.ants.ktc.ants_ktc.services.RoomSuggestionService;
 
 @RestController
@@ -16,6 +19,9 @@ public class TestController {
     @Autowired
     private RoomSuggestionService roomSuggestionService;
 
+    @Autowired
+    private RoomSuggestionBatchService roomSuggestionBatchService;
+
     @PostMapping("/send-suggestions")
     public ResponseEntity<String> testSendSuggestions() {
         try {
@@ -37,4 +43,10 @@ public class TestController {
                     .body("Error sending suggestions: " + e.getMessage());
         }
     }
+
+    @PostMapping("/precompute-suggestions")
+    public ResponseEntity<Map<String, Object>> precomputeSuggestions() {
+        roomSuggestionBatchService.precomputeAll();
+        return ResponseEntity.ok(roomSuggestionBatchService.getLastRunStats());
+    }
 }
@@ -0,0 +1,54 @@
+package com.ants.ktc.ants_ktc.controllers.admin;
+
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.ants.ktc.ants_ktc.dtos.batch.BatchJobExecutionDto;
+import com.ants.ktc.ants_ktc.services.batch.BatchJobService;
+
+@RestController
+@RequestMapping("/api/admin/batch-jobs")
+public class BatchJobController {
+    @Autowired
+    private BatchJobService batchJobService;
+
+    // Tên các job chạy hằng đêm
+    @GetMapping
+    public ResponseEntity<?> getJobNames() {
+        return ResponseEntity.ok(batchJobService.getJobNames());
+    }
+
+    // Lịch sử chạy (mới nhất trước), lọc theo tên job nếu có
+    @GetMapping("/executions")
+    public ResponseEntity<?> getExecutions(
+            @RequestParam(name = "jobName", required = false) String jobName,
+            @RequestParam(name = "limit", defaultValue = "20") int limit) {
+        return ResponseEntity.ok(batchJobService.getHistory(jobName, limit));
+    }
+
+    @GetMapping("/executions/{id}")
+    public ResponseEntity<BatchJobExecutionDto> getExecution(@PathVariable("id") UUID id) {
+        return ResponseEntity.ok(batchJobService.getExecution(id));
+    }
+
+    // Chạy ngay, không chờ lịch; tiếp tục từ checkpoint nếu lần chạy hôm nay bị lỗi
+    @PostMapping("/{jobName}/run")
+    public ResponseEntity<?> runJob(@PathVariable("jobName") String jobName) {
+        BatchJobExecutionDto execution = batchJobService.run(jobName);
+        if (execution == null) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("message", "Job " + jobName + " is already running"));
+        }
+        return ResponseEntity.ok(execution);
+    }
+}
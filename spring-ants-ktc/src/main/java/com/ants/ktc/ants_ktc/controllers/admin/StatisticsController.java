@@ -5,11 +5,13 @@ import java.util.UUID;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.ants.ktc.ants_ktc.services.AdminStatisticsService;
+import com.ants.ktc.ants_ktc.services.StatisticsRollupService;
 
 @RestController
 @RequestMapping("api/admin/statistics")
@@ -17,6 +19,9 @@ public class StatisticsController {
     @Autowired
     private AdminStatisticsService adminStatisticsService;
 
+    @Autowired
+    private StatisticsRollupService statisticsRollupService;
+
     @GetMapping("/inactive-users/count")
     public Long countInactiveUsers() {
         return adminStatisticsService.countInactiveUsers();
@@ -100,4 +105,16 @@ public class StatisticsController {
         }
     }
 
+    // Trạng thái bảng thống kê cộng dồn (chênh lệch chờ ghi, lần reconcile gần nhất)
+    @GetMapping("/rollup/status")
+    public ResponseEntity<?> getRollupStatus() {
+        return ResponseEntity.ok(statisticsRollupService.getMetrics());
+    }
+
+    // Dựng lại bảng thống kê từ dữ liệu gốc ngay, không chờ job hằng đêm
+    @PostMapping("/rollup/reconcile")
+    public ResponseEntity<?> reconcileRollups() {
+        return ResponseEntity.ok(statisticsRollupService.reconcile());
+    }
+
 }
@@ -0,0 +1,37 @@
+package com.ants.ktc.ants_ktc.dtos.batch;
+
+import com.ants.ktc.ants_ktc.enums.BatchJobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchJobExecutionDto {
+    private UUID id;
+    private String jobName;
+    private String runDate;
+    private BatchJobStatus status;
+    private String nodeId;
+    private Date startedAt;
+    private Date finishedAt;
+
+    // Checkpoint và lần chạy được tiếp tục (nếu có)
+    private UUID lastKey;
+    private UUID resumedFrom;
+
+    private long readCount;
+    private long writeCount;
+    private long chunkCount;
+    private long elapsedMs;
+    // Số bản ghi đọc được mỗi giây
+    private double itemsPerSecond;
+
+    private String error;
+}
@@ -0,0 +1,33 @@
+package com.ants.ktc.ants_ktc.dtos.bill;
+
+import com.ants.ktc.ants_ktc.enums.BillPdfJobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BillPdfJobResponseDto {
+    private UUID jobId;
+    private UUID landlordId;
+    private String month;
+    private BillPdfJobStatus status;
+
+    // Số hóa đơn cần render / đã xong / lỗi
+    private int total;
+    private int rendered;
+    private int failed;
+
+    private Date createdAt;
+    private Date finishedAt;
+    private String error;
+
+    // Có khi status = DONE
+    private String downloadUrl;
+}
@@ -12,6 +12,7 @@ import lombok.NoArgsConstructor;
 public class InitRequestDto {
     private String filename;
     private Integer totalChunks;
+    private Integer chunkSize; // optional, mặc định 2MB
     private Long totalSize;
     private String fileHash;
 }
@@ -0,0 +1,15 @@
+package com.ants.ktc.ants_ktc.dtos.filters;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FacetCountDto {
+    private Long id;
+    private long count;
+}
@@ -0,0 +1,16 @@
+package com.ants.ktc.ants_ktc.dtos.filters;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RangeFacetCountDto {
+    private Double min; // inclusive
+    private Double max; // exclusive, null = không giới hạn
+    private long count;
+}
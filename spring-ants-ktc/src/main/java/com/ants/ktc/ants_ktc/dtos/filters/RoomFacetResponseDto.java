@@ -0,0 +1,27 @@
+package com.ants.ktc.ants_ktc.dtos.filters;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Số phòng còn lại cho từng lựa chọn của bộ lọc. Mỗi nhóm được đếm với tất cả
+ * điều kiện khác đang chọn, trừ chính nhóm đó (để UI biết đổi lựa chọn trong
+ * nhóm sẽ còn bao nhiêu phòng).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RoomFacetResponseDto {
+    private long totalRooms;
+    private List<FacetCountDto> convenients;
+    private List<FacetCountDto> provinces;
+    private List<FacetCountDto> districts;
+    private List<FacetCountDto> wards;
+    private List<RangeFacetCountDto> priceRanges;
+    private List<RangeFacetCountDto> areaRanges;
+}
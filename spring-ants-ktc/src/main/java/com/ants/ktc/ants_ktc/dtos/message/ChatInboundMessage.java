@@ -0,0 +1,19 @@
+package com.ants.ktc.ants_ktc.dtos.message;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Payload client gửi lên qua WebSocket (type = "message" hoặc "read")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ChatInboundMessage {
+    private String type;
+    private String fromUserId;
+    private String toUserId;
+    private String message;
+}
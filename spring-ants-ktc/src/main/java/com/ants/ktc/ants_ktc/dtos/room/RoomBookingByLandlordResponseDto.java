@@ -21,6 +21,7 @@ public class RoomBookingByLandlordResponseDto {
     private Double priceDeposit;
     private int available;
     private Double area;
+    private String coverImageUrl;
     // private String ownerName;
     // private String ownerPhone;
     private AddressResponseDto address;
@@ -21,6 +21,7 @@ public class RoomBookingByUserResponseDto {
     private Double priceDeposit;
     private int available;
     private Double area;
+    private String coverImageUrl;
     private String ownerName;
     private String ownerPhone;
     private String imageProof;
@@ -0,0 +1,74 @@
+package com.ants.ktc.ants_ktc.entities;
+
+import java.util.Date;
+import java.util.UUID;
+
+import com.ants.ktc.ants_ktc.enums.BatchJobStatus;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 1 lần chạy của 1 batch job (xem BatchJobService).
+ * <ul>
+ * <li>runDate: ngày nghiệp vụ {@code yyyy-MM-dd}; lần chạy lỗi/dừng giữa
+ * chừng chỉ được tiếp tục trong cùng ngày.</li>
+ * <li>lastKey: checkpoint, mọi bản ghi có id &lt;= lastKey đã được ghi xong.
+ * Lần chạy sau bắt đầu đọc từ id &gt; lastKey (resumedFrom = lần chạy cũ).</li>
+ * <li>readCount / writeCount / chunkCount tính tới checkpoint.</li>
+ * </ul>
+ */
+@Entity
+@Table(name = "batch_job_executions", indexes = {
+        @Index(name = "idx_batch_job_name_started", columnList = "job_name, started_at")
+})
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class BatchJobExecution extends BaseEntity {
+
+    @Column(name = "job_name", nullable = false, length = 60)
+    private String jobName;
+
+    @Column(name = "run_date", nullable = false, length = 10)
+    private String runDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private BatchJobStatus status = BatchJobStatus.RUNNING;
+
+    @Column(name = "node_id", length = 64)
+    private String nodeId;
+
+    @Column(name = "started_at", nullable = false)
+    private Date startedAt;
+
+    @Column(name = "finished_at")
+    private Date finishedAt;
+
+    @Column(name = "last_key")
+    private UUID lastKey;
+
+    @Column(name = "resumed_from")
+    private UUID resumedFrom;
+
+    @Column(name = "read_count", nullable = false)
+    private long readCount = 0;
+
+    @Column(name = "write_count", nullable = false)
+    private long writeCount = 0;
+
+    @Column(name = "chunk_count", nullable = false)
+    private long chunkCount = 0;
+
+    @Column(name = "elapsed_ms", nullable = false)
+    private long elapsedMs = 0;
+
+    @Column(name = "error", length = 1000)
+    private String error;
+}
@@ -0,0 +1,53 @@
+package com.ants.ktc.ants_ktc.entities;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Tóm tắt 1 cuộc hội thoại giữa 2 user (1 dòng cho mỗi cặp). Cặp được lưu theo
+ * thứ tự byte của id: userLow < userHigh, để 2 chiều chat dùng chung 1 dòng.
+ * unreadLow là số tin chưa đọc mà userLow nhận được, unreadHigh tương tự.
+ */
+@Entity
+@Table(name = "conversations", indexes = {
+        @Index(name = "uk_conversation_pair", columnList = "user_low_id, user_high_id", unique = true),
+        @Index(name = "idx_conversation_low_recent", columnList = "user_low_id, last_sent_at"),
+        @Index(name = "idx_conversation_high_recent", columnList = "user_high_id, last_sent_at")
+})
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class Conversation extends BaseEntity {
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_low_id", nullable = false)
+    private User userLow;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_high_id", nullable = false)
+    private User userHigh;
+
+    @Column(name = "last_message")
+    private String lastMessage;
+
+    @Column(name = "last_sender_id")
+    private UUID lastSenderId;
+
+    @Column(name = "last_sent_at")
+    private LocalDateTime lastSentAt;
+
+    @Column(name = "unread_low", nullable = false)
+    private int unreadLow = 0;
+
+    @Column(name = "unread_high", nullable = false)
+    private int unreadHigh = 0;
+}
@@ -1,8 +1,11 @@
 package com.ants.ktc.ants_ktc.entities;
 
 import java.time.LocalDateTime;
+import java.util.UUID;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -11,7 +14,10 @@ import jakarta.persistence.JoinColumn;
 import jakarta.persistence.FetchType;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "uk_messages_stream_id", columnList = "stream_id", unique = true),
+        @Index(name = "idx_messages_conversation_sent", columnList = "conversation_id, sent_at")
+})
 @Data
 @EqualsAndHashCode(callSuper = true)
 public class Messages extends BaseEntity {
@@ -25,9 +31,19 @@ public class Messages extends BaseEntity {
     @JoinColumn(name = "to_user_id")
     private User toUser;
 
+    // Khóa của cặp user (xem ConversationService.conversationId), trùng với
+    // conversations.id
+    @Column(name = "conversation_id")
+    private UUID conversationId;
+
     private LocalDateTime sentAt;
     private boolean isRead = false;
 
+    // Id bản ghi trong Redis stream chat:messages, dùng để bỏ qua tin đã ghi khi
+    // replay sau restart
+    @Column(name = "stream_id", length = 32)
+    private String streamId;
+
     public Messages() {
     }
 
@@ -78,6 +78,11 @@ public class Room extends BaseEntity {
     @OneToMany(mappedBy = "room", fetch = FetchType.LAZY, cascade = CascadeType.ALL)
     private List<Image> images = new ArrayList<>();
 
+    // Ảnh đại diện = ảnh đã upload xong có id nhỏ nhất. Chỉ được ghi bằng
+    // RoomJpaRepository.refreshCoverImages để save(room) không ghi đè giá trị cũ
+    @Column(name = "cover_image_url", length = 512, insertable = false, updatable = false)
+    private String coverImageUrl;
+
     @OneToMany(mappedBy = "room", fetch = FetchType.LAZY)
     private List<Maintenances> maintenances = new ArrayList<>();
 
@@ -107,5 +112,8 @@ public class Room extends BaseEntity {
         return this.title;
     }
 
+    // Chỉ được ghi bằng RoomJpaRepository.addViewCount (RoomViewCounterService)
+    // để save(room) không ghi đè phần lượt xem đã flush sau khi load
+    @Column(name = "view_count", updatable = false)
     private long viewCount;
 }
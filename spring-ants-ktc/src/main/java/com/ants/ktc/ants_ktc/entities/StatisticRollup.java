@@ -0,0 +1,45 @@
+package com.ants.ktc.ants_ktc.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Số liệu thống kê đã cộng dồn sẵn, 1 dòng cho mỗi (metric, scope, period).
+ * <ul>
+ * <li>metric: {@code txn:{type}}, {@code txn:*}, {@code user_reg},
+ * {@code rooms_by_province}, {@code landlord_rooms}...</li>
+ * <li>scopeKey: {@code all}, id landlord dạng hex thường (32 ký tự, giống
+ * {@code LOWER(HEX(users.id))}) hoặc id tỉnh.</li>
+ * <li>period: {@code yyyy-MM-dd} (ngày), {@code yyyy-MM} (tháng) hoặc
+ * {@code *} (toàn thời gian / trạng thái hiện tại).</li>
+ * </ul>
+ * id = {@code UNHEX(MD5(metric|scope|period))} để upsert bằng ON DUPLICATE KEY
+ * mà không cần đọc trước. Chỉ được ghi qua StatisticRollupJpaRepository.
+ */
+@Entity
+@Table(name = "statistic_rollups", indexes = {
+        @Index(name = "uk_statistic_rollup_key", columnList = "metric, scope_key, period", unique = true)
+})
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class StatisticRollup extends BaseEntity {
+
+    @Column(name = "metric", nullable = false, length = 40)
+    private String metric;
+
+    @Column(name = "scope_key", nullable = false, length = 40)
+    private String scopeKey;
+
+    @Column(name = "period", nullable = false, length = 10)
+    private String period;
+
+    @Column(name = "amount", nullable = false)
+    private Double amount = 0.0;
+
+    @Column(name = "item_count", nullable = false)
+    private long itemCount = 0;
+}
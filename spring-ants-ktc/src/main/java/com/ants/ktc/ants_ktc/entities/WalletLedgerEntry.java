@@ -0,0 +1,51 @@
+package com.ants.ktc.ants_ktc.entities;
+
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Sổ cái ví: 1 dòng cho mỗi lần cộng/trừ tiền, gắn với Transaction tương ứng.
+ * <ul>
+ * <li>amount: có dấu, âm là trừ tiền (DEBIT), dương là cộng tiền (CREDIT).</li>
+ * <li>idempotencyKey: vd. {@code VNPAY:{vnp_TransactionNo}},
+ * {@code ROOM:{roomId}:EXTEND:{endDate}}. Unique index chặn việc áp dụng 1
+ * thao tác 2 lần, thay cho kiểm tra {@code existsByTransactionCode} rồi mới
+ * insert.</li>
+ * <li>balanceAfter: số dư ngay sau thao tác, đọc trong cùng transaction.</li>
+ * </ul>
+ * Chỉ thêm mới, không sửa/xóa sau khi commit. Chỉ được ghi qua
+ * WalletLedgerJpaRepository.
+ */
+@Entity
+@Table(name = "wallet_ledger", indexes = {
+        @Index(name = "uk_wallet_ledger_key", columnList = "idempotency_key", unique = true),
+        @Index(name = "idx_wallet_ledger_wallet", columnList = "wallet_id, createddate")
+})
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class WalletLedgerEntry extends BaseEntity {
+
+    @Column(name = "wallet_id", nullable = false)
+    private UUID walletId;
+
+    @Column(name = "transaction_id")
+    private UUID transactionId;
+
+    @Column(name = "operation", nullable = false, length = 10)
+    private String operation;
+
+    @Column(name = "amount", nullable = false)
+    private Double amount;
+
+    @Column(name = "balance_after")
+    private Double balanceAfter;
+
+    @Column(name = "idempotency_key", nullable = false, length = 120)
+    private String idempotencyKey;
+}
@@ -0,0 +1,9 @@
+package com.ants.ktc.ants_ktc.enums;
+
+public enum BatchJobStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    // Node đang chạy bị tắt giữa chừng, lần chạy sau đã tiếp tục từ checkpoint
+    ABANDONED
+}
@@ -0,0 +1,8 @@
+package com.ants.ktc.ants_ktc.enums;
+
+public enum BillPdfJobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+}
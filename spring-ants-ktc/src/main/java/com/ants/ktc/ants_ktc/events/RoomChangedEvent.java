@@ -0,0 +1,19 @@
+package com.ants.ktc.ants_ktc.events;
+
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Phát ra khi trạng thái hiển thị của một phòng thay đổi (tạo, sửa, duyệt, ẩn,
+ * xóa, gia hạn, thuê/trả phòng). Các index trong bộ nhớ lắng nghe event này
+ * sau khi transaction commit để tự cập nhật lại phòng tương ứng.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class RoomChangedEvent {
+    private final UUID roomId;
+}
@@ -0,0 +1,32 @@
+package com.ants.ktc.ants_ktc.events;
+
+import java.util.Date;
+import java.util.UUID;
+
+import com.ants.ktc.ants_ktc.entities.Transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Phát ra sau khi lưu 1 giao dịch ví (đăng/gia hạn tin, nạp tiền, hoàn tiền).
+ * Số liệu thống kê cộng dồn giao dịch này sau khi transaction commit.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class TransactionRecordedEvent {
+    private final UUID walletId;
+    private final int transactionType;
+    private final double amount;
+    private final Date transactionDate;
+
+    public static TransactionRecordedEvent of(Transaction transaction) {
+        return new TransactionRecordedEvent(
+                transaction.getWallet() != null ? transaction.getWallet().getId() : null,
+                transaction.getTransactionType(),
+                transaction.getAmount() != null ? transaction.getAmount() : 0.0,
+                transaction.getTransactionDate() != null ? transaction.getTransactionDate() : new Date());
+    }
+}
@@ -0,0 +1,19 @@
+package com.ants.ktc.ants_ktc.events;
+
+import java.util.Date;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Phát ra khi có tài khoản mới (đăng ký thường hoặc lần đầu đăng nhập Google).
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class UserRegisteredEvent {
+    private final UUID userId;
+    private final Date registeredAt;
+}
@@ -0,0 +1,28 @@
+package com.ants.ktc.ants_ktc.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Metadata của 1 phiên chunk upload, lưu trong Redis hash
+ * {@code upload_session:{uploadId}}. Danh sách chunk đã nhận nằm ở bitmap
+ * {@code upload_session:{uploadId}:chunks}, hash từng chunk ở
+ * {@code upload_session:{uploadId}:hashes}.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UploadSession {
+    private String uploadId;
+    private String filename;
+    private int totalChunks;
+    private int chunkSize;
+    private Long totalSize; // null nếu client không gửi lúc init
+    private String fileHash;
+    private long receivedBytes;
+    private Long lastChunkSize; // kích thước chunk cuối, có khi chunk cuối đã tới
+    private long createdAt;
+}
@@ -0,0 +1,38 @@
+package com.ants.ktc.ants_ktc.repositories;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ants.ktc.ants_ktc.entities.BatchJobExecution;
+
+@Repository
+public interface BatchJobExecutionJpaRepository extends JpaRepository<BatchJobExecution, UUID> {
+
+    Optional<BatchJobExecution> findFirstByJobNameOrderByStartedAtDesc(String jobName);
+
+    List<BatchJobExecution> findByJobNameOrderByStartedAtDesc(String jobName, Pageable pageable);
+
+    List<BatchJobExecution> findAllByOrderByStartedAtDesc(Pageable pageable);
+
+    // Ghi checkpoint sau mỗi chunk (1 câu UPDATE, không đọc lại entity)
+    @Transactional
+    @Modifying
+    @Query("UPDATE BatchJobExecution e SET e.lastKey = :lastKey, e.readCount = :readCount, " +
+            "e.writeCount = :writeCount, e.chunkCount = :chunkCount, e.elapsedMs = :elapsedMs, " +
+            "e.modifiedDate = CURRENT_TIMESTAMP WHERE e.id = :id")
+    int checkpoint(@Param("id") UUID id,
+            @Param("lastKey") UUID lastKey,
+            @Param("readCount") long readCount,
+            @Param("writeCount") long writeCount,
+            @Param("chunkCount") long chunkCount,
+            @Param("elapsedMs") long elapsedMs);
+}
@@ -1,13 +1,21 @@
 package com.ants.ktc.ants_ktc.repositories;
 
 import com.ants.ktc.ants_ktc.entities.Bill;
+import com.ants.ktc.ants_ktc.repositories.projection.BillExportProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.BillInvoiceProjection;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface BillJpaRepository extends JpaRepository<Bill, UUID> {
@@ -26,4 +34,46 @@ public interface BillJpaRepository extends JpaRepository<Bill, UUID> {
             "WHERE c.tenant.id = :tenantId")
     List<Bill> findByTenantId(@Param("tenantId") UUID tenantId);
 
+    // ---- Export Excel: đọc dạng stream, khoảng tháng lọc trong SQL ----
+    // month là chuỗi "yyyy-MM" nên so sánh chuỗi (BETWEEN) đúng thứ tự tháng.
+    // Fetch size Integer.MIN_VALUE: MySQL Connector/J trả từng dòng thay vì
+    // nạp cả result set vào heap. Phải đọc trong transaction và đóng Stream.
+
+    String EXPORT_SELECT = "SELECT c.id AS contractId, c.contractName AS contractName, r.title AS roomTitle, " +
+            "r.elecPrice AS elecPrice, r.waterPrice AS waterPrice, b.month AS month, " +
+            "b.electricityFee AS electricityFee, b.waterFee AS waterFee, b.serviceFee AS serviceFee, " +
+            "b.totalAmount AS totalAmount, b.status AS status " +
+            "FROM Bill b JOIN b.contract c JOIN c.room r ";
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query(EXPORT_SELECT +
+            "WHERE c.id IN :contractIds AND b.month BETWEEN :fromMonth AND :toMonth " +
+            "ORDER BY c.id, b.month")
+    Stream<BillExportProjection> streamForExportByContractIds(@Param("contractIds") Collection<UUID> contractIds,
+            @Param("fromMonth") String fromMonth,
+            @Param("toMonth") String toMonth);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query(EXPORT_SELECT +
+            "WHERE c.landlord.id = :landlordId AND b.month BETWEEN :fromMonth AND :toMonth " +
+            "ORDER BY r.title, c.id, b.month")
+    Stream<BillExportProjection> streamForExportByLandlordId(@Param("landlordId") UUID landlordId,
+            @Param("fromMonth") String fromMonth,
+            @Param("toMonth") String toMonth);
+
+    // ---- Hóa đơn PDF ----
+
+    String INVOICE_SELECT = "SELECT b.id AS billId, b.month AS month, b.electricityFee AS electricityFee, " +
+            "b.waterFee AS waterFee, b.serviceFee AS serviceFee, b.totalAmount AS totalAmount, " +
+            "t.username AS tenantName, p.phoneNumber AS tenantPhone, r.title AS roomName, " +
+            "r.elecPrice AS elecPrice, r.waterPrice AS waterPrice " +
+            "FROM Bill b JOIN b.contract c JOIN c.room r LEFT JOIN c.tenant t LEFT JOIN t.profile p ";
+
+    @Query(INVOICE_SELECT + "WHERE b.id = :billId")
+    Optional<BillInvoiceProjection> findInvoiceById(@Param("billId") UUID billId);
+
+    // Mọi hóa đơn của landlord trong 1 tháng, qua tất cả hợp đồng
+    @Query(INVOICE_SELECT + "WHERE c.landlord.id = :landlordId AND b.month = :month ORDER BY r.title, c.id")
+    List<BillInvoiceProjection> findInvoicesByLandlordIdAndMonth(@Param("landlordId") UUID landlordId,
+            @Param("month") String month);
 }
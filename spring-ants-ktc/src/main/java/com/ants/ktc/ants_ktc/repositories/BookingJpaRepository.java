@@ -1,5 +1,6 @@
 package com.ants.ktc.ants_ktc.repositories;
 
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
@@ -12,6 +13,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.ants.ktc.ants_ktc.entities.Booking;
+import com.ants.ktc.ants_ktc.repositories.projection.BookingRoomKeyProjection;
 import com.ants.ktc.ants_ktc.repositories.projection.BookingUserProjection;
 import com.ants.ktc.ants_ktc.repositories.projection.BookingLandlordProjection;
 
@@ -92,11 +94,17 @@ public interface BookingJpaRepository extends JpaRepository<Booking, UUID> {
         @Query("UPDATE Booking b SET b.isRemoved = :isRemoved WHERE b.id = :bookingId")
         int updateIsRemovedById(@Param("bookingId") UUID bookingId, @Param("isRemoved") int isRemoved);
 
-        // Lấy tất cả booking đang hoạt động (status = 4) để kiểm tra availability
-        @Query("SELECT b FROM Booking b " +
-                        "JOIN FETCH b.room r " +
-                        "WHERE b.status = 4 AND b.isRemoved = 0")
-        List<Booking> findActiveBookingsForAvailabilityCheck();
+        // Booking đang thuê (status = 4) đã ra ngoài thời gian thuê mà phòng vẫn
+        // available = 1, đọc theo keyset id > afterId cho batch kiểm tra availability
+        @Query("SELECT b.id AS id, r.id AS roomId FROM Booking b " +
+                        "JOIN b.room r " +
+                        "WHERE b.status = 4 AND b.isRemoved = 0 AND r.available = 1 " +
+                        "AND b.rentalDate IS NOT NULL AND b.rentalExpires IS NOT NULL " +
+                        "AND (b.rentalDate > :now OR b.rentalExpires < :now) " +
+                        "AND b.id > :afterId ORDER BY b.id")
+        List<BookingRoomKeyProjection> findOutsideRentalPeriodAfter(@Param("now") Date now,
+                        @Param("afterId") UUID afterId,
+                        Pageable pageable);
 
         @Modifying(clearAutomatically = true)
         @Query("UPDATE Booking b SET b.status = :newStatus WHERE b.room.id = :roomId AND b.status = :oldStatus AND b.id <> :bookingId")
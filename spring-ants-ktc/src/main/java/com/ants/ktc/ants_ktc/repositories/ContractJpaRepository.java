@@ -1,6 +1,7 @@
 package com.ants.ktc.ants_ktc.repositories;
 
 import com.ants.ktc.ants_ktc.entities.Contract;
+import com.ants.ktc.ants_ktc.repositories.projection.ContractStartDateProjection;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -9,6 +10,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -53,7 +55,16 @@ public interface ContractJpaRepository extends JpaRepository<Contract, UUID> {
 
         List<Contract> findByRoomId(UUID roomId);
 
+        // Số hợp đồng trong danh sách thuộc landlord (kiểm tra quyền trước khi export)
+        @Query("SELECT COUNT(c) FROM Contract c WHERE c.id IN :ids AND c.landlord.id = :landlordId")
+        long countByIdsAndLandlordId(@Param("ids") Collection<UUID> ids, @Param("landlordId") UUID landlordId);
+
         // lấy hợp đồng đang active
         List<Contract> findByStatus(int status);
 
+        // Hợp đồng active theo keyset id > afterId (batch tạo task hóa đơn)
+        @Query("SELECT c.id AS id, c.startDate AS startDate FROM Contract c " +
+                        "WHERE c.status = 0 AND c.id > :afterId ORDER BY c.id")
+        List<ContractStartDateProjection> findActiveAfter(@Param("afterId") UUID afterId, Pageable pageable);
+
 }
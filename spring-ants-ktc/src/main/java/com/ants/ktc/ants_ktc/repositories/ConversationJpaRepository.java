@@ -0,0 +1,116 @@
+package com.ants.ktc.ants_ktc.repositories;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ants.ktc.ants_ktc.entities.Conversation;
+import com.ants.ktc.ants_ktc.repositories.projection.ChatUserProjection;
+
+@Repository
+public interface ConversationJpaRepository extends JpaRepository<Conversation, UUID> {
+
+    // Tạo mới hoặc cập nhật tóm tắt hội thoại khi có tin nhắn mới (1 câu lệnh, không
+    // race khi 2 bên gửi cùng lúc). last_sent_at phải gán cuối cùng vì MySQL đánh
+    // giá các phép gán theo thứ tự, các IF phía trên cần giá trị cũ.
+    @Modifying
+    @Query(value = "INSERT INTO conversations (id, user_low_id, user_high_id, last_message, last_sender_id, " +
+            "last_sent_at, unread_low, unread_high, createddate, modifieddate) " +
+            "VALUES (:id, :userLow, :userHigh, :content, :senderId, :sentAt, :incLow, :incHigh, NOW(), NOW()) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "unread_low = unread_low + :incLow, " +
+            "unread_high = unread_high + :incHigh, " +
+            "last_message = IF(last_sent_at IS NULL OR last_sent_at <= :sentAt, :content, last_message), " +
+            "last_sender_id = IF(last_sent_at IS NULL OR last_sent_at <= :sentAt, :senderId, last_sender_id), " +
+            "modifieddate = NOW(), " +
+            "last_sent_at = GREATEST(COALESCE(last_sent_at, :sentAt), :sentAt)", nativeQuery = true)
+    int upsertOnMessage(@Param("id") UUID conversationId,
+            @Param("userLow") UUID userLow,
+            @Param("userHigh") UUID userHigh,
+            @Param("content") String content,
+            @Param("senderId") UUID senderId,
+            @Param("sentAt") LocalDateTime sentAt,
+            @Param("incLow") int incLow,
+            @Param("incHigh") int incHigh);
+
+    // Trừ số tin chưa đọc của người xem (không reset về 0 để không mất tin đến
+    // trong lúc đang đánh dấu đã đọc)
+    @Modifying
+    @Query("UPDATE Conversation c SET " +
+            "c.unreadLow = CASE WHEN c.userLow.id = :readerId THEN GREATEST(c.unreadLow - :count, 0) ELSE c.unreadLow END, " +
+            "c.unreadHigh = CASE WHEN c.userHigh.id = :readerId AND c.userLow.id <> :readerId " +
+            "THEN GREATEST(c.unreadHigh - :count, 0) ELSE c.unreadHigh END " +
+            "WHERE c.userLow.id = :userLow AND c.userHigh.id = :userHigh")
+    int decrementUnread(@Param("userLow") UUID userLow,
+            @Param("userHigh") UUID userHigh,
+            @Param("readerId") UUID readerId,
+            @Param("count") int count);
+
+    // Danh sách người đã chat với userId, mới nhất trước. Mỗi nhánh UNION dùng
+    // index (user_x_id, last_sent_at) riêng.
+    @Query(value = "SELECT " +
+            "CONCAT(SUBSTR(LOWER(HEX(u.id)), 1, 8), '-', SUBSTR(LOWER(HEX(u.id)), 9, 4), '-', SUBSTR(LOWER(HEX(u.id)), 13, 4), '-', SUBSTR(LOWER(HEX(u.id)), 17, 4), '-', SUBSTR(LOWER(HEX(u.id)), 21, 12)) AS id, "
+            +
+            "u.username AS username, " +
+            "p.full_name AS fullName, " +
+            "t.last_message AS lastMessage, " +
+            "CONCAT(SUBSTR(LOWER(HEX(t.last_sender_id)), 1, 8), '-', SUBSTR(LOWER(HEX(t.last_sender_id)), 9, 4), '-', SUBSTR(LOWER(HEX(t.last_sender_id)), 13, 4), '-', SUBSTR(LOWER(HEX(t.last_sender_id)), 17, 4), '-', SUBSTR(LOWER(HEX(t.last_sender_id)), 21, 12)) AS lastSenderId, "
+            +
+            "t.last_sent_at AS lastSentAt, " +
+            "t.unread AS unreadCount " +
+            "FROM (" +
+            "SELECT c.user_high_id AS other_id, c.unread_low AS unread, c.last_message, c.last_sender_id, c.last_sent_at "
+            +
+            "FROM conversations c WHERE c.user_low_id = :userId " +
+            "UNION ALL " +
+            "SELECT c.user_low_id AS other_id, c.unread_high AS unread, c.last_message, c.last_sender_id, c.last_sent_at "
+            +
+            "FROM conversations c WHERE c.user_high_id = :userId AND c.user_low_id <> :userId" +
+            ") t " +
+            "JOIN users u ON u.id = t.other_id " +
+            "LEFT JOIN user_profiles p ON u.profile_id = p.id " +
+            "ORDER BY t.last_sent_at DESC", nativeQuery = true)
+    List<ChatUserProjection> findChatUsers(@Param("userId") UUID userId, Pageable pageable);
+
+    @Query(value = "SELECT COUNT(*) FROM conversations", nativeQuery = true)
+    long countAll();
+
+    // Đưa id của các dòng tạo trước đây (UUID ngẫu nhiên) về khóa của cặp user,
+    // để conversations.id khớp với messages.conversation_id
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE conversations SET id = UNHEX(MD5(CONCAT(user_low_id, user_high_id))) " +
+            "WHERE id <> UNHEX(MD5(CONCAT(user_low_id, user_high_id)))", nativeQuery = true)
+    int normalizeIds();
+
+    // Dựng lại bảng tóm tắt từ toàn bộ tin nhắn cũ (chạy 1 lần khi bảng còn trống)
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO conversations (id, user_low_id, user_high_id, last_message, last_sender_id, " +
+            "last_sent_at, unread_low, unread_high, createddate, modifieddate) " +
+            "SELECT UNHEX(MD5(CONCAT(g.low_id, g.high_id))), g.low_id, g.high_id, " +
+            "(SELECT m2.content FROM messages m2 WHERE LEAST(m2.from_user_id, m2.to_user_id) = g.low_id " +
+            "AND GREATEST(m2.from_user_id, m2.to_user_id) = g.high_id ORDER BY m2.sent_at DESC LIMIT 1), " +
+            "(SELECT m3.from_user_id FROM messages m3 WHERE LEAST(m3.from_user_id, m3.to_user_id) = g.low_id " +
+            "AND GREATEST(m3.from_user_id, m3.to_user_id) = g.high_id ORDER BY m3.sent_at DESC LIMIT 1), " +
+            "g.last_sent_at, g.unread_low, g.unread_high, NOW(), NOW() " +
+            "FROM (SELECT LEAST(m.from_user_id, m.to_user_id) AS low_id, " +
+            "GREATEST(m.from_user_id, m.to_user_id) AS high_id, " +
+            "MAX(m.sent_at) AS last_sent_at, " +
+            "SUM(CASE WHEN m.is_read = 0 AND m.to_user_id = LEAST(m.from_user_id, m.to_user_id) THEN 1 ELSE 0 END) AS unread_low, "
+            +
+            "SUM(CASE WHEN m.is_read = 0 AND m.to_user_id = GREATEST(m.from_user_id, m.to_user_id) " +
+            "AND m.from_user_id <> m.to_user_id THEN 1 ELSE 0 END) AS unread_high " +
+            "FROM messages m WHERE m.from_user_id IS NOT NULL AND m.to_user_id IS NOT NULL " +
+            "GROUP BY low_id, high_id) g " +
+            "ON DUPLICATE KEY UPDATE modifieddate = NOW()", nativeQuery = true)
+    int rebuildFromMessages();
+}
@@ -12,6 +12,8 @@ import org.springframework.stereotype.Repository;
 
 import com.ants.ktc.ants_ktc.entities.Favorite;
 import com.ants.ktc.ants_ktc.entities.User;
+import com.ants.ktc.ants_ktc.repositories.projection.FavoriteCriteriaProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.SuggestionUserProjection;
 
 @Repository
 public interface FavoriteJpaRepository extends JpaRepository<Favorite, UUID> {
@@ -34,6 +36,35 @@ public interface FavoriteJpaRepository extends JpaRepository<Favorite, UUID> {
     @Query("SELECT DISTINCT f.user FROM Favorite f WHERE f.user.profile.email IS NOT NULL")
     List<User> findUsersWithFavorites();
 
+    // Batch gợi ý phòng: lấy thông tin user + tiêu chí từ phòng yêu thích bằng 1
+    // query cho tất cả user thay vì load từng user
+    @Query("SELECT DISTINCT u.id AS userId, u.username AS username, up.email AS email, " +
+            "up.fullName AS fullName, up.emailNotifications AS emailNotifications, " +
+            "up.searchLatitude AS searchLatitude, up.searchLongitude AS searchLongitude " +
+            "FROM Favorite f JOIN f.user u JOIN u.profile up " +
+            "WHERE up.email IS NOT NULL")
+    List<SuggestionUserProjection> findSuggestionUsers();
+
+    @Query("SELECT u.id AS userId, u.username AS username, up.email AS email, " +
+            "up.fullName AS fullName, up.emailNotifications AS emailNotifications, " +
+            "up.searchLatitude AS searchLatitude, up.searchLongitude AS searchLongitude " +
+            "FROM User u LEFT JOIN u.profile up WHERE u.id = :userId")
+    List<SuggestionUserProjection> findSuggestionUserById(@Param("userId") UUID userId);
+
+    @Query("SELECT f.user.id AS userId, r.id AS roomId, r.price_month AS priceMonth, r.area AS area, " +
+            "w.name AS wardName, d.name AS districtName, p.name AS provinceName " +
+            "FROM Favorite f JOIN f.room r " +
+            "LEFT JOIN r.address a LEFT JOIN a.ward w LEFT JOIN w.district d LEFT JOIN d.province p " +
+            "WHERE f.user.profile.email IS NOT NULL")
+    List<FavoriteCriteriaProjection> findAllFavoriteCriteria();
+
+    @Query("SELECT f.user.id AS userId, r.id AS roomId, r.price_month AS priceMonth, r.area AS area, " +
+            "w.name AS wardName, d.name AS districtName, p.name AS provinceName " +
+            "FROM Favorite f JOIN f.room r " +
+            "LEFT JOIN r.address a LEFT JOIN a.ward w LEFT JOIN w.district d LEFT JOIN d.province p " +
+            "WHERE f.user.id = :userId")
+    List<FavoriteCriteriaProjection> findFavoriteCriteriaByUserId(@Param("userId") UUID userId);
+
     // tăng lượt yt
     @Query("SELECT COUNT(f) FROM Favorite f WHERE f.room.id = :roomId")
     long countByRoomId(@Param("roomId") UUID roomId);
@@ -1,5 +1,6 @@
 package com.ants.ktc.ants_ktc.repositories;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -9,6 +10,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.ants.ktc.ants_ktc.entities.Image;
+import com.ants.ktc.ants_ktc.repositories.projection.RoomImageProjection;
 
 @Repository
 public interface ImageJpaRepository extends JpaRepository<Image, Long> {
@@ -19,6 +21,11 @@ public interface ImageJpaRepository extends JpaRepository<Image, Long> {
     @Query("SELECT i FROM Image i WHERE i.room.id IN :roomIds")
     List<Image> findByRoomIdIn(@Param("roomIds") List<UUID> roomIds);
 
+    // Ảnh của 1 trang phòng trong 1 query, không hydrate entity Image/Room
+    @Query("SELECT i.room.id AS roomId, i.id AS id, i.url AS url FROM Image i " +
+            "WHERE i.room.id IN :roomIds ORDER BY i.id ASC")
+    List<RoomImageProjection> findImagesByRoomIds(@Param("roomIds") Collection<UUID> roomIds);
+
     // Additional query methods can be defined here if needed
 
     long countByUrl(String url);
@@ -12,6 +12,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -44,4 +46,22 @@ public interface LandlordTaskJpaRepository extends JpaRepository<LandlordTask, U
         List<LandlordTask> findByPriority(String priority);
 
         List<LandlordTask> findByLandlordId(UUID landlordId);
+
+        // Tạo task BILL cho nhiều hợp đồng bằng 1 câu INSERT ... SELECT. id =
+        // MD5(hợp đồng|runDate) nên chạy lại trong cùng ngày không tạo trùng.
+        @Modifying
+        @Transactional
+        @Query(value = "INSERT IGNORE INTO landlord_tasks (id, title, description, start_date, due_date, " +
+                        "type, status, priority, landlord_id, room_id, createddate, modifieddate) " +
+                        "SELECT UNHEX(MD5(CONCAT('BILL|', HEX(c.id), '|', :runDate))), " +
+                        "CONCAT('Bills month ', :monthLabel, ' for room ', r.title), " +
+                        "CONCAT('Calculate the monthly rent for room ', r.title), " +
+                        ":startDate, :dueDate, 'BILL', 'PENDING', 'MEDIUM', c.landlord_id, c.room_id, NOW(), NOW() " +
+                        "FROM contracts c JOIN rooms r ON r.id = c.room_id " +
+                        "WHERE c.id IN (:contractIds)", nativeQuery = true)
+        int insertBillTasks(@Param("contractIds") Collection<UUID> contractIds,
+                        @Param("runDate") String runDate,
+                        @Param("monthLabel") String monthLabel,
+                        @Param("startDate") LocalDateTime startDate,
+                        @Param("dueDate") LocalDateTime dueDate);
 }
\ No newline at end of file
@@ -7,7 +7,9 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.ants.ktc.ants_ktc.entities.Messages;
 
@@ -28,4 +30,41 @@ public interface MessagesJpaRepository extends JpaRepository<Messages, UUID> {
 
     List<Messages> findByFromUser_IdAndToUser_IdAndIsReadFalse(UUID fromUserId, UUID toUserId);
 
+    @Transactional
+    @Modifying
+    @Query("UPDATE Messages m SET m.isRead = true WHERE m.id IN :ids AND m.isRead = false")
+    int markReadByIds(@Param("ids") List<UUID> ids);
+
+    @Query("SELECT m.streamId FROM Messages m WHERE m.streamId IN :streamIds")
+    List<String> findExistingStreamIds(@Param("streamIds") List<String> streamIds);
+
+    // Keyset pagination theo index (conversation_id, sent_at), id để phân định
+    // các tin cùng thời điểm
+    @Query("SELECT m FROM Messages m WHERE m.conversationId = :conversationId ORDER BY m.sentAt DESC, m.id DESC")
+    List<Messages> findLatestByConversation(@Param("conversationId") UUID conversationId, Pageable pageable);
+
+    @Query("SELECT m FROM Messages m WHERE m.conversationId = :conversationId AND m.sentAt < :before " +
+            "ORDER BY m.sentAt DESC, m.id DESC")
+    List<Messages> findByConversationBefore(@Param("conversationId") UUID conversationId,
+            @Param("before") LocalDateTime before, Pageable pageable);
+
+    @Query("SELECT m FROM Messages m WHERE m.conversationId = :conversationId " +
+            "AND (m.sentAt < :before OR (m.sentAt = :before AND m.id < :beforeId)) " +
+            "ORDER BY m.sentAt DESC, m.id DESC")
+    List<Messages> findByConversationBeforeCursor(@Param("conversationId") UUID conversationId,
+            @Param("before") LocalDateTime before, @Param("beforeId") UUID beforeId, Pageable pageable);
+
+    // Gán conversation_id cho tin nhắn cũ, chạy theo lô để không khóa bảng lâu
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE messages SET conversation_id = " +
+            "UNHEX(MD5(CONCAT(LEAST(from_user_id, to_user_id), GREATEST(from_user_id, to_user_id)))) " +
+            "WHERE conversation_id IS NULL AND from_user_id IS NOT NULL AND to_user_id IS NOT NULL " +
+            "LIMIT :limit", nativeQuery = true)
+    int backfillConversationIds(@Param("limit") int limit);
+
+    @Query(value = "SELECT COUNT(*) FROM messages WHERE conversation_id IS NULL " +
+            "AND from_user_id IS NOT NULL AND to_user_id IS NOT NULL", nativeQuery = true)
+    long countMissingConversationId();
+
 }
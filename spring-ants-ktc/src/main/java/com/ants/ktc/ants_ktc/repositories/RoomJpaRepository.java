@@ -1,6 +1,7 @@
 package com.ants.ktc.ants_ktc.repositories;
 
 import java.sql.Date;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -13,6 +14,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.ants.ktc.ants_ktc.entities.Room;
 import com.ants.ktc.ants_ktc.repositories.projection.FilterBasicProjection;
@@ -21,9 +23,14 @@ import com.ants.ktc.ants_ktc.repositories.projection.RoomApprovalProjection;
 import com.ants.ktc.ants_ktc.repositories.projection.RoomByAdminPagingProjection;
 import com.ants.ktc.ants_ktc.repositories.projection.RoomByLandlordPagingProjection;
 import com.ants.ktc.ants_ktc.repositories.projection.RoomDeleteProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.RoomFeedKeyProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.RoomGeoProjection;
 import com.ants.ktc.ants_ktc.repositories.projection.RoomHiddenProjection;
 import com.ants.ktc.ants_ktc.repositories.projection.RoomMapProjection;
 import com.ants.ktc.ants_ktc.repositories.projection.RoomNewProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.RoomSearchProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.RoomStatisticKeyProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.RoomSuggestionCandidateProjection;
 import com.ants.ktc.ants_ktc.repositories.projection.RoomSuggestionProjection;
 import com.ants.ktc.ants_ktc.repositories.projection.landlord.FeePostRoomProjection;
 import com.ants.ktc.ants_ktc.repositories.projection.landlord.MaintainStatisticProjection;
@@ -107,6 +114,13 @@ public interface RoomJpaRepository extends JpaRepository<Room, UUID> {
     @Query("UPDATE Room r SET r.hidden = :hidden WHERE r.id = :roomId")
     void updateHiddenById(@Param("roomId") UUID roomId, @Param("hidden") int hidden);
 
+    // Batch kiểm tra availability: chỉ đổi phòng còn available = 1
+    @Transactional
+    @Modifying
+    @Query("UPDATE Room r SET r.available = 0, r.modifiedDate = CURRENT_TIMESTAMP " +
+            "WHERE r.id IN :roomIds AND r.available = 1")
+    int markUnavailable(@Param("roomIds") Collection<UUID> roomIds);
+
     // Projection for room delete status
     @Query("SELECT r.id AS id, r.isRemoved AS isRemoved FROM Room r WHERE r.id = :roomId")
     Optional<RoomDeleteProjection> findDeleteProjectionById(@Param("roomId") UUID roomId);
@@ -193,12 +207,145 @@ public interface RoomJpaRepository extends JpaRepository<Room, UUID> {
             "ORDER BY r.createdDate DESC")
     Page<Room> findAllRoomInUser(@Param("code") String code, Pageable pageable);
 
+    // Feed trang chủ theo tỉnh, cùng điều kiện hiển thị với findAllRoomInUser
+    @Query("SELECT r FROM Room r " +
+            "JOIN FETCH r.user u " +
+            "JOIN FETCH u.profile up " +
+            "JOIN FETCH r.postType p " +
+            "JOIN FETCH r.address a " +
+            "JOIN FETCH a.ward w " +
+            "JOIN FETCH w.district d " +
+            "JOIN FETCH d.province pr " +
+            "WHERE r.available = 0 AND p.code LIKE :code AND pr.id = :provinceId " +
+            "AND r.post_end_date > CURRENT_DATE " +
+            "AND r.hidden = 0 AND r.isRemoved = 0 AND r.approval = 1 " +
+            "ORDER BY r.createdDate DESC")
+    Page<Room> findAllRoomInUserByProvince(@Param("code") String code, @Param("provinceId") Long provinceId,
+            Pageable pageable);
+
+    // Các tỉnh đang có phòng hiển thị, dùng để dựng sẵn feed theo tỉnh
+    @Query("SELECT DISTINCT pr.id FROM Room r JOIN r.address a JOIN a.ward w JOIN w.district d " +
+            "JOIN d.province pr " +
+            "WHERE r.available = 0 AND r.post_end_date > CURRENT_DATE " +
+            "AND r.hidden = 0 AND r.isRemoved = 0 AND r.approval = 1")
+    List<Long> findVisibleProvinceIds();
+
+    // Loại tin + tỉnh của 1 phòng (kể cả đang ẩn) để biết feed nào cần dựng lại
+    @Query("SELECT p.code AS code, pr.id AS provinceId FROM Room r JOIN r.postType p " +
+            "LEFT JOIN r.address a LEFT JOIN a.ward w LEFT JOIN w.district d LEFT JOIN d.province pr " +
+            "WHERE r.id = :roomId")
+    Optional<RoomFeedKeyProjection> findFeedKeyByRoomId(@Param("roomId") UUID roomId);
+
+    // Landlord + tỉnh của các phòng vừa thay đổi, để đếm lại số liệu thống kê
+    @Query("SELECT r.user.id AS landlordId, pr.id AS provinceId FROM Room r " +
+            "LEFT JOIN r.address a LEFT JOIN a.ward w LEFT JOIN w.district d LEFT JOIN d.province pr " +
+            "WHERE r.id IN :roomIds")
+    List<RoomStatisticKeyProjection> findStatisticKeysByRoomIds(@Param("roomIds") Collection<UUID> roomIds);
+
+    // Hydrate đúng các phòng của 1 trang sau khi RoomGeoIndexService đã sắp xếp
+    @Query("SELECT r FROM Room r " +
+            "JOIN FETCH r.user u " +
+            "JOIN FETCH u.profile up " +
+            "JOIN FETCH r.postType p " +
+            "LEFT JOIN FETCH r.address a " +
+            "LEFT JOIN FETCH a.ward w " +
+            "LEFT JOIN FETCH w.district d " +
+            "LEFT JOIN FETCH d.province pr " +
+            "WHERE r.id IN :ids")
+    List<Room> findAllRoomInUserByIds(@Param("ids") List<UUID> ids);
+
+    // Dữ liệu nạp cho geo index: chỉ các phòng đang hiển thị cho user
+    @Query("SELECT r.id AS id, a.lat AS lat, a.lng AS lng, p.code AS postTypeCode, " +
+            "r.createdDate AS createdDate, r.post_end_date AS postEndDate " +
+            "FROM Room r JOIN r.postType p LEFT JOIN r.address a " +
+            "WHERE r.available = 0 AND r.post_end_date > CURRENT_DATE " +
+            "AND r.hidden = 0 AND r.isRemoved = 0 AND r.approval = 1")
+    List<RoomGeoProjection> findAllVisibleRoomGeo();
+
+    @Query("SELECT r.id AS id, a.lat AS lat, a.lng AS lng, p.code AS postTypeCode, " +
+            "r.createdDate AS createdDate, r.post_end_date AS postEndDate " +
+            "FROM Room r JOIN r.postType p LEFT JOIN r.address a " +
+            "WHERE r.id = :roomId AND r.available = 0 AND r.post_end_date > CURRENT_DATE " +
+            "AND r.hidden = 0 AND r.isRemoved = 0 AND r.approval = 1")
+    Optional<RoomGeoProjection> findVisibleRoomGeoById(@Param("roomId") UUID roomId);
+
+    // Dữ liệu nạp cho search index của bộ lọc phòng
+    @Query("SELECT r.id AS id, r.price_month AS priceMonth, r.area AS area, " +
+            "w.id AS wardId, d.id AS districtId, p.id AS provinceId, " +
+            "r.createdDate AS createdDate, r.post_end_date AS postEndDate " +
+            "FROM Room r JOIN r.address a JOIN a.ward w JOIN w.district d JOIN d.province p " +
+            "WHERE r.available = 0 AND r.post_end_date > CURRENT_DATE " +
+            "AND r.hidden = 0 AND r.isRemoved = 0 AND r.approval = 1")
+    List<RoomSearchProjection> findAllVisibleRoomSearch();
+
+    @Query("SELECT r.id AS id, r.price_month AS priceMonth, r.area AS area, " +
+            "w.id AS wardId, d.id AS districtId, p.id AS provinceId, " +
+            "r.createdDate AS createdDate, r.post_end_date AS postEndDate " +
+            "FROM Room r JOIN r.address a JOIN a.ward w JOIN w.district d JOIN d.province p " +
+            "WHERE r.id = :roomId AND r.available = 0 AND r.post_end_date > CURRENT_DATE " +
+            "AND r.hidden = 0 AND r.isRemoved = 0 AND r.approval = 1")
+    Optional<RoomSearchProjection> findVisibleRoomSearchById(@Param("roomId") UUID roomId);
+
+    // Cặp (room id, convenient id) của các phòng đang hiển thị
+    @Query("SELECT r.id, c.id FROM Room r JOIN r.convenients c " +
+            "WHERE r.available = 0 AND r.post_end_date > CURRENT_DATE " +
+            "AND r.hidden = 0 AND r.isRemoved = 0 AND r.approval = 1")
+    List<Object[]> findAllVisibleRoomConvenientPairs();
+
+    @Query("SELECT c.id FROM Room r JOIN r.convenients c WHERE r.id = :roomId")
+    List<Long> findConvenientIdsByRoomId(@Param("roomId") UUID roomId);
+
+    // Nạp dữ liệu hiển thị cho 1 trang id lấy từ search index
+    @Query(value = "SELECT " +
+            "LOWER(HEX(r.id)) AS id, " +
+            "r.title AS title, " +
+            "r.description AS description, " +
+            "r.price_month AS priceMonth, " +
+            "r.area AS area, " +
+            "r.max_people AS maxPeople, " +
+            "r.post_start_date AS postStartDate, " +
+            "LOWER(HEX(a.id)) AS addressId, " +
+            "a.name_street AS street, " +
+            "w.id AS wardId, " +
+            "w.name AS wardName, " +
+            "d.id AS districtId, " +
+            "d.name AS districtName, " +
+            "p.id AS provinceId, " +
+            "p.name AS provinceName, " +
+            "LOWER(HEX(u.id)) AS landlordId, " +
+            "LOWER(HEX(up.id)) AS landlordProfileId, " +
+            "up.full_name AS fullName, " +
+            "up.email AS email, " +
+            "up.phone_number AS phoneNumber, " +
+            "up.avatar AS avatar, " +
+            "0 AS favoriteCount, " +
+            "0 AS viewCount, " +
+            "NULL AS firstImageUrl, " +
+            "NULL AS firstImageId, " +
+            "GROUP_CONCAT(DISTINCT CONCAT(c.id, ':', c.name) SEPARATOR '|') AS convenienceString " +
+            "FROM rooms r " +
+            "JOIN addresses a ON r.address_id = a.id " +
+            "JOIN wards w ON a.ward_id = w.id " +
+            "JOIN districts d ON w.district_id = d.id " +
+            "JOIN provinces p ON d.province_id = p.id " +
+            "JOIN users u ON r.user_id = u.id " +
+            "JOIN user_profiles up ON u.profile_id = up.id " +
+            "LEFT JOIN room_convenients rc ON r.id = rc.room_id " +
+            "LEFT JOIN convenients c ON rc.convenient_id = c.id " +
+            "WHERE r.id IN (:roomIds) " +
+            "GROUP BY r.id", nativeQuery = true)
+    List<FilterBasicProjection> findFilterRoomsByIds(@Param("roomIds") List<UUID> roomIds);
+
     @Query(" SELECT COUNT(r) FROM Room r WHERE approval = 1 and isRemoved = 0")
     Long countAcceptedApprovalRooms();
 
     @Query(" SELECT COUNT(r) FROM Room r WHERE approval = 0 and isRemoved = 0")
     Long countPendingApprovalRooms();
 
+    // Id các phòng chờ duyệt, để enqueue vào approval queue
+    @Query("SELECT r.id FROM Room r WHERE r.approval = 0 AND r.isRemoved = 0 ORDER BY r.createdDate ASC")
+    List<UUID> findPendingApprovalRoomIds();
+
     @Query(" SELECT COUNT(r) FROM Room r WHERE isRemoved = 0 and approval != 2")
     Long countTotalApprovalRooms();
 
@@ -332,7 +479,7 @@ public interface RoomJpaRepository extends JpaRepository<Room, UUID> {
 
     @Query(value = "SELECT LOWER(HEX(r.id)) AS id, r.title AS title, r.price_month AS priceMonth, r.post_start_date AS postStartDate, "
             +
-            "(SELECT i.url FROM images i WHERE i.room_id = r.id ORDER BY i.id ASC LIMIT 1) AS imageUrl " +
+            "r.cover_image_url AS imageUrl " +
             "FROM rooms r " +
             "WHERE r.available = 0 " +
             "AND r.post_end_date > CURRENT_DATE " +
@@ -342,6 +489,26 @@ public interface RoomJpaRepository extends JpaRepository<Room, UUID> {
             "AND r.post_start_date >= :limitday", nativeQuery = true)
     List<RoomNewProjection> findRecentRooms(@Param("limitday") Date limitday, Pageable pageable);
 
+    // Tính lại ảnh đại diện sau khi ảnh của phòng được upload xong / bị xóa
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE rooms r SET r.cover_image_url = (" +
+            "SELECT i.url FROM images i WHERE i.room_id = r.id AND i.url NOT LIKE 'pending://%' " +
+            "ORDER BY i.id ASC LIMIT 1) " +
+            "WHERE r.id IN (:roomIds)", nativeQuery = true)
+    int refreshCoverImages(@Param("roomIds") List<UUID> roomIds);
+
+    // Gán ảnh đại diện cho phòng cũ, chạy theo lô để không khóa bảng lâu
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE rooms r SET r.cover_image_url = (" +
+            "SELECT i.url FROM images i WHERE i.room_id = r.id AND i.url NOT LIKE 'pending://%' " +
+            "ORDER BY i.id ASC LIMIT 1) " +
+            "WHERE r.cover_image_url IS NULL AND EXISTS (" +
+            "SELECT 1 FROM images i2 WHERE i2.room_id = r.id AND i2.url NOT LIKE 'pending://%') " +
+            "LIMIT :limit", nativeQuery = true)
+    int backfillCoverImages(@Param("limit") int limit);
+
     @Query("""
             SELECT r FROM Room r
             JOIN FETCH r.address a
@@ -392,7 +559,7 @@ public interface RoomJpaRepository extends JpaRepository<Room, UUID> {
     @Query(value = "SELECT " +
             "LOWER(HEX(r.id)) AS id, " +
             "r.title AS title, " +
-            "(SELECT i.url FROM images i WHERE i.room_id = r.id ORDER BY i.id ASC LIMIT 1) AS imageUrl, " +
+            "r.cover_image_url AS imageUrl, " +
             "r.area AS area, " +
             "r.price_month AS priceMonth, " +
             "pt.name AS postType, " +
@@ -419,6 +586,26 @@ public interface RoomJpaRepository extends JpaRepository<Room, UUID> {
             @Param("centerLng") double centerLng,
             @Param("radiusKm") double radiusKm);
 
+    // Hydrate marker trên bản đồ theo danh sách id đã lọc bán kính từ geo index
+    @Query(value = "SELECT " +
+            "LOWER(HEX(r.id)) AS id, " +
+            "r.title AS title, " +
+            "r.cover_image_url AS imageUrl, " +
+            "r.area AS area, " +
+            "r.price_month AS priceMonth, " +
+            "pt.name AS postType, " +
+            "CONCAT(a.name_street, ', ', w.name, ', ', d.name, ', ', p.name) AS fullAddress, " +
+            "a.lng AS lng, " +
+            "a.lat AS lat " +
+            "FROM rooms r " +
+            "JOIN addresses a ON r.address_id = a.id " +
+            "JOIN wards w ON a.ward_id = w.id " +
+            "JOIN districts d ON w.district_id = d.id " +
+            "JOIN provinces p ON d.province_id = p.id " +
+            "JOIN post_type pt ON r.post_type_id = pt.id " +
+            "WHERE r.id IN (:roomIds)", nativeQuery = true)
+    List<RoomMapProjection> findRoomMapByIds(@Param("roomIds") List<UUID> roomIds);
+
     @Query(value = "SELECT " +
             "CONCAT(SUBSTR(LOWER(HEX(r.id)), 1, 8), '-', SUBSTR(LOWER(HEX(r.id)), 9, 4), '-', SUBSTR(LOWER(HEX(r.id)), 13, 4), '-', SUBSTR(LOWER(HEX(r.id)), 17, 4), '-', SUBSTR(LOWER(HEX(r.id)), 21, 12)) AS id, "
             +
@@ -536,6 +723,97 @@ public interface RoomJpaRepository extends JpaRepository<Room, UUID> {
             @Param("wards") List<String> wards,
             @Param("excludeUserId") String excludeUserId);
 
+    // Batch gợi ý: 1 query ứng viên cho cả nhóm user cùng tỉnh + khoảng giá,
+    // lọc/chấm điểm từng user làm trong bộ nhớ
+    @Query(value = "SELECT " +
+            "CONCAT(SUBSTR(LOWER(HEX(r.id)), 1, 8), '-', SUBSTR(LOWER(HEX(r.id)), 9, 4), '-', SUBSTR(LOWER(HEX(r.id)), 13, 4), '-', SUBSTR(LOWER(HEX(r.id)), 17, 4), '-', SUBSTR(LOWER(HEX(r.id)), 21, 12)) AS id, "
+            +
+            "r.title AS title, " +
+            "r.area AS area, " +
+            "r.price_month AS priceMonth, " +
+            "CONCAT(a.name_street, ', ', w.name, ', ', d.name, ', ', p.name) AS fullAddress, " +
+            "a.lng AS lng, " +
+            "a.lat AS lat, " +
+            "r.description AS description, " +
+            "COALESCE(up.full_name, u.username) AS landlordName, " +
+            "up.email AS landlordEmail, " +
+            "up.phone_number AS landlordPhone, " +
+            "w.name AS wardName, " +
+            "d.name AS districtName, " +
+            "p.name AS provinceName, " +
+            "r.createddate AS createdDate " +
+            "FROM rooms r " +
+            "JOIN addresses a ON r.address_id = a.id " +
+            "JOIN wards w ON a.ward_id = w.id " +
+            "JOIN districts d ON w.district_id = d.id " +
+            "JOIN provinces p ON d.province_id = p.id " +
+            "JOIN users u ON r.user_id = u.id " +
+            "LEFT JOIN user_profiles up ON u.profile_id = up.id " +
+            "WHERE r.available = 0 " +
+            "AND r.post_end_date > CURRENT_DATE " +
+            "AND r.hidden = 0 " +
+            "AND r.is_removed = 0 " +
+            "AND r.approval = 1 " +
+            "AND NOT EXISTS (" +
+            "    SELECT 1 FROM favorites f " +
+            "    JOIN users fu ON f.user_id = fu.id " +
+            "    JOIN user_profiles fup ON fu.profile_id = fup.id " +
+            "    WHERE f.room_id = r.id " +
+            "    AND fup.email_notifications = false" +
+            ") " +
+            "AND p.name IN (:provinces) " +
+            "AND (:minPrice IS NULL OR r.price_month >= :minPrice) " +
+            "AND (:maxPrice IS NULL OR r.price_month <= :maxPrice)", nativeQuery = true)
+    List<RoomSuggestionCandidateProjection> findSuggestionCandidatesByProvinces(
+            @Param("provinces") List<String> provinces,
+            @Param("minPrice") Double minPrice,
+            @Param("maxPrice") Double maxPrice);
+
+    // Batch gợi ý: ứng viên trong 1 ô lưới lat/lng (đã nới thêm bán kính tìm kiếm)
+    @Query(value = "SELECT " +
+            "CONCAT(SUBSTR(LOWER(HEX(r.id)), 1, 8), '-', SUBSTR(LOWER(HEX(r.id)), 9, 4), '-', SUBSTR(LOWER(HEX(r.id)), 13, 4), '-', SUBSTR(LOWER(HEX(r.id)), 17, 4), '-', SUBSTR(LOWER(HEX(r.id)), 21, 12)) AS id, "
+            +
+            "r.title AS title, " +
+            "r.area AS area, " +
+            "r.price_month AS priceMonth, " +
+            "CONCAT(a.name_street, ', ', w.name, ', ', d.name, ', ', p.name) AS fullAddress, " +
+            "a.lng AS lng, " +
+            "a.lat AS lat, " +
+            "r.description AS description, " +
+            "COALESCE(up.full_name, u.username) AS landlordName, " +
+            "up.email AS landlordEmail, " +
+            "up.phone_number AS landlordPhone, " +
+            "w.name AS wardName, " +
+            "d.name AS districtName, " +
+            "p.name AS provinceName, " +
+            "r.createddate AS createdDate " +
+            "FROM rooms r " +
+            "JOIN addresses a ON r.address_id = a.id " +
+            "JOIN wards w ON a.ward_id = w.id " +
+            "JOIN districts d ON w.district_id = d.id " +
+            "JOIN provinces p ON d.province_id = p.id " +
+            "JOIN users u ON r.user_id = u.id " +
+            "LEFT JOIN user_profiles up ON u.profile_id = up.id " +
+            "WHERE r.available = 0 " +
+            "AND r.post_end_date > CURRENT_DATE " +
+            "AND r.hidden = 0 " +
+            "AND r.is_removed = 0 " +
+            "AND r.approval = 1 " +
+            "AND NOT EXISTS (" +
+            "    SELECT 1 FROM favorites f " +
+            "    JOIN users fu ON f.user_id = fu.id " +
+            "    JOIN user_profiles fup ON fu.profile_id = fup.id " +
+            "    WHERE f.room_id = r.id " +
+            "    AND fup.email_notifications = false" +
+            ") " +
+            "AND a.lat BETWEEN :minLat AND :maxLat " +
+            "AND a.lng BETWEEN :minLng AND :maxLng", nativeQuery = true)
+    List<RoomSuggestionCandidateProjection> findSuggestionCandidatesInBox(
+            @Param("minLat") double minLat,
+            @Param("maxLat") double maxLat,
+            @Param("minLng") double minLng,
+            @Param("maxLng") double maxLng);
+
     @Query("SELECT up.email as email, up.fullName as fullName, r.title as title FROM Room r JOIN r.user u JOIN u.profile up WHERE r.id = :roomId")
     List<MailUserProjection> findMailUsersByRoomId(@Param("roomId") UUID roomId);
 
@@ -610,6 +888,18 @@ public interface RoomJpaRepository extends JpaRepository<Room, UUID> {
     @Query("select sum(r.viewCount) from Room r where r.user.id = :userId and r.isRemoved = 0 and r.approval = 1")
     int sumViewOfRoomsByUserId(@Param("userId") UUID userId);
 
+    @Query("select r.id from Room r where r.user.id = :userId and r.isRemoved = 0 and r.approval = 1")
+    List<UUID> findCountedRoomIdsByUserId(@Param("userId") UUID userId);
+
+    @Query("select r.viewCount from Room r where r.id = :roomId")
+    Optional<Long> findViewCountById(@Param("roomId") UUID roomId);
+
+    // Cộng dồn lượt xem từ bộ đếm trong bộ nhớ, không đọc lại entity
+    @Transactional
+    @Modifying
+    @Query("UPDATE Room r SET r.viewCount = r.viewCount + :delta WHERE r.id = :roomId")
+    int addViewCount(@Param("roomId") UUID roomId, @Param("delta") long delta);
+
     // Count favorite of room
     @Query("SELECT COUNT(f) FROM Room r LEFT JOIN Favorite f ON r.id = f.room.id WHERE r.user.id = :userId AND r.isRemoved = 0 AND r.approval = 1")
     int sumFavoriteOfRoomsByUserId(@Param("userId") UUID userId);
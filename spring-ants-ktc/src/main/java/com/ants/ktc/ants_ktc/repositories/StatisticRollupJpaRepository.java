@@ -0,0 +1,222 @@
+package com.ants.ktc.ants_ktc.repositories;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ants.ktc.ants_ktc.entities.StatisticRollup;
+import com.ants.ktc.ants_ktc.repositories.projection.ProvinceRollupProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.StatisticRollupProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.landlord.FeePostRoomProjection;
+
+@Repository
+public interface StatisticRollupJpaRepository extends JpaRepository<StatisticRollup, UUID> {
+
+    // ---- Ghi tăng dần ----
+
+    // Cộng dồn phần chênh lệch vào 1 dòng, tạo dòng nếu chưa có
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO statistic_rollups (id, metric, scope_key, period, amount, item_count, " +
+            "createddate, modifieddate) " +
+            "VALUES (UNHEX(MD5(CONCAT(:metric, '|', :scope, '|', :period))), :metric, :scope, :period, " +
+            ":amount, :count, NOW(), NOW()) " +
+            "ON DUPLICATE KEY UPDATE amount = amount + :amount, item_count = item_count + :count, " +
+            "modifieddate = NOW()", nativeQuery = true)
+    int addDelta(@Param("metric") String metric,
+            @Param("scope") String scope,
+            @Param("period") String period,
+            @Param("amount") double amount,
+            @Param("count") long count);
+
+    // Đếm lại số phòng của 1 landlord (scope = LOWER(HEX(user_id)))
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO statistic_rollups (id, metric, scope_key, period, amount, item_count, " +
+            "createddate, modifieddate) " +
+            "SELECT UNHEX(MD5(CONCAT(g.metric, '|', :scope, '|*'))), g.metric, :scope, '*', 0, g.cnt, NOW(), NOW() " +
+            "FROM (" +
+            "SELECT 'landlord_rooms' AS metric, COUNT(*) AS cnt FROM rooms r " +
+            "WHERE r.user_id = UNHEX(:scope) AND r.is_removed = 0 AND r.approval = 1 " +
+            "UNION ALL SELECT 'landlord_rented', COUNT(*) FROM rooms r " +
+            "WHERE r.user_id = UNHEX(:scope) AND r.is_removed = 0 AND r.approval = 1 AND r.available = 1 " +
+            "UNION ALL SELECT 'landlord_visible_rooms', COUNT(*) FROM rooms r " +
+            "WHERE r.user_id = UNHEX(:scope) AND r.is_removed = 0 AND r.approval = 1 AND r.hidden = 0" +
+            ") g " +
+            "ON DUPLICATE KEY UPDATE item_count = VALUES(item_count), modifieddate = NOW()", nativeQuery = true)
+    int refreshLandlordRooms(@Param("scope") String scope);
+
+    // Đếm lại số phòng đang hiển thị + tổng giá của 1 tỉnh
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO statistic_rollups (id, metric, scope_key, period, amount, item_count, " +
+            "createddate, modifieddate) " +
+            "SELECT UNHEX(MD5(CONCAT('rooms_by_province|', :provinceId, '|*'))), 'rooms_by_province', " +
+            "CAST(:provinceId AS CHAR), '*', COALESCE(SUM(r.price_month), 0), COUNT(r.id), NOW(), NOW() " +
+            "FROM rooms r " +
+            "JOIN addresses a ON a.id = r.address_id " +
+            "JOIN wards w ON w.id = a.ward_id " +
+            "JOIN districts d ON d.id = w.district_id " +
+            "WHERE d.province_id = :provinceId AND r.is_removed = 0 AND r.hidden = 0 " +
+            "ON DUPLICATE KEY UPDATE amount = VALUES(amount), item_count = VALUES(item_count), " +
+            "modifieddate = NOW()", nativeQuery = true)
+    int refreshProvinceRooms(@Param("provinceId") Long provinceId);
+
+    // ---- Dựng lại toàn bộ (reconcile), gọi trong 1 transaction của caller ----
+
+    @Modifying
+    @Query(value = "DELETE FROM statistic_rollups WHERE metric LIKE :pattern", nativeQuery = true)
+    int deleteByMetricLike(@Param("pattern") String pattern);
+
+    // format = '%Y-%m' (tháng) hoặc '%Y-%m-%d' (ngày); scope 'all' và theo landlord
+    @Modifying
+    @Query(value = "INSERT INTO statistic_rollups (id, metric, scope_key, period, amount, item_count, " +
+            "createddate, modifieddate) " +
+            "SELECT UNHEX(MD5(CONCAT(g.metric, '|', g.scope_key, '|', g.period))), g.metric, g.scope_key, " +
+            "g.period, g.amount, g.cnt, NOW(), NOW() " +
+            "FROM (" +
+            "SELECT CONCAT('txn:', t.transaction_type) AS metric, 'all' AS scope_key, " +
+            "DATE_FORMAT(COALESCE(t.transaction_date, t.createddate), :format) AS period, " +
+            "SUM(t.amount) AS amount, COUNT(*) AS cnt " +
+            "FROM transactions t GROUP BY t.transaction_type, period " +
+            "UNION ALL " +
+            "SELECT CONCAT('txn:', t.transaction_type), LOWER(HEX(u.id)), " +
+            "DATE_FORMAT(COALESCE(t.transaction_date, t.createddate), :format) AS period, " +
+            "SUM(t.amount), COUNT(*) " +
+            "FROM transactions t JOIN users u ON u.wallet_id = t.wallet_id " +
+            "GROUP BY t.transaction_type, u.id, period" +
+            ") g WHERE g.period IS NOT NULL " +
+            "ON DUPLICATE KEY UPDATE amount = VALUES(amount), item_count = VALUES(item_count), " +
+            "modifieddate = NOW()", nativeQuery = true)
+    int rebuildTransactionRollups(@Param("format") String format);
+
+    // Tổng giao dịch toàn thời gian của từng user, mọi loại
+    @Modifying
+    @Query(value = "INSERT INTO statistic_rollups (id, metric, scope_key, period, amount, item_count, " +
+            "createddate, modifieddate) " +
+            "SELECT UNHEX(MD5(CONCAT('txn:*|', g.scope_key, '|*'))), 'txn:*', g.scope_key, '*', " +
+            "g.amount, g.cnt, NOW(), NOW() " +
+            "FROM (SELECT LOWER(HEX(u.id)) AS scope_key, SUM(t.amount) AS amount, COUNT(*) AS cnt " +
+            "FROM transactions t JOIN users u ON u.wallet_id = t.wallet_id GROUP BY u.id) g " +
+            "ON DUPLICATE KEY UPDATE amount = VALUES(amount), item_count = VALUES(item_count), " +
+            "modifieddate = NOW()", nativeQuery = true)
+    int rebuildTransactionTotals();
+
+    // Số user đăng ký (không tính Administrators)
+    @Modifying
+    @Query(value = "INSERT INTO statistic_rollups (id, metric, scope_key, period, amount, item_count, " +
+            "createddate, modifieddate) " +
+            "SELECT UNHEX(MD5(CONCAT('user_reg|all|', g.period))), 'user_reg', 'all', g.period, 0, g.cnt, " +
+            "NOW(), NOW() " +
+            "FROM (SELECT DATE_FORMAT(u.createddate, :format) AS period, COUNT(*) AS cnt FROM users u " +
+            "WHERE u.createddate IS NOT NULL AND u.id NOT IN (" +
+            "SELECT ur.user_id FROM user_roles ur JOIN roles ro ON ro.id = ur.role_id " +
+            "WHERE ro.name = 'Administrators') " +
+            "GROUP BY period) g " +
+            "ON DUPLICATE KEY UPDATE item_count = VALUES(item_count), modifieddate = NOW()", nativeQuery = true)
+    int rebuildUserRegistrations(@Param("format") String format);
+
+    @Modifying
+    @Query(value = "INSERT INTO statistic_rollups (id, metric, scope_key, period, amount, item_count, " +
+            "createddate, modifieddate) " +
+            "SELECT UNHEX(MD5(CONCAT('rooms_by_province|', g.scope_key, '|*'))), 'rooms_by_province', " +
+            "g.scope_key, '*', g.amount, g.cnt, NOW(), NOW() " +
+            "FROM (SELECT COALESCE(CAST(d.province_id AS CHAR), 'none') AS scope_key, " +
+            "COALESCE(SUM(r.price_month), 0) AS amount, COUNT(r.id) AS cnt " +
+            "FROM rooms r " +
+            "LEFT JOIN addresses a ON a.id = r.address_id " +
+            "LEFT JOIN wards w ON w.id = a.ward_id " +
+            "LEFT JOIN districts d ON d.id = w.district_id " +
+            "WHERE r.is_removed = 0 AND r.hidden = 0 " +
+            "GROUP BY d.province_id) g " +
+            "ON DUPLICATE KEY UPDATE amount = VALUES(amount), item_count = VALUES(item_count), " +
+            "modifieddate = NOW()", nativeQuery = true)
+    int rebuildProvinceRooms();
+
+    @Modifying
+    @Query(value = "INSERT INTO statistic_rollups (id, metric, scope_key, period, amount, item_count, " +
+            "createddate, modifieddate) " +
+            "SELECT UNHEX(MD5(CONCAT(g.metric, '|', g.scope_key, '|*'))), g.metric, g.scope_key, '*', 0, g.cnt, " +
+            "NOW(), NOW() " +
+            "FROM (" +
+            "SELECT 'landlord_rooms' AS metric, LOWER(HEX(r.user_id)) AS scope_key, COUNT(*) AS cnt FROM rooms r " +
+            "WHERE r.is_removed = 0 AND r.approval = 1 GROUP BY r.user_id " +
+            "UNION ALL SELECT 'landlord_rented', LOWER(HEX(r.user_id)), COUNT(*) FROM rooms r " +
+            "WHERE r.is_removed = 0 AND r.approval = 1 AND r.available = 1 GROUP BY r.user_id " +
+            "UNION ALL SELECT 'landlord_visible_rooms', LOWER(HEX(r.user_id)), COUNT(*) FROM rooms r " +
+            "WHERE r.is_removed = 0 AND r.approval = 1 AND r.hidden = 0 GROUP BY r.user_id" +
+            ") g " +
+            "ON DUPLICATE KEY UPDATE item_count = VALUES(item_count), modifieddate = NOW()", nativeQuery = true)
+    int rebuildLandlordRooms();
+
+    // ---- Đọc ----
+
+    // length = 7 (tháng) hoặc 10 (ngày); from/to cùng định dạng với period
+    @Query("SELECT r.metric AS metric, r.scopeKey AS scopeKey, r.period AS period, r.amount AS amount, " +
+            "r.itemCount AS itemCount FROM StatisticRollup r " +
+            "WHERE r.metric = :metric AND r.scopeKey = :scope AND LENGTH(r.period) = :length " +
+            "AND r.period BETWEEN :from AND :to")
+    List<StatisticRollupProjection> findSeries(@Param("metric") String metric,
+            @Param("scope") String scope,
+            @Param("length") int length,
+            @Param("from") String from,
+            @Param("to") String to);
+
+    // Như findSeries nhưng cho cả nhóm metric, vd. 'txn:%' (mọi loại giao dịch)
+    @Query("SELECT r.metric AS metric, r.scopeKey AS scopeKey, r.period AS period, r.amount AS amount, " +
+            "r.itemCount AS itemCount FROM StatisticRollup r " +
+            "WHERE r.metric LIKE :pattern AND r.scopeKey = :scope AND LENGTH(r.period) = :length " +
+            "AND r.period BETWEEN :from AND :to")
+    List<StatisticRollupProjection> findSeriesByMetricLike(@Param("pattern") String pattern,
+            @Param("scope") String scope,
+            @Param("length") int length,
+            @Param("from") String from,
+            @Param("to") String to);
+
+    @Query("SELECT r.metric AS metric, r.scopeKey AS scopeKey, r.period AS period, r.amount AS amount, " +
+            "r.itemCount AS itemCount FROM StatisticRollup r " +
+            "WHERE r.metric = :metric AND r.scopeKey = :scope AND r.period = :period")
+    Optional<StatisticRollupProjection> findValue(@Param("metric") String metric,
+            @Param("scope") String scope,
+            @Param("period") String period);
+
+    // Top scope theo item_count của 1 metric toàn thời gian
+    @Query("SELECT r.metric AS metric, r.scopeKey AS scopeKey, r.period AS period, r.amount AS amount, " +
+            "r.itemCount AS itemCount FROM StatisticRollup r " +
+            "WHERE r.metric = :metric AND r.period = '*' AND r.itemCount > 0 ORDER BY r.itemCount DESC")
+    List<StatisticRollupProjection> findTopByItemCount(@Param("metric") String metric, Pageable pageable);
+
+    @Query("SELECT r.metric AS metric, r.scopeKey AS scopeKey, r.period AS period, r.amount AS amount, " +
+            "r.itemCount AS itemCount FROM StatisticRollup r " +
+            "WHERE r.metric = :metric AND r.period = '*' AND r.scopeKey IN :scopes")
+    List<StatisticRollupProjection> findTotalsByScopes(@Param("metric") String metric,
+            @Param("scopes") Collection<String> scopes);
+
+    @Query(value = "SELECT COALESCE(p.name, 'No Province') AS provinceName, s.item_count AS roomCount, " +
+            "s.amount / s.item_count AS averagePrice " +
+            "FROM statistic_rollups s " +
+            "LEFT JOIN provinces p ON s.scope_key <> 'none' AND p.id = CAST(s.scope_key AS UNSIGNED) " +
+            "WHERE s.metric = 'rooms_by_province' AND s.period = '*' AND s.item_count > 0 " +
+            "ORDER BY s.item_count DESC", nativeQuery = true)
+    List<ProvinceRollupProjection> findProvinceRoomStats();
+
+    // Cộng các dòng theo ngày trong khoảng [from, to] thành từng tháng
+    @Query(value = "SELECT SUM(s.amount) AS cost, SUBSTRING(s.period, 1, 7) AS month " +
+            "FROM statistic_rollups s " +
+            "WHERE s.metric = :metric AND s.scope_key = :scope AND LENGTH(s.period) = 10 " +
+            "AND s.period BETWEEN :from AND :to " +
+            "GROUP BY SUBSTRING(s.period, 1, 7)", nativeQuery = true)
+    List<FeePostRoomProjection> sumDailyByMonth(@Param("metric") String metric,
+            @Param("scope") String scope,
+            @Param("from") String from,
+            @Param("to") String to);
+}
@@ -30,6 +30,13 @@ public interface UserJpaRepository extends JpaRepository<User, UUID> {
             """)
     Optional<UserProfileProjection> findFullNameById(@Param("id") UUID id);
 
+    // Tên hiển thị trong chat: fullName nếu có, không thì username
+    @Query("SELECT COALESCE(p.fullName, u.username) FROM User u LEFT JOIN u.profile p WHERE u.id = :id")
+    Optional<String> findDisplayNameById(@Param("id") UUID id);
+
+    @Query("SELECT u.id FROM User u WHERE u.profile.id = :profileId")
+    Optional<UUID> findIdByProfileId(@Param("profileId") UUID profileId);
+
     @Query("""
                 SELECT u FROM User u
                 LEFT JOIN FETCH u.profile p
@@ -207,7 +214,7 @@ public interface UserJpaRepository extends JpaRepository<User, UUID> {
                 ) as address,
                 r.price_month as price,
                 r.area as area,
-                (SELECT i.url FROM images i WHERE i.room_id = r.id ORDER BY i.id ASC LIMIT 1) as imageUrl,
+                r.cover_image_url as imageUrl,
                 COALESCE((SELECT COUNT(f.id) FROM favorites f WHERE f.room_id = r.id), 0) as favoriteCount
             FROM rooms r
             LEFT JOIN addresses a ON r.address_id = a.id
@@ -259,6 +266,21 @@ public interface UserJpaRepository extends JpaRepository<User, UUID> {
             "ORDER BY month DESC")
     List<Object[]> getMonthlyUserRegistrationStatistics(@Param("startDate") java.util.Date startDate);
 
+    // Chủ ví của 1 giao dịch
+    @Query("SELECT u.id FROM User u WHERE u.wallet.id = :walletId")
+    Optional<UUID> findIdByWalletId(@Param("walletId") UUID walletId);
+
+    // Tên + email của các landlord trong danh sách (bỏ qua admin), cho top landlord
+    @Query("""
+            SELECT u.id as id, u.profile.fullName as landlordName, u.profile.email as email
+            FROM User u
+            JOIN u.roles ro
+            WHERE u.id IN :ids
+            AND ro.name = 'Landlords'
+            AND u.id NOT IN (SELECT u2.id FROM User u2 JOIN u2.roles r2 WHERE r2.name = 'Administrators')
+            """)
+    List<Object[]> findLandlordSummariesByIds(@Param("ids") java.util.Collection<UUID> ids);
+
     // Query to count administrators specifically
     @Query("SELECT COUNT(u) FROM User u JOIN u.roles r WHERE r.name = 'Administrators'")
     Long countAdministrators();
@@ -5,7 +5,11 @@ import java.util.UUID;
 
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.ants.ktc.ants_ktc.entities.Wallet;
 
@@ -19,4 +23,21 @@ public interface WalletJpaRepository extends JpaRepository<Wallet, UUID> {
     // Tìm wallet theo userId kèm user
     @EntityGraph(attributePaths = { "user" })
     Optional<Wallet> findByUserId(UUID userId);
+
+    // Trừ tiền bằng 1 câu UPDATE có điều kiện: trả về 0 nếu không đủ số dư.
+    // Không đọc trước/ghi đè nên không mất cập nhật khi nhiều request cùng trừ.
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE wallets SET balance = balance - :amount, modifieddate = NOW() " +
+            "WHERE id = :walletId AND balance >= :amount", nativeQuery = true)
+    int debit(@Param("walletId") UUID walletId, @Param("amount") double amount);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE wallets SET balance = balance + :amount, modifieddate = NOW() " +
+            "WHERE id = :walletId", nativeQuery = true)
+    int credit(@Param("walletId") UUID walletId, @Param("amount") double amount);
+
+    @Query("SELECT w.balance FROM Wallet w WHERE w.id = :walletId")
+    Optional<Double> findBalanceById(@Param("walletId") UUID walletId);
 }
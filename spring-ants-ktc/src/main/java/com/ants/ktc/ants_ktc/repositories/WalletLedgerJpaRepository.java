@@ -0,0 +1,39 @@
+package com.ants.ktc.ants_ktc.repositories;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ants.ktc.ants_ktc.entities.WalletLedgerEntry;
+
+@Repository
+public interface WalletLedgerJpaRepository extends JpaRepository<WalletLedgerEntry, UUID> {
+
+    // Giữ chỗ cho 1 thao tác: trả về 0 nếu key đã có (đã/đang được áp dụng).
+    // Transaction khác đang giữ cùng key thì câu lệnh chờ tới khi nó commit/rollback.
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO wallet_ledger (id, wallet_id, operation, amount, idempotency_key, " +
+            "createddate, modifieddate) " +
+            "VALUES (UNHEX(MD5(:key)), :walletId, :operation, :amount, :key, NOW(), NOW())", nativeQuery = true)
+    int claim(@Param("walletId") UUID walletId,
+            @Param("operation") String operation,
+            @Param("amount") double amount,
+            @Param("key") String key);
+
+    // Gắn Transaction và số dư sau thao tác vào dòng vừa giữ chỗ (cùng transaction)
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE wallet_ledger l SET l.transaction_id = :transactionId, " +
+            "l.balance_after = (SELECT w.balance FROM wallets w WHERE w.id = l.wallet_id) " +
+            "WHERE l.idempotency_key = :key", nativeQuery = true)
+    int complete(@Param("key") String key, @Param("transactionId") UUID transactionId);
+
+    Optional<WalletLedgerEntry> findByIdempotencyKey(String idempotencyKey);
+}
@@ -0,0 +1,27 @@
+package com.ants.ktc.ants_ktc.repositories.address;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.ants.ktc.ants_ktc.entities.address.Address;
+
+@Repository
+public interface AddressJpaRepository extends JpaRepository<Address, UUID> {
+
+    // Địa chỉ chưa có tọa độ, dùng cho job geocode bù
+    @Query("SELECT a.id FROM Address a WHERE a.ward IS NOT NULL AND (a.lat IS NULL OR a.lng IS NULL)")
+    List<UUID> findIdsMissingCoordinates();
+
+    @Query("SELECT a FROM Address a " +
+            "JOIN FETCH a.ward w " +
+            "JOIN FETCH w.district d " +
+            "JOIN FETCH d.province p " +
+            "LEFT JOIN FETCH a.room r " +
+            "WHERE a.id IN :ids")
+    List<Address> findWithLocationByIdIn(@Param("ids") List<UUID> ids);
+}
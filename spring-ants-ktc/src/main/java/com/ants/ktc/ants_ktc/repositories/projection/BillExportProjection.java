@@ -0,0 +1,30 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+import java.util.UUID;
+
+import com.ants.ktc.ants_ktc.enums.BillStatus;
+
+// 1 dòng trong file Excel hóa đơn, kèm giá điện/nước của phòng
+public interface BillExportProjection {
+    UUID getContractId();
+
+    String getContractName();
+
+    String getRoomTitle();
+
+    Double getElecPrice();
+
+    Double getWaterPrice();
+
+    String getMonth();
+
+    Double getElectricityFee();
+
+    Double getWaterFee();
+
+    Double getServiceFee();
+
+    Double getTotalAmount();
+
+    BillStatus getStatus();
+}
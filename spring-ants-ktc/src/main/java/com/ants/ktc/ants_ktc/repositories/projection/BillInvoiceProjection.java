@@ -0,0 +1,28 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+import java.util.UUID;
+
+// Dữ liệu cho 1 hóa đơn PDF: bill + tenant + phòng, lấy bằng 1 query
+public interface BillInvoiceProjection {
+    UUID getBillId();
+
+    String getMonth();
+
+    Double getElectricityFee();
+
+    Double getWaterFee();
+
+    Double getServiceFee();
+
+    Double getTotalAmount();
+
+    String getTenantName();
+
+    String getTenantPhone();
+
+    String getRoomName();
+
+    Double getElecPrice();
+
+    Double getWaterPrice();
+}
@@ -37,6 +37,8 @@ public interface BookingLandlordProjection {
 
         Double getArea();
 
+        String getCoverImageUrl();
+
         // Address projection
         BookingAddressProjection getAddress();
     }
@@ -0,0 +1,9 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+import java.util.UUID;
+
+public interface BookingRoomKeyProjection {
+    UUID getId();
+
+    UUID getRoomId();
+}
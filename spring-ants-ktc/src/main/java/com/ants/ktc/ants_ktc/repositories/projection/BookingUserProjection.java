@@ -34,6 +34,8 @@ public interface BookingUserProjection {
 
         Double getArea();
 
+        String getCoverImageUrl();
+
         // Owner (User) projection
         BookingOwnerProjection getUser();
 
@@ -0,0 +1,19 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+import java.time.LocalDateTime;
+
+public interface ChatUserProjection {
+    String getId();
+
+    String getUsername();
+
+    String getFullName();
+
+    String getLastMessage();
+
+    String getLastSenderId();
+
+    LocalDateTime getLastSentAt();
+
+    Integer getUnreadCount();
+}
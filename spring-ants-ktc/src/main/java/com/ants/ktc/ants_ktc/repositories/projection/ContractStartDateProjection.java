@@ -0,0 +1,10 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+import java.util.Date;
+import java.util.UUID;
+
+public interface ContractStartDateProjection {
+    UUID getId();
+
+    Date getStartDate();
+}
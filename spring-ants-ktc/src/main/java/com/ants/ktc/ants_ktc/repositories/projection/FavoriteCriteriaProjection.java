@@ -0,0 +1,20 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+import java.util.UUID;
+
+// 1 dòng / phòng yêu thích, dùng để phân tích tiêu chí gợi ý cho cả batch
+public interface FavoriteCriteriaProjection {
+    UUID getUserId();
+
+    UUID getRoomId();
+
+    Double getPriceMonth();
+
+    Double getArea();
+
+    String getWardName();
+
+    String getDistrictName();
+
+    String getProvinceName();
+}
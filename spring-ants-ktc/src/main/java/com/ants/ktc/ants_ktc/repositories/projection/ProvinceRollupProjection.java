@@ -0,0 +1,9 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+public interface ProvinceRollupProjection {
+    String getProvinceName();
+
+    Long getRoomCount();
+
+    Double getAveragePrice();
+}
@@ -0,0 +1,7 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+public interface RoomFeedKeyProjection {
+    String getCode();
+
+    Long getProvinceId();
+}
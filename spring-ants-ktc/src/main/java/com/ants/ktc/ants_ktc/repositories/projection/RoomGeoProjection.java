@@ -0,0 +1,18 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+import java.util.Date;
+import java.util.UUID;
+
+public interface RoomGeoProjection {
+    UUID getId();
+
+    Double getLat();
+
+    Double getLng();
+
+    String getPostTypeCode();
+
+    Date getCreatedDate();
+
+    Date getPostEndDate();
+}
@@ -0,0 +1,11 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+import java.util.UUID;
+
+public interface RoomImageProjection {
+    UUID getRoomId();
+
+    Long getId();
+
+    String getUrl();
+}
@@ -0,0 +1,22 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+import java.util.Date;
+import java.util.UUID;
+
+public interface RoomSearchProjection {
+    UUID getId();
+
+    Double getPriceMonth();
+
+    Double getArea();
+
+    Long getWardId();
+
+    Long getDistrictId();
+
+    Long getProvinceId();
+
+    Date getCreatedDate();
+
+    Date getPostEndDate();
+}
@@ -0,0 +1,37 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+import java.util.Date;
+import java.util.UUID;
+
+// Phòng ứng viên cho batch gợi ý, chấm điểm trong bộ nhớ
+public interface RoomSuggestionCandidateProjection {
+    UUID getId();
+
+    String getTitle();
+
+    Double getArea();
+
+    Double getPriceMonth();
+
+    String getFullAddress();
+
+    Double getLat();
+
+    Double getLng();
+
+    String getDescription();
+
+    String getLandlordName();
+
+    String getLandlordEmail();
+
+    String getLandlordPhone();
+
+    String getWardName();
+
+    String getDistrictName();
+
+    String getProvinceName();
+
+    Date getCreatedDate();
+}
@@ -0,0 +1,13 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+public interface StatisticRollupProjection {
+    String getMetric();
+
+    String getScopeKey();
+
+    String getPeriod();
+
+    Double getAmount();
+
+    Long getItemCount();
+}
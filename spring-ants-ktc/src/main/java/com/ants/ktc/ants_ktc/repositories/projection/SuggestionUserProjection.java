@@ -0,0 +1,19 @@
+package com.ants.ktc.ants_ktc.repositories.projection;
+
+import java.util.UUID;
+
+public interface SuggestionUserProjection {
+    UUID getUserId();
+
+    String getUsername();
+
+    String getEmail();
+
+    String getFullName();
+
+    Boolean getEmailNotifications();
+
+    Double getSearchLatitude();
+
+    Double getSearchLongitude();
+}
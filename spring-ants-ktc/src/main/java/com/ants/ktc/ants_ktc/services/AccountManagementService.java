@@ -5,7 +5,6 @@ import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
@@ -14,26 +13,36 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.ants.ktc.ants_ktc.components.CacheTags;
 import com.ants.ktc.ants_ktc.dtos.manage_account.UserPageResponseDto;
 import com.ants.ktc.ants_ktc.dtos.manage_account.UserResponseDto;
 import com.ants.ktc.ants_ktc.entities.Role;
 import com.ants.ktc.ants_ktc.entities.User;
 import com.ants.ktc.ants_ktc.repositories.RoleJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
+import com.ants.ktc.ants_ktc.services.auth.JwtPrincipalService;
 
 @Service
 public class AccountManagementService {
 
+    // Tag cho mọi key danh sách (all-users, paginated-*), xem CacheTags
+    public static final String ACCOUNT_LISTS_TAG = "account-lists";
+
     private final UserJpaRepository userJpaRepository;
     private final RoleJpaRepository roleJpaRepository;
+    private final JwtPrincipalService jwtPrincipalService;
+    private final CacheTags cacheTags;
 
-    public AccountManagementService(UserJpaRepository userJpaRepository, RoleJpaRepository roleJpaRepository) {
+    public AccountManagementService(UserJpaRepository userJpaRepository, RoleJpaRepository roleJpaRepository,
+            JwtPrincipalService jwtPrincipalService, CacheTags cacheTags) {
         this.userJpaRepository = userJpaRepository;
         this.roleJpaRepository = roleJpaRepository;
+        this.jwtPrincipalService = jwtPrincipalService;
+        this.cacheTags = cacheTags;
 
     }
 
-    @Cacheable(value = "manage-accounts", key = "'all-users'")
+    @Cacheable(value = "manage-accounts", key = "'all-users-' + @cacheTags.version('account-lists')")
     @Transactional(readOnly = true)
     public List<UserResponseDto> getAllUsers() {
         List<User> users = userJpaRepository.findAllExcludingAdmins();
@@ -43,7 +52,8 @@ public class AccountManagementService {
                 .collect(Collectors.toList());
     }
 
-    @Cacheable(value = "manage-accounts", key = "'paginated-' + #p0 + '-' + #p1")
+    @Cacheable(value = "manage-accounts",
+            key = "'paginated-' + @cacheTags.version('account-lists') + '-' + #p0 + '-' + #p1")
     @Transactional(readOnly = true)
     public UserPageResponseDto getPaginatedUsers(int page, int size) {
         System.out.println("Cache key: paginated-" + page + "-" + size);
@@ -76,18 +86,19 @@ public class AccountManagementService {
     }
 
     @CachePut(value = "manage-accounts", key = "'user-' + #p0")
-    @CacheEvict(value = "manage-accounts", allEntries = true)
     public UserResponseDto updateUserStatus(UUID userId, int status) {
         User user = userJpaRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException(
                         "User with ID " + userId + " not found."));
         user.setIsActive(status);
         User updatedUser = userJpaRepository.save(user);
+        // Token đã cấp không còn được tin claim, filter phải kiểm tra lại trạng thái từ DB
+        jwtPrincipalService.revoke(userId, updatedUser.getUsername());
+        cacheTags.bump(ACCOUNT_LISTS_TAG);
         return convertToUserResponseDto(updatedUser);
     }
 
     @CachePut(value = "manage-accounts", key = "'user-' + #p0")
-    @CacheEvict(value = "manage-accounts", allEntries = true)
     public UserResponseDto updateUserRoles(UUID userId, List<String> roleNames) {
         User user = userJpaRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException(
@@ -103,6 +114,8 @@ public class AccountManagementService {
 
         user.setRoles(newRoles);
         User updatedUser = userJpaRepository.save(user);
+        jwtPrincipalService.revoke(userId, updatedUser.getUsername());
+        cacheTags.bump(ACCOUNT_LISTS_TAG);
 
         return convertToUserResponseDto(updatedUser);
     }
@@ -0,0 +1,103 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.ants.ktc.ants_ktc.entities.address.Address;
+import com.ants.ktc.ants_ktc.entities.address.Ward;
+import com.ants.ktc.ants_ktc.events.RoomChangedEvent;
+import com.ants.ktc.ants_ktc.repositories.address.AddressJpaRepository;
+
+/**
+ * Job geocode bù cho các địa chỉ chưa có lat/lng (dữ liệu cũ hoặc lúc tạo phòng
+ * Goong lỗi), để phần chấm điểm/gợi ý phòng luôn dùng tọa độ đã lưu thay vì
+ * geocode lúc request.
+ */
+@Service
+public class AddressGeocodingService {
+
+    @Autowired
+    private AddressJpaRepository addressJpaRepository;
+
+    @Autowired
+    private LocationIQService locationIQService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${geocode.backfill.batch-size:100}")
+    private int batchSize;
+
+    // 2h sáng mỗi ngày
+    @Scheduled(cron = "${geocode.backfill.cron:0 0 2 * * ?}")
+    public void scheduledBackfill() {
+        backfillMissingCoordinates();
+    }
+
+    /**
+     * @return số địa chỉ đã được bổ sung tọa độ
+     */
+    public int backfillMissingCoordinates() {
+        List<UUID> ids = addressJpaRepository.findIdsMissingCoordinates();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        int updated = 0;
+        int failed = 0;
+
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<UUID> batchIds = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            List<Address> changed = new ArrayList<>();
+            for (Address address : addressJpaRepository.findWithLocationByIdIn(batchIds)) {
+                try {
+                    LocationIQService.LatLng latLng = locationIQService.getCoordinates(toFullAddress(address));
+                    address.setLat(latLng.lat);
+                    address.setLng(latLng.lng);
+                    changed.add(address);
+                } catch (Exception e) {
+                    failed++;
+                }
+            }
+            if (changed.isEmpty()) {
+                continue;
+            }
+            addressJpaRepository.saveAll(changed);
+            updated += changed.size();
+            for (Address address : changed) {
+                if (address.getRoom() != null) {
+                    eventPublisher.publishEvent(new RoomChangedEvent(address.getRoom().getId()));
+                }
+            }
+        }
+
+        System.out.println("[GeocodeBackfill] Updated " + updated + "/" + ids.size() + " addresses (" + failed
+                + " failed) in " + (System.currentTimeMillis() - start) + "ms");
+        return updated;
+    }
+
+    // Cùng định dạng với địa chỉ geocode lúc tạo/cập nhật phòng
+    static String toFullAddress(Address address) {
+        Ward ward = address.getWard();
+        return address.getStreet() + ", " +
+                removePrefix(ward.getName(), "Phường") + ", " +
+                removePrefix(ward.getDistrict().getName(), "Quận") + ", " +
+                removePrefix(ward.getDistrict().getProvince().getName(), "Thành phố");
+    }
+
+    private static String removePrefix(String text, String prefix) {
+        if (text == null)
+            return null;
+        if (text.startsWith(prefix)) {
+            return text.substring(prefix.length()).trim();
+        }
+        return text;
+    }
+}
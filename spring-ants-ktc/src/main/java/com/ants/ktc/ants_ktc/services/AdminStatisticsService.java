@@ -23,6 +23,7 @@ import com.ants.ktc.ants_ktc.dtos.statistics.StatisticAdminResponseDto.TopLandlo
 import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.TransactionsJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.StatisticRollupProjection;
 
 @Service
 public class AdminStatisticsService {
@@ -35,6 +36,9 @@ public class AdminStatisticsService {
     @Autowired
     private TransactionsJpaRepository transactionRepository;
 
+    @Autowired
+    private StatisticsRollupService statisticsRollupService;
+
     // Original AdminStatisticsService methods
     public Long countInactiveUsers() {
         return userRepository.countInactiveUsers();
@@ -55,6 +59,16 @@ public class AdminStatisticsService {
     // Methods for separate endpoints
     public List<ProvinceStatistic> getRoomsByProvince() {
         try {
+            // Đọc từ bảng cộng dồn sẵn nếu đã có
+            if (statisticsRollupService.isReady()) {
+                return statisticsRollupService.provinceRoomStats().stream()
+                        .map(row -> new ProvinceStatistic(
+                                row.getProvinceName(),
+                                row.getRoomCount() != null ? row.getRoomCount() : 0L,
+                                convertToSafeBigDecimal(row.getAveragePrice())))
+                        .collect(Collectors.toList());
+            }
+
             // Try the left join query first to handle missing address data
             List<Object[]> results = roomRepository.getRoomStatisticsByProvinceWithLeftJoin();
             List<ProvinceStatistic> provinceStats = new ArrayList<>();
@@ -89,6 +103,18 @@ public class AdminStatisticsService {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM");
 
         try {
+            if (statisticsRollupService.isReady()) {
+                Map<String, StatisticRollupProjection> series = statisticsRollupService.monthlySeries(
+                        StatisticsRollupService.METRIC_TRANSACTION_PREFIX + 1, StatisticsRollupService.SCOPE_ALL,
+                        months);
+                for (String month : StatisticsRollupService.lastMonths(months)) {
+                    StatisticRollupProjection row = series.get(month);
+                    monthlyRevenues.add(new MonthlyRevenue(month,
+                            row != null ? convertToSafeBigDecimal(row.getAmount()) : BigDecimal.ZERO));
+                }
+                return monthlyRevenues;
+            }
+
             // Calculate start date for specified months ago
             Calendar cal = Calendar.getInstance();
             cal.add(Calendar.MONTH, -months);
@@ -150,6 +176,18 @@ public class AdminStatisticsService {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM");
 
         try {
+            if (statisticsRollupService.isReady()) {
+                Map<String, StatisticRollupProjection> series = statisticsRollupService.monthlySeries(
+                        StatisticsRollupService.METRIC_USER_REGISTRATIONS, StatisticsRollupService.SCOPE_ALL,
+                        months);
+                for (String month : StatisticsRollupService.lastMonths(months)) {
+                    StatisticRollupProjection row = series.get(month);
+                    monthlyRegistrations.add(new MonthlyUserRegistration(month,
+                            row != null ? row.getItemCount() : 0L));
+                }
+                return monthlyRegistrations;
+            }
+
             // Calculate start date for specified months ago
             Calendar cal = Calendar.getInstance();
             cal.add(Calendar.MONTH, -months);
@@ -198,6 +236,10 @@ public class AdminStatisticsService {
 
     public List<TopLandlord> getTopLandlords(int limit) {
         try {
+            if (statisticsRollupService.isReady()) {
+                return getTopLandlordsFromRollup(limit);
+            }
+
             List<Object[]> results = userRepository.getTopLandlordsByRoomCount();
             List<TopLandlord> topLandlords = new ArrayList<>();
 
@@ -230,6 +272,53 @@ public class AdminStatisticsService {
         }
     }
 
+    // Top landlord theo số phòng đang hiển thị, tổng giao dịch lấy từ txn:*
+    private List<TopLandlord> getTopLandlordsFromRollup(int limit) {
+        // Lấy dư vì 1 số user có phòng nhưng không còn role Landlords
+        List<StatisticRollupProjection> top = statisticsRollupService
+                .topByItemCount(StatisticsRollupService.METRIC_LANDLORD_VISIBLE_ROOMS, limit * 2);
+        if (top.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<String> scopes = top.stream().map(StatisticRollupProjection::getScopeKey).toList();
+        Map<String, Double> revenues = statisticsRollupService
+                .totalAmounts(StatisticsRollupService.METRIC_TRANSACTION_TOTAL, scopes);
+        Map<UUID, Object[]> landlords = new HashMap<>();
+        for (Object[] row : userRepository.findLandlordSummariesByIds(
+                scopes.stream().map(StatisticsRollupService::userIdOf).toList())) {
+            landlords.put((UUID) row[0], row);
+        }
+
+        List<TopLandlord> topLandlords = new ArrayList<>();
+        for (StatisticRollupProjection row : top) {
+            UUID landlordId = StatisticsRollupService.userIdOf(row.getScopeKey());
+            Object[] landlord = landlords.get(landlordId);
+            if (landlord == null) {
+                continue;
+            }
+            topLandlords.add(new TopLandlord(
+                    landlordId,
+                    landlord[1] != null ? (String) landlord[1] : "Unknown",
+                    landlord[2] != null ? (String) landlord[2] : "",
+                    row.getItemCount(),
+                    convertToSafeBigDecimal(revenues.get(row.getScopeKey()))));
+            if (topLandlords.size() >= limit) {
+                break;
+            }
+        }
+        return topLandlords;
+    }
+
+    // Bảng tháng -> loại giao dịch -> tổng tiền từ bảng cộng dồn
+    private Map<String, Map<Integer, BigDecimal>> getMonthlyTransactionMapFromRollup(String scope, int months) {
+        Map<String, Map<Integer, BigDecimal>> monthlyTransactionMap = new HashMap<>();
+        statisticsRollupService.monthlyTransactionAmountsByType(scope, months)
+                .forEach((month, byType) -> byType.forEach((type, amount) -> monthlyTransactionMap
+                        .computeIfAbsent(month, k -> new HashMap<>())
+                        .put(type, convertToSafeBigDecimal(amount))));
+        return monthlyTransactionMap;
+    }
+
     // Helper method to get transaction type description
     private String getTransactionTypeDescription(Integer type) {
         switch (type) {
@@ -248,25 +337,31 @@ public class AdminStatisticsService {
         List<MonthlyTransactionStatsDto> result = new ArrayList<>();
 
         try {
-            // Calculate start date
-            Calendar cal = Calendar.getInstance();
-            cal.add(Calendar.MONTH, -months);
-            Date startDate = cal.getTime();
-
-            // Get data from repository
-            List<Object[]> queryResults = transactionRepository.getMonthlyTransactionStatisticsByType(startDate);
-
             // Create a map to store transaction data by month and type
-            Map<String, Map<Integer, BigDecimal>> monthlyTransactionMap = new HashMap<>();
-
-            // Populate the map with actual data
-            for (Object[] row : queryResults) {
-                String month = (String) row[0];
-                Integer transactionType = (Integer) row[1];
-                BigDecimal totalAmount = convertToSafeBigDecimal(row[2]);
-
-                monthlyTransactionMap.computeIfAbsent(month, k -> new HashMap<>())
-                        .put(transactionType, totalAmount);
+            Map<String, Map<Integer, BigDecimal>> monthlyTransactionMap;
+
+            if (statisticsRollupService.isReady()) {
+                monthlyTransactionMap = getMonthlyTransactionMapFromRollup(StatisticsRollupService.SCOPE_ALL,
+                        months);
+            } else {
+                // Calculate start date
+                Calendar cal = Calendar.getInstance();
+                cal.add(Calendar.MONTH, -months);
+                Date startDate = cal.getTime();
+
+                // Get data from repository
+                List<Object[]> queryResults = transactionRepository.getMonthlyTransactionStatisticsByType(startDate);
+                monthlyTransactionMap = new HashMap<>();
+
+                // Populate the map with actual data
+                for (Object[] row : queryResults) {
+                    String month = (String) row[0];
+                    Integer transactionType = (Integer) row[1];
+                    BigDecimal totalAmount = convertToSafeBigDecimal(row[2]);
+
+                    monthlyTransactionMap.computeIfAbsent(month, k -> new HashMap<>())
+                            .put(transactionType, totalAmount);
+                }
             }
 
             // Generate data for all months and all transaction types
@@ -305,26 +400,32 @@ public class AdminStatisticsService {
         List<MonthlyTransactionStatsDto> result = new ArrayList<>();
 
         try {
-            // Calculate start date
-            Calendar cal = Calendar.getInstance();
-            cal.add(Calendar.MONTH, -months);
-            Date startDate = cal.getTime();
-
-            // Get data from repository
-            List<Object[]> queryResults = transactionRepository
-                    .getMonthlyTransactionStatisticsByTypeForLandlord(landlordId, startDate);
-
             // Create a map to store transaction data by month and type
-            Map<String, Map<Integer, BigDecimal>> monthlyTransactionMap = new HashMap<>();
-
-            // Populate the map with actual data
-            for (Object[] row : queryResults) {
-                String month = (String) row[0];
-                Integer transactionType = (Integer) row[1];
-                BigDecimal totalAmount = convertToSafeBigDecimal(row[2]);
-
-                monthlyTransactionMap.computeIfAbsent(month, k -> new HashMap<>())
-                        .put(transactionType, totalAmount);
+            Map<String, Map<Integer, BigDecimal>> monthlyTransactionMap;
+
+            if (statisticsRollupService.isReady()) {
+                monthlyTransactionMap = getMonthlyTransactionMapFromRollup(
+                        StatisticsRollupService.scopeOf(landlordId), months);
+            } else {
+                // Calculate start date
+                Calendar cal = Calendar.getInstance();
+                cal.add(Calendar.MONTH, -months);
+                Date startDate = cal.getTime();
+
+                // Get data from repository
+                List<Object[]> queryResults = transactionRepository
+                        .getMonthlyTransactionStatisticsByTypeForLandlord(landlordId, startDate);
+                monthlyTransactionMap = new HashMap<>();
+
+                // Populate the map with actual data
+                for (Object[] row : queryResults) {
+                    String month = (String) row[0];
+                    Integer transactionType = (Integer) row[1];
+                    BigDecimal totalAmount = convertToSafeBigDecimal(row[2]);
+
+                    monthlyTransactionMap.computeIfAbsent(month, k -> new HashMap<>())
+                            .put(transactionType, totalAmount);
+                }
             }
 
             // Generate data for all months and all transaction types
@@ -1,12 +1,15 @@
 package com.ants.ktc.ants_ktc.services;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -16,17 +19,86 @@ import com.ants.ktc.ants_ktc.entities.Room;
 import com.ants.ktc.ants_ktc.entities.address.Address;
 import com.ants.ktc.ants_ktc.models.ApprovalMessage;
 import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
-
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Hàng đợi duyệt phòng lưu ở Redis, dùng chung giữa các instance và không mất
+ * khi restart.
+ * <ul>
+ * <li>{@code approval_queue} (LIST): room id đang chờ, LPUSH vào / RPOP ra</li>
+ * <li>{@code approval_queue:members} (SET): room id đang chờ hoặc đang xử lý,
+ * dùng để chống trùng</li>
+ * <li>{@code approval_queue:inflight} (ZSET): room id đang xử lý, score là hạn
+ * visibility timeout. Hết hạn mà chưa ack thì được trả lại hàng đợi</li>
+ * <li>{@code approval_queue:messages} (HASH): room id -> ApprovalMessage JSON</li>
+ * </ul>
+ * Các thao tác nhiều bước chạy bằng Lua script để atomic giữa các instance.
+ */
 @Service
 public class ApprovalQueueService {
 
+    private static final String READY_KEY = "approval_queue";
+    private static final String MEMBERS_KEY = "approval_queue:members";
+    private static final String INFLIGHT_KEY = "approval_queue:inflight";
+    private static final String MESSAGES_KEY = "approval_queue:messages";
+    private static final int REAP_BATCH_SIZE = 100;
+
+    // Chỉ thêm nếu room chưa có trong members
+    private static final DefaultRedisScript<Long> ENQUEUE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('SADD', KEYS[1], ARGV[1]) == 0 then return 0 end "
+                    + "redis.call('HSET', KEYS[2], ARGV[1], ARGV[2]) "
+                    + "redis.call('LPUSH', KEYS[3], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    // Lấy 1 job và giữ lease tới ARGV[1]
+    private static final DefaultRedisScript<String> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local id = redis.call('RPOP', KEYS[1]) "
+                    + "if not id then return false end "
+                    + "redis.call('ZADD', KEYS[2], ARGV[1], id) "
+                    + "local payload = redis.call('HGET', KEYS[3], id) "
+                    + "if not payload then "
+                    + "  redis.call('ZREM', KEYS[2], id) "
+                    + "  redis.call('SREM', KEYS[4], id) "
+                    + "  return '' "
+                    + "end "
+                    + "return payload",
+            String.class);
+
+    private static final DefaultRedisScript<Long> ACK_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('ZREM', KEYS[1], ARGV[1]) "
+                    + "redis.call('HDEL', KEYS[3], ARGV[1]) "
+                    + "return redis.call('SREM', KEYS[2], ARGV[1])",
+            Long.class);
+
+    // Cập nhật message (retryCount) và dời hạn lease tới lúc được retry
+    private static final DefaultRedisScript<Long> RETRY_SCRIPT = new DefaultRedisScript<>(
+            "if not redis.call('ZSCORE', KEYS[1], ARGV[1]) then return 0 end "
+                    + "redis.call('HSET', KEYS[2], ARGV[1], ARGV[2]) "
+                    + "redis.call('ZADD', KEYS[1], ARGV[3], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    // Trả các job hết hạn lease về hàng đợi
+    private static final DefaultRedisScript<Long> REAP_SCRIPT = new DefaultRedisScript<>(
+            "local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) "
+                    + "for _, id in ipairs(ids) do "
+                    + "  if redis.call('ZREM', KEYS[1], id) == 1 then redis.call('LPUSH', KEYS[2], id) end "
+                    + "end "
+                    + "return #ids",
+            Long.class);
+
     @Autowired
-    @Qualifier("approvalQueue")
-    private BlockingQueue<ApprovalMessage> approvalQueue;
+    private StringRedisTemplate redisTemplate;
 
     @Autowired
     private RoomJpaRepository roomJpaRepository;
 
+    @Value("${approval.queue.visibility-timeout-ms:300000}")
+    private long visibilityTimeoutMs;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
     public boolean enqueueRoomForApproval(UUID roomId) {
         try {
             // Kiểm tra xem roomId đã có trong queue hay chưa
@@ -38,15 +110,13 @@ public class ApprovalQueueService {
             Room room = roomJpaRepository.findById(roomId)
                     .orElseThrow(() -> new RuntimeException("Room not found: " + roomId));
 
-            ApprovalMessage approvalMessage = createApprovalMessage(room);
-
-            boolean added = approvalQueue.offer(approvalMessage);
+            boolean added = offer(createApprovalMessage(room));
 
             if (added) {
                 System.out.println("[ApprovalQueueService] ✅ Room " + roomId + " added to approval queue");
                 return true;
             } else {
-                System.err.println("[ApprovalQueueService] ❌ Failed to add room " + roomId + " to queue (queue full)");
+                System.out.println("[ApprovalQueueService] ⏭️ Room " + roomId + " already exists in approval queue");
                 return false;
             }
 
@@ -57,11 +127,10 @@ public class ApprovalQueueService {
     }
 
     /**
-     * Kiểm tra xem roomId đã tồn tại trong queue hay chưa
+     * Kiểm tra xem roomId đã tồn tại trong queue (đang chờ hoặc đang xử lý)
      */
     private boolean isRoomAlreadyInQueue(UUID roomId) {
-        return approvalQueue.stream()
-                .anyMatch(message -> message.getRoomId().equals(roomId));
+        return Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(MEMBERS_KEY, roomId.toString()));
     }
 
     /**
@@ -71,34 +140,32 @@ public class ApprovalQueueService {
     public int enqueuePendingRooms() {
         try {
             // Lấy tất cả phòng chờ duyệt (approval = 0)
-            List<Room> pendingRooms = roomJpaRepository.findAll().stream()
-                    .filter(room -> room.getApproval() == 0 && room.getIsRemoved() == 0)
-                    .collect(Collectors.toList());
+            List<UUID> pendingRoomIds = roomJpaRepository.findPendingApprovalRoomIds();
 
             int enqueuedCount = 0;
             int skippedDuplicateCount = 0;
 
-            for (Room room : pendingRooms) {
-                // Kiểm tra xem roomId đã có trong queue hay chưa
-                if (isRoomAlreadyInQueue(room.getId())) {
+            for (UUID roomId : pendingRoomIds) {
+                // Kiểm tra trước để khỏi load room đã có trong queue
+                if (isRoomAlreadyInQueue(roomId)) {
                     skippedDuplicateCount++;
-                    System.out
-                            .println("[ApprovalQueueService] ⏭️ Skipped room " + room.getId() + " (already in queue)");
                     continue;
                 }
 
-                ApprovalMessage approvalMessage = createApprovalMessage(room);
+                Room room = roomJpaRepository.findById(roomId).orElse(null);
+                if (room == null) {
+                    continue;
+                }
 
-                if (approvalQueue.offer(approvalMessage)) {
+                if (offer(createApprovalMessage(room))) {
                     enqueuedCount++;
-                    System.out.println("[ApprovalQueueService] ✅ Room " + room.getId() + " added to approval queue");
+                    System.out.println("[ApprovalQueueService] ✅ Room " + roomId + " added to approval queue");
                 } else {
-                    System.err.println("[ApprovalQueueService] ❌ Queue full, skipped room " + room.getId());
-                    break; // Queue đã đầy
+                    skippedDuplicateCount++;
                 }
             }
 
-            System.out.println("[ApprovalQueueService] 📊 Total: " + pendingRooms.size() +
+            System.out.println("[ApprovalQueueService] 📊 Total: " + pendingRoomIds.size() +
                     " pending rooms, " + enqueuedCount + " enqueued, " +
                     skippedDuplicateCount + " duplicates skipped");
             return enqueuedCount;
@@ -109,6 +176,82 @@ public class ApprovalQueueService {
         }
     }
 
+    private boolean offer(ApprovalMessage message) throws Exception {
+        Long added = redisTemplate.execute(ENQUEUE_SCRIPT,
+                List.of(MEMBERS_KEY, MESSAGES_KEY, READY_KEY),
+                message.getRoomId().toString(), objectMapper.writeValueAsString(message));
+        return added != null && added == 1L;
+    }
+
+    /**
+     * Lấy 1 job để xử lý. Job nằm trong inflight tới khi {@link #acknowledge} hoặc
+     * hết visibility timeout (khi đó được trả lại hàng đợi cho worker khác).
+     *
+     * @return null nếu hàng đợi rỗng
+     */
+    public ApprovalMessage claimNext() {
+        while (true) {
+            String payload = redisTemplate.execute(CLAIM_SCRIPT,
+                    List.of(READY_KEY, INFLIGHT_KEY, MESSAGES_KEY, MEMBERS_KEY),
+                    String.valueOf(System.currentTimeMillis() + visibilityTimeoutMs));
+            if (payload == null) {
+                return null;
+            }
+            if (payload.isEmpty()) {
+                continue; // message đã bị clear, bỏ qua
+            }
+            try {
+                return objectMapper.readValue(payload, ApprovalMessage.class);
+            } catch (Exception e) {
+                System.err.println("[ApprovalQueueService] ❌ Dropping unreadable approval message: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Xử lý xong (duyệt/từ chối, hoặc bỏ sau khi hết lượt retry): xóa khỏi queue.
+     */
+    public void acknowledge(UUID roomId) {
+        redisTemplate.execute(ACK_SCRIPT, List.of(INFLIGHT_KEY, MEMBERS_KEY, MESSAGES_KEY), roomId.toString());
+    }
+
+    /**
+     * Trả job về hàng đợi sau {@code delayMs} (giữ nguyên chỗ trong members để
+     * không bị enqueue trùng trong lúc chờ retry).
+     */
+    public boolean retryLater(ApprovalMessage message, long delayMs) {
+        try {
+            Long updated = redisTemplate.execute(RETRY_SCRIPT, List.of(INFLIGHT_KEY, MESSAGES_KEY),
+                    message.getRoomId().toString(), objectMapper.writeValueAsString(message),
+                    String.valueOf(System.currentTimeMillis() + delayMs));
+            return updated != null && updated == 1L;
+        } catch (Exception e) {
+            System.err.println("[ApprovalQueueService] ❌ Failed to schedule retry for room " + message.getRoomId()
+                    + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Trả các job hết visibility timeout (worker chết giữa chừng) hoặc đến hạn
+     * retry về hàng đợi.
+     */
+    @Scheduled(fixedDelayString = "${approval.queue.reap-interval-ms:30000}")
+    public void requeueExpiredLeases() {
+        try {
+            Long requeued;
+            do {
+                requeued = redisTemplate.execute(REAP_SCRIPT, List.of(INFLIGHT_KEY, READY_KEY),
+                        String.valueOf(System.currentTimeMillis()), String.valueOf(REAP_BATCH_SIZE));
+                if (requeued != null && requeued > 0) {
+                    System.out.println("[ApprovalQueueService] Re-queued " + requeued + " expired approval jobs");
+                }
+            } while (requeued != null && requeued >= REAP_BATCH_SIZE);
+        } catch (Exception e) {
+            System.err.println("[ApprovalQueueService] ❌ Error re-queuing expired jobs: " + e.getMessage());
+        }
+    }
+
     private ApprovalMessage createApprovalMessage(Room room) {
         List<String> convenientNames = room.getConvenients() != null
                 ? room.getConvenients().stream()
@@ -178,19 +321,18 @@ public class ApprovalQueueService {
      * Lấy thông tin trạng thái queue
      */
     public QueueStatus getQueueStatus() {
-        int queueSize = approvalQueue.size();
-        int remainingCapacity = approvalQueue.remainingCapacity();
-        int totalCapacity = queueSize + remainingCapacity;
-
-        return new QueueStatus(queueSize, totalCapacity, remainingCapacity);
+        Long waiting = redisTemplate.opsForList().size(READY_KEY);
+        Long inFlight = redisTemplate.opsForZSet().zCard(INFLIGHT_KEY);
+        return new QueueStatus(waiting != null ? waiting.intValue() : 0, inFlight != null ? inFlight.intValue() : 0);
     }
 
     /**
      * Xóa tất cả phòng trong queue (emergency clear)
      */
     public int clearQueue() {
-        int cleared = approvalQueue.size();
-        approvalQueue.clear();
+        Long size = redisTemplate.opsForSet().size(MEMBERS_KEY);
+        redisTemplate.delete(List.of(READY_KEY, MEMBERS_KEY, INFLIGHT_KEY, MESSAGES_KEY));
+        int cleared = size != null ? size.intValue() : 0;
         System.out.println("[ApprovalQueueService] Cleared " + cleared + " items from approval queue");
         return cleared;
     }
@@ -199,52 +341,51 @@ public class ApprovalQueueService {
      * Lấy danh sách tất cả room IDs hiện tại trong queue (để debug/monitoring)
      */
     public List<UUID> getCurrentQueueRoomIds() {
-        return approvalQueue.stream()
-                .map(ApprovalMessage::getRoomId)
-                .collect(Collectors.toList());
+        List<String> ids = new ArrayList<>();
+        List<String> waiting = redisTemplate.opsForList().range(READY_KEY, 0, -1);
+        if (waiting != null) {
+            ids.addAll(waiting);
+        }
+        var inFlight = redisTemplate.opsForZSet().range(INFLIGHT_KEY, 0, -1);
+        if (inFlight != null) {
+            ids.addAll(inFlight);
+        }
+        return ids.stream().map(UUID::fromString).collect(Collectors.toList());
     }
 
     /**
-     * Đếm số lượng room ID cụ thể trong queue
+     * Đếm số lượng room ID cụ thể trong queue (0 hoặc 1 vì queue chống trùng)
      */
     public int countRoomInQueue(UUID roomId) {
-        return (int) approvalQueue.stream()
-                .filter(message -> message.getRoomId().equals(roomId))
-                .count();
+        return isRoomAlreadyInQueue(roomId) ? 1 : 0;
     }
 
     // Inner class for queue status
     public static class QueueStatus {
-        private final int currentSize;
-        private final int totalCapacity;
-        private final int remainingCapacity;
-
-        public QueueStatus(int currentSize, int totalCapacity, int remainingCapacity) {
-            this.currentSize = currentSize;
-            this.totalCapacity = totalCapacity;
-            this.remainingCapacity = remainingCapacity;
-        }
+        private final int waiting;
+        private final int inFlight;
 
-        public int getCurrentSize() {
-            return currentSize;
+        public QueueStatus(int waiting, int inFlight) {
+            this.waiting = waiting;
+            this.inFlight = inFlight;
         }
 
-        public int getTotalCapacity() {
-            return totalCapacity;
+        public int getCurrentSize() {
+            return waiting + inFlight;
         }
 
-        public int getRemainingCapacity() {
-            return remainingCapacity;
+        public int getWaiting() {
+            return waiting;
         }
 
-        public double getUsagePercentage() {
-            return totalCapacity > 0 ? (double) currentSize / totalCapacity * 100 : 0;
+        public int getInFlight() {
+            return inFlight;
         }
 
         @Override
         public String toString() {
-            return String.format("QueueStatus{size=%d/%d (%.1f%%), remaining=%d}",
-                    currentSize, totalCapacity, getUsagePercentage(), remainingCapacity);
+            return String.format("QueueStatus{size=%d, waiting=%d, inFlight=%d}",
+                    getCurrentSize(), waiting, inFlight);
         }
     }
 }
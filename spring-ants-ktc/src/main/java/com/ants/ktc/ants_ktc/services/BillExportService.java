@@ -1,115 +1,205 @@
 package com.ants.ktc.ants_ktc.services;
 
-import com.ants.ktc.ants_ktc.entities.Bill;
-import com.ants.ktc.ants_ktc.entities.Room;
 import com.ants.ktc.ants_ktc.repositories.BillJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.ContractJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.BillExportProjection;
 import lombok.RequiredArgsConstructor;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.YearMonth;
-import java.util.List;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.UUID;
-
+import java.util.stream.Stream;
+
+/**
+ * Xuất hóa đơn ra Excel dạng stream: khoảng tháng lọc trong SQL, đọc từng
+ * dòng từ DB và ghi qua SXSSFWorkbook (chỉ giữ {@code bill.export.row-window}
+ * dòng trong heap, phần còn lại xả ra file tạm) thẳng vào OutputStream của
+ * response. Bộ nhớ không phụ thuộc số hóa đơn, kể cả khi xuất toàn bộ phòng
+ * của 1 landlord.
+ */
 @Service
 @RequiredArgsConstructor
 public class BillExportService {
 
+    // Không giới hạn tháng (tháng dạng "yyyy-MM")
+    private static final String MIN_MONTH = "0000-00";
+    private static final String MAX_MONTH = "9999-99";
+
+    private static final String[] BILL_HEADERS = {
+            "Month",
+            "Elec Price", "Elec Usage", "Elec Fee",
+            "Water Price", "Water Usage", "Water Fee",
+            "Service Fee", "Damage Fee",
+            "Total", "Status"
+    };
+    private static final String[] CONTRACT_HEADERS = { "Contract", "Room" };
+
     private final BillJpaRepository billJpaRepository;
+    private final ContractJpaRepository contractJpaRepository;
+
+    @Value("${bill.export.row-window:100}")
+    private int rowWindow = 100;
+
+    @Value("${bill.export.max-contract-ids:100}")
+    private int maxContractIds = 100;
+
+    /**
+     * Gọi trước khi bắt đầu stream (lỗi sau đó không còn trả được 400): giới hạn
+     * số hợp đồng mỗi lần export và kiểm tra mọi hợp đồng thuộc landlord.
+     * landlordId = null (admin) thì bỏ qua kiểm tra quyền.
+     */
+    @Transactional(readOnly = true)
+    public void checkContracts(Collection<UUID> contractIds, UUID landlordId) {
+        if (contractIds == null || contractIds.isEmpty()) {
+            throw new IllegalArgumentException("contractIds is required");
+        }
+        if (contractIds.size() > maxContractIds) {
+            throw new IllegalArgumentException("At most " + maxContractIds + " contracts per export");
+        }
+        if (landlordId != null && contractJpaRepository.countByIdsAndLandlordId(contractIds,
+                landlordId) != contractIds.size()) {
+            throw new IllegalArgumentException("Contract not found or does not belong to the current landlord.");
+        }
+    }
 
-    public byte[] exportBillsToExcel(UUID contractId, String fromMonth, String toMonth) throws Exception {
-        // Chuyển từ String sang YearMonth
-        YearMonth from = YearMonth.parse(fromMonth); // Ví dụ: "2024-01"
-        YearMonth to = YearMonth.parse(toMonth);
-
-        // Lọc bills theo khoảng tháng
-        List<Bill> bills = billJpaRepository.findByContractId(contractId)
-                .stream()
-                .filter(b -> {
-                    YearMonth ym = YearMonth.parse(b.getMonth());
-                    return (ym.equals(from) || ym.isAfter(from)) &&
-                            (ym.equals(to)   || ym.isBefore(to));
-                })
-                .toList();
-
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Bills");
-        int rowIdx = 0;
-
-        // Header row
-        Row header = sheet.createRow(rowIdx++);
-        String[] headers = {
-                "Month",
-                "Elec Price", "Elec Usage", "Elec Fee",
-                "Water Price", "Water Usage", "Water Fee",
-                "Service Fee", "Damage Fee",
-                "Total", "Status"
-        };
-
-        for (int i = 0; i < headers.length; i++) {
-            Cell cell = header.createCell(i);
-            cell.setCellValue(headers[i]);
+    /**
+     * Hóa đơn của 1 hoặc nhiều hợp đồng. 1 hợp đồng giữ nguyên các cột như
+     * trước, nhiều hợp đồng thì thêm cột Contract/Room ở đầu.
+     */
+    @Transactional(readOnly = true)
+    public void writeContractBills(Collection<UUID> contractIds, String fromMonth, String toMonth,
+            OutputStream out) throws IOException {
+        if (contractIds == null || contractIds.isEmpty()) {
+            throw new IllegalArgumentException("contractIds is required");
+        }
+        try (Stream<BillExportProjection> rows = billJpaRepository.streamForExportByContractIds(contractIds,
+                normalizeMonth(fromMonth, MIN_MONTH), normalizeMonth(toMonth, MAX_MONTH))) {
+            write(rows.iterator(), contractIds.size() > 1, out);
         }
+    }
 
-        // Data rows
-        for (Bill b : bills) {
-            Room room = b.getContract().getRoom();
-            Double elecPrice = room.getElecPrice();
-            Double waterPrice = room.getWaterPrice();
-
-            Double elecUsage = (elecPrice != null && elecPrice > 0)
-                    ? safeDivide(b.getElectricityFee(), elecPrice)
-                    : null;
-            Double waterUsage = (waterPrice != null && waterPrice > 0)
-                    ? safeDivide(b.getWaterFee(), waterPrice)
-                    : null;
-
-            // Tính damageFee = totalAmount - (electricity + water + service)
-            Double damageFee = null;
-            if (b.getTotalAmount() != null) {
-                double elec = b.getElectricityFee() != null ? b.getElectricityFee() : 0.0;
-                double water = b.getWaterFee() != null ? b.getWaterFee() : 0.0;
-                double service = b.getServiceFee() != null ? b.getServiceFee() : 0.0;
-                damageFee = b.getTotalAmount() - (elec + water + service);
-            }
+    // Toàn bộ hóa đơn của mọi phòng thuộc landlord; không truyền tháng = mọi tháng
+    @Transactional(readOnly = true)
+    public void writeLandlordBills(UUID landlordId, String fromMonth, String toMonth, OutputStream out)
+            throws IOException {
+        try (Stream<BillExportProjection> rows = billJpaRepository.streamForExportByLandlordId(landlordId,
+                normalizeMonth(fromMonth, MIN_MONTH), normalizeMonth(toMonth, MAX_MONTH))) {
+            write(rows.iterator(), true, out);
+        }
+    }
 
-            Row row = sheet.createRow(rowIdx++);
-            int col = 0;
+    private void write(Iterator<BillExportProjection> rows, boolean withContract, OutputStream out)
+            throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(rowWindow);
+        workbook.setCompressTempFiles(true);
+        try {
+            Sheet sheet = workbook.createSheet("Bills");
+            int offset = withContract ? CONTRACT_HEADERS.length : 0;
+            int rowIdx = 0;
+
+            // Header row
+            Row header = sheet.createRow(rowIdx++);
+            if (withContract) {
+                for (int i = 0; i < CONTRACT_HEADERS.length; i++) {
+                    header.createCell(i).setCellValue(CONTRACT_HEADERS[i]);
+                }
+            }
+            for (int i = 0; i < BILL_HEADERS.length; i++) {
+                header.createCell(offset + i).setCellValue(BILL_HEADERS[i]);
+            }
 
-            row.createCell(col++).setCellValue(b.getMonth());
+            // autoSizeColumn cần đọc cả sheet nên đặt độ rộng cố định (đơn vị 1/256 ký tự)
+            for (int i = 0; i < offset; i++) {
+                sheet.setColumnWidth(i, 30 * 256);
+            }
+            for (int i = 0; i < BILL_HEADERS.length; i++) {
+                sheet.setColumnWidth(offset + i, 14 * 256);
+            }
 
-            row.createCell(col++).setCellValue(elecPrice != null ? elecPrice : 0);
-            row.createCell(col++).setCellValue(elecUsage != null ? elecUsage : 0);
-            row.createCell(col++).setCellValue(b.getElectricityFee() != null ? b.getElectricityFee() : 0);
+            // Data rows
+            while (rows.hasNext()) {
+                BillExportProjection b = rows.next();
+                Double elecPrice = b.getElecPrice();
+                Double waterPrice = b.getWaterPrice();
+
+                Double elecUsage = (elecPrice != null && elecPrice > 0)
+                        ? safeDivide(b.getElectricityFee(), elecPrice)
+                        : null;
+                Double waterUsage = (waterPrice != null && waterPrice > 0)
+                        ? safeDivide(b.getWaterFee(), waterPrice)
+                        : null;
+
+                // Tính damageFee = totalAmount - (electricity + water + service)
+                Double damageFee = null;
+                if (b.getTotalAmount() != null) {
+                    double elec = b.getElectricityFee() != null ? b.getElectricityFee() : 0.0;
+                    double water = b.getWaterFee() != null ? b.getWaterFee() : 0.0;
+                    double service = b.getServiceFee() != null ? b.getServiceFee() : 0.0;
+                    damageFee = b.getTotalAmount() - (elec + water + service);
+                }
+
+                Row row = sheet.createRow(rowIdx++);
+                int col = 0;
+
+                if (withContract) {
+                    row.createCell(col++).setCellValue(b.getContractName() != null ? b.getContractName() : "");
+                    row.createCell(col++).setCellValue(b.getRoomTitle() != null ? b.getRoomTitle() : "");
+                }
+
+                row.createCell(col++).setCellValue(b.getMonth());
+
+                row.createCell(col++).setCellValue(elecPrice != null ? elecPrice : 0);
+                row.createCell(col++).setCellValue(elecUsage != null ? elecUsage : 0);
+                row.createCell(col++).setCellValue(b.getElectricityFee() != null ? b.getElectricityFee() : 0);
+
+                row.createCell(col++).setCellValue(waterPrice != null ? waterPrice : 0);
+                row.createCell(col++).setCellValue(waterUsage != null ? waterUsage : 0);
+                row.createCell(col++).setCellValue(b.getWaterFee() != null ? b.getWaterFee() : 0);
+
+                row.createCell(col++).setCellValue(b.getServiceFee() != null ? b.getServiceFee() : 0);
+                row.createCell(col++).setCellValue(damageFee != null ? damageFee : 0);
+
+                row.createCell(col++).setCellValue(b.getTotalAmount() != null ? b.getTotalAmount() : 0);
+                row.createCell(col++).setCellValue(b.getStatus() != null ? b.getStatus().name() : "");
+            }
 
-            row.createCell(col++).setCellValue(waterPrice != null ? waterPrice : 0);
-            row.createCell(col++).setCellValue(waterUsage != null ? waterUsage : 0);
-            row.createCell(col++).setCellValue(b.getWaterFee() != null ? b.getWaterFee() : 0);
+            workbook.write(out);
+            out.flush();
+        } finally {
+            // Xóa file tạm của các dòng đã xả ra đĩa
+            workbook.dispose();
+            workbook.close();
+        }
+    }
 
-            row.createCell(col++).setCellValue(b.getServiceFee() != null ? b.getServiceFee() : 0);
-            row.createCell(col++).setCellValue(damageFee != null ? damageFee : 0);
+    // Kiểm tra định dạng yyyy-MM; rỗng -> giá trị mặc định
+    // Như checkContracts: gọi trước khi stream để tháng sai trả 400 thay vì file cụt
+    public void checkMonths(String fromMonth, String toMonth) {
+        normalizeMonth(fromMonth, MIN_MONTH);
+        normalizeMonth(toMonth, MAX_MONTH);
+    }
 
-            row.createCell(col++).setCellValue(b.getTotalAmount() != null ? b.getTotalAmount() : 0);
-            row.createCell(col++).setCellValue(b.getStatus() != null ? b.getStatus().name() : "");
+    private String normalizeMonth(String month, String defaultValue) {
+        if (month == null || month.isBlank()) {
+            return defaultValue;
         }
-
-        // Auto size columns
-        for (int i = 0; i < headers.length; i++) {
-            sheet.autoSizeColumn(i);
+        try {
+            return YearMonth.parse(month.trim()).toString();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid month (expected yyyy-MM): " + month);
         }
-
-        // Ghi ra byte[]
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        workbook.write(bos);
-        workbook.close();
-
-        return bos.toByteArray();
     }
 
     private Double safeDivide(Double numerator, Double denominator) {
         if (numerator == null || denominator == null || denominator == 0) return null;
         return numerator / denominator;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,293 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import com.ants.ktc.ants_ktc.dtos.bill.BillPdfJobResponseDto;
+import com.ants.ktc.ants_ktc.enums.BillPdfJobStatus;
+import com.ants.ktc.ants_ktc.repositories.BillJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.BillInvoiceProjection;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Render hàng loạt hóa đơn PDF của 1 landlord trong 1 tháng (mọi hợp đồng)
+ * thành 1 file ZIP, chạy nền và theo dõi qua jobId.
+ * <ul>
+ * <li>Dữ liệu mọi hóa đơn lấy bằng 1 query, không lazy-load từng bill.</li>
+ * <li>Render song song trên pool cố định {@code bill.pdf.batch.threads};
+ * mỗi job chỉ để tối đa {@code threads * 4} hóa đơn chờ ghi nên bộ nhớ không
+ * tăng theo số hóa đơn.</li>
+ * <li>ZIP ghi vào {@code bill.pdf.batch.dir}, xóa sau
+ * {@code bill.pdf.batch.retention-ms}.</li>
+ * </ul>
+ * Trạng thái job nằm trong bộ nhớ của node đã nhận job (file ZIP cũng ở đĩa
+ * của node đó).
+ */
+@Service
+public class BillPdfBatchService {
+
+    @Autowired
+    private BillPdfService billPdfService;
+
+    @Autowired
+    private BillJpaRepository billJpaRepository;
+
+    // 0 = số core
+    @Value("${bill.pdf.batch.threads:0}")
+    private int threads;
+
+    @Value("${bill.pdf.batch.max-concurrent-jobs:2}")
+    private int maxConcurrentJobs;
+
+    @Value("${bill.pdf.batch.max-queued-jobs:20}")
+    private int maxQueuedJobs;
+
+    @Value("${bill.pdf.batch.dir:${java.io.tmpdir}/bill-invoices}")
+    private String outputDir;
+
+    @Value("${bill.pdf.batch.retention-ms:3600000}")
+    private long retentionMs;
+
+    private final Map<UUID, Job> jobs = new ConcurrentHashMap<>();
+
+    private ThreadPoolTaskExecutor jobExecutor;
+    private ThreadPoolTaskExecutor renderExecutor;
+    private Path directory;
+
+    private static class Job {
+        private final UUID id = UUID.randomUUID();
+        private final UUID landlordId;
+        // User đã tạo job, chỉ người này (hoặc admin) xem/tải được kết quả
+        private final UUID ownerId;
+        private final String month;
+        private final Date createdAt = new Date();
+        private final AtomicInteger rendered = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile BillPdfJobStatus status = BillPdfJobStatus.QUEUED;
+        private volatile int total;
+        private volatile Date finishedAt;
+        private volatile String error;
+        private volatile Path file;
+
+        private Job(UUID landlordId, UUID ownerId, String month) {
+            this.landlordId = landlordId;
+            this.ownerId = ownerId;
+            this.month = month;
+        }
+    }
+
+    private record Rendered(BillInvoiceProjection bill, byte[] pdf) {
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        int renderThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        directory = Paths.get(outputDir);
+        Files.createDirectories(directory);
+
+        jobExecutor = new ThreadPoolTaskExecutor();
+        jobExecutor.setCorePoolSize(maxConcurrentJobs);
+        jobExecutor.setMaxPoolSize(maxConcurrentJobs);
+        jobExecutor.setQueueCapacity(maxQueuedJobs);
+        jobExecutor.setThreadNamePrefix("bill-pdf-job-");
+        jobExecutor.initialize();
+
+        // Hàng đợi không giới hạn nhưng mỗi job chỉ giữ tối đa renderThreads * 4 task
+        renderExecutor = new ThreadPoolTaskExecutor();
+        renderExecutor.setCorePoolSize(renderThreads);
+        renderExecutor.setMaxPoolSize(renderThreads);
+        renderExecutor.setThreadNamePrefix("bill-pdf-render-");
+        renderExecutor.initialize();
+
+        System.out.println("[BillPdfBatchService] " + renderThreads + " render threads, output " + directory);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdown();
+        renderExecutor.shutdown();
+    }
+
+    public BillPdfJobResponseDto submit(UUID landlordId, String month, UUID ownerId) {
+        if (landlordId == null) {
+            throw new IllegalArgumentException("landlordId is required");
+        }
+        String normalizedMonth;
+        try {
+            normalizedMonth = YearMonth.parse(month).toString();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid month (expected yyyy-MM): " + month);
+        }
+
+        Job job = new Job(landlordId, ownerId, normalizedMonth);
+        jobs.put(job.id, job);
+        try {
+            jobExecutor.execute(() -> run(job));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.id);
+            throw new IllegalArgumentException("Too many invoice jobs in progress, please try again later");
+        }
+        return toDto(job);
+    }
+
+    // ownerId = null (admin) thì xem được mọi job
+    public BillPdfJobResponseDto getStatus(UUID jobId, UUID ownerId) {
+        return toDto(findJob(jobId, ownerId));
+    }
+
+    // File ZIP của job đã xong
+    public Path getResult(UUID jobId, UUID ownerId) {
+        Job job = findJob(jobId, ownerId);
+        if (job.status != BillPdfJobStatus.DONE || job.file == null || !Files.exists(job.file)) {
+            throw new IllegalArgumentException("Invoice job is not finished: " + job.status);
+        }
+        return job.file;
+    }
+
+    @Scheduled(fixedDelayString = "${bill.pdf.batch.cleanup-interval-ms:600000}")
+    public void cleanup() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        jobs.values().removeIf(job -> {
+            if (job.finishedAt == null || job.finishedAt.getTime() > cutoff) {
+                return false;
+            }
+            deleteQuietly(job.file);
+            return true;
+        });
+    }
+
+    // Job của người khác cũng báo không tìm thấy, không lộ jobId nào đang tồn tại
+    private Job findJob(UUID jobId, UUID ownerId) {
+        Job job = jobs.get(jobId);
+        if (job == null || (ownerId != null && !ownerId.equals(job.ownerId))) {
+            throw new IllegalArgumentException("Invoice job not found");
+        }
+        return job;
+    }
+
+    private void run(Job job) {
+        job.status = BillPdfJobStatus.RUNNING;
+        long start = System.currentTimeMillis();
+        Path part = directory.resolve(job.id + ".zip.part");
+        try {
+            List<BillInvoiceProjection> bills = billJpaRepository.findInvoicesByLandlordIdAndMonth(job.landlordId,
+                    job.month);
+            job.total = bills.size();
+
+            CompletionService<Rendered> completion = new ExecutorCompletionService<>(renderExecutor);
+            int window = Math.max(1, renderExecutor.getMaxPoolSize() * 4);
+            int submitted = 0;
+            try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(part)))) {
+                while (submitted < bills.size() && submitted < window) {
+                    submitRender(completion, bills.get(submitted++));
+                }
+                for (int done = 0; done < bills.size(); done++) {
+                    Future<Rendered> future = completion.take();
+                    if (submitted < bills.size()) {
+                        submitRender(completion, bills.get(submitted++));
+                    }
+                    try {
+                        Rendered rendered = future.get();
+                        zip.putNextEntry(new ZipEntry(fileName(rendered.bill())));
+                        zip.write(rendered.pdf());
+                        zip.closeEntry();
+                        job.rendered.incrementAndGet();
+                    } catch (ExecutionException e) {
+                        job.failed.incrementAndGet();
+                        System.err.println("[BillPdfBatchService] Job " + job.id + ": render failed - "
+                                + e.getCause().getMessage());
+                    }
+                }
+            }
+
+            Path target = directory.resolve(job.id + ".zip");
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+            job.file = target;
+            job.status = BillPdfJobStatus.DONE;
+            System.out.println("[BillPdfBatchService] Job " + job.id + ": " + job.rendered.get() + "/" + job.total
+                    + " invoices in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(job, part, "Interrupted");
+        } catch (Exception e) {
+            System.err.println("[BillPdfBatchService] Job " + job.id + " failed: " + e.getMessage());
+            fail(job, part, e.getMessage());
+        } finally {
+            job.finishedAt = new Date();
+        }
+    }
+
+    private void submitRender(CompletionService<Rendered> completion, BillInvoiceProjection bill) {
+        completion.submit(() -> {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(16 * 1024);
+            billPdfService.render(bill, bos);
+            return new Rendered(bill, bos.toByteArray());
+        });
+    }
+
+    private void fail(Job job, Path part, String error) {
+        job.error = error;
+        job.status = BillPdfJobStatus.FAILED;
+        deleteQuietly(part);
+    }
+
+    // {phòng}_{tháng}_{billId}.pdf, bỏ ký tự không hợp lệ trong tên file
+    private String fileName(BillInvoiceProjection bill) {
+        String room = bill.getRoomName() != null ? bill.getRoomName() : "room";
+        return room.replaceAll("[\\\\/:*?\"<>|\\s]+", "_") + "_" + bill.getMonth() + "_" + bill.getBillId() + ".pdf";
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("[BillPdfBatchService] Cannot delete " + file + ": " + e.getMessage());
+        }
+    }
+
+    private BillPdfJobResponseDto toDto(Job job) {
+        return BillPdfJobResponseDto.builder()
+                .jobId(job.id)
+                .landlordId(job.landlordId)
+                .month(job.month)
+                .status(job.status)
+                .total(job.total)
+                .rendered(job.rendered.get())
+                .failed(job.failed.get())
+                .createdAt(job.createdAt)
+                .finishedAt(job.finishedAt)
+                .error(job.error)
+                .downloadUrl(job.status == BillPdfJobStatus.DONE ? "/api/bills/pdf-jobs/" + job.id + "/download" : null)
+                .build();
+    }
+}
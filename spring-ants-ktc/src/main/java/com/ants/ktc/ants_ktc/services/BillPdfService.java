@@ -1,12 +1,18 @@
 package com.ants.ktc.ants_ktc.services;
 
-import com.ants.ktc.ants_ktc.entities.Bill;
-import com.ants.ktc.ants_ktc.entities.Contract;
 import com.ants.ktc.ants_ktc.repositories.BillJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.BillInvoiceProjection;
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.font.constants.StandardFonts;
 import com.itextpdf.kernel.colors.DeviceRgb;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
+import com.itextpdf.layout.Style;
 import com.itextpdf.layout.element.*;
 import com.itextpdf.layout.properties.TextAlignment;
 import com.itextpdf.layout.properties.UnitValue;
@@ -14,32 +20,60 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
 public class BillPdfService {
+        // Dùng chung cho mọi hóa đơn, chỉ tạo 1 lần. PdfFont gắn với từng PdfDocument
+        // nên chỉ FontProgram (metrics đã parse) được dùng chung, mỗi hóa đơn tạo PdfFont từ đó.
+        private static final FontProgram REGULAR_FONT = loadFont(StandardFonts.HELVETICA);
+        private static final FontProgram BOLD_FONT = loadFont(StandardFonts.HELVETICA_BOLD);
+        private static final DeviceRgb SUBTITLE_COLOR = new DeviceRgb(100, 100, 100);
+        private static final DeviceRgb FOOTER_COLOR = new DeviceRgb(120, 120, 120);
+        private static final float[] CUSTOMER_COLUMNS = { 1, 2 };
+        private static final float[] BILL_COLUMNS = { 2, 1.5f, 1.5f, 1.5f };
+        private static final Style SECTION_STYLE = new Style()
+                        .setFontSize(14)
+                        .setFontColor(new DeviceRgb(50, 50, 50));
+        private static final Style HEADER_CELL_STYLE = new Style()
+                        .setBackgroundColor(new DeviceRgb(230, 230, 230))
+                        .setTextAlignment(TextAlignment.CENTER);
+
         private final BillJpaRepository billJpaRepository;
 
         public byte[] exportBillPdf(UUID billId) throws Exception {
-                Bill bill = billJpaRepository.findById(billId)
+                BillInvoiceProjection bill = billJpaRepository.findInvoiceById(billId)
                                 .orElseThrow(() -> new IllegalArgumentException("Bill not found"));
 
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                PdfWriter writer = new PdfWriter(bos);
-                PdfDocument pdf = new PdfDocument(writer);
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(16 * 1024);
+                render(bill, bos);
+                return bos.toByteArray();
+        }
+
+        /**
+         * Render 1 hóa đơn vào out. Thread-safe: mỗi lần gọi có PdfDocument/PdfFont
+         * riêng, chỉ đọc các font/style/màu dùng chung ở trên.
+         */
+        public void render(BillInvoiceProjection bill, OutputStream out) throws IOException {
+                PdfDocument pdf = new PdfDocument(new PdfWriter(out));
+                PdfFont bold = PdfFontFactory.createFont(BOLD_FONT, PdfEncodings.WINANSI);
                 Document doc = new Document(pdf);
+                doc.setFont(PdfFontFactory.createFont(REGULAR_FONT, PdfEncodings.WINANSI));
 
                 // ---------- HEADER ----------
                 Paragraph header = new Paragraph("RENTAL INVOICE")
-                                .setBold()
+                                .setFont(bold)
                                 .setFontSize(18)
                                 .setTextAlignment(TextAlignment.CENTER);
 
                 Paragraph subHeader = new Paragraph("Payment for Room Rental")
                                 .setFontSize(12)
-                                .setFontColor(new DeviceRgb(100, 100, 100))
+                                .setFontColor(SUBTITLE_COLOR)
                                 .setTextAlignment(TextAlignment.CENTER);
 
                 doc.add(header);
@@ -47,7 +81,7 @@ public class BillPdfService {
                 doc.add(new Paragraph("Issued Date: " + LocalDate.now())
                                 .setTextAlignment(TextAlignment.CENTER)
                                 .setFontSize(10));
-                doc.add(new Paragraph("Invoice ID: #" + bill.getId())
+                doc.add(new Paragraph("Invoice ID: #" + bill.getBillId())
                                 .setTextAlignment(TextAlignment.CENTER)
                                 .setFontSize(10));
 
@@ -55,53 +89,39 @@ public class BillPdfService {
 
                 // ---------- CUSTOMER INFO ----------
                 doc.add(new Paragraph("CUSTOMER INFORMATION")
-                                .setBold()
-                                .setFontSize(14)
-                                .setFontColor(new DeviceRgb(50, 50, 50)));
+                                .addStyle(SECTION_STYLE)
+                                .setFont(bold));
 
-                Table customerTable = new Table(UnitValue.createPercentArray(new float[] { 1, 2 }))
+                Table customerTable = new Table(UnitValue.createPercentArray(CUSTOMER_COLUMNS))
                                 .useAllAvailableWidth();
 
-                // Lấy dữ liệu từ bill -> tenant -> room
-
-                Contract contract = bill.getContract();
-                String tenantName = (contract.getTenant() != null && contract.getTenant().getUsername() != null)
-                                ? contract.getTenant().getUsername()
-                                : "N/A";
-                String tenantPhone = (contract.getTenant() != null
-                                && contract.getTenant().getProfile() != null
-                                && contract.getTenant().getProfile().getPhoneNumber() != null)
-                                                ? contract.getTenant().getProfile().getPhoneNumber()
-                                                : "N/A";
-
-                String roomName = (contract.getRoom() != null && contract.getRoom().getName() != null)
-                                ? contract.getRoom().getName()
-                                : "N/A";
+                String tenantName = bill.getTenantName() != null ? bill.getTenantName() : "N/A";
+                String tenantPhone = bill.getTenantPhone() != null ? bill.getTenantPhone() : "N/A";
+                String roomName = bill.getRoomName() != null ? bill.getRoomName() : "N/A";
 
-                customerTable.addCell(makeCell("Full Name:", true));
-                customerTable.addCell(makeCell(tenantName, false));
+                customerTable.addCell(makeCell(bold, "Full Name:", true));
+                customerTable.addCell(makeCell(bold, tenantName, false));
 
-                customerTable.addCell(makeCell("Phone Number:", true));
-                customerTable.addCell(makeCell(tenantPhone, false));
+                customerTable.addCell(makeCell(bold, "Phone Number:", true));
+                customerTable.addCell(makeCell(bold, tenantPhone, false));
 
-                customerTable.addCell(makeCell("Room:", true));
-                customerTable.addCell(makeCell(roomName, false));
+                customerTable.addCell(makeCell(bold, "Room:", true));
+                customerTable.addCell(makeCell(bold, roomName, false));
 
-                customerTable.addCell(makeCell("Month:", true));
-                customerTable.addCell(makeCell(bill.getMonth(), false));
+                customerTable.addCell(makeCell(bold, "Month:", true));
+                customerTable.addCell(makeCell(bold, bill.getMonth(), false));
 
                 doc.add(customerTable);
                 doc.add(new Paragraph("\n"));
 
                 // ---------- BILL DETAILS ----------
                 doc.add(new Paragraph("BILL DETAILS")
-                                .setBold()
-                                .setFontSize(14)
-                                .setFontColor(new DeviceRgb(50, 50, 50)));
+                                .addStyle(SECTION_STYLE)
+                                .setFont(bold));
 
                 // Get room prices for calculations (same logic as BillExportService)
-                Double elecPrice = contract.getRoom().getElecPrice();
-                Double waterPrice = contract.getRoom().getWaterPrice();
+                Double elecPrice = bill.getElecPrice();
+                Double waterPrice = bill.getWaterPrice();
 
                 // Calculate usage (same logic as BillExportService)
                 Double elecUsage = (elecPrice != null && elecPrice > 0)
@@ -121,53 +141,53 @@ public class BillPdfService {
                 }
 
                 // Create detailed table with 4 columns: Item, Price, Usage, Amount
-                Table billTable = new Table(UnitValue.createPercentArray(new float[] { 2, 1.5f, 1.5f, 1.5f }))
+                Table billTable = new Table(UnitValue.createPercentArray(BILL_COLUMNS))
                                 .useAllAvailableWidth();
 
                 // header row
-                billTable.addHeaderCell(makeHeaderCell("Item"));
-                billTable.addHeaderCell(makeHeaderCell("Price"));
-                billTable.addHeaderCell(makeHeaderCell("Usage"));
-                billTable.addHeaderCell(makeHeaderCell("Amount"));
+                billTable.addHeaderCell(makeHeaderCell(bold, "Item"));
+                billTable.addHeaderCell(makeHeaderCell(bold, "Price"));
+                billTable.addHeaderCell(makeHeaderCell(bold, "Usage"));
+                billTable.addHeaderCell(makeHeaderCell(bold, "Amount"));
 
                 // Electricity row
-                billTable.addCell(makeCell("Electricity", false));
-                billTable.addCell(makeCell(elecPrice != null ? formatMoney(elecPrice) + "/kWh" : "N/A", false,
+                billTable.addCell(makeCell(bold, "Electricity", false));
+                billTable.addCell(makeCell(bold, elecPrice != null ? formatMoney(elecPrice) + "/kWh" : "N/A", false,
                                 TextAlignment.CENTER));
-                billTable.addCell(makeCell(elecUsage != null ? String.format("%.2f kWh", elecUsage) : "N/A", false,
+                billTable.addCell(makeCell(bold, elecUsage != null ? String.format("%.2f kWh", elecUsage) : "N/A", false,
                                 TextAlignment.CENTER));
-                billTable.addCell(makeCell(formatMoney(bill.getElectricityFee() != null ? bill.getElectricityFee() : 0),
+                billTable.addCell(makeCell(bold, formatMoney(bill.getElectricityFee() != null ? bill.getElectricityFee() : 0),
                                 false, TextAlignment.RIGHT));
 
                 // Water row
-                billTable.addCell(makeCell("Water", false));
-                billTable.addCell(makeCell(waterPrice != null ? formatMoney(waterPrice) + "/m³" : "N/A", false,
+                billTable.addCell(makeCell(bold, "Water", false));
+                billTable.addCell(makeCell(bold, waterPrice != null ? formatMoney(waterPrice) + "/m³" : "N/A", false,
                                 TextAlignment.CENTER));
-                billTable.addCell(makeCell(waterUsage != null ? String.format("%.2f m³", waterUsage) : "N/A", false,
+                billTable.addCell(makeCell(bold, waterUsage != null ? String.format("%.2f m³", waterUsage) : "N/A", false,
                                 TextAlignment.CENTER));
-                billTable.addCell(makeCell(formatMoney(bill.getWaterFee() != null ? bill.getWaterFee() : 0), false,
+                billTable.addCell(makeCell(bold, formatMoney(bill.getWaterFee() != null ? bill.getWaterFee() : 0), false,
                                 TextAlignment.RIGHT));
 
                 // Service fee row
-                billTable.addCell(makeCell("Service Fee", false));
-                billTable.addCell(makeCell("-", false, TextAlignment.CENTER));
-                billTable.addCell(makeCell("-", false, TextAlignment.CENTER));
-                billTable.addCell(makeCell(formatMoney(bill.getServiceFee() != null ? bill.getServiceFee() : 0), false,
+                billTable.addCell(makeCell(bold, "Service Fee", false));
+                billTable.addCell(makeCell(bold, "-", false, TextAlignment.CENTER));
+                billTable.addCell(makeCell(bold, "-", false, TextAlignment.CENTER));
+                billTable.addCell(makeCell(bold, formatMoney(bill.getServiceFee() != null ? bill.getServiceFee() : 0), false,
                                 TextAlignment.RIGHT));
 
                 // Damage fee row (only show if > 0)
                 if (damageFee != null && damageFee > 0) {
-                        billTable.addCell(makeCell("Damage Fee", false));
-                        billTable.addCell(makeCell("-", false, TextAlignment.CENTER));
-                        billTable.addCell(makeCell("-", false, TextAlignment.CENTER));
-                        billTable.addCell(makeCell(formatMoney(damageFee), false, TextAlignment.RIGHT));
+                        billTable.addCell(makeCell(bold, "Damage Fee", false));
+                        billTable.addCell(makeCell(bold, "-", false, TextAlignment.CENTER));
+                        billTable.addCell(makeCell(bold, "-", false, TextAlignment.CENTER));
+                        billTable.addCell(makeCell(bold, formatMoney(damageFee), false, TextAlignment.RIGHT));
                 }
 
                 // total row
-                billTable.addCell(makeCell("TOTAL", true));
-                billTable.addCell(makeCell("", true));
-                billTable.addCell(makeCell("", true));
-                billTable.addCell(makeCell(formatMoney(bill.getTotalAmount() != null ? bill.getTotalAmount() : 0), true,
+                billTable.addCell(makeCell(bold, "TOTAL", true));
+                billTable.addCell(makeCell(bold, "", true));
+                billTable.addCell(makeCell(bold, "", true));
+                billTable.addCell(makeCell(bold, formatMoney(bill.getTotalAmount() != null ? bill.getTotalAmount() : 0), true,
                                 TextAlignment.RIGHT));
 
                 doc.add(billTable);
@@ -177,11 +197,10 @@ public class BillPdfService {
                 Paragraph footer = new Paragraph("Thank you for choosing our service!")
                                 .setFontSize(10)
                                 .setTextAlignment(TextAlignment.CENTER)
-                                .setFontColor(new DeviceRgb(120, 120, 120));
+                                .setFontColor(FOOTER_COLOR);
                 doc.add(footer);
 
                 doc.close();
-                return bos.toByteArray();
         }
 
         // Helper method: format money
@@ -196,21 +215,28 @@ public class BillPdfService {
                 return numerator / denominator;
         }
 
-        // Helper method: styled cell
-        private Cell makeCell(String text, boolean bold) {
-                return makeCell(text, bold, TextAlignment.LEFT);
+        // Helper method: styled cell (boldFont: font đậm của document đang render)
+        private Cell makeCell(PdfFont boldFont, String text, boolean bold) {
+                return makeCell(boldFont, text, bold, TextAlignment.LEFT);
         }
 
-        private Cell makeCell(String text, boolean bold, TextAlignment align) {
+        private Cell makeCell(PdfFont boldFont, String text, boolean bold, TextAlignment align) {
                 Paragraph p = new Paragraph(text).setFontSize(11).setTextAlignment(align);
                 if (bold)
-                        p.setBold();
+                        p.setFont(boldFont);
                 return new Cell().add(p);
         }
 
-        private Cell makeHeaderCell(String text) {
-                return new Cell().add(new Paragraph(text).setBold().setFontSize(12))
-                                .setBackgroundColor(new DeviceRgb(230, 230, 230))
-                                .setTextAlignment(TextAlignment.CENTER);
+        private Cell makeHeaderCell(PdfFont boldFont, String text) {
+                return new Cell().add(new Paragraph(text).setFont(boldFont).setFontSize(12))
+                                .addStyle(HEADER_CELL_STYLE);
+        }
+
+        private static FontProgram loadFont(String name) {
+                try {
+                        return FontProgramFactory.createFont(name);
+                } catch (IOException e) {
+                        throw new UncheckedIOException("Cannot load font " + name, e);
+                }
         }
 }
@@ -8,6 +8,7 @@ import java.util.UUID;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -36,12 +37,15 @@ import com.ants.ktc.ants_ktc.entities.Booking;
 import com.ants.ktc.ants_ktc.entities.Room;
 import com.ants.ktc.ants_ktc.entities.User;
 import com.ants.ktc.ants_ktc.entities.UserProfile;
+import com.ants.ktc.ants_ktc.events.RoomChangedEvent;
 import com.ants.ktc.ants_ktc.repositories.BookingJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.LandlordTaskJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.projection.BookingLandlordProjection;
 import com.ants.ktc.ants_ktc.repositories.projection.BookingUserProjection;
+import com.ants.ktc.ants_ktc.services.batch.BatchJobService;
+import com.ants.ktc.ants_ktc.services.batch.RoomAvailabilityCheckJob;
 
 @Service
 public class BookingService {
@@ -70,6 +74,12 @@ public class BookingService {
         @Autowired
         private CloudinaryService cloudinaryService;
 
+        @Autowired
+        private ApplicationEventPublisher eventPublisher;
+
+        @Autowired
+        private BatchJobService batchJobService;
+
         @Transactional
         public BookingRoomByUserResponseDto createBooking(UUID userId, BookingRoomRequestDto request) {
                 User user = userJpaRepository.findById(userId)
@@ -218,6 +228,7 @@ public class BookingService {
                         if (room.getAvailable() == 1) {
                                 room.setAvailable(0);
                                 roomJpaRepository.save(room);
+                                eventPublisher.publishEvent(new RoomChangedEvent(room.getId()));
                         }
                 }
                 // Landlord
@@ -235,6 +246,7 @@ public class BookingService {
                                 // room.setAvailable(0);
                                 room.setAvailable(1);
                                 roomJpaRepository.save(room);
+                                eventPublisher.publishEvent(new RoomChangedEvent(room.getId()));
 
                                 // Reject other pending bookings (status = 0) for this room
                                 try {
@@ -423,6 +435,7 @@ public class BookingService {
                 if (room != null) {
                         room.setAvailable(0);
                         roomJpaRepository.save(room);
+                        eventPublisher.publishEvent(new RoomChangedEvent(room.getId()));
                 } else {
                         System.err.println(
                                         "[BookingService.deleteBooking] Warning: booking.room is null for booking id: "
@@ -509,37 +522,18 @@ public class BookingService {
         // ======================== Scheduled Tasks
         // ========================//
 
-        @Scheduled(cron = "0 0 1 * * ?") // Chạy hàng ngày lúc 1:00 AM
-        // @Scheduled(cron = "0 10 11 * * ?") // Chạy hàng ngày 11 giờ 10 phút trưa
-        @Transactional
+        // Chạy hàng ngày lúc 1:00 AM, theo chunk qua BatchJobService (xem RoomAvailabilityCheckJob).
+        // Job chạy trên luồng của BatchJobService, không giữ luồng scheduler.
+        @Scheduled(cron = "${batch.jobs.room-availability-check.cron:0 0 1 * * ?}")
         public void dailyRoomAvailabilityCheck() {
-                Date currentDate = new Date();
-
-                // Lấy tất cả booking có status = 4 (đang thuê) và chưa bị xóa
-                List<Booking> activeBookings = bookingJpaRepository.findActiveBookingsForAvailabilityCheck();
-
-                int updatedRooms = 0;
-                for (Booking booking : activeBookings) {
-                        Date rentalDate = booking.getRentalDate();
-                        Date rentalExpires = booking.getRentalExpires();
-
-                        if (rentalDate != null && rentalExpires != null) {
-                                boolean isOutsideRentalPeriod = currentDate.before(rentalDate)
-                                                || currentDate.after(rentalExpires);
-
-                                if (isOutsideRentalPeriod) {
-                                        Room room = booking.getRoom();
-                                        if (room != null && room.getAvailable() == 1) {
-                                                room.setAvailable(0);
-                                                roomJpaRepository.save(room);
-                                                updatedRooms++;
-                                        }
-                                }
+                batchJobService.runAsync(RoomAvailabilityCheckJob.NAME).whenComplete((execution, error) -> {
+                        if (error != null) {
+                                System.err.println("⏰ Daily room availability check failed: " + error.getMessage());
+                        } else if (execution != null) {
+                                System.out.println("⏰ Daily room availability check " + execution.getStatus()
+                                                + ". Updated " + execution.getWriteCount() + " rooms to unavailable.");
                         }
-                }
-
-                System.out.println("⏰ Daily room availability check completed. Updated " + updatedRooms
-                                + " rooms to unavailable.");
+                });
         }
 
         // ======================== Projection-based conversion methods
@@ -585,6 +579,7 @@ public class BookingService {
                                 .priceDeposit(roomProjection.getPrice_deposit())
                                 .available(roomProjection.getAvailable())
                                 .area(roomProjection.getArea())
+                                .coverImageUrl(roomProjection.getCoverImageUrl())
                                 .ownerName(roomProjection.getUser() != null
                                                 && roomProjection.getUser().getProfile() != null
                                                                 ? roomProjection.getUser().getProfile().getFullName()
@@ -607,6 +602,7 @@ public class BookingService {
                                 .priceDeposit(roomProjection.getPrice_deposit())
                                 .available(roomProjection.getAvailable())
                                 .area(roomProjection.getArea())
+                                .coverImageUrl(roomProjection.getCoverImageUrl())
                                 .address(buildAddressDtoFromLandlordProjection(roomProjection.getAddress()))
                                 .build();
         }
@@ -0,0 +1,184 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import com.ants.ktc.ants_ktc.dtos.message.MessageResponseDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Cache N tin nhắn mới nhất của các hội thoại đang hoạt động trong Redis, để mở
+ * khung chat không phải query MySQL mỗi lần.
+ * <ul>
+ * <li>{@code chat:recent:{conversationId}} (LIST): JSON tin nhắn, mới nhất ở
+ * đầu, tối đa {@code chat.history-cache.size} phần tử</li>
+ * <li>{@code chat:recent:{conversationId}:gen} (STRING): tăng mỗi khi hội thoại
+ * có thay đổi. Lúc nạp cache từ DB chỉ ghi nếu gen không đổi so với trước khi
+ * đọc DB, tránh ghi đè mất tin vừa được writer thêm vào</li>
+ * </ul>
+ */
+@Service
+public class ChatHistoryCache {
+
+    private static final String KEY_PREFIX = "chat:recent:";
+
+    // Chỉ nạp khi chưa có list và gen vẫn như lúc bắt đầu đọc DB
+    private static final DefaultRedisScript<Long> POPULATE_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then return 0 end "
+                    + "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end "
+                    + "for i = 3, #ARGV do redis.call('RPUSH', KEYS[1], ARGV[i]) end "
+                    + "redis.call('PEXPIRE', KEYS[1], ARGV[2]) "
+                    + "return 1",
+            Long.class);
+
+    // Tin mới (cũ -> mới) chỉ được thêm vào list đã có sẵn
+    private static final DefaultRedisScript<Long> APPEND_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('INCR', KEYS[2]) "
+                    + "redis.call('PEXPIRE', KEYS[2], ARGV[2]) "
+                    + "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end "
+                    + "for i = 3, #ARGV do redis.call('LPUSH', KEYS[1], ARGV[i]) end "
+                    + "redis.call('LTRIM', KEYS[1], 0, tonumber(ARGV[1]) - 1) "
+                    + "redis.call('PEXPIRE', KEYS[1], ARGV[2]) "
+                    + "return 1",
+            Long.class);
+
+    private static final DefaultRedisScript<Long> INVALIDATE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('INCR', KEYS[2]) "
+                    + "redis.call('PEXPIRE', KEYS[2], ARGV[1]) "
+                    + "return redis.call('DEL', KEYS[1])",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${chat.history-cache.size:50}")
+    private int maxSize;
+
+    @Value("${chat.history-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return size tin mới nhất (mới -> cũ), hoặc null nếu chưa có trong cache
+     */
+    public List<MessageResponseDto> getLatest(UUID conversationId, int size) {
+        if (size > maxSize) {
+            return null;
+        }
+        try {
+            List<String> values = redisTemplate.opsForList().range(listKey(conversationId), 0, size - 1);
+            if (values == null || values.isEmpty()) {
+                misses.increment();
+                return null;
+            }
+            List<MessageResponseDto> result = new ArrayList<>(values.size());
+            for (String value : values) {
+                result.add(objectMapper.readValue(value, MessageResponseDto.class));
+            }
+            hits.increment();
+            return result;
+        } catch (Exception e) {
+            System.err.println("[ChatHistoryCache] Read failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Đọc gen trước khi query DB, truyền lại cho {@link #populate}.
+     */
+    public String generation(UUID conversationId) {
+        try {
+            String gen = redisTemplate.opsForValue().get(genKey(conversationId));
+            return gen != null ? gen : "0";
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param latest tối đa maxSize tin mới nhất lấy từ DB (mới -> cũ)
+     */
+    public void populate(UUID conversationId, String generation, List<MessageResponseDto> latest) {
+        if (generation == null || latest.isEmpty()) {
+            return;
+        }
+        try {
+            List<String> args = new ArrayList<>(latest.size() + 2);
+            args.add(generation);
+            args.add(String.valueOf(ttlMinutes * 60_000));
+            for (MessageResponseDto message : latest) {
+                args.add(objectMapper.writeValueAsString(message));
+            }
+            redisTemplate.execute(POPULATE_SCRIPT, List.of(listKey(conversationId), genKey(conversationId)),
+                    args.toArray());
+        } catch (Exception e) {
+            System.err.println("[ChatHistoryCache] Populate failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gọi sau khi tin nhắn đã commit xuống DB.
+     *
+     * @param messages tin mới của 1 hội thoại, cũ -> mới
+     */
+    public void append(UUID conversationId, List<MessageResponseDto> messages) {
+        try {
+            List<String> args = new ArrayList<>(messages.size() + 2);
+            args.add(String.valueOf(maxSize));
+            args.add(String.valueOf(ttlMinutes * 60_000));
+            for (MessageResponseDto message : messages) {
+                args.add(objectMapper.writeValueAsString(message));
+            }
+            redisTemplate.execute(APPEND_SCRIPT, List.of(listKey(conversationId), genKey(conversationId)),
+                    args.toArray());
+        } catch (Exception e) {
+            System.err.println("[ChatHistoryCache] Append failed: " + e.getMessage());
+        }
+    }
+
+    // Trạng thái đã đọc thay đổi: bỏ cache, lần mở chat sau nạp lại từ DB
+    public void invalidate(UUID conversationId) {
+        try {
+            redisTemplate.execute(INVALIDATE_SCRIPT, List.of(listKey(conversationId), genKey(conversationId)),
+                    String.valueOf(ttlMinutes * 60_000));
+        } catch (Exception e) {
+            System.err.println("[ChatHistoryCache] Invalidate failed: " + e.getMessage());
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private String listKey(UUID conversationId) {
+        return KEY_PREFIX + conversationId;
+    }
+
+    private String genKey(UUID conversationId) {
+        return KEY_PREFIX + conversationId + ":gen";
+    }
+}
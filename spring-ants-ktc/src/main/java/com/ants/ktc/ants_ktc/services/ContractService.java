@@ -1,7 +1,5 @@
 package com.ants.ktc.ants_ktc.services;
 
-import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -12,10 +10,10 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.ants.ktc.ants_ktc.dtos.LandlordTask.LandlordTaskCreateDto;
 import com.ants.ktc.ants_ktc.dtos.bill.BillResponseDto;
 import com.ants.ktc.ants_ktc.dtos.contract.ContractRequestDto;
 import com.ants.ktc.ants_ktc.dtos.contract.ContractResponseDto;
@@ -27,6 +25,8 @@ import com.ants.ktc.ants_ktc.entities.User;
 import com.ants.ktc.ants_ktc.repositories.ContractJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
+import com.ants.ktc.ants_ktc.services.batch.BatchJobService;
+import com.ants.ktc.ants_ktc.services.batch.ContractBillTaskJob;
 
 @Service
 @Transactional
@@ -42,7 +42,7 @@ public class ContractService {
     private UserJpaRepository userJpaRepository;
 
     @Autowired
-    private LandlordTaskService landlordTaskService;
+    private BatchJobService batchJobService;
 
     @Autowired
     private CloudinaryService cloudinaryService;
@@ -189,34 +189,21 @@ public class ContractService {
         return null;
     }
 
-    @Scheduled(cron = "0 0 1 * * *") // 1h sáng mỗi ngày
+    // 1h sáng mỗi ngày, theo chunk qua BatchJobService (xem ContractBillTaskJob).
+    // Không chạy trong transaction của class để mỗi chunk commit riêng; job chạy
+    // trên luồng của BatchJobService, không giữ luồng scheduler.
+    @Scheduled(cron = "${batch.jobs.contract-bill-tasks.cron:0 0 1 * * *}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void autoTaskBillsGeneration() {
         System.out.println("[Auto Task] Start generating tasks for contracts...");
-        List<Contract> activeContracts = contractJpaRepository.findByStatus(0); // 0 = ACTIVE
-
-        for (Contract contract : activeContracts) {
-            LocalDate startDate = contract.getStartDate().toInstant()
-                    .atZone(java.time.ZoneId.systemDefault())
-                    .toLocalDate();
-            long days = java.time.temporal.ChronoUnit.DAYS.between(startDate, LocalDate.now());
-
-            if (days > 0 && days % 30 == 0) {
-                LandlordTaskCreateDto dto = LandlordTaskCreateDto.builder()
-                        .title("Bills month " + LocalDate.now().getMonthValue() + "/"
-                                + LocalDate.now().getYear() + " for room " + contract.getRoom().getTitle())
-                        .description("Calculate the monthly rent for room " + contract.getRoom().getTitle())
-                        .startDate(LocalDateTime.now())
-                        .dueDate(LocalDateTime.now().plusDays(7))
-                        .type("BILL")
-                        .status("PENDING")
-                        .priority("MEDIUM")
-                        .landlordId(contract.getLandlord().getId().toString())
-                        .roomId(contract.getRoom().getId().toString())
-                        .build();
-
-                landlordTaskService.createTask(dto);
+        batchJobService.runAsync(ContractBillTaskJob.NAME).whenComplete((execution, error) -> {
+            if (error != null) {
+                System.err.println("[Auto Task] Failed: " + error.getMessage());
+            } else if (execution != null) {
+                System.out.println("[Auto Task] " + execution.getStatus() + ": " + execution.getWriteCount()
+                        + " bill tasks for " + execution.getReadCount() + " active contracts");
             }
-        }
+        });
     }
 
     /**
@@ -0,0 +1,200 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ants.ktc.ants_ktc.entities.Messages;
+import com.ants.ktc.ants_ktc.repositories.ConversationJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.MessagesJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.ChatUserProjection;
+
+/**
+ * Bảng tóm tắt hội thoại (conversations): tin nhắn cuối, thời điểm cuối và số
+ * tin chưa đọc của từng bên. Được cập nhật dần khi gửi tin / đánh dấu đã đọc
+ * để danh sách chat chỉ cần 1 query có index thay vì quét toàn bộ messages.
+ */
+@Service
+public class ConversationService {
+
+    @Autowired
+    private ConversationJpaRepository conversationRepository;
+
+    @Autowired
+    private MessagesJpaRepository messagesRepository;
+
+    @Value("${chat.history.backfill-batch-size:5000}")
+    private int backfillBatchSize;
+
+    // true khi mọi tin nhắn cũ đã có conversation_id, trước đó đọc lịch sử theo
+    // cách cũ (lọc 2 chiều from/to)
+    private volatile boolean conversationIdsReady = false;
+
+    public boolean isConversationIdsReady() {
+        return conversationIdsReady;
+    }
+
+    // Dữ liệu cũ: dựng bảng tóm tắt từ messages nếu bảng còn trống, gán
+    // conversation_id cho các tin nhắn chưa có
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            long start = System.currentTimeMillis();
+            int normalized = conversationRepository.normalizeIds();
+            int rows = conversationRepository.countAll() > 0 ? 0 : conversationRepository.rebuildFromMessages();
+            System.out.println("[ConversationService] Backfilled " + rows + " conversations, normalized "
+                    + normalized + " ids in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            System.err.println("[ConversationService] Backfill failed: " + e.getMessage());
+        }
+        try {
+            long start = System.currentTimeMillis();
+            long total = 0;
+            int updated;
+            do {
+                updated = messagesRepository.backfillConversationIds(backfillBatchSize);
+                total += updated;
+            } while (updated > 0);
+            conversationIdsReady = messagesRepository.countMissingConversationId() == 0;
+            System.out.println("[ConversationService] Set conversation_id on " + total + " messages in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            System.err.println("[ConversationService] conversation_id backfill failed: " + e.getMessage());
+        }
+    }
+
+    @Transactional
+    public void onMessageSaved(UUID fromUserId, UUID toUserId, String content, LocalDateTime sentAt) {
+        boolean fromIsLow = isLow(fromUserId, toUserId);
+        UUID userLow = fromIsLow ? fromUserId : toUserId;
+        UUID userHigh = fromIsLow ? toUserId : fromUserId;
+        // Người nhận là bên được cộng unread
+        int incLow = toUserId.equals(userLow) ? 1 : 0;
+        int incHigh = incLow == 1 ? 0 : 1;
+        conversationRepository.upsertOnMessage(conversationId(userLow, userHigh), userLow, userHigh, content,
+                fromUserId, sentAt, incLow, incHigh);
+    }
+
+    /**
+     * Cập nhật cho cả lô tin nhắn vừa ghi: gom theo cặp user để mỗi cặp chỉ còn 1
+     * câu upsert (cộng dồn unread, lấy tin mới nhất).
+     */
+    @Transactional
+    public void onMessagesSaved(List<Messages> messages) {
+        Map<String, PairUpdate> updates = new LinkedHashMap<>();
+        for (Messages m : messages) {
+            UUID from = m.getFromUser().getId();
+            UUID to = m.getToUser().getId();
+            boolean fromIsLow = isLow(from, to);
+            UUID userLow = fromIsLow ? from : to;
+            UUID userHigh = fromIsLow ? to : from;
+            PairUpdate update = updates.computeIfAbsent(userLow + ":" + userHigh,
+                    k -> new PairUpdate(userLow, userHigh));
+            if (to.equals(userLow)) {
+                update.incLow++;
+            } else {
+                update.incHigh++;
+            }
+            if (update.lastSentAt == null || !m.getSentAt().isBefore(update.lastSentAt)) {
+                update.lastSentAt = m.getSentAt();
+                update.lastMessage = m.getContent();
+                update.lastSenderId = from;
+            }
+        }
+        for (PairUpdate u : updates.values()) {
+            conversationRepository.upsertOnMessage(conversationId(u.userLow, u.userHigh), u.userLow, u.userHigh,
+                    u.lastMessage, u.lastSenderId, u.lastSentAt, u.incLow, u.incHigh);
+        }
+    }
+
+    /**
+     * readerId vừa đọc count tin nhắn do otherUserId gửi.
+     */
+    @Transactional
+    public void onMessagesRead(UUID readerId, UUID otherUserId, int count) {
+        if (count <= 0) {
+            return;
+        }
+        boolean readerIsLow = isLow(readerId, otherUserId);
+        UUID userLow = readerIsLow ? readerId : otherUserId;
+        UUID userHigh = readerIsLow ? otherUserId : readerId;
+        conversationRepository.decrementUnread(userLow, userHigh, readerId, count);
+    }
+
+    public List<Map<String, Object>> getChatUsers(UUID userId, int page, int size) {
+        List<ChatUserProjection> rows = conversationRepository.findChatUsers(userId,
+                PageRequest.of(Math.max(page, 0), size > 0 ? Math.min(size, 100) : 20));
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (ChatUserProjection row : rows) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("id", UUID.fromString(row.getId()));
+            map.put("name", row.getFullName() != null && !row.getFullName().isEmpty()
+                    ? row.getFullName()
+                    : row.getUsername());
+            map.put("unreadCount", row.getUnreadCount() != null ? row.getUnreadCount() : 0);
+            map.put("lastMessage", row.getLastMessage());
+            map.put("lastSenderId", row.getLastSenderId());
+            map.put("lastSentAt", row.getLastSentAt());
+            result.add(map);
+        }
+        return result;
+    }
+
+    // Cùng thứ tự với so sánh BINARY(16) trong MySQL (byte không dấu, big-endian)
+    static boolean isLow(UUID a, UUID b) {
+        int cmp = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+        }
+        return cmp <= 0;
+    }
+
+    /**
+     * Khóa cố định của cặp user, không phụ thuộc chiều gửi. Bằng
+     * UNHEX(MD5(CONCAT(user_low_id, user_high_id))) bên MySQL để backfill bằng SQL
+     * cho ra cùng giá trị.
+     */
+    public static UUID conversationId(UUID a, UUID b) {
+        UUID low = isLow(a, b) ? a : b;
+        UUID high = low == a ? b : a;
+        ByteBuffer pair = ByteBuffer.allocate(32);
+        pair.putLong(low.getMostSignificantBits()).putLong(low.getLeastSignificantBits());
+        pair.putLong(high.getMostSignificantBits()).putLong(high.getLeastSignificantBits());
+        try {
+            ByteBuffer digest = ByteBuffer.wrap(MessageDigest.getInstance("MD5").digest(pair.array()));
+            return new UUID(digest.getLong(), digest.getLong());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+
+    private static class PairUpdate {
+        final UUID userLow;
+        final UUID userHigh;
+        int incLow;
+        int incHigh;
+        String lastMessage;
+        UUID lastSenderId;
+        LocalDateTime lastSentAt;
+
+        PairUpdate(UUID userLow, UUID userHigh) {
+            this.userLow = userLow;
+            this.userHigh = userHigh;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import com.ants.ktc.ants_ktc.dtos.approval.ApprovalRequestDto;
+import com.ants.ktc.ants_ktc.dtos.approval.ApprovalResult;
+import com.ants.ktc.ants_ktc.models.ApprovalMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Client gọi service duyệt phòng Gemini (api_gemini, Flask).
+ * <ul>
+ * <li>Token bucket giới hạn số phòng gửi đi mỗi giây (quota Gemini)</li>
+ * <li>Giới hạn số request đang chạy cùng lúc</li>
+ * <li>Batch mode: gửi N phòng / request tới {@code /ai_approval_batch}</li>
+ * <li>Timeout theo từng phòng và circuit breaker: model chậm/lỗi liên tục thì
+ * ngắt một lúc, các job còn lại fail nhanh để worker trả về queue</li>
+ * </ul>
+ */
+@Service
+public class GeminiApprovalClient {
+
+    private final String baseUrl;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final long circuitOpenMs;
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TokenBucket tokenBucket;
+    private final Semaphore inFlight;
+    private final CircuitBreaker circuitBreaker;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rooms = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder rejectedByCircuit = new LongAdder();
+
+    public GeminiApprovalClient(
+            @Value("${approval.gemini.base-url:http://localhost:5001}") String baseUrl,
+            @Value("${approval.gemini.rate-per-second:2}") double ratePerSecond,
+            @Value("${approval.gemini.burst:4}") int burst,
+            @Value("${approval.gemini.max-in-flight:3}") int maxInFlight,
+            @Value("${approval.gemini.batch-size:1}") int batchSize,
+            @Value("${approval.gemini.timeout-ms:60000}") long timeoutMs,
+            @Value("${approval.gemini.circuit.failure-threshold:5}") int failureThreshold,
+            @Value("${approval.gemini.circuit.open-ms:60000}") long circuitOpenMs) {
+        this.baseUrl = baseUrl;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.circuitOpenMs = circuitOpenMs;
+        this.tokenBucket = new TokenBucket(ratePerSecond, Math.max(1, burst));
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, circuitOpenMs);
+
+        // Read timeout tính cho cả batch: timeout mỗi phòng x số phòng
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout((int) Math.min(timeoutMs, 10000));
+        requestFactory.setReadTimeout((int) Math.min(Integer.MAX_VALUE, timeoutMs * this.batchSize));
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    /**
+     * Số job nên claim mỗi vòng để tận dụng hết concurrency và batch.
+     */
+    public int getWindowSize() {
+        return maxInFlight * batchSize;
+    }
+
+    public long getCircuitOpenMs() {
+        return circuitOpenMs;
+    }
+
+    public CompletableFuture<ApprovalResult> submit(ApprovalMessage job) {
+        return submitAll(List.of(job)).get(0);
+    }
+
+    /**
+     * Gửi duyệt nhiều phòng. Future thứ i ứng với job thứ i; fail với
+     * {@link CircuitOpenException} nếu circuit đang mở, hoặc lỗi HTTP/timeout.
+     */
+    public List<CompletableFuture<ApprovalResult>> submitAll(List<ApprovalMessage> jobs) {
+        List<CompletableFuture<ApprovalResult>> futures = new ArrayList<>(jobs.size());
+        for (int from = 0; from < jobs.size(); from += batchSize) {
+            List<ApprovalMessage> part = jobs.subList(from, Math.min(from + batchSize, jobs.size()));
+            List<CompletableFuture<ApprovalResult>> partFutures = new ArrayList<>(part.size());
+            for (int i = 0; i < part.size(); i++) {
+                partFutures.add(new CompletableFuture<>());
+            }
+            futures.addAll(partFutures);
+            executor.execute(() -> execute(part, partFutures));
+        }
+        return futures;
+    }
+
+    private void execute(List<ApprovalMessage> part, List<CompletableFuture<ApprovalResult>> futures) {
+        try {
+            inFlight.acquire();
+            try {
+                // Kiểm tra sau khi có slot để các job đang chờ fail nhanh khi circuit mở
+                if (!circuitBreaker.tryAcquire()) {
+                    rejectedByCircuit.add(part.size());
+                    throw new CircuitOpenException();
+                }
+                tokenBucket.acquire(part.size());
+
+                Map<String, ApprovalResult> results;
+                try {
+                    requests.increment();
+                    rooms.add(part.size());
+                    results = batchSize > 1 ? callBatch(part) : Map.of(part.get(0).getRoomId().toString(),
+                            callSingle(part.get(0)));
+                } catch (Exception e) {
+                    failures.increment();
+                    if (e instanceof ResourceAccessException && e.getCause() instanceof SocketTimeoutException) {
+                        timeouts.increment();
+                    }
+                    circuitBreaker.onFailure();
+                    throw e;
+                }
+
+                // status 0 = Gemini trả 429, coi như lỗi để circuit ngắt bớt
+                boolean limited = results.values().stream().anyMatch(r -> r.getStatus() == 0);
+                if (limited) {
+                    rateLimited.increment();
+                    circuitBreaker.onFailure();
+                } else {
+                    circuitBreaker.onSuccess();
+                }
+
+                for (int i = 0; i < part.size(); i++) {
+                    ApprovalResult result = results.get(part.get(i).getRoomId().toString());
+                    if (result != null) {
+                        futures.get(i).complete(result);
+                    } else {
+                        futures.get(i).completeExceptionally(
+                                new IllegalStateException("No approval result for room " + part.get(i).getRoomId()));
+                    }
+                }
+            } finally {
+                inFlight.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.completeExceptionally(e));
+        } catch (Exception e) {
+            futures.forEach(f -> f.completeExceptionally(e));
+        }
+    }
+
+    private ApprovalResult callSingle(ApprovalMessage job) throws Exception {
+        ResponseEntity<String> response = restTemplate.exchange(
+                baseUrl + "/ai_approval",
+                HttpMethod.POST,
+                new HttpEntity<>(toRequest(job), jsonHeaders()),
+                String.class);
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new Exception("API call failed with status: " + response.getStatusCode());
+        }
+        return toResult(objectMapper.readTree(response.getBody()));
+    }
+
+    private Map<String, ApprovalResult> callBatch(List<ApprovalMessage> jobs) throws Exception {
+        List<ApprovalRequestDto> body = new ArrayList<>(jobs.size());
+        for (ApprovalMessage job : jobs) {
+            body.add(toRequest(job));
+        }
+        ResponseEntity<String> response = restTemplate.exchange(
+                baseUrl + "/ai_approval_batch",
+                HttpMethod.POST,
+                new HttpEntity<>(Map.of("rooms", body), jsonHeaders()),
+                String.class);
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new Exception("Batch API call failed with status: " + response.getStatusCode());
+        }
+        Map<String, ApprovalResult> results = new HashMap<>();
+        JsonNode items = objectMapper.readTree(response.getBody()).get("results");
+        if (items != null && items.isArray()) {
+            for (JsonNode item : items) {
+                if (item.hasNonNull("id")) {
+                    try {
+                        results.put(item.get("id").asText(), toResult(item));
+                    } catch (IllegalStateException e) {
+                        // Phòng này không có kết quả -> job lỗi và đi đường retry
+                        System.err.println("[GeminiApprovalClient] " + e.getMessage());
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+
+    private ApprovalRequestDto toRequest(ApprovalMessage job) {
+        ApprovalRequestDto request = new ApprovalRequestDto();
+        request.setId(job.getRoomId().toString());
+        request.setTitle(job.getTitle());
+        request.setDescription(job.getDescription());
+        request.setPriceMonth(job.getPriceMonth());
+        request.setPriceDeposit(job.getPriceDeposit());
+        request.setArea(job.getArea());
+        request.setLength(job.getLength());
+        request.setWidth(job.getWidth());
+        request.setMaxPeople(job.getMaxPeople());
+        request.setElecPrice(job.getElecPrice());
+        request.setWaterPrice(job.getWaterPrice());
+        request.setFullAddress(job.getFullAddress());
+        request.setConvenients(job.getConvenients());
+        request.setImages(job.getImages());
+        return request;
+    }
+
+    // Thiếu status hoặc status không phải số nguyên thì ném lỗi để job được
+    // retry, không coi là REJECT (ẩn phòng, hoàn tiền, gửi mail từ chối)
+    private ApprovalResult toResult(JsonNode json) {
+        ApprovalResult result = new ApprovalResult();
+        result.setStatus(parseStatus(json.get("status")));
+
+        // Parse content array
+        JsonNode contentNode = json.get("content");
+        if (contentNode != null && contentNode.isArray()) {
+            StringBuilder contentBuilder = new StringBuilder();
+            for (JsonNode item : contentNode) {
+                if (contentBuilder.length() > 0) {
+                    contentBuilder.append("; ");
+                }
+                contentBuilder.append(item.asText());
+            }
+            result.setContent(contentBuilder.toString());
+        }
+        return result;
+    }
+
+    private int parseStatus(JsonNode status) {
+        if (status != null && status.isIntegralNumber() && status.canConvertToInt()) {
+            return status.intValue();
+        }
+        if (status != null && status.isTextual() && status.asText().trim().matches("-?\\d{1,9}")) {
+            return Integer.parseInt(status.asText().trim());
+        }
+        throw new IllegalStateException("Invalid approval status in response: " + status);
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("requests", requests.sum());
+        metrics.put("rooms", rooms.sum());
+        metrics.put("failures", failures.sum());
+        metrics.put("timeouts", timeouts.sum());
+        metrics.put("rateLimited", rateLimited.sum());
+        metrics.put("rejectedByCircuit", rejectedByCircuit.sum());
+        metrics.put("inFlight", maxInFlight - inFlight.availablePermits());
+        metrics.put("maxInFlight", maxInFlight);
+        metrics.put("batchSize", batchSize);
+        metrics.put("circuitState", circuitBreaker.getState().name());
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public static class CircuitOpenException extends RuntimeException {
+        public CircuitOpenException() {
+            super("Gemini approval circuit is open");
+        }
+    }
+
+    /**
+     * Token bucket: nạp {@code ratePerSecond} token/giây, tối đa {@code burst}.
+     * Lấy token trước rồi ngủ phần thiếu (có thể âm) để thứ tự giữ đúng FIFO.
+     */
+    static class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double ratePerSecond, int burst) {
+            this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+            this.capacity = burst;
+            this.tokens = burst;
+            this.lastRefill = System.nanoTime();
+        }
+
+        void acquire(int permits) throws InterruptedException {
+            long waitNanos = reserve(permits);
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+
+        private synchronized long reserve(int permits) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            tokens -= permits;
+            return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+        }
+    }
+
+    static class CircuitBreaker {
+        enum State {
+            CLOSED, OPEN, HALF_OPEN
+        }
+
+        private final int failureThreshold;
+        private final long openMs;
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean probeInFlight;
+
+        CircuitBreaker(int failureThreshold, long openMs) {
+            this.failureThreshold = Math.max(1, failureThreshold);
+            this.openMs = openMs;
+        }
+
+        // HALF_OPEN chỉ cho 1 request thử
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMs) {
+                state = State.HALF_OPEN;
+                probeInFlight = false;
+            }
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.HALF_OPEN && !probeInFlight) {
+                probeInFlight = true;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            probeInFlight = false;
+            state = State.CLOSED;
+        }
+
+        synchronized void onFailure() {
+            probeInFlight = false;
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                if (state != State.OPEN) {
+                    System.err.println("[GeminiApprovalClient] Circuit opened after " + consecutiveFailures
+                            + " consecutive failures");
+                }
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+            }
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ants.ktc.ants_ktc.dtos.room.PaginationRoomInUserResponseDto;
+import com.ants.ktc.ants_ktc.dtos.room.RoomInUserResponseDto;
+import com.ants.ktc.ants_ktc.events.RoomChangedEvent;
+import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Dựng sẵn feed trang chủ cho khách chưa đăng nhập (allroom-vip,
+ * allroom-normal theo loại tin và tỉnh, recent-rooms) để các request không
+ * chạm MySQL.
+ * <ul>
+ * <li>Mỗi feed giữ tối đa {@code feed.max-rooms} phòng đầu tiên, lưu JSON ở
+ * Redis {@code feed:{key}} để mọi node dùng chung; node nhận request giữ bản
+ * đã parse trong bộ nhớ và render JSON từng trang 1 lần</li>
+ * <li>Dựng lại khi có {@link RoomChangedEvent} (duyệt, ẩn, xóa, gia hạn...)
+ * sau 1 khoảng debounce, và toàn bộ định kỳ để loại phòng hết hạn đăng</li>
+ * <li>version là MD5 nội dung feed, dùng làm ETag nên dựng lại mà nội dung
+ * không đổi thì client/CDN vẫn nhận 304</li>
+ * </ul>
+ * Trang nằm ngoài cửa sổ dựng sẵn hoặc feed chưa có thì trả null, controller
+ * query DB như cũ.
+ */
+@Service
+public class HomeFeedService {
+
+    private static final String KEY_PREFIX = "feed:";
+    private static final String REFRESHED_CHANNEL = "feed:refreshed";
+    private static final String REFRESH_LOCK_KEY = "feed:refresh-lock";
+    private static final String RECENT_KEY = "recent";
+    private static final List<String> CODES = List.of("VIP", "NORMAL");
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private RoomJpaRepository roomJpaRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = false)
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired(required = false)
+    private RedisMessageListenerContainer chatListenerContainer;
+
+    @Value("${feed.enabled:true}")
+    private boolean enabled;
+
+    @Value("${feed.max-rooms:100}")
+    private int maxRooms;
+
+    @Value("${feed.refresh-interval-ms:600000}")
+    private long refreshIntervalMs;
+
+    // Cỡ trang UI dùng; cỡ khác thì query DB để cache trang không phình theo input
+    @Value("${feed.cached-page-sizes:5,10,20}")
+    private List<Integer> cachedPageSizes;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, LocalFeed> local = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder served = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    /**
+     * Nội dung 1 feed, lưu ở Redis. json là List RoomInUserResponseDto (feed theo
+     * loại tin) hoặc List RoomRecentResponseDto (recent-rooms).
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Snapshot {
+        private String json;
+        private long totalRecords;
+        private String version;
+        private long generatedAt;
+    }
+
+    public record RenderedPage(byte[] body, String etag, long lastModified) {
+    }
+
+    // Bản đã parse + các trang đã render của 1 snapshot trên node này
+    private static class LocalFeed {
+        final Snapshot snapshot;
+        final List<RoomInUserResponseDto> rooms;
+        final Map<String, RenderedPage> pages = new ConcurrentHashMap<>();
+        final long loadedAt = System.currentTimeMillis();
+
+        LocalFeed(Snapshot snapshot, List<RoomInUserResponseDto> rooms) {
+            this.snapshot = snapshot;
+            this.rooms = rooms;
+        }
+    }
+
+    @PostConstruct
+    public void subscribeRefreshes() {
+        if (chatListenerContainer == null) {
+            return;
+        }
+        chatListenerContainer.addMessageListener((message, pattern) -> {
+            // nodeId|key: node khác vừa ghi snapshot mới, bỏ bản local để nạp lại từ Redis
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 2);
+            if (parts.length == 2 && !nodeId.equals(parts[0])) {
+                local.remove(parts[1]);
+            }
+        }, new ChannelTopic(REFRESHED_CHANNEL));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            refreshAll(false);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${feed.refresh-interval-ms:600000}", initialDelayString = "${feed.refresh-interval-ms:600000}")
+    public void scheduledRefresh() {
+        if (enabled) {
+            refreshAll(true);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRoomChanged(RoomChangedEvent event) {
+        if (!enabled || event.getRoomId() == null) {
+            return;
+        }
+        dirty.add(RECENT_KEY);
+        try {
+            roomJpaRepository.findFeedKeyByRoomId(event.getRoomId()).ifPresentOrElse(key -> {
+                dirty.add(roomKey(key.getCode(), null));
+                if (key.getProvinceId() != null) {
+                    dirty.add(roomKey(key.getCode(), key.getProvinceId()));
+                }
+            }, () -> CODES.forEach(code -> dirty.add(roomKey(code, null))));
+        } catch (Exception e) {
+            CODES.forEach(code -> dirty.add(roomKey(code, null)));
+        }
+    }
+
+    // Gom các thay đổi liên tiếp (vd. duyệt hàng loạt) thành 1 lần dựng lại mỗi feed
+    @Scheduled(fixedDelayString = "${feed.debounce-ms:2000}")
+    public void rebuildDirty() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(dirty);
+        dirty.removeAll(keys);
+        for (String key : keys) {
+            rebuild(key);
+        }
+    }
+
+    /**
+     * @param scheduled true thì chỉ 1 node trong cluster dựng lại mỗi chu kỳ
+     */
+    public void refreshAll(boolean scheduled) {
+        if (scheduled && !acquireRefreshLock()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<String> keys = new ArrayList<>();
+        keys.add(RECENT_KEY);
+        try {
+            List<Long> provinceIds = roomJpaRepository.findVisibleProvinceIds();
+            for (String code : CODES) {
+                keys.add(roomKey(code, null));
+                for (Long provinceId : provinceIds) {
+                    keys.add(roomKey(code, provinceId));
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("[HomeFeedService] Cannot load provinces: " + e.getMessage());
+            CODES.forEach(code -> keys.add(roomKey(code, null)));
+        }
+        for (String key : keys) {
+            rebuild(key);
+        }
+        System.out.println("[HomeFeedService] Refreshed " + keys.size() + " feeds in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * @return trang đã render sẵn, hoặc null nếu cần query DB
+     */
+    public RenderedPage getRoomPage(String code, Long provinceId, int page, int size) {
+        if (!enabled || page < 0 || size <= 0 || !cachedPageSizes.contains(size)) {
+            return null;
+        }
+        String key = roomKey(code, provinceId);
+        LocalFeed feed = localFeed(key);
+        if (feed == null) {
+            fallbacks.increment();
+            return null;
+        }
+        long from = (long) page * size;
+        // Ngoài cửa sổ dựng sẵn (feed bị cắt ở maxRooms) thì để DB trả lời
+        if (from + size > feed.rooms.size() && feed.snapshot.getTotalRecords() > feed.rooms.size()) {
+            fallbacks.increment();
+            return null;
+        }
+        served.increment();
+        // Quá trang cuối: trang rỗng, render mỗi lần và không cache, nên số entry
+        // của feed.pages tối đa là số trang thật của mỗi cỡ trang
+        if (from >= feed.rooms.size()) {
+            return renderPage(feed, page, size);
+        }
+        return feed.pages.computeIfAbsent(page + "-" + size, k -> renderPage(feed, page, size));
+    }
+
+    public RenderedPage getRecentRooms() {
+        if (!enabled) {
+            return null;
+        }
+        LocalFeed feed = localFeed(RECENT_KEY);
+        if (feed == null) {
+            fallbacks.increment();
+            return null;
+        }
+        served.increment();
+        return feed.pages.computeIfAbsent("all", k -> new RenderedPage(
+                feed.snapshot.getJson().getBytes(StandardCharsets.UTF_8),
+                etag(feed.snapshot.getVersion()), feed.snapshot.getGeneratedAt()));
+    }
+
+    private RenderedPage renderPage(LocalFeed feed, int page, int size) {
+        long total = feed.snapshot.getTotalRecords();
+        int from = (int) Math.min((long) page * size, feed.rooms.size());
+        int to = Math.min(from + size, feed.rooms.size());
+        int totalPages = (int) ((total + size - 1) / size);
+        // Cùng cách tính với Spring Page trong RoomService.toRoomInUserPage
+        PaginationRoomInUserResponseDto dto = PaginationRoomInUserResponseDto.builder()
+                .data(feed.rooms.subList(from, to))
+                .pageNumber(page)
+                .pageSize(size)
+                .totalRecords(total)
+                .totalPages(totalPages)
+                .hasNext((long) page + 1 < totalPages)
+                .hasPrevious(page > 0)
+                .build();
+        try {
+            return new RenderedPage(objectMapper.writeValueAsBytes(dto),
+                    etag(feed.snapshot.getVersion() + "-" + page + "-" + size), feed.snapshot.getGeneratedAt());
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot render feed page", e);
+        }
+    }
+
+    private LocalFeed localFeed(String key) {
+        LocalFeed feed = local.get(key);
+        // Lỡ mất message pub/sub thì bản local cũng chỉ sống tối đa 1 chu kỳ
+        if (feed != null && System.currentTimeMillis() - feed.loadedAt < refreshIntervalMs) {
+            return feed;
+        }
+        Snapshot snapshot = readSnapshot(key);
+        if (snapshot == null) {
+            // Chưa dựng (vd. tỉnh mới có phòng): dựng ở lượt debounce kế tiếp
+            dirty.add(key);
+            return null;
+        }
+        feed = toLocal(key, snapshot);
+        local.put(key, feed);
+        return feed;
+    }
+
+    private void rebuild(String key) {
+        try {
+            // Map entity -> DTO cần lazy load ảnh/tiện ích nên phải chạy trong transaction
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            Snapshot fresh = readOnly.execute(status -> buildSnapshot(key));
+            if (fresh == null) {
+                return;
+            }
+            LocalFeed current = local.get(key);
+            Snapshot previous = current != null ? current.snapshot : readSnapshot(key);
+            if (previous != null && previous.getVersion().equals(fresh.getVersion())) {
+                // Nội dung không đổi: giữ Last-Modified cũ, chỉ gia hạn TTL
+                fresh.setGeneratedAt(previous.getGeneratedAt());
+            }
+            writeSnapshot(key, fresh);
+            local.put(key, toLocal(key, fresh));
+            rebuilds.increment();
+        } catch (Exception e) {
+            System.err.println("[HomeFeedService] Rebuild " + key + " failed: " + e.getMessage());
+        }
+    }
+
+    private Snapshot buildSnapshot(String key) {
+        try {
+            if (RECENT_KEY.equals(key)) {
+                List<?> recent = roomService.findRecentRooms();
+                String json = objectMapper.writeValueAsString(recent);
+                return new Snapshot(json, recent.size(), md5(json), System.currentTimeMillis());
+            }
+            String[] parts = key.split(":", 2);
+            String code = parts[0];
+            PaginationRoomInUserResponseDto window = "all".equals(parts[1])
+                    ? roomService.getAllRoomInUser(0, maxRooms, code)
+                    : roomService.getAllRoomInUserByProvince(0, maxRooms, code, Long.valueOf(parts[1]));
+            String json = objectMapper.writeValueAsString(window.getData());
+            return new Snapshot(json, window.getTotalRecords(), md5(json + "|" + window.getTotalRecords()),
+                    System.currentTimeMillis());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize feed " + key, e);
+        }
+    }
+
+    private LocalFeed toLocal(String key, Snapshot snapshot) {
+        if (RECENT_KEY.equals(key)) {
+            return new LocalFeed(snapshot, List.of());
+        }
+        try {
+            List<RoomInUserResponseDto> rooms = objectMapper.readValue(snapshot.getJson(),
+                    new TypeReference<List<RoomInUserResponseDto>>() {
+                    });
+            return new LocalFeed(snapshot, rooms);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot parse feed " + key, e);
+        }
+    }
+
+    private Snapshot readSnapshot(String key) {
+        if (redisTemplate == null) {
+            return null;
+        }
+        try {
+            String value = redisTemplate.opsForValue().get(KEY_PREFIX + key);
+            return value != null ? objectMapper.readValue(value, Snapshot.class) : null;
+        } catch (Exception e) {
+            System.err.println("[HomeFeedService] Read " + key + " failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeSnapshot(String key, Snapshot snapshot) {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            // Feed không còn được dựng lại (vd. tỉnh hết phòng) tự hết hạn sau 2 chu kỳ
+            redisTemplate.opsForValue().set(KEY_PREFIX + key, objectMapper.writeValueAsString(snapshot),
+                    Duration.ofMillis(refreshIntervalMs * 2));
+            redisTemplate.convertAndSend(REFRESHED_CHANNEL, nodeId + "|" + key);
+        } catch (Exception e) {
+            System.err.println("[HomeFeedService] Write " + key + " failed: " + e.getMessage());
+        }
+    }
+
+    private boolean acquireRefreshLock() {
+        if (redisTemplate == null) {
+            return true;
+        }
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(REFRESH_LOCK_KEY, nodeId,
+                    Duration.ofMillis(Math.max(1000, refreshIntervalMs / 2)));
+            return Boolean.TRUE.equals(acquired);
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    private static String roomKey(String code, Long provinceId) {
+        return code + ":" + (provinceId != null ? provinceId : "all");
+    }
+
+    private static String etag(String value) {
+        return "\"" + value + "\"";
+    }
+
+    private static String md5(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5")
+                    .digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("localFeeds", local.size());
+        metrics.put("pendingRebuilds", dirty.size());
+        metrics.put("served", served.sum());
+        metrics.put("fallbacks", fallbacks.sum());
+        metrics.put("rebuilds", rebuilds.sum());
+        return metrics;
+    }
+}
@@ -22,16 +22,33 @@ public class LandLordStatisticsService {
     @Autowired
     private RoomJpaRepository roomJpaRepository;
 
+    @Autowired
+    private RoomViewCounterService roomViewCounterService;
+
+    @Autowired
+    private StatisticsRollupService statisticsRollupService;
+
     public int getTotalPostedRoomsByLandlordId(UUID landlordId) {
+        if (statisticsRollupService.isReady()) {
+            return (int) statisticsRollupService.currentCount(StatisticsRollupService.METRIC_LANDLORD_ROOMS,
+                    StatisticsRollupService.scopeOf(landlordId));
+        }
         return roomJpaRepository.countRoomsByUserId(landlordId);
     }
 
     public int getTotalRentedRoomsByLandlordId(UUID landlordId) {
+        if (statisticsRollupService.isReady()) {
+            return (int) statisticsRollupService.currentCount(StatisticsRollupService.METRIC_LANDLORD_RENTED,
+                    StatisticsRollupService.scopeOf(landlordId));
+        }
         return roomJpaRepository.countRentedRoomsByUserId(landlordId);
     }
 
     public int getTotalViewedRoomsByLandlordId(UUID landlordId) {
-        return roomJpaRepository.sumViewOfRoomsByUserId(landlordId);
+        // Cộng thêm lượt xem chưa flush để khớp với số hiển thị ở trang phòng
+        long pendingViews = roomViewCounterService
+                .pendingCount(roomJpaRepository.findCountedRoomIdsByUserId(landlordId));
+        return (int) (roomJpaRepository.sumViewOfRoomsByUserId(landlordId) + pendingViews);
     }
 
     public int getTotalFavoritedRoomsByLandlordId(UUID landlordId) {
@@ -85,8 +102,11 @@ public class LandLordStatisticsService {
             throw new IllegalArgumentException("Start date must be before end date.");
         }
 
-        List<FeePostRoomProjection> projections = roomJpaRepository.countFeePostOfRoomsByUserId(landlordId,
-                startDate, endDate);
+        // Phí đăng tin = giao dịch loại 0, cộng từ các dòng theo ngày đã tính sẵn
+        List<FeePostRoomProjection> projections = statisticsRollupService.isReady()
+                ? statisticsRollupService.monthlySumOfDays(StatisticsRollupService.METRIC_TRANSACTION_PREFIX + 0,
+                        StatisticsRollupService.scopeOf(landlordId), startDate.toLocalDate(), endDate.toLocalDate())
+                : roomJpaRepository.countFeePostOfRoomsByUserId(landlordId, startDate, endDate);
 
         return projections.stream().map(projection -> TransactionStatisticsDto.builder()
                 .cost(projection.getCost())
@@ -6,18 +6,78 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+/**
+ * Geocode địa chỉ qua Goong.
+ *
+ * {@link #getCoordinates(String)} đi qua 2 tầng cache theo địa chỉ đã chuẩn hóa:
+ * LRU trong bộ nhớ, rồi Redis ({@code geocode:<địa chỉ>}). Địa chỉ không tìm
+ * thấy cũng được cache (negative cache) để không gọi lại API liên tục, và các
+ * request cùng địa chỉ đến cùng lúc chỉ tạo 1 lần gọi API.
+ */
 @Service
 public class LocationIQService {
 
+    private static final String CACHE_KEY_PREFIX = "geocode:";
+    private static final String NOT_FOUND = "NOT_FOUND";
+    private static final int LATENCY_SAMPLES = 512;
+
     private final String apiKey;
 
-    public LocationIQService() {
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${geocode.cache.ttl-days:30}")
+    private long cacheTtlDays;
+
+    @Value("${geocode.cache.negative-ttl-minutes:60}")
+    private long negativeTtlMinutes;
+
+    // Lỗi mạng/API (không phải "không tìm thấy") chỉ cache ngắn trong bộ nhớ
+    @Value("${geocode.cache.error-ttl-seconds:30}")
+    private long errorTtlSeconds;
+
+    private final Map<String, CachedLookup> localCache;
+    private final Map<String, CompletableFuture<LatLng>> inFlight = new ConcurrentHashMap<>();
+
+    // Metrics
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder remoteCalls = new LongAdder();
+    private final LongAdder remoteFailures = new LongAdder();
+    private final long[] remoteLatencies = new long[LATENCY_SAMPLES];
+    private int latencyCursor = 0;
+    private int latencySize = 0;
+
+    public LocationIQService(@Value("${geocode.cache.local-size:5000}") int localCacheSize) {
         this.apiKey = com.ants.ktc.ants_ktc.config.EnvLoader.get("GOONG_API_KEY");
+        this.localCache = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedLookup> eldest) {
+                return size() > localCacheSize;
+            }
+        });
     }
 
     public static class LatLng {
@@ -32,7 +92,208 @@ public class LocationIQService {
         }
     }
 
+    /**
+     * Kết quả (hoặc lỗi) đã cache cho 1 địa chỉ; latLng == null là negative
+     * entry.
+     */
+    private static final class CachedLookup {
+        private final LatLng latLng;
+        private final String error;
+        private final long expiresAt;
+
+        private CachedLookup(LatLng latLng, String error, long expiresAt) {
+            this.latLng = latLng;
+            this.error = error;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class NotFoundException extends Exception {
+        private NotFoundException(String message) {
+            super(message);
+        }
+    }
+
     public LatLng getCoordinates(String address) throws Exception {
+        String key = normalizeAddress(address);
+        if (key.isEmpty()) {
+            throw new Exception("Không tìm thấy tọa độ cho địa chỉ: " + address);
+        }
+
+        CachedLookup cached = localCache.get(key);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            localHits.increment();
+            return unwrap(cached);
+        }
+
+        CompletableFuture<LatLng> future = new CompletableFuture<>();
+        CompletableFuture<LatLng> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            // Đã có request khác đang geocode địa chỉ này: dùng chung kết quả
+            coalesced.increment();
+            return join(existing);
+        }
+
+        try {
+            future.complete(lookup(key, address));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, future);
+        }
+        return join(future);
+    }
+
+    private LatLng lookup(String key, String address) throws Exception {
+        CachedLookup stored = readRedis(key);
+        if (stored != null) {
+            redisHits.increment();
+            localCache.put(key, stored);
+            return unwrap(stored);
+        }
+
+        misses.increment();
+        long start = System.nanoTime();
+        remoteCalls.increment();
+        try {
+            LatLng latLng = fetchCoordinates(address);
+            recordLatency(System.nanoTime() - start);
+            CachedLookup entry = new CachedLookup(latLng, null,
+                    System.currentTimeMillis() + TimeUnit.DAYS.toMillis(cacheTtlDays));
+            localCache.put(key, entry);
+            writeRedis(key, entry, Duration.ofDays(cacheTtlDays));
+            return latLng;
+        } catch (NotFoundException e) {
+            recordLatency(System.nanoTime() - start);
+            CachedLookup entry = new CachedLookup(null, e.getMessage(),
+                    System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(negativeTtlMinutes));
+            localCache.put(key, entry);
+            writeRedis(key, entry, Duration.ofMinutes(negativeTtlMinutes));
+            throw e;
+        } catch (Exception e) {
+            remoteFailures.increment();
+            localCache.put(key, new CachedLookup(null, e.getMessage(),
+                    System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(errorTtlSeconds)));
+            throw e;
+        }
+    }
+
+    private LatLng unwrap(CachedLookup cached) throws Exception {
+        if (cached.latLng == null) {
+            negativeHits.increment();
+            throw new Exception(cached.error);
+        }
+        return cached.latLng;
+    }
+
+    private static LatLng join(CompletableFuture<LatLng> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private CachedLookup readRedis(String key) {
+        try {
+            String value = redisTemplate.opsForValue().get(CACHE_KEY_PREFIX + key);
+            if (value == null) {
+                return null;
+            }
+            Long ttlMs = redisTemplate.getExpire(CACHE_KEY_PREFIX + key, TimeUnit.MILLISECONDS);
+            long expiresAt = System.currentTimeMillis() + (ttlMs != null && ttlMs > 0 ? ttlMs : 0);
+            if (value.startsWith(NOT_FOUND)) {
+                return new CachedLookup(null, value.substring(NOT_FOUND.length()).trim(), expiresAt);
+            }
+            JSONObject json = new JSONObject(value);
+            return new CachedLookup(
+                    new LatLng(json.getDouble("lat"), json.getDouble("lng"), json.optString("address", null)),
+                    null, expiresAt);
+        } catch (Exception e) {
+            // Redis lỗi thì coi như miss, không làm hỏng luồng geocode
+            System.err.println("[Geocode] Failed to read cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeRedis(String key, CachedLookup entry, Duration ttl) {
+        try {
+            String value;
+            if (entry.latLng == null) {
+                value = NOT_FOUND + " " + entry.error;
+            } else {
+                value = new JSONObject()
+                        .put("lat", entry.latLng.lat)
+                        .put("lng", entry.latLng.lng)
+                        .put("address", entry.latLng.address)
+                        .toString();
+            }
+            redisTemplate.opsForValue().set(CACHE_KEY_PREFIX + key, value, ttl);
+        } catch (Exception e) {
+            System.err.println("[Geocode] Failed to write cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Chuẩn hóa địa chỉ làm key cache: Unicode NFC, chữ thường, gộp khoảng trắng
+     * và bỏ khoảng trắng quanh dấu phẩy.
+     */
+    static String normalizeAddress(String address) {
+        if (address == null) {
+            return "";
+        }
+        return Normalizer.normalize(address, Normalizer.Form.NFC)
+                .toLowerCase()
+                .replaceAll("\\s+", " ")
+                .replaceAll("\\s*,\\s*", ",")
+                .replaceAll(",+", ",")
+                .replaceAll("^,|,$", "")
+                .trim();
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        remoteLatencies[latencyCursor] = nanos;
+        latencyCursor = (latencyCursor + 1) % LATENCY_SAMPLES;
+        latencySize = Math.min(latencySize + 1, LATENCY_SAMPLES);
+    }
+
+    private synchronized long[] latencySnapshot() {
+        long[] sorted = Arrays.copyOf(remoteLatencies, latencySize);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Tỷ lệ hit của cache và độ trễ gọi Goong (trên {@value #LATENCY_SAMPLES} lần
+     * gọi gần nhất).
+     */
+    public Map<String, Object> getCacheMetrics() {
+        long local = localHits.sum();
+        long redis = redisHits.sum();
+        long miss = misses.sum();
+        long shared = coalesced.sum();
+        long total = local + redis + miss + shared;
+        long[] latencies = latencySnapshot();
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("lookups", total);
+        metrics.put("localHits", local);
+        metrics.put("redisHits", redis);
+        metrics.put("negativeHits", negativeHits.sum());
+        metrics.put("coalesced", shared);
+        metrics.put("misses", miss);
+        metrics.put("hitRatio", total == 0 ? 0.0 : (double) (local + redis + shared) / total);
+        metrics.put("localSize", localCache.size());
+        metrics.put("remoteCalls", remoteCalls.sum());
+        metrics.put("remoteFailures", remoteFailures.sum());
+        metrics.put("remoteAvgMs", latencies.length == 0 ? 0
+                : TimeUnit.NANOSECONDS.toMillis(Arrays.stream(latencies).sum() / latencies.length));
+        metrics.put("remoteP95Ms", latencies.length == 0 ? 0
+                : TimeUnit.NANOSECONDS.toMillis(latencies[Math.max((int) Math.ceil(0.95 * latencies.length) - 1, 0)]));
+        return metrics;
+    }
+
+    private LatLng fetchCoordinates(String address) throws Exception {
         String encodedAddress = URLEncoder.encode(address, StandardCharsets.UTF_8);
         String urlStr = "https://rsapi.goong.io/geocode?address=" + encodedAddress
                 + "&api_key=" + apiKey;
@@ -62,7 +323,7 @@ public class LocationIQService {
 
                 return new LatLng(lat, lng, formattedAddress);
             } else {
-                throw new Exception("Không tìm thấy tọa độ cho địa chỉ: " + address);
+                throw new NotFoundException("Không tìm thấy tọa độ cho địa chỉ: " + address);
             }
         }
     }
@@ -2,21 +2,25 @@
 package com.ants.ktc.ants_ktc.services;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.ants.ktc.ants_ktc.dtos.message.MessageResponseDto;
 import com.ants.ktc.ants_ktc.entities.Messages;
 import com.ants.ktc.ants_ktc.entities.User;
 import com.ants.ktc.ants_ktc.repositories.MessagesJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
+import com.ants.ktc.ants_ktc.worker.ChatMessageWriter;
 
 @Service
 public class MessagesService {
@@ -26,9 +30,27 @@ public class MessagesService {
     @Autowired
     private UserJpaRepository userRepository;
 
-    @Async
-    public void saveMessageAsync(String content, UUID fromUserId, UUID toUserId) {
-        saveMessage(content, fromUserId, toUserId);
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private ChatMessageWriter chatMessageWriter;
+
+    @Autowired
+    private ChatHistoryCache chatHistoryCache;
+
+    /**
+     * Đưa tin nhắn vào pipeline ghi theo lô (Redis stream + writer). Trả về false
+     * khi buffer đầy để người gửi thử lại. Redis lỗi thì ghi thẳng DB.
+     */
+    public boolean saveMessageAsync(String content, UUID fromUserId, UUID toUserId) {
+        try {
+            return chatMessageWriter.enqueue(content, fromUserId, toUserId, LocalDateTime.now());
+        } catch (Exception e) {
+            System.err.println("[MessagesService] Message pipeline unavailable, saving directly: " + e.getMessage());
+            saveMessage(content, fromUserId, toUserId);
+            return true;
+        }
     }
 
     public MessageResponseDto saveMessage(String content, UUID fromUserId, UUID toUserId) {
@@ -38,87 +60,129 @@ public class MessagesService {
         message.setContent(content);
         message.setFromUser(fromUser);
         message.setToUser(toUser);
+        message.setConversationId(ConversationService.conversationId(fromUserId, toUserId));
         message.setSentAt(LocalDateTime.now());
         message.setRead(false);
         Messages savedMessage = messagesRepository.save(message);
-        return MessageResponseDto.builder()
-                .id(savedMessage.getId())
-                .content(savedMessage.getContent())
-                .fromUser(savedMessage.getFromUser().getId())
-                .toUser(savedMessage.getToUser().getId())
-                .sentAt(savedMessage.getSentAt())
-                .isRead(savedMessage.isRead())
-                .build();
+        conversationService.onMessageSaved(fromUserId, toUserId, content, savedMessage.getSentAt());
+        MessageResponseDto dto = toDto(savedMessage);
+        chatHistoryCache.append(savedMessage.getConversationId(), List.of(dto));
+        return dto;
     }
 
+    /**
+     * Lịch sử chat giữa 2 user, trả về từ cũ đến mới. Trang đầu (before = null)
+     * đọc từ cache tin mới nhất nếu có; các trang sau dùng keyset (before, beforeId)
+     * trên index (conversation_id, sent_at).
+     */
     public List<MessageResponseDto> getMessagesBetweenUsers(UUID user1, UUID user2, Integer size,
-            LocalDateTime before) {
-        List<Messages> messages;
-        Pageable pageable = Pageable.ofSize(size != null && size > 0 ? size : 20);
+            LocalDateTime before, UUID beforeId) {
+        int limit = size != null && size > 0 ? size : 20;
+        if (!conversationService.isConversationIdsReady()) {
+            // Tin nhắn cũ chưa có conversation_id hết: dùng query cũ
+            return toChronological(before != null
+                    ? messagesRepository.findChatHistoryBetweenUsersBefore(user1, user2, before,
+                            Pageable.ofSize(limit))
+                    : messagesRepository.findLatestChatHistoryBetweenUsers(user1, user2, Pageable.ofSize(limit)));
+        }
+
+        UUID conversationId = ConversationService.conversationId(user1, user2);
         if (before != null) {
-            messages = messagesRepository.findChatHistoryBetweenUsersBefore(user1, user2, before, pageable);
-        } else {
-            messages = messagesRepository.findLatestChatHistoryBetweenUsers(user1, user2, pageable);
+            List<Messages> messages = beforeId != null
+                    ? messagesRepository.findByConversationBeforeCursor(conversationId, before, beforeId,
+                            Pageable.ofSize(limit))
+                    : messagesRepository.findByConversationBefore(conversationId, before, Pageable.ofSize(limit));
+            return toChronological(messages);
         }
-        List<MessageResponseDto> result = new java.util.ArrayList<>();
-        for (Messages m : messages) {
-            MessageResponseDto dto = MessageResponseDto.builder()
-                    .id(m.getId())
-                    .content(m.getContent())
-                    .fromUser(m.getFromUser() != null ? m.getFromUser().getId() : null)
-                    .toUser(m.getToUser() != null ? m.getToUser().getId() : null)
-                    .sentAt(m.getSentAt())
-                    .isRead(m.isRead())
-                    .build();
-            result.add(dto);
+
+        List<MessageResponseDto> cached = chatHistoryCache.getLatest(conversationId, limit);
+        if (cached != null) {
+            return reversed(cached);
+        }
+        if (limit > chatHistoryCache.getMaxSize()) {
+            return toChronological(messagesRepository.findLatestByConversation(conversationId,
+                    Pageable.ofSize(limit)));
+        }
+        // Cache miss: đọc đủ N tin để nạp cache, trả về limit tin đầu
+        String generation = chatHistoryCache.generation(conversationId);
+        List<MessageResponseDto> latest = new ArrayList<>();
+        for (Messages m : messagesRepository.findLatestByConversation(conversationId,
+                Pageable.ofSize(chatHistoryCache.getMaxSize()))) {
+            latest.add(toDto(m));
+        }
+        chatHistoryCache.populate(conversationId, generation, latest);
+        return reversed(latest.subList(0, Math.min(limit, latest.size())));
+    }
+
+    public static MessageResponseDto toDto(Messages m) {
+        return MessageResponseDto.builder()
+                .id(m.getId())
+                .content(m.getContent())
+                .fromUser(m.getFromUser() != null ? m.getFromUser().getId() : null)
+                .toUser(m.getToUser() != null ? m.getToUser().getId() : null)
+                .sentAt(m.getSentAt())
+                .isRead(m.isRead())
+                .build();
+    }
+
+    // Query trả về mới -> cũ, client hiển thị từ cũ đến mới
+    private List<MessageResponseDto> toChronological(List<Messages> newestFirst) {
+        List<MessageResponseDto> result = new ArrayList<>(newestFirst.size());
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            result.add(toDto(newestFirst.get(i)));
         }
-        // Đảo ngược lại để client hiển thị từ cũ đến mới
-        java.util.Collections.reverse(result);
         return result;
     }
 
-    public List<Map<String, Object>> getChatUsers(UUID userId) {
-        Set<UUID> addedUserIds = new java.util.HashSet<>();
-        List<Map<String, Object>> result = new java.util.ArrayList<>();
-        messagesRepository.findAll().forEach(m -> {
-            com.ants.ktc.ants_ktc.entities.User other = null;
-            if (m.getFromUser().getId().equals(userId)) {
-                other = m.getToUser();
-            } else if (m.getToUser().getId().equals(userId)) {
-                other = m.getFromUser();
-            }
-            if (other != null && addedUserIds.add(other.getId())) {
-                Map<String, Object> map = new java.util.HashMap<>();
-                map.put("id", other.getId());
-                String name = (other.getProfile() != null && other.getProfile().getFullName() != null
-                        && !other.getProfile().getFullName().isEmpty())
-                                ? other.getProfile().getFullName()
-                                : other.getUsername();
-                map.put("name", name);
-
-                // Đếm số tin nhắn chưa đọc từ user này gửi tới userId
-                int unreadCount = messagesRepository
-                        .findByFromUser_IdAndToUser_IdAndIsReadFalse(other.getId(), userId)
-                        .size();
-                map.put("unreadCount", unreadCount);
-
-                result.add(map);
-            }
-        });
+    private List<MessageResponseDto> reversed(List<MessageResponseDto> newestFirst) {
+        List<MessageResponseDto> result = new ArrayList<>(newestFirst);
+        Collections.reverse(result);
         return result;
     }
 
-    public void markMessagesAsRead(UUID fromUserId, UUID toUserId) {
+    // Đọc từ bảng tóm tắt conversations, mới nhất trước
+    public List<Map<String, Object>> getChatUsers(UUID userId, int page, int size) {
+        return conversationService.getChatUsers(userId, page, size);
+    }
+
+    /**
+     * Chạy trên thread pool @Async để thread WebSocket không phải giữ transaction
+     * DB. Trả về các tin vừa được đánh dấu đã đọc để gửi xác nhận cho người gửi.
+     */
+    @Async
+    public CompletableFuture<List<MessageResponseDto>> markMessagesAsReadAsync(UUID fromUserId, UUID toUserId) {
+        return CompletableFuture.completedFuture(markMessagesAsRead(fromUserId, toUserId));
+    }
+
+    @Transactional
+    public List<MessageResponseDto> markMessagesAsRead(UUID fromUserId, UUID toUserId) {
         // Update all messages from fromUserId to toUserId, set isRead=true
         List<Messages> unreadMessages = messagesRepository.findByFromUser_IdAndToUser_IdAndIsReadFalse(fromUserId,
                 toUserId);
         System.out.println("[MessagesService] Số tin nhắn chưa đọc sẽ cập nhật: " + unreadMessages.size());
+        if (unreadMessages.isEmpty()) {
+            return List.of();
+        }
+        List<UUID> ids = new ArrayList<>(unreadMessages.size());
+        List<MessageResponseDto> result = new ArrayList<>(unreadMessages.size());
         for (Messages m : unreadMessages) {
-            m.setRead(true);
+            ids.add(m.getId());
+            result.add(MessageResponseDto.builder()
+                    .id(m.getId())
+                    .content(m.getContent())
+                    .fromUser(fromUserId)
+                    .toUser(toUserId)
+                    .sentAt(m.getSentAt())
+                    .isRead(true)
+                    .build());
         }
-        messagesRepository.saveAll(unreadMessages);
-        System.out.println("[MessagesService] Đã lưu trạng thái đã đọc cho " + unreadMessages.size() + " tin nhắn từ "
+        // 1 câu UPDATE cho cả lô thay vì sửa từng entity rồi saveAll
+        int updated = messagesRepository.markReadByIds(ids);
+        conversationService.onMessagesRead(toUserId, fromUserId, updated);
+        chatHistoryCache.invalidate(ConversationService.conversationId(fromUserId, toUserId));
+        System.out.println("[MessagesService] Đã lưu trạng thái đã đọc cho " + updated + " tin nhắn từ "
                 + fromUserId + " đến " + toUserId);
+        return result;
     }
 
     public List<Messages> getUnreadMessages(UUID fromUserId, UUID toUserId) {
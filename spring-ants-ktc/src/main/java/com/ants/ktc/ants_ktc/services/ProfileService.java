@@ -10,6 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.ants.ktc.ants_ktc.components.ChatDisplayNameCache;
 import com.ants.ktc.ants_ktc.dtos.address.AddressResponseDto;
 import com.ants.ktc.ants_ktc.dtos.address.DistrictResponseDto;
 import com.ants.ktc.ants_ktc.dtos.address.ProvinceResponseDto;
@@ -45,6 +46,9 @@ public class ProfileService {
         @Autowired
         private UserJpaRepository userJpaRepository;
 
+        @Autowired
+        private ChatDisplayNameCache chatDisplayNameCache;
+
         private AddressResponseDto addressConvert(Address address) {
                 if (address == null)
                         return null;
@@ -188,6 +192,8 @@ public class ProfileService {
                         Address address = profile.getAddress();
                         addressDto = addressConvert(address);
                 }
+                // Tên hiển thị trong chat có thể đã đổi
+                chatDisplayNameCache.invalidateProfile(profile.getId());
                 return UserProfileResponseDto.builder()
                                 .id(profile.getId())
                                 .fullName(profile.getFullName())
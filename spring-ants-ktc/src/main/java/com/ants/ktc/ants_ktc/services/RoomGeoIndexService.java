@@ -0,0 +1,303 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.ants.ktc.ants_ktc.events.RoomChangedEvent;
+import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.RoomGeoProjection;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Geo index trong bộ nhớ cho các phòng đang hiển thị (approval = 1, hidden = 0,
+ * is_removed = 0, available = 0, còn hạn đăng).
+ *
+ * Tọa độ được chia vào lưới ô vuông theo độ (giống geohash cố định độ dài), nên
+ * tìm phòng trong bán kính chỉ cần duyệt các ô giao với bounding box thay vì
+ * tính công thức great-circle cho toàn bộ bảng rooms trong MySQL.
+ * Index được nạp lúc khởi động, cập nhật từng phòng qua {@link RoomChangedEvent}
+ * và rebuild định kỳ để tự sửa sai lệch.
+ */
+@Service
+public class RoomGeoIndexService {
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double KM_PER_DEGREE_LAT = 111.32;
+    // Quá số ô này thì duyệt thẳng toàn bộ entries sẽ rẻ hơn
+    private static final int MAX_CELLS_PER_QUERY = 4096;
+
+    @Autowired
+    private RoomJpaRepository roomJpaRepository;
+
+    @Value("${room.geo-index.cell-size-deg:0.05}")
+    private double cellSizeDeg;
+
+    // Rebuild dựng Grid mới rồi thay cả tham chiếu, reader không bao giờ thấy
+    // index rỗng/nạp dở
+    private volatile Grid grid = new Grid();
+
+    private final Set<UUID> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuilding = false;
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${room.geo-index.rebuild-interval-ms:1800000}", initialDelayString = "${room.geo-index.rebuild-interval-ms:1800000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRoomChanged(RoomChangedEvent event) {
+        refresh(event.getRoomId());
+    }
+
+    /**
+     * Nạp lại toàn bộ index từ DB vào Grid mới rồi swap. Các phòng thay đổi trong
+     * lúc đang nạp sẽ được refresh lại sau khi swap để không bị mất cập nhật.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            rebuilding = true;
+            changedDuringRebuild.clear();
+            List<RoomGeoProjection> rows = roomJpaRepository.findAllVisibleRoomGeo();
+
+            Grid fresh = new Grid();
+            for (RoomGeoProjection row : rows) {
+                fresh.put(toEntry(row));
+            }
+
+            synchronized (this) {
+                grid = fresh;
+                rebuilding = false;
+            }
+
+            for (UUID roomId : changedDuringRebuild) {
+                refresh(roomId);
+            }
+            changedDuringRebuild.clear();
+            ready = true;
+
+            System.out.println("[RoomGeoIndex] Rebuilt with " + fresh.entries.size() + " rooms in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            rebuilding = false;
+            System.err.println("[RoomGeoIndex] Rebuild failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Đọc lại 1 phòng từ DB: thêm/cập nhật nếu còn hiển thị, ngược lại gỡ khỏi
+     * index.
+     */
+    public void refresh(UUID roomId) {
+        if (roomId == null) {
+            return;
+        }
+        if (rebuilding) {
+            changedDuringRebuild.add(roomId);
+        }
+        try {
+            RoomGeoProjection row = roomJpaRepository.findVisibleRoomGeoById(roomId).orElse(null);
+            synchronized (this) {
+                grid.remove(roomId);
+                if (row != null) {
+                    grid.put(toEntry(row));
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("[RoomGeoIndex] Failed to refresh room " + roomId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Các phòng nằm trong bán kính, sắp xếp theo khoảng cách tăng dần.
+     */
+    public List<GeoHit> findWithinRadius(double centerLat, double centerLng, double radiusKm) {
+        Grid current = grid;
+        long today = startOfToday();
+        List<GeoHit> hits = new ArrayList<>();
+
+        double latDelta = radiusKm / KM_PER_DEGREE_LAT;
+        double cosLat = Math.max(Math.cos(Math.toRadians(centerLat)), 0.01);
+        double lngDelta = radiusKm / (KM_PER_DEGREE_LAT * cosLat);
+
+        long minLatCell = cellIndex(centerLat - latDelta);
+        long maxLatCell = cellIndex(centerLat + latDelta);
+        long minLngCell = cellIndex(centerLng - lngDelta);
+        long maxLngCell = cellIndex(centerLng + lngDelta);
+        long cellCount = (maxLatCell - minLatCell + 1) * (maxLngCell - minLngCell + 1);
+
+        if (cellCount > MAX_CELLS_PER_QUERY) {
+            for (Entry entry : current.entries.values()) {
+                collectHit(entry, centerLat, centerLng, radiusKm, today, hits);
+            }
+        } else {
+            for (long latCell = minLatCell; latCell <= maxLatCell; latCell++) {
+                for (long lngCell = minLngCell; lngCell <= maxLngCell; lngCell++) {
+                    Set<UUID> ids = current.cells.get(cellKey(latCell, lngCell));
+                    if (ids == null) {
+                        continue;
+                    }
+                    for (UUID id : ids) {
+                        Entry entry = current.entries.get(id);
+                        if (entry != null) {
+                            collectHit(entry, centerLat, centerLng, radiusKm, today, hits);
+                        }
+                    }
+                }
+            }
+        }
+
+        hits.sort(Comparator.comparingDouble(GeoHit::getDistanceKm));
+        return hits;
+    }
+
+    /**
+     * Danh sách id phòng theo loại tin, sắp xếp giống
+     * findAllRoomInUserSortedByDistance: gần nhất trước, phòng không có tọa độ
+     * xếp cuối, cùng khoảng cách thì mới nhất trước.
+     */
+    public List<UUID> findIdsSortedByDistance(String postTypeCode, Double userLat, Double userLng) {
+        long today = startOfToday();
+        boolean hasOrigin = userLat != null && userLng != null;
+
+        List<GeoHit> hits = new ArrayList<>();
+        for (Entry entry : grid.entries.values()) {
+            if (entry.postEndAt <= today || !entry.postTypeCode.equalsIgnoreCase(postTypeCode)) {
+                continue;
+            }
+            double distance = hasOrigin && entry.hasLocation
+                    ? haversineKm(userLat, userLng, entry.lat, entry.lng)
+                    : Double.MAX_VALUE;
+            hits.add(new GeoHit(entry.id, distance, entry.createdAt));
+        }
+
+        hits.sort(Comparator.comparingDouble(GeoHit::getDistanceKm)
+                .thenComparing(Comparator.comparingLong(GeoHit::getCreatedAt).reversed()));
+        return hits.stream().map(GeoHit::getRoomId).toList();
+    }
+
+    public int size() {
+        return grid.entries.size();
+    }
+
+    private void collectHit(Entry entry, double centerLat, double centerLng, double radiusKm, long today,
+            List<GeoHit> hits) {
+        if (!entry.hasLocation || entry.postEndAt <= today) {
+            return;
+        }
+        double distance = haversineKm(centerLat, centerLng, entry.lat, entry.lng);
+        if (distance <= radiusKm) {
+            hits.add(new GeoHit(entry.id, distance, entry.createdAt));
+        }
+    }
+
+    private Entry toEntry(RoomGeoProjection row) {
+        boolean hasLocation = row.getLat() != null && row.getLng() != null;
+        double lat = hasLocation ? row.getLat() : 0;
+        double lng = hasLocation ? row.getLng() : 0;
+        return new Entry(
+                row.getId(),
+                lat,
+                lng,
+                hasLocation,
+                hasLocation ? cellKey(cellIndex(lat), cellIndex(lng)) : 0L,
+                row.getPostTypeCode() == null ? "" : row.getPostTypeCode(),
+                row.getCreatedDate() == null ? 0L : row.getCreatedDate().getTime(),
+                row.getPostEndDate() == null ? 0L : row.getPostEndDate().getTime());
+    }
+
+    private long cellIndex(double degrees) {
+        return (long) Math.floor(degrees / cellSizeDeg);
+    }
+
+    private static long cellKey(long latCell, long lngCell) {
+        return (latCell << 32) | (lngCell & 0xffffffffL);
+    }
+
+    // Tương đương điều kiện post_end_date > CURRENT_DATE trong các query cũ
+    private static long startOfToday() {
+        return LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    static double haversineKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                        * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    // entries + lưới ô; sau khi publish chỉ được sửa khi giữ lock của service (refresh)
+    private static final class Grid {
+        private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+        private final Map<Long, Set<UUID>> cells = new ConcurrentHashMap<>();
+
+        private void put(Entry entry) {
+            entries.put(entry.id, entry);
+            if (entry.hasLocation) {
+                cells.computeIfAbsent(entry.cellKey, k -> ConcurrentHashMap.newKeySet()).add(entry.id);
+            }
+        }
+
+        private void remove(UUID roomId) {
+            Entry old = entries.remove(roomId);
+            if (old != null && old.hasLocation) {
+                Set<UUID> ids = cells.get(old.cellKey);
+                if (ids != null) {
+                    ids.remove(roomId);
+                    if (ids.isEmpty()) {
+                        cells.remove(old.cellKey);
+                    }
+                }
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class Entry {
+        private final UUID id;
+        private final double lat;
+        private final double lng;
+        private final boolean hasLocation;
+        private final long cellKey;
+        private final String postTypeCode;
+        private final long createdAt;
+        private final long postEndAt;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class GeoHit {
+        private final UUID roomId;
+        private final double distanceKm;
+        private final long createdAt;
+    }
+}
@@ -0,0 +1,90 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.ants.ktc.ants_ktc.dtos.image.ImageResponseDto;
+import com.ants.ktc.ants_ktc.repositories.ImageJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.RoomImageProjection;
+
+/**
+ * Ảnh của phòng cho các trang danh sách: load ảnh của cả trang bằng 1 query
+ * {@code room_id IN (...)} thay vì lazy-load {@code room.getImages()} từng
+ * phòng, và giữ cột {@code rooms.cover_image_url} (ảnh đã upload xong có id
+ * nhỏ nhất) cho các màn hình chỉ cần 1 ảnh.
+ */
+@Service
+public class RoomImageService {
+
+    @Autowired
+    private ImageJpaRepository imageJpaRepository;
+
+    @Autowired
+    private RoomJpaRepository roomJpaRepository;
+
+    @Value("${room.cover-image.backfill-batch-size:1000}")
+    private int backfillBatchSize;
+
+    /**
+     * Ảnh theo từng phòng, sắp xếp theo id. Phòng không có ảnh nhận list rỗng.
+     */
+    public Map<UUID, List<ImageResponseDto>> loadByRoomIds(Collection<UUID> roomIds) {
+        Map<UUID, List<ImageResponseDto>> result = new HashMap<>();
+        List<UUID> ids = roomIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        for (UUID id : ids) {
+            result.put(id, new ArrayList<>());
+        }
+        for (RoomImageProjection image : imageJpaRepository.findImagesByRoomIds(ids)) {
+            result.computeIfAbsent(image.getRoomId(), k -> new ArrayList<>())
+                    .add(ImageResponseDto.builder()
+                            .id(image.getId())
+                            .url(image.getUrl())
+                            .build());
+        }
+        return result;
+    }
+
+    /**
+     * Tính lại ảnh đại diện, gọi sau khi ảnh của phòng được upload xong hoặc
+     * bị xóa. Chạy trong transaction của caller nếu có.
+     */
+    public void refreshCovers(Collection<UUID> roomIds) {
+        List<UUID> ids = roomIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (!ids.isEmpty()) {
+            roomJpaRepository.refreshCoverImages(ids);
+        }
+    }
+
+    // Phòng tạo trước khi có cột cover_image_url
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillCovers() {
+        try {
+            long start = System.currentTimeMillis();
+            long total = 0;
+            int updated;
+            do {
+                updated = roomJpaRepository.backfillCoverImages(backfillBatchSize);
+                total += updated;
+            } while (updated > 0);
+            System.out.println("[RoomImageService] Set cover_image_url on " + total + " rooms in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            System.err.println("[RoomImageService] Cover image backfill failed: " + e.getMessage());
+        }
+    }
+}
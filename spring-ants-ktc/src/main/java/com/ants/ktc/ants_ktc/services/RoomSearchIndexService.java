@@ -0,0 +1,401 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.ants.ktc.ants_ktc.dtos.filters.FacetCountDto;
+import com.ants.ktc.ants_ktc.dtos.filters.FilterRoomRequestDto;
+import com.ants.ktc.ants_ktc.dtos.filters.RangeFacetCountDto;
+import com.ants.ktc.ants_ktc.dtos.filters.RoomFacetResponseDto;
+import com.ants.ktc.ants_ktc.events.RoomChangedEvent;
+import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.RoomSearchProjection;
+
+/**
+ * Inverted index cho bộ lọc phòng: mỗi tiện ích, tỉnh, quận, phường và mỗi
+ * khoảng giá/diện tích giữ 1 BitSet các phòng thỏa mãn. Một request lọc chỉ
+ * còn là phép AND các BitSet, đồng thời đếm được số phòng còn lại cho từng
+ * lựa chọn (facet) mà không cần GROUP BY/HAVING trong MySQL.
+ *
+ * Index nạp lúc khởi động, cập nhật theo {@link RoomChangedEvent} và rebuild
+ * định kỳ giống {@link RoomGeoIndexService}.
+ */
+@Service
+public class RoomSearchIndexService {
+
+    // Mốc khoảng giá (VND/tháng) và diện tích (m2); khoảng cuối không giới hạn trên
+    private static final double[] PRICE_BOUNDS = { 0, 1_000_000, 2_000_000, 3_000_000, 4_000_000, 5_000_000,
+            7_000_000, 10_000_000, 15_000_000 };
+    private static final double[] AREA_BOUNDS = { 0, 15, 20, 25, 30, 40, 50, 70, 100 };
+
+    private enum Dimension {
+        NONE, CONVENIENT, PROVINCE, DISTRICT, WARD, PRICE, AREA
+    }
+
+    @Autowired
+    private RoomJpaRepository roomJpaRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state = new State();
+
+    private final Set<UUID> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuilding = false;
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${room.search-index.rebuild-interval-ms:1800000}", initialDelayString = "${room.search-index.rebuild-interval-ms:1800000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRoomChanged(RoomChangedEvent event) {
+        refresh(event.getRoomId());
+    }
+
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            rebuilding = true;
+            changedDuringRebuild.clear();
+
+            List<RoomSearchProjection> rows = roomJpaRepository.findAllVisibleRoomSearch();
+            Map<UUID, List<Long>> convenientsByRoom = new HashMap<>();
+            for (Object[] pair : roomJpaRepository.findAllVisibleRoomConvenientPairs()) {
+                convenientsByRoom.computeIfAbsent((UUID) pair[0], k -> new ArrayList<>())
+                        .add(((Number) pair[1]).longValue());
+            }
+
+            State fresh = new State();
+            for (RoomSearchProjection row : rows) {
+                fresh.add(toDoc(row, convenientsByRoom.getOrDefault(row.getId(), List.of())));
+            }
+
+            lock.writeLock().lock();
+            try {
+                state = fresh;
+                rebuilding = false;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            for (UUID roomId : changedDuringRebuild) {
+                refresh(roomId);
+            }
+            changedDuringRebuild.clear();
+            ready = true;
+
+            System.out.println("[RoomSearchIndex] Rebuilt with " + rows.size() + " rooms in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            rebuilding = false;
+            System.err.println("[RoomSearchIndex] Rebuild failed: " + e.getMessage());
+        }
+    }
+
+    public void refresh(UUID roomId) {
+        if (roomId == null) {
+            return;
+        }
+        if (rebuilding) {
+            changedDuringRebuild.add(roomId);
+        }
+        try {
+            RoomSearchProjection row = roomJpaRepository.findVisibleRoomSearchById(roomId).orElse(null);
+            Doc doc = row == null ? null : toDoc(row, roomJpaRepository.findConvenientIdsByRoomId(roomId));
+
+            lock.writeLock().lock();
+            try {
+                state.remove(roomId);
+                if (doc != null) {
+                    state.add(doc);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            System.err.println("[RoomSearchIndex] Failed to refresh room " + roomId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Id các phòng khớp bộ lọc, mới đăng trước.
+     */
+    public List<UUID> search(FilterRoomRequestDto filter) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = matching(filter, Dimension.NONE);
+            List<Doc> docs = new ArrayList<>(matches.cardinality());
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                docs.add(state.docs.get(i));
+            }
+            docs.sort(Comparator.comparingLong((Doc d) -> d.createdAt).reversed());
+            return docs.stream().map(d -> d.roomId).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public RoomFacetResponseDto facets(FilterRoomRequestDto filter) {
+        lock.readLock().lock();
+        try {
+            BitSet all = matching(filter, Dimension.NONE);
+            return RoomFacetResponseDto.builder()
+                    .totalRooms(all.cardinality())
+                    // Tiện ích lọc theo AND nên đếm trên kết quả hiện tại
+                    .convenients(countByKey(all, state.byConvenient))
+                    .provinces(countByKey(matching(filter, Dimension.PROVINCE), state.byProvince))
+                    .districts(countByKey(matching(filter, Dimension.DISTRICT), state.byDistrict))
+                    .wards(countByKey(matching(filter, Dimension.WARD), state.byWard))
+                    .priceRanges(countByBucket(matching(filter, Dimension.PRICE), state.byPriceBucket, PRICE_BOUNDS))
+                    .areaRanges(countByBucket(matching(filter, Dimension.AREA), state.byAreaBucket, AREA_BOUNDS))
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * AND các BitSet của mọi điều kiện trừ {@code exclude}, sau đó lọc chính xác
+     * giá/diện tích ở 2 khoảng biên và bỏ các phòng đã hết hạn đăng.
+     */
+    private BitSet matching(FilterRoomRequestDto filter, Dimension exclude) {
+        BitSet result = (BitSet) state.alive.clone();
+
+        if (exclude != Dimension.CONVENIENT && filter.getListConvenientIds() != null) {
+            for (Long convenientId : filter.getListConvenientIds()) {
+                result.and(bitsOf(state.byConvenient, convenientId));
+            }
+        }
+        if (exclude != Dimension.PROVINCE && filter.getProvinceId() != null) {
+            result.and(bitsOf(state.byProvince, filter.getProvinceId()));
+        }
+        if (exclude != Dimension.DISTRICT && filter.getDistrictId() != null) {
+            result.and(bitsOf(state.byDistrict, filter.getDistrictId()));
+        }
+        if (exclude != Dimension.WARD && filter.getWardId() != null) {
+            result.and(bitsOf(state.byWard, filter.getWardId()));
+        }
+        boolean checkPrice = exclude != Dimension.PRICE
+                && (filter.getMinPrice() != null || filter.getMaxPrice() != null);
+        boolean checkArea = exclude != Dimension.AREA
+                && (filter.getMinArea() != null || filter.getMaxArea() != null);
+        if (checkPrice) {
+            result.and(rangeMask(state.byPriceBucket, PRICE_BOUNDS, filter.getMinPrice(), filter.getMaxPrice()));
+        }
+        if (checkArea) {
+            result.and(rangeMask(state.byAreaBucket, AREA_BOUNDS, filter.getMinArea(), filter.getMaxArea()));
+        }
+
+        long today = startOfToday();
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+            Doc doc = state.docs.get(i);
+            if (doc.postEndAt <= today
+                    || (checkPrice && !inRange(doc.price, filter.getMinPrice(), filter.getMaxPrice()))
+                    || (checkArea && !inRange(doc.area, filter.getMinArea(), filter.getMaxArea()))) {
+                result.clear(i);
+            }
+        }
+        return result;
+    }
+
+    private static BitSet bitsOf(Map<Long, BitSet> index, Long key) {
+        BitSet bits = index.get(key);
+        return bits == null ? new BitSet() : bits;
+    }
+
+    private static BitSet rangeMask(BitSet[] buckets, double[] bounds, Double min, Double max) {
+        BitSet mask = new BitSet();
+        for (int i = 0; i < bounds.length; i++) {
+            double low = bounds[i];
+            double high = i + 1 < bounds.length ? bounds[i + 1] : Double.POSITIVE_INFINITY;
+            if ((max == null || low <= max) && (min == null || high > min)) {
+                mask.or(buckets[i]);
+            }
+        }
+        return mask;
+    }
+
+    private static boolean inRange(double value, Double min, Double max) {
+        return (min == null || value >= min) && (max == null || value <= max);
+    }
+
+    private static List<FacetCountDto> countByKey(BitSet base, Map<Long, BitSet> index) {
+        List<FacetCountDto> counts = new ArrayList<>();
+        for (Map.Entry<Long, BitSet> entry : index.entrySet()) {
+            BitSet bits = (BitSet) entry.getValue().clone();
+            bits.and(base);
+            int count = bits.cardinality();
+            if (count > 0) {
+                counts.add(FacetCountDto.builder().id(entry.getKey()).count(count).build());
+            }
+        }
+        counts.sort(Comparator.comparingLong(FacetCountDto::getCount).reversed());
+        return counts;
+    }
+
+    private static List<RangeFacetCountDto> countByBucket(BitSet base, BitSet[] buckets, double[] bounds) {
+        List<RangeFacetCountDto> counts = new ArrayList<>(bounds.length);
+        for (int i = 0; i < bounds.length; i++) {
+            BitSet bits = (BitSet) buckets[i].clone();
+            bits.and(base);
+            counts.add(RangeFacetCountDto.builder()
+                    .min(bounds[i])
+                    .max(i + 1 < bounds.length ? bounds[i + 1] : null)
+                    .count(bits.cardinality())
+                    .build());
+        }
+        return counts;
+    }
+
+    private static int bucketOf(double value, double[] bounds) {
+        int bucket = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            if (value >= bounds[i]) {
+                bucket = i;
+            }
+        }
+        return bucket;
+    }
+
+    private static long startOfToday() {
+        return LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static Doc toDoc(RoomSearchProjection row, List<Long> convenientIds) {
+        Doc doc = new Doc();
+        doc.roomId = row.getId();
+        doc.price = row.getPriceMonth() == null ? 0 : row.getPriceMonth();
+        doc.area = row.getArea() == null ? 0 : row.getArea();
+        doc.provinceId = row.getProvinceId();
+        doc.districtId = row.getDistrictId();
+        doc.wardId = row.getWardId();
+        doc.convenientIds = convenientIds;
+        doc.createdAt = row.getCreatedDate() == null ? 0L : row.getCreatedDate().getTime();
+        doc.postEndAt = row.getPostEndDate() == null ? 0L : row.getPostEndDate().getTime();
+        return doc;
+    }
+
+    private static final class Doc {
+        private UUID roomId;
+        private double price;
+        private double area;
+        private Long provinceId;
+        private Long districtId;
+        private Long wardId;
+        private List<Long> convenientIds;
+        private long createdAt;
+        private long postEndAt;
+    }
+
+    /**
+     * Toàn bộ dữ liệu index; mỗi phòng có 1 docId nhỏ gọn làm vị trí bit, docId
+     * của phòng bị gỡ được tái sử dụng để BitSet không phình ra.
+     */
+    private static final class State {
+        private final Map<UUID, Integer> docIds = new HashMap<>();
+        private final List<Doc> docs = new ArrayList<>();
+        private final Deque<Integer> freeDocIds = new ArrayDeque<>();
+        private final BitSet alive = new BitSet();
+        private final Map<Long, BitSet> byConvenient = new HashMap<>();
+        private final Map<Long, BitSet> byProvince = new HashMap<>();
+        private final Map<Long, BitSet> byDistrict = new HashMap<>();
+        private final Map<Long, BitSet> byWard = new HashMap<>();
+        private final BitSet[] byPriceBucket = newBuckets(PRICE_BOUNDS.length);
+        private final BitSet[] byAreaBucket = newBuckets(AREA_BOUNDS.length);
+
+        private void add(Doc doc) {
+            int docId;
+            if (freeDocIds.isEmpty()) {
+                docId = docs.size();
+                docs.add(doc);
+            } else {
+                docId = freeDocIds.pop();
+                docs.set(docId, doc);
+            }
+            docIds.put(doc.roomId, docId);
+            alive.set(docId);
+            for (Long convenientId : doc.convenientIds) {
+                byConvenient.computeIfAbsent(convenientId, k -> new BitSet()).set(docId);
+            }
+            setKey(byProvince, doc.provinceId, docId);
+            setKey(byDistrict, doc.districtId, docId);
+            setKey(byWard, doc.wardId, docId);
+            byPriceBucket[bucketOf(doc.price, PRICE_BOUNDS)].set(docId);
+            byAreaBucket[bucketOf(doc.area, AREA_BOUNDS)].set(docId);
+        }
+
+        private void remove(UUID roomId) {
+            Integer docId = docIds.remove(roomId);
+            if (docId == null) {
+                return;
+            }
+            Doc doc = docs.get(docId);
+            alive.clear(docId);
+            for (Long convenientId : doc.convenientIds) {
+                clearKey(byConvenient, convenientId, docId);
+            }
+            clearKey(byProvince, doc.provinceId, docId);
+            clearKey(byDistrict, doc.districtId, docId);
+            clearKey(byWard, doc.wardId, docId);
+            byPriceBucket[bucketOf(doc.price, PRICE_BOUNDS)].clear(docId);
+            byAreaBucket[bucketOf(doc.area, AREA_BOUNDS)].clear(docId);
+            docs.set(docId, null);
+            freeDocIds.push(docId);
+        }
+
+        private static void setKey(Map<Long, BitSet> index, Long key, int docId) {
+            if (key != null) {
+                index.computeIfAbsent(key, k -> new BitSet()).set(docId);
+            }
+        }
+
+        private static void clearKey(Map<Long, BitSet> index, Long key, int docId) {
+            if (key == null) {
+                return;
+            }
+            BitSet bits = index.get(key);
+            if (bits != null) {
+                bits.clear(docId);
+                if (bits.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+
+        private static BitSet[] newBuckets(int size) {
+            BitSet[] buckets = new BitSet[size];
+            for (int i = 0; i < size; i++) {
+                buckets[i] = new BitSet();
+            }
+            return buckets;
+        }
+    }
+}
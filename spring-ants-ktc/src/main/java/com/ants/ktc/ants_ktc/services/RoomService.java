@@ -1,15 +1,16 @@
 package com.ants.ktc.ants_ktc.services;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -18,7 +19,9 @@ import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -27,12 +30,14 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.ants.ktc.ants_ktc.components.IdGenerator;
 import com.ants.ktc.ants_ktc.dtos.address.AddressResponseDto;
 import com.ants.ktc.ants_ktc.dtos.address.DistrictResponseDto;
 import com.ants.ktc.ants_ktc.dtos.address.ProvinceResponseDto;
 import com.ants.ktc.ants_ktc.dtos.address.WardResponseDto;
 import com.ants.ktc.ants_ktc.dtos.convenient.ConvenientResponseDto;
 import com.ants.ktc.ants_ktc.dtos.filters.FilterRoomRequestDto;
+import com.ants.ktc.ants_ktc.dtos.filters.RoomFacetResponseDto;
 import com.ants.ktc.ants_ktc.dtos.image.ImageResponseDto;
 import com.ants.ktc.ants_ktc.dtos.room.PaginationRoomAdminResponseDto;
 import com.ants.ktc.ants_ktc.dtos.room.PaginationRoomInUserResponseDto;
@@ -60,6 +65,7 @@ import com.ants.ktc.ants_ktc.entities.Transaction;
 import com.ants.ktc.ants_ktc.entities.User;
 import com.ants.ktc.ants_ktc.entities.address.Address;
 import com.ants.ktc.ants_ktc.entities.address.Ward;
+import com.ants.ktc.ants_ktc.events.RoomChangedEvent;
 import com.ants.ktc.ants_ktc.models.ImageUploadMessage;
 import com.ants.ktc.ants_ktc.repositories.ConvenientsRepository;
 import com.ants.ktc.ants_ktc.repositories.ImageJpaRepository;
@@ -110,6 +116,27 @@ public class RoomService {
         @Autowired
         private LocationIQService locationIQService;
 
+        @Autowired
+        private RoomGeoIndexService roomGeoIndexService;
+
+        @Autowired
+        private RoomImageService roomImageService;
+
+        @Autowired
+        private WalletLedgerService walletLedgerService;
+
+        @Autowired
+        private IdGenerator idGenerator;
+
+        @Autowired
+        private RoomSearchIndexService roomSearchIndexService;
+
+        @Autowired
+        private RoomViewCounterService roomViewCounterService;
+
+        @Autowired
+        private ApplicationEventPublisher eventPublisher;
+
         @Autowired
         @Qualifier("imageRedisTemplate")
         private RedisTemplate<String, ImageUploadMessage> redisTemplate;
@@ -121,15 +148,36 @@ public class RoomService {
          * Lưu file tạm thời và tạo message để upload async
          */
         public ImageUploadMessage prepareAsyncImageUpload(MultipartFile file, UUID roomId) throws Exception {
+                Path tempFilePath = newTempImagePath(file.getOriginalFilename());
+
+                // Ghi file vào disk tạm thời (stream, không nạp cả file vào heap)
+                file.transferTo(tempFilePath);
+
+                return createPendingImage(tempFilePath, roomId);
+        }
+
+        /**
+         * Giống {@link #prepareAsyncImageUpload(MultipartFile, UUID)} nhưng nhận file
+         * đã có trên disk (vd. file ghép từ chunk upload): file được move vào thư mục
+         * tạm của worker, không copy qua byte[].
+         */
+        public ImageUploadMessage prepareAsyncImageUpload(Path sourceFile, String originalFilename, UUID roomId)
+                        throws Exception {
+                Path tempFilePath = newTempImagePath(originalFilename);
+                Files.move(sourceFile, tempFilePath, StandardCopyOption.REPLACE_EXISTING);
+
+                return createPendingImage(tempFilePath, roomId);
+        }
+
+        private Path newTempImagePath(String originalFilename) throws IOException {
                 // Tạo temporary file
-                String fileName = UUID.randomUUID().toString() + "_" + file.getOriginalFilename();
+                String fileName = UUID.randomUUID().toString() + "_" + originalFilename;
                 Path tempDir = Paths.get(System.getProperty("java.io.tmpdir"), TEMP_DIR_PREFIX);
                 Files.createDirectories(tempDir); // Tạo thư mục nếu chưa tồn tại
-                Path tempFilePath = tempDir.resolve(fileName);
-
-                // Ghi file vào disk tạm thời
-                Files.write(tempFilePath, file.getBytes());
+                return tempDir.resolve(fileName);
+        }
 
+        private ImageUploadMessage createPendingImage(Path tempFilePath, UUID roomId) {
                 Room room = roomJpaRepository.findById(roomId)
                                 .orElseThrow(() -> new IllegalArgumentException("Room not found"));
 
@@ -156,11 +204,7 @@ public class RoomService {
         // roomJpaRepository.save(room);
         // }
         public long increaseView(UUID roomId) {
-                Room room = roomJpaRepository.findById(roomId)
-                                .orElseThrow(() -> new IllegalArgumentException("Room not found"));
-                room.setViewCount(room.getViewCount() + 1);
-                roomJpaRepository.save(room);
-                return room.getViewCount();
+                return roomViewCounterService.increment(roomId);
         }
 
         /**
@@ -321,9 +365,9 @@ public class RoomService {
                 }
 
                 // *** */
+                // Số dư chỉ được trừ khi lưu phòng (WalletLedgerService), bước trên chỉ
+                // để báo lỗi sớm
                 Date transactionDate = new Date();
-                user.getWallet().setBalance(balance - totalPrice);
-                userJpaRepository.save(user);
 
                 System.out.println("Diff Date: " + diffDays);
 
@@ -333,8 +377,8 @@ public class RoomService {
                 transaction.setDescription("Create a New Room Post " + room.getTitle());
                 transaction.setTransactionDate(transactionDate);
 
-                // Generate unique 8-digit transaction code (no prefix)
-                String transactionCode = generateUniqueTransactionCode("CREATE", user.getId());
+                // Mã giao dịch từ IdGenerator (dùng chung mọi node)
+                String transactionCode = idGenerator.nextCode();
 
                 // Code cũ - transaction code generation
                 /*
@@ -352,9 +396,6 @@ public class RoomService {
                 transaction.setDescription("Payment for room post: " + room.getTitle());
                 transaction.setStatus(1); // 1: thành công, 0: thất bại
 
-                transaction.setWallet(user.getWallet());
-                transactionsJpaRepository.save(transaction);
-
                 // if (diffDays * postType.getPricePerDay() > user.getWallet().getBalance()) {
                 // throw new IllegalArgumentException("User does not have enough balance to
                 // create this room");
@@ -425,6 +466,10 @@ public class RoomService {
                 // Lưu phòng trước để có ID
                 roomJpaRepository.save(room);
 
+                // Trừ phí đăng tin, idempotency key theo id phòng
+                walletLedgerService.debit(user.getWallet(), transaction,
+                                WalletLedgerService.roomKey(room.getId(), "CREATE", null));
+
                 // Xử lý images - Async upload để không block user
                 List<Image> images = new ArrayList<>();
                 if (files != null && !files.isEmpty()) {
@@ -454,6 +499,7 @@ public class RoomService {
 
                 // Lưu room với images đã set
                 roomJpaRepository.save(room);
+                eventPublisher.publishEvent(new RoomChangedEvent(room.getId()));
 
                 // Trả về DTO
                 return RoomResponseDto.builder()
@@ -632,6 +678,10 @@ public class RoomService {
 
                 // 4. Lưu room
                 roomJpaRepository.save(room);
+                if (imageChanged) {
+                        roomImageService.refreshCovers(List.of(room.getId()));
+                }
+                eventPublisher.publishEvent(new RoomChangedEvent(room.getId()));
                 return RoomResponseDto.builder()
                                 .id(room.getId())
                                 .title(room.getTitle())
@@ -736,16 +786,14 @@ public class RoomService {
                 if (totalPrice > balance) {
                         throw new IllegalArgumentException("User does not have enough balance to extend this room");
                 }
-                user.getWallet().setBalance(balance - totalPrice);
-                userJpaRepository.save(user);
 
                 Transaction transaction = new Transaction();
                 transaction.setAmount(totalPrice);
                 transaction.setDescription("Extend room post: " + room.getTitle());
                 transaction.setTransactionDate(new Date());
 
-                // Generate unique 8-digit transaction code
-                String transactionCode = generateUniqueTransactionCode("EXT", user.getId());
+                // Mã giao dịch từ IdGenerator (dùng chung mọi node)
+                String transactionCode = idGenerator.nextCode();
 
                 // Code cũ
                 /*
@@ -759,13 +807,15 @@ public class RoomService {
                 transaction.setTransactionCode(transactionCode);
                 transaction.setBankTransactionName("Ants Wallet");
                 transaction.setStatus(1); // 1: thành công
-                transaction.setWallet(user.getWallet());
-                transactionsJpaRepository.save(transaction);
+                // Gửi lại cùng yêu cầu gia hạn (double click, retry) không bị trừ 2 lần
+                walletLedgerService.debit(user.getWallet(), transaction,
+                                WalletLedgerService.roomKey(room.getId(), "EXTEND", newEndDate.getTime()));
 
                 // Sử dụng trực tiếp ngày từ request để giữ nguyên thời gian (giờ, phút, giây)
                 room.setPost_start_date(newStartDate);
                 room.setPost_end_date(newEndDate);
                 roomJpaRepository.save(room);
+                eventPublisher.publishEvent(new RoomChangedEvent(room.getId()));
 
                 // Trả về DTO với ngày gốc từ request
                 return RoomUpdateExpireDateResponseDto.builder()
@@ -782,6 +832,7 @@ public class RoomService {
 
                 // Cập nhật trạng thái hidden bằng JPQL update
                 roomJpaRepository.updateHiddenById(roomId, hidden.getIsHidden());
+                eventPublisher.publishEvent(new RoomChangedEvent(roomId));
 
                 return RoomShowHideProjectionDto.builder()
                                 .isHidden(hidden.getIsHidden())
@@ -798,6 +849,7 @@ public class RoomService {
 
                 // Cập nhật trạng thái isRemoved bằng JPQL update
                 roomJpaRepository.updateIsRemovedById(roomId, request.getIsRemoved());
+                eventPublisher.publishEvent(new RoomChangedEvent(roomId));
 
                 return RoomDeleteRequestDto.builder()
                                 .isRemoved(request.getIsRemoved())
@@ -855,9 +907,6 @@ public class RoomService {
 
                         if (lastTransaction != null) {
                                 Double refundAmount = lastTransaction.getAmount();
-                                Double balance = user.getWallet().getBalance();
-                                user.getWallet().setBalance(balance + refundAmount);
-                                userJpaRepository.save(user);
 
                                 Transaction refundTransaction = new Transaction();
                                 refundTransaction.setAmount(refundAmount);
@@ -865,8 +914,8 @@ public class RoomService {
                                                 "Refund for rejected room post: " + roomProj.getTitle());
                                 refundTransaction.setTransactionDate(new Date());
 
-                                // Generate unique 8-digit transaction code
-                                String transactionCode = generateUniqueTransactionCode("REFUND", user.getId());
+                                // Mã giao dịch từ IdGenerator (dùng chung mọi node)
+                                String transactionCode = idGenerator.nextCode();
 
                                 // Code cũ
                                 /*
@@ -880,9 +929,11 @@ public class RoomService {
                                 refundTransaction.setTransactionCode(transactionCode);
                                 refundTransaction.setBankTransactionName("Ants Wallet");
                                 refundTransaction.setStatus(1);
-                                refundTransaction.setWallet(user.getWallet());
                                 refundTransaction.setTransactionType(3);// type 3: hoàn tiền
-                                transactionsJpaRepository.save(refundTransaction);
+                                // Cùng key với ApprovalWorker: mỗi giao dịch đăng tin chỉ hoàn 1 lần
+                                walletLedgerService.credit(user.getWallet(), refundTransaction,
+                                                WalletLedgerService.roomKey(roomId, "REFUND",
+                                                                lastTransaction.getId()));
 
                                 // Cập nhật approval
                                 roomJpaRepository.updateApprovalById(roomId, newApproval);
@@ -890,6 +941,7 @@ public class RoomService {
                 }
 
                 roomJpaRepository.updateApprovalById(roomId, newApproval);
+                eventPublisher.publishEvent(new RoomChangedEvent(roomId));
                 return RoomApprovalProjectionDto.builder()
                                 .approval(newApproval)
                                 .message("Room approval status updated successfully"
@@ -925,7 +977,7 @@ public class RoomService {
                                                 .toList())
                                 .images(convertImages(room.getImages()))
                                 .address(convertAddress(room.getAddress()))
-                                .viewCount(room.getViewCount())
+                                .viewCount(room.getViewCount() + roomViewCounterService.pendingCount(List.of(room.getId())))
                                 .build();
         }
 
@@ -1207,7 +1259,20 @@ public class RoomService {
                 Pageable pageable = PageRequest.of(pageNumber, pageSize);
                 Page<Room> roomPage = roomJpaRepository.findAllRoomInUser(code, pageable);
                 System.out.println("🌍 Fallback getAllRoomInUser called - no userId provided");
+                return toRoomInUserPage(roomPage);
+        }
+
+        // Feed trang chủ lọc theo tỉnh (không cá nhân hóa)
+        public PaginationRoomInUserResponseDto getAllRoomInUserByProvince(int pageNumber, int pageSize, String code,
+                        Long provinceId) {
+                Pageable pageable = PageRequest.of(pageNumber, pageSize);
+                return toRoomInUserPage(roomJpaRepository.findAllRoomInUserByProvince(code, provinceId, pageable));
+        }
 
+        private PaginationRoomInUserResponseDto toRoomInUserPage(Page<Room> roomPage) {
+                // Ảnh của cả trang trong 1 query thay vì lazy-load từng phòng
+                Map<UUID, List<ImageResponseDto>> imagesByRoom = roomImageService.loadByRoomIds(
+                                roomPage.getContent().stream().map(Room::getId).toList());
                 List<RoomInUserResponseDto> rooms = roomPage.getContent().stream()
                                 .map(room -> RoomInUserResponseDto.builder()
                                                 .id(room.getId())
@@ -1218,7 +1283,7 @@ public class RoomService {
                                                 .maxPeople(room.getMaxPeople())
                                                 .postStartDate(room.getPost_start_date())
                                                 .address(convertAddress(room.getAddress()))
-                                                .images(convertImages(room.getImages()))
+                                                .images(imagesByRoom.getOrDefault(room.getId(), new ArrayList<>()))
                                                 .conveniences(convertConveniences(room.getConvenients()))
                                                 .landlord(convertLandlord(room.getUser()))
                                                 .build())
@@ -1263,38 +1328,13 @@ public class RoomService {
 
                         // Sử dụng query có sắp xếp theo khoảng cách nếu có tọa độ user
                         if (userLat != null && userLng != null) {
-                                roomPage = roomJpaRepository.findAllRoomInUserSortedByDistance(code, userLat, userLng,
-                                                pageable);
+                                roomPage = findRoomPageSortedByDistance(code, userLat, userLng, pageable);
                         } else {
                                 // Fallback về query cơ bản nếu không có tọa độ
                                 roomPage = roomJpaRepository.findAllRoomInUser(code, pageable);
                         }
 
-                        List<RoomInUserResponseDto> rooms = roomPage.getContent().stream()
-                                        .map(room -> RoomInUserResponseDto.builder()
-                                                        .id(room.getId())
-                                                        .title(room.getTitle())
-                                                        .description(room.getDescription())
-                                                        .priceMonth(room.getPrice_month())
-                                                        .area(room.getArea())
-                                                        .maxPeople(room.getMaxPeople())
-                                                        .postStartDate(room.getPost_start_date())
-                                                        .address(convertAddress(room.getAddress()))
-                                                        .images(convertImages(room.getImages()))
-                                                        .conveniences(convertConveniences(room.getConvenients()))
-                                                        .landlord(convertLandlord(room.getUser()))
-                                                        .build())
-                                        .collect(Collectors.toList());
-
-                        return PaginationRoomInUserResponseDto.builder()
-                                        .data(rooms)
-                                        .pageNumber(roomPage.getNumber())
-                                        .pageSize(roomPage.getSize())
-                                        .totalRecords(roomPage.getTotalElements())
-                                        .totalPages(roomPage.getTotalPages())
-                                        .hasNext(roomPage.hasNext())
-                                        .hasPrevious(roomPage.hasPrevious())
-                                        .build();
+                        return toRoomInUserPage(roomPage);
 
                 } catch (Exception e) {
                         System.err.println("Error in getAllRoomInUserSortedByDistance: " + e.getMessage());
@@ -1314,39 +1354,13 @@ public class RoomService {
 
                         // Sử dụng query có sắp xếp theo khoảng cách nếu có tọa độ
                         if (latitude != null && longitude != null) {
-                                roomPage = roomJpaRepository.findAllRoomInUserSortedByDistance(code, latitude,
-                                                longitude,
-                                                pageable);
+                                roomPage = findRoomPageSortedByDistance(code, latitude, longitude, pageable);
                         } else {
                                 // Fallback về query cơ bản nếu không có tọa độ
                                 roomPage = roomJpaRepository.findAllRoomInUser(code, pageable);
                         }
 
-                        List<RoomInUserResponseDto> rooms = roomPage.getContent().stream()
-                                        .map(room -> RoomInUserResponseDto.builder()
-                                                        .id(room.getId())
-                                                        .title(room.getTitle())
-                                                        .description(room.getDescription())
-                                                        .priceMonth(room.getPrice_month())
-                                                        .area(room.getArea())
-                                                        .maxPeople(room.getMaxPeople())
-                                                        .postStartDate(room.getPost_start_date())
-                                                        .address(convertAddress(room.getAddress()))
-                                                        .images(convertImages(room.getImages()))
-                                                        .conveniences(convertConveniences(room.getConvenients()))
-                                                        .landlord(convertLandlord(room.getUser()))
-                                                        .build())
-                                        .collect(Collectors.toList());
-
-                        return PaginationRoomInUserResponseDto.builder()
-                                        .data(rooms)
-                                        .pageNumber(roomPage.getNumber())
-                                        .pageSize(roomPage.getSize())
-                                        .totalRecords(roomPage.getTotalElements())
-                                        .totalPages(roomPage.getTotalPages())
-                                        .hasNext(roomPage.hasNext())
-                                        .hasPrevious(roomPage.hasPrevious())
-                                        .build();
+                        return toRoomInUserPage(roomPage);
 
                 } catch (Exception e) {
                         System.err.println("Error in getAllRoomInUserWithLocation: " + e.getMessage());
@@ -1357,14 +1371,70 @@ public class RoomService {
                 }
         }
 
+        /**
+         * Lấy 1 trang phòng sắp xếp theo khoảng cách. Thứ tự và tổng số lấy từ
+         * RoomGeoIndexService, DB chỉ hydrate đúng các phòng của trang cần trả về.
+         * Khi index chưa sẵn sàng thì dùng lại query tính khoảng cách trong MySQL.
+         */
+        private Page<Room> findRoomPageSortedByDistance(String code, Double lat, Double lng, Pageable pageable) {
+                if (!roomGeoIndexService.isReady()) {
+                        return roomJpaRepository.findAllRoomInUserSortedByDistance(code, lat, lng, pageable);
+                }
+
+                List<UUID> sortedIds = roomGeoIndexService.findIdsSortedByDistance(code, lat, lng);
+                int from = (int) Math.min(pageable.getOffset(), sortedIds.size());
+                int to = Math.min(from + pageable.getPageSize(), sortedIds.size());
+                List<UUID> pageIds = sortedIds.subList(from, to);
+                if (pageIds.isEmpty()) {
+                        return new PageImpl<>(new ArrayList<>(), pageable, sortedIds.size());
+                }
+
+                Map<UUID, Room> roomsById = roomJpaRepository.findAllRoomInUserByIds(pageIds).stream()
+                                .collect(Collectors.toMap(Room::getId, r -> r, (a, b) -> a));
+                List<Room> rooms = pageIds.stream()
+                                .map(roomsById::get)
+                                .filter(Objects::nonNull)
+                                .collect(Collectors.toList());
+                return new PageImpl<>(rooms, pageable, sortedIds.size());
+        }
+
+        private Page<FilterBasicProjection> findFilterRoomPageFromIndex(FilterRoomRequestDto filterDto,
+                        Pageable pageable) {
+                List<UUID> matchedIds = roomSearchIndexService.search(filterDto);
+                int from = (int) Math.min(pageable.getOffset(), matchedIds.size());
+                int to = Math.min(from + pageable.getPageSize(), matchedIds.size());
+                List<UUID> pageIds = matchedIds.subList(from, to);
+                if (pageIds.isEmpty()) {
+                        return new PageImpl<>(new ArrayList<>(), pageable, matchedIds.size());
+                }
+
+                Map<String, FilterBasicProjection> roomsByHex = roomJpaRepository.findFilterRoomsByIds(pageIds)
+                                .stream()
+                                .collect(Collectors.toMap(FilterBasicProjection::getId, r -> r, (a, b) -> a));
+                List<FilterBasicProjection> rooms = pageIds.stream()
+                                .map(id -> roomsByHex.get(id.toString().replace("-", "")))
+                                .filter(Objects::nonNull)
+                                .collect(Collectors.toList());
+                return new PageImpl<>(rooms, pageable, matchedIds.size());
+        }
+
+        public RoomFacetResponseDto getFilterFacets(FilterRoomRequestDto filterDto) {
+                if (!roomSearchIndexService.isReady()) {
+                        throw new IllegalStateException("Room search index is not ready yet");
+                }
+                return roomSearchIndexService.facets(filterDto);
+        }
+
         public PaginationRoomInUserResponseDto filterRooms(int pageNumber, int pageSize,
                         FilterRoomRequestDto filterDto) {
                 Pageable pageable = PageRequest.of(pageNumber, pageSize);
 
                 Page<FilterBasicProjection> roomPage;
 
-                // Kiểm tra có convenient filter không
-                if (filterDto.getListConvenientIds() == null || filterDto.getListConvenientIds().isEmpty()) {
+                if (roomSearchIndexService.isReady()) {
+                        // Lọc trên search index (BitSet), DB chỉ nạp dữ liệu cho trang hiện tại
+                        roomPage = findFilterRoomPageFromIndex(filterDto, pageable);
+                } else if (filterDto.getListConvenientIds() == null || filterDto.getListConvenientIds().isEmpty()) {
                         // KHÔNG CÓ CONVENIENT FILTER - dùng query cơ bản
                         roomPage = roomJpaRepository.findRoomsWithBasicFilter(
                                         filterDto.getMinPrice(),
@@ -1432,22 +1502,9 @@ public class RoomService {
                                 .collect(Collectors.toList());
 
                 // Load tất cả images cho các rooms
-                Map<UUID, List<ImageResponseDto>> roomImagesMap = new HashMap<>();
-                if (!roomIds.isEmpty()) {
-                        List<Image> allImages = imageJpaRepository.findByRoomIdIn(roomIds);
-                        roomImagesMap = allImages.stream()
-                                        .collect(Collectors.groupingBy(
-                                                        img -> img.getRoom().getId(),
-                                                        Collectors.mapping(
-                                                                        img -> ImageResponseDto.builder()
-                                                                                        .id(img.getId())
-                                                                                        .url(img.getUrl())
-                                                                                        .build(),
-                                                                        Collectors.toList())));
-                }
+                final Map<UUID, List<ImageResponseDto>> finalRoomImagesMap = roomImageService.loadByRoomIds(roomIds);
 
                 // Convert FilterBasicProjection to response DTO (now using flat fields)
-                final Map<UUID, List<ImageResponseDto>> finalRoomImagesMap = roomImagesMap;
                 List<RoomInUserResponseDto> rooms = roomPage.getContent().stream()
                                 .map(room -> {
                                         // Lấy images từ map đã load sẵn
@@ -1588,8 +1645,24 @@ public class RoomService {
         }
 
         public List<RoomInMapResponse> findRoomInMapWithRadius(double centerLat, double centerLng, double radiusKm) {
-                List<RoomMapProjection> rooms = roomJpaRepository.findRoomInMapWithRadius(centerLat, centerLng,
-                                radiusKm);
+                List<RoomMapProjection> rooms;
+                if (roomGeoIndexService.isReady()) {
+                        // Lọc bán kính trong bộ nhớ, DB chỉ hydrate các phòng nằm trong vùng
+                        List<UUID> ids = roomGeoIndexService.findWithinRadius(centerLat, centerLng, radiusKm).stream()
+                                        .map(RoomGeoIndexService.GeoHit::getRoomId)
+                                        .collect(Collectors.toList());
+                        if (ids.isEmpty()) {
+                                return new ArrayList<>();
+                        }
+                        Map<String, RoomMapProjection> byHexId = roomJpaRepository.findRoomMapByIds(ids).stream()
+                                        .collect(Collectors.toMap(RoomMapProjection::getId, r -> r, (a, b) -> a));
+                        rooms = ids.stream()
+                                        .map(id -> byHexId.get(id.toString().replace("-", "")))
+                                        .filter(Objects::nonNull)
+                                        .collect(Collectors.toList());
+                } else {
+                        rooms = roomJpaRepository.findRoomInMapWithRadius(centerLat, centerLng, radiusKm);
+                }
                 return rooms.stream()
                                 .map(room -> RoomInMapResponse.builder()
                                                 .id(UUID.fromString(formatHexToUuid(room.getId())))
@@ -1604,19 +1677,4 @@ public class RoomService {
                                                 .build())
                                 .collect(Collectors.toList());
         }
-
-        // Generate unique 8-digit transaction code using timestamp and user ID
-        private String generateUniqueTransactionCode(String unusedPrefix, UUID userId) {
-                // Use last 4 digits of timestamp for time uniqueness
-                long timestamp = System.currentTimeMillis();
-                String timestampSuffix = String.valueOf(timestamp).substring(String.valueOf(timestamp).length() - 4);
-
-                // Use 4 digits from user ID hash for user uniqueness
-                int userIdHash = Math.abs(userId.toString().hashCode());
-                String userIdSuffix = String.format("%04d", userIdHash % 10000);
-
-                // Combine to create 8-digit code (no prefix)
-                return timestampSuffix + userIdSuffix;
-
-        }
 }
\ No newline at end of file
@@ -0,0 +1,560 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.ants.ktc.ants_ktc.dtos.room.RoomSuggestionInfoDto;
+import com.ants.ktc.ants_ktc.repositories.FavoriteJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.FavoriteCriteriaProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.RoomSuggestionCandidateProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.SuggestionUserProjection;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tính trước danh sách phòng gợi ý cho tất cả user có phòng yêu thích.
+ * <p>
+ * Thay vì chạy 1-2 query cho từng user, user được gom nhóm theo tiêu chí
+ * (tỉnh + khoảng giá, hoặc ô lưới tọa độ tìm kiếm), mỗi nhóm chỉ chạy 1 query
+ * lấy ứng viên, sau đó chấm điểm song song trong bộ nhớ với cùng thứ tự ưu tiên
+ * như các query gợi ý cũ. Kết quả top-N của từng user lưu ở Redis
+ * {@code room_suggestions:{userId}} để bước gửi email và API "gợi ý cho bạn"
+ * đọc lại.
+ */
+@Service
+public class RoomSuggestionBatchService {
+
+    private static final String KEY_PREFIX = "room_suggestions:";
+    private static final double NEAR_RADIUS_KM = 5.0;
+    private static final double FAR_RADIUS_KM = 10.0;
+    private static final double PRICE_BAND = 1_000_000;
+    private static final double GEO_CELL_DEG = 0.1;
+    private static final int READ_BATCH_SIZE = 500;
+
+    @Autowired
+    private FavoriteJpaRepository favoriteJpaRepository;
+
+    @Autowired
+    private RoomJpaRepository roomJpaRepository;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${room-suggestion.top-n:8}")
+    private int topN;
+
+    @Value("${room-suggestion.ttl-hours:26}")
+    private long ttlHours;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private volatile long lastCompletedAt;
+    private volatile Map<String, Object> lastRunStats = Collections.emptyMap();
+
+    @Scheduled(cron = "${room-suggestion.precompute.cron:0 30 18 * * ?}")
+    public void scheduledPrecompute() {
+        precomputeAll();
+    }
+
+    /**
+     * Tính lại gợi ý cho tất cả user có phòng yêu thích.
+     *
+     * @return số user đã được lưu gợi ý, -1 nếu đang có 1 lượt khác chạy
+     */
+    public int precomputeAll() {
+        if (!running.compareAndSet(false, true)) {
+            System.out.println("[RoomSuggestionBatch] Precompute already running, skipping");
+            return -1;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            List<SuggestionUserProjection> users = favoriteJpaRepository.findSuggestionUsers();
+            Map<UUID, List<FavoriteCriteriaProjection>> favoritesByUser = favoriteJpaRepository
+                    .findAllFavoriteCriteria().stream()
+                    .collect(Collectors.groupingBy(FavoriteCriteriaProjection::getUserId));
+
+            RunResult run = compute(users, favoritesByUser);
+            store(run.suggestions);
+
+            long elapsed = System.currentTimeMillis() - start;
+            long nonEmpty = run.suggestions.values().stream().filter(list -> !list.isEmpty()).count();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("users", run.suggestions.size());
+            stats.put("usersWithSuggestions", nonEmpty);
+            stats.put("groups", run.groupCount);
+            stats.put("candidateQueries", run.groupCount);
+            stats.put("elapsedMs", elapsed);
+            stats.put("completedAt", new Date());
+            lastRunStats = stats;
+            lastCompletedAt = System.currentTimeMillis();
+
+            System.out.println("[RoomSuggestionBatch] Precomputed suggestions for " + run.suggestions.size()
+                    + " users (" + nonEmpty + " non-empty) using " + run.groupCount + " candidate queries in "
+                    + elapsed + "ms");
+            return run.suggestions.size();
+        } catch (Exception e) {
+            System.err.println("[RoomSuggestionBatch] Precompute failed: " + e.getMessage());
+            e.printStackTrace();
+            return 0;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * true nếu lượt tính gần nhất của instance này vẫn còn trong TTL của kết quả.
+     */
+    public boolean hasFreshResults() {
+        return lastCompletedAt > 0
+                && System.currentTimeMillis() - lastCompletedAt < Duration.ofHours(ttlHours).toMillis();
+    }
+
+    public Map<String, Object> getLastRunStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(lastRunStats);
+        stats.put("running", running.get());
+        return stats;
+    }
+
+    /**
+     * Gợi ý cho 1 user (API "gợi ý cho bạn"). Đọc kết quả đã tính trước, nếu chưa
+     * có (user mới thêm yêu thích sau lượt batch) thì tính riêng cho user đó và
+     * lưu lại.
+     */
+    public List<RoomSuggestionInfoDto> getSuggestions(UUID userId) {
+        List<RoomSuggestionInfoDto> stored = readStored(List.of(userId)).get(userId);
+        if (stored != null) {
+            return stored;
+        }
+        List<SuggestionUserProjection> users = favoriteJpaRepository.findSuggestionUserById(userId);
+        List<FavoriteCriteriaProjection> favorites = favoriteJpaRepository.findFavoriteCriteriaByUserId(userId);
+        if (users.isEmpty() || favorites.isEmpty()) {
+            return Collections.emptyList();
+        }
+        RunResult run = compute(users, Map.of(userId, favorites));
+        store(run.suggestions);
+        return run.suggestions.getOrDefault(userId, Collections.emptyList());
+    }
+
+    /**
+     * Đọc kết quả đã tính trước. User không có trong map trả về là chưa được tính
+     * (khác với danh sách rỗng: đã tính nhưng không có phòng phù hợp).
+     */
+    public Map<UUID, List<RoomSuggestionInfoDto>> readStored(List<UUID> userIds) {
+        Map<UUID, List<RoomSuggestionInfoDto>> result = new HashMap<>();
+        for (int from = 0; from < userIds.size(); from += READ_BATCH_SIZE) {
+            List<UUID> batch = userIds.subList(from, Math.min(from + READ_BATCH_SIZE, userIds.size()));
+            List<String> keys = batch.stream().map(id -> KEY_PREFIX + id).collect(Collectors.toList());
+            List<String> values;
+            try {
+                values = redisTemplate.opsForValue().multiGet(keys);
+            } catch (Exception e) {
+                System.err.println("[RoomSuggestionBatch] Failed to read suggestions: " + e.getMessage());
+                continue;
+            }
+            if (values == null) {
+                continue;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                String json = values.get(i);
+                if (json == null) {
+                    continue;
+                }
+                try {
+                    result.put(batch.get(i), objectMapper.readValue(json,
+                            new TypeReference<List<RoomSuggestionInfoDto>>() {
+                            }));
+                } catch (Exception e) {
+                    System.err.println("[RoomSuggestionBatch] Corrupted suggestions for user " + batch.get(i)
+                            + ": " + e.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
+    // Dùng cho bước gửi email: danh sách user cần gửi
+    public List<SuggestionUserProjection> findRecipients() {
+        return favoriteJpaRepository.findSuggestionUsers().stream()
+                .filter(user -> Boolean.TRUE.equals(user.getEmailNotifications()))
+                .filter(user -> user.getEmail() != null && !user.getEmail().trim().isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    private RunResult compute(List<SuggestionUserProjection> users,
+            Map<UUID, List<FavoriteCriteriaProjection>> favoritesByUser) {
+        List<UserPlan> plans = new ArrayList<>();
+        Map<String, CandidateGroup> groups = new HashMap<>();
+
+        for (SuggestionUserProjection user : users) {
+            List<FavoriteCriteriaProjection> favorites = favoritesByUser.get(user.getUserId());
+            if (favorites == null || favorites.isEmpty()) {
+                continue;
+            }
+            UserPlan plan = new UserPlan(user.getUserId(), analyzeCriteria(favorites),
+                    favorites.stream().map(FavoriteCriteriaProjection::getRoomId).collect(Collectors.toSet()),
+                    user.getSearchLatitude(), user.getSearchLongitude());
+
+            // Nhóm theo tỉnh ưu tiên nhất + khoảng giá (cho gợi ý theo yêu thích)
+            if (!plan.criteria.provinces.isEmpty()) {
+                long band = plan.criteria.avgPrice == null ? -1
+                        : (long) Math.floor(plan.criteria.avgPrice / PRICE_BAND);
+                String key = "p|" + plan.criteria.provinces.get(0) + "|" + band;
+                plan.provinceGroup = groups.computeIfAbsent(key, k -> new CandidateGroup());
+                plan.provinceGroup.addProvinceMember(plan.criteria);
+            }
+            // Nhóm theo ô lưới tọa độ tìm kiếm (cho gợi ý theo bán kính)
+            if (plan.lat != null && plan.lng != null) {
+                long cellLat = (long) Math.floor(plan.lat / GEO_CELL_DEG);
+                long cellLng = (long) Math.floor(plan.lng / GEO_CELL_DEG);
+                String key = "g|" + cellLat + "|" + cellLng;
+                plan.geoGroup = groups.computeIfAbsent(key, k -> new CandidateGroup(cellLat, cellLng));
+            }
+            plans.add(plan);
+        }
+
+        // Mỗi nhóm 1 query ứng viên
+        for (CandidateGroup group : groups.values()) {
+            group.candidates = loadCandidates(group);
+        }
+
+        // Chấm điểm song song, thuần CPU nên dùng ForkJoin pool
+        Map<UUID, List<RoomSuggestionInfoDto>> suggestions = new ConcurrentHashMap<>();
+        plans.parallelStream().forEach(plan -> suggestions.put(plan.userId, rank(plan)));
+        return new RunResult(suggestions, groups.size());
+    }
+
+    private List<RoomSuggestionCandidateProjection> loadCandidates(CandidateGroup group) {
+        try {
+            if (group.isGeo) {
+                double minLat = group.cellLat * GEO_CELL_DEG;
+                double maxLat = minLat + GEO_CELL_DEG;
+                double minLng = group.cellLng * GEO_CELL_DEG;
+                double maxLng = minLng + GEO_CELL_DEG;
+                double latMargin = FAR_RADIUS_KM / 111.0;
+                double maxAbsLat = Math.min(89.0, Math.max(Math.abs(minLat), Math.abs(maxLat)) + latMargin);
+                double lngMargin = FAR_RADIUS_KM / (111.32 * Math.cos(Math.toRadians(maxAbsLat)));
+                return roomJpaRepository.findSuggestionCandidatesInBox(
+                        minLat - latMargin, maxLat + latMargin, minLng - lngMargin, maxLng + lngMargin);
+            }
+            return roomJpaRepository.findSuggestionCandidatesByProvinces(
+                    new ArrayList<>(group.provinces), group.minPrice, group.maxPrice);
+        } catch (Exception e) {
+            System.err.println("[RoomSuggestionBatch] Failed to load candidates: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Thứ tự ưu tiên giống các query cũ: có tọa độ thì bán kính 5km rồi 10km kèm
+     * tiêu chí, sau đó chỉ theo bán kính; cuối cùng là theo tỉnh/giá của phòng
+     * yêu thích.
+     */
+    private List<RoomSuggestionInfoDto> rank(UserPlan plan) {
+        RoomCriteria criteria = plan.criteria;
+
+        if (plan.geoGroup != null) {
+            List<Scored> nearby = new ArrayList<>();
+            for (RoomSuggestionCandidateProjection room : plan.geoGroup.candidates) {
+                if (room.getLat() == null || room.getLng() == null || plan.favoriteRoomIds.contains(room.getId())) {
+                    continue;
+                }
+                double distance = RoomGeoIndexService.haversineKm(plan.lat, plan.lng, room.getLat(), room.getLng());
+                if (distance <= FAR_RADIUS_KM) {
+                    nearby.add(new Scored(room, distance, criteria));
+                }
+            }
+            Comparator<Scored> byCriteria = Comparator.comparingInt((Scored s) -> s.locationScore)
+                    .thenComparingDouble(s -> s.distance)
+                    .thenComparingDouble(s -> s.priceScore)
+                    .thenComparingDouble(s -> s.areaScore)
+                    .thenComparingLong(Scored::createdDesc);
+            for (double radius : new double[] { NEAR_RADIUS_KM, FAR_RADIUS_KM }) {
+                List<RoomSuggestionInfoDto> result = top(nearby, s -> s.distance <= radius && s.inPriceRange,
+                        byCriteria, true);
+                if (!result.isEmpty()) {
+                    return result;
+                }
+            }
+            Comparator<Scored> byDistance = Comparator.comparingDouble(s -> s.distance);
+            for (double radius : new double[] { NEAR_RADIUS_KM, FAR_RADIUS_KM }) {
+                List<RoomSuggestionInfoDto> result = top(nearby, s -> s.distance <= radius, byDistance, true);
+                if (!result.isEmpty()) {
+                    return result;
+                }
+            }
+        }
+
+        if (plan.provinceGroup != null) {
+            List<Scored> matched = new ArrayList<>();
+            for (RoomSuggestionCandidateProjection room : plan.provinceGroup.candidates) {
+                if (plan.favoriteRoomIds.contains(room.getId())
+                        || !criteria.provinces.contains(room.getProvinceName())) {
+                    continue;
+                }
+                Scored scored = new Scored(room, 0, criteria);
+                if (scored.inPriceRange) {
+                    matched.add(scored);
+                }
+            }
+            // Cùng phường > cùng quận > còn lại (đã lọc cùng tỉnh)
+            Comparator<Scored> byFavorites = Comparator.comparingInt((Scored s) -> Math.min(s.locationScore, 3))
+                    .thenComparingDouble(s -> s.priceScore)
+                    .thenComparingDouble(s -> s.areaScore)
+                    .thenComparingLong(Scored::createdDesc);
+            return top(matched, s -> true, byFavorites, false);
+        }
+        return Collections.emptyList();
+    }
+
+    private List<RoomSuggestionInfoDto> top(List<Scored> scored, Predicate<Scored> filter,
+            Comparator<Scored> order, boolean withDistance) {
+        return scored.stream()
+                .filter(filter)
+                .sorted(order)
+                .limit(topN)
+                .map(s -> toDto(s, withDistance))
+                .collect(Collectors.toList());
+    }
+
+    private void store(Map<UUID, List<RoomSuggestionInfoDto>> suggestions) {
+        if (suggestions.isEmpty()) {
+            return;
+        }
+        long ttlSeconds = Duration.ofHours(ttlHours).getSeconds();
+        Map<String, String> values = new HashMap<>();
+        for (Map.Entry<UUID, List<RoomSuggestionInfoDto>> entry : suggestions.entrySet()) {
+            try {
+                values.put(KEY_PREFIX + entry.getKey(), objectMapper.writeValueAsString(entry.getValue()));
+            } catch (Exception e) {
+                System.err.println("[RoomSuggestionBatch] Failed to serialize suggestions for user "
+                        + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+        // Pipeline để 10k user không thành 10k round-trip
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            values.forEach((key, value) -> stringConnection.setEx(key, ttlSeconds, value));
+            return null;
+        });
+    }
+
+    private RoomSuggestionInfoDto toDto(Scored scored, boolean withDistance) {
+        RoomSuggestionCandidateProjection room = scored.room;
+        RoomSuggestionInfoDto dto = new RoomSuggestionInfoDto();
+        dto.setId(room.getId());
+        dto.setTitle(room.getTitle());
+        dto.setPriceMonth(room.getPriceMonth());
+        dto.setArea(room.getArea());
+        dto.setAddress(room.getFullAddress());
+        dto.setDescription(room.getDescription());
+        dto.setLandlordName(room.getLandlordName());
+        dto.setLandlordEmail(room.getLandlordEmail());
+        dto.setLandlordPhone(room.getLandlordPhone());
+        dto.setDistanceKm(withDistance ? scored.distance : null);
+        return dto;
+    }
+
+    // Cùng công thức với RoomSuggestionService.analyzeFavoriteRoomsCriteria
+    private RoomCriteria analyzeCriteria(List<FavoriteCriteriaProjection> favorites) {
+        RoomCriteria criteria = new RoomCriteria();
+        List<String> provinces = new ArrayList<>();
+        List<String> districts = new ArrayList<>();
+        List<String> wards = new ArrayList<>();
+        double priceSum = 0;
+        int priceCount = 0;
+        double areaSum = 0;
+        int areaCount = 0;
+
+        for (FavoriteCriteriaProjection favorite : favorites) {
+            if (favorite.getPriceMonth() != null) {
+                priceSum += favorite.getPriceMonth();
+                priceCount++;
+            }
+            if (favorite.getArea() != null) {
+                areaSum += favorite.getArea();
+                areaCount++;
+            }
+            if (favorite.getWardName() != null) {
+                wards.add(favorite.getWardName());
+            }
+            if (favorite.getDistrictName() != null) {
+                districts.add(favorite.getDistrictName());
+            }
+            if (favorite.getProvinceName() != null) {
+                provinces.add(favorite.getProvinceName());
+            }
+        }
+
+        if (priceCount > 0) {
+            double avgPrice = priceSum / priceCount;
+            double priceRange = Math.max(1000000, avgPrice * 0.5);
+            criteria.minPrice = Math.max(0, avgPrice - priceRange);
+            criteria.maxPrice = avgPrice + priceRange;
+            criteria.avgPrice = (criteria.minPrice + criteria.maxPrice) / 2;
+        }
+        if (areaCount > 0) {
+            double avgArea = areaSum / areaCount;
+            criteria.minArea = Math.max(5, avgArea * 0.6);
+            criteria.maxArea = avgArea * 1.4;
+        }
+        criteria.provinces = topItems(provinces, 5);
+        criteria.districts = new HashSet<>(topItems(districts, 8));
+        criteria.wards = new HashSet<>(topItems(wards, 10));
+        return criteria;
+    }
+
+    private static List<String> topItems(List<String> items, int limit) {
+        return items.stream()
+                .collect(Collectors.groupingBy(item -> item, Collectors.counting()))
+                .entrySet().stream()
+                .sorted((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private static class RoomCriteria {
+        Double minPrice;
+        Double maxPrice;
+        Double avgPrice;
+        Double minArea;
+        Double maxArea;
+        List<String> provinces = new ArrayList<>(); // theo thứ tự tần suất
+        Set<String> districts = new HashSet<>();
+        Set<String> wards = new HashSet<>();
+    }
+
+    private static class UserPlan {
+        final UUID userId;
+        final RoomCriteria criteria;
+        final Set<UUID> favoriteRoomIds;
+        final Double lat;
+        final Double lng;
+        CandidateGroup provinceGroup;
+        CandidateGroup geoGroup;
+
+        UserPlan(UUID userId, RoomCriteria criteria, Set<UUID> favoriteRoomIds, Double lat, Double lng) {
+            this.userId = userId;
+            this.criteria = criteria;
+            this.favoriteRoomIds = favoriteRoomIds;
+            this.lat = lat;
+            this.lng = lng;
+        }
+    }
+
+    private static class CandidateGroup {
+        final boolean isGeo;
+        final long cellLat;
+        final long cellLng;
+        final Set<String> provinces = new LinkedHashSet<>();
+        Double minPrice;
+        Double maxPrice;
+        boolean unboundedMin;
+        boolean unboundedMax;
+        List<RoomSuggestionCandidateProjection> candidates = Collections.emptyList();
+
+        CandidateGroup() {
+            this.isGeo = false;
+            this.cellLat = 0;
+            this.cellLng = 0;
+        }
+
+        CandidateGroup(long cellLat, long cellLng) {
+            this.isGeo = true;
+            this.cellLat = cellLat;
+            this.cellLng = cellLng;
+        }
+
+        // Khoảng giá của nhóm là hợp các khoảng giá thành viên
+        void addProvinceMember(RoomCriteria criteria) {
+            provinces.addAll(criteria.provinces);
+            if (criteria.minPrice == null) {
+                unboundedMin = true;
+                minPrice = null;
+            } else if (!unboundedMin) {
+                minPrice = minPrice == null ? criteria.minPrice : Math.min(minPrice, criteria.minPrice);
+            }
+            if (criteria.maxPrice == null) {
+                unboundedMax = true;
+                maxPrice = null;
+            } else if (!unboundedMax) {
+                maxPrice = maxPrice == null ? criteria.maxPrice : Math.max(maxPrice, criteria.maxPrice);
+            }
+        }
+    }
+
+    private static class Scored {
+        final RoomSuggestionCandidateProjection room;
+        final double distance;
+        final int locationScore;
+        final double priceScore;
+        final double areaScore;
+        final boolean inPriceRange;
+
+        Scored(RoomSuggestionCandidateProjection room, double distance, RoomCriteria criteria) {
+            this.room = room;
+            this.distance = distance;
+            if (room.getWardName() != null && criteria.wards.contains(room.getWardName())) {
+                this.locationScore = 1;
+            } else if (room.getDistrictName() != null && criteria.districts.contains(room.getDistrictName())) {
+                this.locationScore = 2;
+            } else if (room.getProvinceName() != null && criteria.provinces.contains(room.getProvinceName())) {
+                this.locationScore = 3;
+            } else {
+                this.locationScore = 4;
+            }
+            double price = room.getPriceMonth() != null ? room.getPriceMonth() : 0;
+            this.priceScore = criteria.avgPrice == null ? 0 : Math.abs(price - criteria.avgPrice);
+            double area = room.getArea() != null ? room.getArea() : 0;
+            if (criteria.minArea == null || criteria.maxArea == null
+                    || (area >= criteria.minArea && area <= criteria.maxArea)) {
+                this.areaScore = 0;
+            } else {
+                this.areaScore = Math.abs(area - (criteria.minArea + criteria.maxArea) / 2);
+            }
+            this.inPriceRange = (criteria.minPrice == null || price >= criteria.minPrice)
+                    && (criteria.maxPrice == null || price <= criteria.maxPrice);
+        }
+
+        // Phòng mới hơn xếp trước
+        long createdDesc() {
+            Date created = room.getCreatedDate();
+            return created == null ? Long.MAX_VALUE : -created.getTime();
+        }
+    }
+
+    private static class RunResult {
+        final Map<UUID, List<RoomSuggestionInfoDto>> suggestions;
+        final int groupCount;
+
+        RunResult(Map<UUID, List<RoomSuggestionInfoDto>> suggestions, int groupCount) {
+            this.suggestions = suggestions;
+            this.groupCount = groupCount;
+        }
+    }
+}
@@ -3,16 +3,17 @@ package com.ants.ktc.ants_ktc.services;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -22,22 +23,40 @@ import com.ants.ktc.ants_ktc.entities.Room;
 import com.ants.ktc.ants_ktc.entities.User;
 import com.ants.ktc.ants_ktc.repositories.FavoriteJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.projection.RoomSuggestionProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.SuggestionUserProjection;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
 
 @Service
 public class RoomSuggestionService {
 
+    private static final int EMAIL_READ_BATCH_SIZE = 500;
+
     @Autowired
     private FavoriteJpaRepository favoriteJpaRepository;
 
     @Autowired
     private RoomJpaRepository roomJpaRepository;
 
+    @Autowired
+    private UserJpaRepository userJpaRepository;
+
     @Autowired
     private MailService mailService;
 
-    // Semaphore để giới hạn số lượng email gửi đồng thời (tránh spam)
-    private final Semaphore emailSemaphore = new Semaphore(5); // Tối đa 5 email cùng lúc
+    @Autowired
+    private RoomSuggestionBatchService roomSuggestionBatchService;
+
+    // Tốc độ gửi email gợi ý (email/giây), tránh bị SMTP chặn
+    @Value("${room-suggestion.email.rate-per-second:5}")
+    private double emailRatePerSecond;
+
+    private final AtomicBoolean sending = new AtomicBoolean(false);
+    private ThreadPoolTaskExecutor emailExecutor;
 
     // @Scheduled(cron = "0 0 7 * * ?")
     // public void sendMorningSuggestions() {
@@ -46,83 +65,107 @@ public class RoomSuggestionService {
     // sendRoomSuggestionsToAllUsers();
     // }
 
+    @PostConstruct
+    public void init() {
+        emailExecutor = new ThreadPoolTaskExecutor();
+        emailExecutor.setCorePoolSize(1);
+        emailExecutor.setMaxPoolSize(1);
+        emailExecutor.setThreadNamePrefix("room-suggestion-email-");
+        emailExecutor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        emailExecutor.shutdown();
+    }
+
+    // Gửi mất hàng chục phút (giới hạn tốc độ) nên chạy trên luồng riêng, không
+    // giữ luồng @Scheduled dùng chung của app (heartbeat chat, flush, retry...)
     @Scheduled(cron = "0 0 19 * * ?")
     public void sendEveningSuggestions() {
+        if (!sending.compareAndSet(false, true)) {
+            System.out.println("[RoomSuggestionService] Previous suggestion run still sending, skipped");
+            return;
+        }
         System.out.println("[RoomSuggestionService] Starting evening room suggestions at 7:00 PM");
-        sendRoomSuggestionsToAllUsers();
+        emailExecutor.execute(() -> {
+            try {
+                sendRoomSuggestionsToAllUsers();
+            } finally {
+                sending.set(false);
+            }
+        });
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * Bước gửi email: đọc gợi ý đã tính trước bởi RoomSuggestionBatchService và
+     * gửi với tốc độ giới hạn, không query phòng cho từng user nữa.
+     */
     public void sendRoomSuggestionsToAllUsers() {
         try {
-            // Lấy tất cả user có favorite rooms
-            List<User> usersWithFavorites = favoriteJpaRepository.findUsersWithFavorites();
-            System.out.println("[RoomSuggestionService] Found " + usersWithFavorites.size() + " users with favorites");
-
-            List<CompletableFuture<Void>> futures = new ArrayList<>();
-
-            for (User user : usersWithFavorites) {
-                // Xử lý bất đồng bộ cho từng user để tránh block
-                CompletableFuture<Void> future = processUserSuggestionAsync(user);
-                futures.add(future);
-
-                // Thêm delay nhỏ giữa các user để tránh quá tải
-                try {
-                    Thread.sleep(3000); // 3000ms delay
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+            // Lượt tính trước chưa chạy (vd. app vừa restart) thì tính ngay
+            if (!roomSuggestionBatchService.hasFreshResults()) {
+                System.out.println("[RoomSuggestionService] No fresh precomputed suggestions, precomputing now");
+                roomSuggestionBatchService.precomputeAll();
             }
 
-            // Đợi tất cả hoàn thành
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-            System.out.println("[RoomSuggestionService] Completed sending suggestions to all users");
-
-        } catch (Exception e) {
-            System.err.println("[RoomSuggestionService] Error in sendRoomSuggestionsToAllUsers: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-
-    @Async
-    public CompletableFuture<Void> processUserSuggestionAsync(User user) {
-        try {
-            // Acquire semaphore trước khi gửi email
-            emailSemaphore.acquire();
-
-            try {
-                // Kiểm tra user có bật email notifications không
-                if (user.getProfile() == null || !user.getProfile().isEmailNotifications()) {
-                    System.out.println("[RoomSuggestionService] User " + user.getUsername()
-                            + " has email notifications disabled, skipping");
-                    return CompletableFuture.completedFuture(null);
-                }
-
-                List<RoomSuggestionInfoDto> suggestions = findSuggestedRoomsForUser(user);
-
-                if (!suggestions.isEmpty()) {
-                    String userEmail = user.getProfile() != null ? user.getProfile().getEmail() : null;
-                    String userName = user.getProfile() != null ? user.getProfile().getFullName() : user.getUsername();
+            List<SuggestionUserProjection> recipients = roomSuggestionBatchService.findRecipients();
+            System.out.println("[RoomSuggestionService] Found " + recipients.size() + " users to notify");
+
+            long intervalNanos = (long) (1_000_000_000L / Math.max(0.1, emailRatePerSecond));
+            long nextSendAt = System.nanoTime();
+            int sent = 0;
+            int empty = 0;
+            int missing = 0;
+
+            for (int from = 0; from < recipients.size(); from += EMAIL_READ_BATCH_SIZE) {
+                List<SuggestionUserProjection> batch = recipients.subList(from,
+                        Math.min(from + EMAIL_READ_BATCH_SIZE, recipients.size()));
+                Map<UUID, List<RoomSuggestionInfoDto>> stored = roomSuggestionBatchService.readStored(
+                        batch.stream().map(SuggestionUserProjection::getUserId).collect(Collectors.toList()));
+
+                for (SuggestionUserProjection user : batch) {
+                    List<RoomSuggestionInfoDto> suggestions = stored.get(user.getUserId());
+                    if (suggestions == null) {
+                        missing++;
+                        continue;
+                    }
+                    if (suggestions.isEmpty()) {
+                        empty++;
+                        continue;
+                    }
 
-                    if (userEmail != null && !userEmail.trim().isEmpty()) {
-                        mailService.sendRoomSuggestionEmail(userEmail, userName, suggestions);
-                        System.out.println(
-                                "[RoomSuggestionService] Sent " + suggestions.size() + " suggestions to: " + userEmail);
+                    long waitNanos = nextSendAt - System.nanoTime();
+                    if (waitNanos > 0) {
+                        Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
                     }
+                    nextSendAt = Math.max(nextSendAt, System.nanoTime()) + intervalNanos;
+
+                    String userName = user.getFullName() != null ? user.getFullName() : user.getUsername();
+                    mailService.sendRoomSuggestionEmail(user.getEmail(), userName, suggestions);
+                    sent++;
                 }
-            } finally {
-                // Release semaphore sau khi hoàn thành
-                emailSemaphore.release();
             }
 
+            System.out.println("[RoomSuggestionService] Completed sending suggestions: sent=" + sent
+                    + ", noMatch=" + empty + ", notPrecomputed=" + missing);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("[RoomSuggestionService] Sending suggestions interrupted");
         } catch (Exception e) {
-            System.err.println(
-                    "[RoomSuggestionService] Error processing user " + user.getUsername() + ": " + e.getMessage());
+            System.err.println("[RoomSuggestionService] Error in sendRoomSuggestionsToAllUsers: " + e.getMessage());
             e.printStackTrace();
         }
+    }
 
-        return CompletableFuture.completedFuture(null);
+    /**
+     * API "gợi ý cho bạn": trả về kết quả đã tính trước của batch.
+     */
+    public List<RoomSuggestionInfoDto> getSuggestedRoomsForUsername(String username) {
+        User user = userJpaRepository.findByUsername(username)
+                .orElseThrow(() -> new EntityNotFoundException("User not found with username: " + username));
+        return roomSuggestionBatchService.getSuggestions(user.getId());
     }
 
     @Transactional(readOnly = true)
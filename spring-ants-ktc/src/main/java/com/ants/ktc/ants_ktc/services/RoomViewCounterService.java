@@ -0,0 +1,151 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Bộ đếm lượt xem kiểu write-behind: mỗi lượt xem chỉ tăng 1 {@link LongAdder}
+ * trong bộ nhớ, job định kỳ mới cộng dồn phần chênh lệch xuống bảng rooms bằng
+ * {@code UPDATE ... SET view_count = view_count + ?}. Không còn đọc - sửa - ghi
+ * cả entity Room nên không mất lượt xem khi nhiều request cùng lúc.
+ *
+ * Số lượt xem "live" = giá trị đã ghi xuống DB (cache theo phòng, giới hạn
+ * {@code room.view-counter.max-cached-rooms} phòng và đọc lại từ DB sau
+ * {@code room.view-counter.persisted-ttl-ms}) + phần chưa flush.
+ */
+@Service
+public class RoomViewCounterService {
+
+    @Autowired
+    private RoomJpaRepository roomJpaRepository;
+
+    // Lượt xem chưa ghi xuống DB
+    private final Map<UUID, LongAdder> pending = new ConcurrentHashMap<>();
+    // view_count đã ghi xuống DB (bao gồm các lần flush của instance này)
+    private Cache<UUID, AtomicLong> persisted;
+
+    @Value("${room.view-counter.max-cached-rooms:10000}")
+    private long maxCachedRooms = 10000;
+
+    // Hết hạn thì đọc lại từ DB, lấy cả lượt xem do node khác đã flush
+    @Value("${room.view-counter.persisted-ttl-ms:300000}")
+    private long persistedTtlMs = 300000;
+
+    @PostConstruct
+    public void init() {
+        persisted = Caffeine.newBuilder()
+                .maximumSize(maxCachedRooms)
+                .expireAfterWrite(Duration.ofMillis(persistedTtlMs))
+                .build();
+    }
+
+    /**
+     * Ghi nhận 1 lượt xem và trả về tổng lượt xem hiện tại của phòng.
+     */
+    public long increment(UUID roomId) {
+        AtomicLong base = persistedCount(roomId);
+        // compute giữ khóa của entry: flush không thể gỡ adder giữa lúc lấy và tăng
+        LongAdder adder = pending.compute(roomId, (k, current) -> {
+            LongAdder target = current != null ? current : new LongAdder();
+            target.increment();
+            return target;
+        });
+        return base.get() + adder.sum();
+    }
+
+    /**
+     * Tổng lượt xem hiện tại, gồm cả phần chưa flush.
+     */
+    public long getLiveCount(UUID roomId) {
+        return persistedCount(roomId).get() + pendingCount(roomId);
+    }
+
+    /**
+     * Lượt xem chưa flush của các phòng, dùng để cộng thêm vào các thống kê
+     * đọc trực tiếp từ DB.
+     */
+    public long pendingCount(List<UUID> roomIds) {
+        long total = 0;
+        for (UUID roomId : roomIds) {
+            total += pendingCount(roomId);
+        }
+        return total;
+    }
+
+    private long pendingCount(UUID roomId) {
+        LongAdder adder = pending.get(roomId);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    private AtomicLong persistedCount(UUID roomId) {
+        return persisted.get(roomId, k -> new AtomicLong(roomJpaRepository.findViewCountById(k)
+                .orElseThrow(() -> new IllegalArgumentException("Room not found"))));
+    }
+
+    @Scheduled(fixedDelayString = "${room.view-counter.flush-interval-ms:10000}")
+    public void flush() {
+        int flushedRooms = 0;
+        long flushedViews = 0;
+
+        for (Map.Entry<UUID, LongAdder> entry : pending.entrySet()) {
+            UUID roomId = entry.getKey();
+            long delta = entry.getValue().sumThenReset();
+            if (delta == 0) {
+                removeIfIdle(roomId);
+                continue;
+            }
+
+            // Chuyển sang persisted trước khi ghi DB để số live không bị hụt
+            AtomicLong base = persisted.getIfPresent(roomId);
+            if (base != null) {
+                base.addAndGet(delta);
+            }
+            try {
+                roomJpaRepository.addViewCount(roomId, delta);
+                flushedRooms++;
+                flushedViews += delta;
+                removeIfIdle(roomId);
+            } catch (Exception e) {
+                // Trả lại phần chênh lệch để lần flush sau ghi tiếp
+                if (base != null) {
+                    base.addAndGet(-delta);
+                }
+                entry.getValue().add(delta);
+                System.err.println("[RoomViewCounter] Failed to flush " + delta + " views for room " + roomId
+                        + ": " + e.getMessage());
+            }
+        }
+
+        if (flushedRooms > 0) {
+            System.out.println("[RoomViewCounter] Flushed " + flushedViews + " views for " + flushedRooms + " rooms");
+        }
+    }
+
+    // Gỡ adder đã về 0 để map không giữ mọi phòng từng được xem. Kiểm tra trong
+    // computeIfPresent nên lượt xem tăng đồng thời (qua compute) không bị mất
+    private void removeIfIdle(UUID roomId) {
+        pending.computeIfPresent(roomId, (k, adder) -> adder.sum() == 0 ? null : adder);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
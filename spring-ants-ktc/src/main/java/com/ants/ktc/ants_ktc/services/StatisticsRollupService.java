@@ -0,0 +1,447 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ants.ktc.ants_ktc.events.RoomChangedEvent;
+import com.ants.ktc.ants_ktc.events.TransactionRecordedEvent;
+import com.ants.ktc.ants_ktc.events.UserRegisteredEvent;
+import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.StatisticRollupJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.ProvinceRollupProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.RoomStatisticKeyProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.StatisticRollupProjection;
+import com.ants.ktc.ants_ktc.repositories.projection.landlord.FeePostRoomProjection;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Số liệu thống kê cộng dồn sẵn trong bảng {@code statistic_rollups}, để các
+ * dashboard admin/landlord đọc vài dòng thay vì GROUP BY lại toàn bộ
+ * transactions/users/rooms mỗi lần tải trang.
+ * <ul>
+ * <li>Giao dịch, đăng ký: cộng phần chênh lệch theo ngày + tháng (scope
+ * {@code all} và theo landlord) khi nhận event sau commit, gom trong bộ nhớ và
+ * ghi xuống DB định kỳ bằng upsert (write-behind như RoomViewCounterService).</li>
+ * <li>Phòng theo tỉnh / theo landlord là số liệu trạng thái hiện tại: khi có
+ * {@link RoomChangedEvent} (duyệt, ẩn, xóa, thuê/trả phòng...) chỉ đếm lại
+ * đúng tỉnh và landlord của phòng đó.</li>
+ * <li>Reconcile hằng đêm dựng lại toàn bộ từ dữ liệu gốc, sửa các sai lệch do
+ * mất phần chưa flush khi tắt máy hoặc phòng đổi tỉnh.</li>
+ * </ul>
+ * Khi bảng chưa có dữ liệu (lần chạy đầu) {@link #isReady()} = false, các
+ * service thống kê dùng lại query gốc.
+ */
+@Service
+public class StatisticsRollupService {
+
+    public static final String METRIC_TRANSACTION_PREFIX = "txn:";
+    public static final String METRIC_TRANSACTION_TOTAL = "txn:*";
+    public static final String METRIC_USER_REGISTRATIONS = "user_reg";
+    public static final String METRIC_ROOMS_BY_PROVINCE = "rooms_by_province";
+    public static final String METRIC_LANDLORD_ROOMS = "landlord_rooms";
+    public static final String METRIC_LANDLORD_RENTED = "landlord_rented";
+    public static final String METRIC_LANDLORD_VISIBLE_ROOMS = "landlord_visible_rooms";
+    public static final String SCOPE_ALL = "all";
+    public static final String PERIOD_TOTAL = "*";
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final String RECONCILE_LOCK_KEY = "statistics:rollup:reconcile-lock";
+    private static final int ROOM_KEY_BATCH = 500;
+
+    @Autowired
+    private StatisticRollupJpaRepository rollupRepository;
+
+    @Autowired
+    private RoomJpaRepository roomJpaRepository;
+
+    @Autowired
+    private UserJpaRepository userJpaRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = false)
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${statistics.rollup.enabled:true}")
+    private boolean enabled;
+
+    // Phần chênh lệch chưa ghi xuống DB. Delta chỉ được sửa bên trong
+    // compute() nên flush có thể remove() mà không mất phần cộng đồng thời.
+    private final Map<RollupKey, Delta> pending = new ConcurrentHashMap<>();
+    private final Set<UUID> dirtyRooms = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean reconciling = new AtomicBoolean(false);
+    private final String nodeId = UUID.randomUUID().toString();
+    private volatile boolean ready = false;
+
+    private final LongAdder appliedDeltas = new LongAdder();
+    private final LongAdder refreshedLandlords = new LongAdder();
+    private final LongAdder refreshedProvinces = new LongAdder();
+    private final LongAdder flushErrors = new LongAdder();
+    private volatile Map<String, Object> lastReconcile = Map.of();
+
+    private record RollupKey(String metric, String scope, String period) {
+    }
+
+    private static final class Delta {
+        private double amount;
+        private long count;
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (rollupRepository.count() > 0) {
+                ready = true;
+                return;
+            }
+            // Lần đầu: dựng từ dữ liệu có sẵn
+            reconcile();
+        } catch (Exception e) {
+            System.err.println("[StatisticsRollup] Init failed: " + e.getMessage());
+        }
+    }
+
+    // ---- Cập nhật tăng dần ----
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTransactionRecorded(TransactionRecordedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        LocalDate date = toLocalDate(event.getTransactionDate());
+        String metric = METRIC_TRANSACTION_PREFIX + event.getTransactionType();
+        addTimeSeries(metric, SCOPE_ALL, date, event.getAmount());
+
+        UUID userId = null;
+        if (event.getWalletId() != null) {
+            try {
+                userId = userJpaRepository.findIdByWalletId(event.getWalletId()).orElse(null);
+            } catch (Exception e) {
+                // Phần theo landlord sẽ được bù ở lần reconcile
+                System.err.println("[StatisticsRollup] Cannot resolve wallet owner: " + e.getMessage());
+            }
+        }
+        if (userId != null) {
+            String scope = scopeOf(userId);
+            addTimeSeries(metric, scope, date, event.getAmount());
+            add(new RollupKey(METRIC_TRANSACTION_TOTAL, scope, PERIOD_TOTAL), event.getAmount(), 1);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserRegistered(UserRegisteredEvent event) {
+        if (enabled) {
+            addTimeSeries(METRIC_USER_REGISTRATIONS, SCOPE_ALL, toLocalDate(event.getRegisteredAt()), 0);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRoomChanged(RoomChangedEvent event) {
+        if (enabled && event.getRoomId() != null) {
+            dirtyRooms.add(event.getRoomId());
+        }
+    }
+
+    private void addTimeSeries(String metric, String scope, LocalDate date, double amount) {
+        add(new RollupKey(metric, scope, date.format(DAY)), amount, 1);
+        add(new RollupKey(metric, scope, date.format(MONTH)), amount, 1);
+    }
+
+    private void add(RollupKey key, double amount, long count) {
+        pending.compute(key, (k, delta) -> {
+            Delta current = delta != null ? delta : new Delta();
+            current.amount += amount;
+            current.count += count;
+            return current;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${statistics.rollup.flush-interval-ms:5000}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        int applied = 0;
+        for (RollupKey key : new ArrayList<>(pending.keySet())) {
+            Delta delta = pending.remove(key);
+            if (delta == null || (delta.amount == 0 && delta.count == 0)) {
+                continue;
+            }
+            try {
+                rollupRepository.addDelta(key.metric(), key.scope(), key.period(), delta.amount, delta.count);
+                applied++;
+            } catch (Exception e) {
+                // Trả lại để lần flush sau ghi tiếp
+                add(key, delta.amount, delta.count);
+                flushErrors.increment();
+                System.err.println("[StatisticsRollup] Failed to apply " + key + ": " + e.getMessage());
+                break;
+            }
+        }
+        appliedDeltas.add(applied);
+        refreshDirtyRooms();
+    }
+
+    private void refreshDirtyRooms() {
+        if (dirtyRooms.isEmpty()) {
+            return;
+        }
+        List<UUID> roomIds = new ArrayList<>();
+        for (UUID roomId : new ArrayList<>(dirtyRooms)) {
+            if (dirtyRooms.remove(roomId)) {
+                roomIds.add(roomId);
+            }
+        }
+
+        Set<UUID> landlordIds = new HashSet<>();
+        Set<Long> provinceIds = new HashSet<>();
+        try {
+            for (int from = 0; from < roomIds.size(); from += ROOM_KEY_BATCH) {
+                List<UUID> chunk = roomIds.subList(from, Math.min(from + ROOM_KEY_BATCH, roomIds.size()));
+                for (RoomStatisticKeyProjection key : roomJpaRepository.findStatisticKeysByRoomIds(chunk)) {
+                    if (key.getLandlordId() != null) {
+                        landlordIds.add(key.getLandlordId());
+                    }
+                    if (key.getProvinceId() != null) {
+                        provinceIds.add(key.getProvinceId());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            dirtyRooms.addAll(roomIds);
+            flushErrors.increment();
+            System.err.println("[StatisticsRollup] Failed to load room keys: " + e.getMessage());
+            return;
+        }
+
+        for (UUID landlordId : landlordIds) {
+            try {
+                rollupRepository.refreshLandlordRooms(scopeOf(landlordId));
+                refreshedLandlords.increment();
+            } catch (Exception e) {
+                flushErrors.increment();
+                System.err.println("[StatisticsRollup] Failed to refresh landlord " + landlordId + ": "
+                        + e.getMessage());
+            }
+        }
+        for (Long provinceId : provinceIds) {
+            try {
+                rollupRepository.refreshProvinceRooms(provinceId);
+                refreshedProvinces.increment();
+            } catch (Exception e) {
+                flushErrors.increment();
+                System.err.println("[StatisticsRollup] Failed to refresh province " + provinceId + ": "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    // ---- Reconcile ----
+
+    @Scheduled(cron = "${statistics.rollup.reconcile-cron:0 30 3 * * ?}")
+    public void scheduledReconcile() {
+        if (enabled && acquireReconcileLock()) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Dựng lại toàn bộ bảng từ dữ liệu gốc trong 1 transaction (dashboard vẫn
+     * đọc được số cũ cho tới khi commit). Giao dịch commit đúng lúc đang dựng
+     * có thể bị cộng 2 lần, lần reconcile sau sẽ sửa lại.
+     */
+    public Map<String, Object> reconcile() {
+        if (!reconciling.compareAndSet(false, true)) {
+            return Map.of("skipped", "Reconcile already running");
+        }
+        try {
+            // Đẩy phần chênh lệch đang chờ để không cộng thêm lên số vừa dựng
+            flush();
+            long start = System.currentTimeMillis();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                rollupRepository.deleteByMetricLike(METRIC_TRANSACTION_PREFIX + "%");
+                stats.put("transactionMonths", rollupRepository.rebuildTransactionRollups("%Y-%m"));
+                stats.put("transactionDays", rollupRepository.rebuildTransactionRollups("%Y-%m-%d"));
+                stats.put("transactionTotals", rollupRepository.rebuildTransactionTotals());
+
+                rollupRepository.deleteByMetricLike(METRIC_USER_REGISTRATIONS);
+                stats.put("registrationMonths", rollupRepository.rebuildUserRegistrations("%Y-%m"));
+                stats.put("registrationDays", rollupRepository.rebuildUserRegistrations("%Y-%m-%d"));
+
+                rollupRepository.deleteByMetricLike(METRIC_ROOMS_BY_PROVINCE);
+                stats.put("provinces", rollupRepository.rebuildProvinceRooms());
+
+                rollupRepository.deleteByMetricLike("landlord_%");
+                stats.put("landlordRows", rollupRepository.rebuildLandlordRooms());
+            });
+            stats.put("elapsedMs", System.currentTimeMillis() - start);
+            stats.put("completedAt", new Date());
+            lastReconcile = stats;
+            ready = true;
+            System.out.println("[StatisticsRollup] Reconciled " + stats);
+            return stats;
+        } catch (Exception e) {
+            System.err.println("[StatisticsRollup] Reconcile failed: " + e.getMessage());
+            return Map.of("error", String.valueOf(e.getMessage()));
+        } finally {
+            reconciling.set(false);
+        }
+    }
+
+    private boolean acquireReconcileLock() {
+        if (redisTemplate == null) {
+            return true;
+        }
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(RECONCILE_LOCK_KEY, nodeId,
+                    Duration.ofMinutes(30));
+            return Boolean.TRUE.equals(acquired);
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    // ---- Đọc ----
+
+    /**
+     * Các tháng {@code yyyy-MM} từ {@code months - 1} tháng trước tới tháng
+     * hiện tại, cũ trước.
+     */
+    public static List<String> lastMonths(int months) {
+        YearMonth now = YearMonth.now();
+        List<String> keys = new ArrayList<>();
+        for (int i = months - 1; i >= 0; i--) {
+            keys.add(now.minusMonths(i).format(MONTH));
+        }
+        return keys;
+    }
+
+    public Map<String, StatisticRollupProjection> monthlySeries(String metric, String scope, int months) {
+        List<String> keys = lastMonths(months);
+        Map<String, StatisticRollupProjection> byMonth = new HashMap<>();
+        for (StatisticRollupProjection row : rollupRepository.findSeries(metric, scope, 7, keys.get(0),
+                keys.get(keys.size() - 1))) {
+            byMonth.put(row.getPeriod(), row);
+        }
+        return byMonth;
+    }
+
+    // month -> loại giao dịch -> tổng tiền
+    public Map<String, Map<Integer, Double>> monthlyTransactionAmountsByType(String scope, int months) {
+        List<String> keys = lastMonths(months);
+        Map<String, Map<Integer, Double>> result = new HashMap<>();
+        for (StatisticRollupProjection row : rollupRepository.findSeriesByMetricLike(
+                METRIC_TRANSACTION_PREFIX + "%", scope, 7, keys.get(0), keys.get(keys.size() - 1))) {
+            try {
+                int type = Integer.parseInt(row.getMetric().substring(METRIC_TRANSACTION_PREFIX.length()));
+                result.computeIfAbsent(row.getPeriod(), k -> new HashMap<>()).put(type, row.getAmount());
+            } catch (NumberFormatException ignored) {
+                // txn:* không có theo tháng
+            }
+        }
+        return result;
+    }
+
+    public long currentCount(String metric, String scope) {
+        return rollupRepository.findValue(metric, scope, PERIOD_TOTAL)
+                .map(StatisticRollupProjection::getItemCount)
+                .orElse(0L);
+    }
+
+    public List<StatisticRollupProjection> topByItemCount(String metric, int limit) {
+        return rollupRepository.findTopByItemCount(metric, PageRequest.of(0, Math.max(1, limit)));
+    }
+
+    public Map<String, Double> totalAmounts(String metric, List<String> scopes) {
+        Map<String, Double> totals = new HashMap<>();
+        if (!scopes.isEmpty()) {
+            rollupRepository.findTotalsByScopes(metric, scopes)
+                    .forEach(row -> totals.put(row.getScopeKey(), row.getAmount()));
+        }
+        return totals;
+    }
+
+    public List<ProvinceRollupProjection> provinceRoomStats() {
+        return rollupRepository.findProvinceRoomStats();
+    }
+
+    // Tổng theo tháng của các ngày trong [from, to]
+    public List<FeePostRoomProjection> monthlySumOfDays(String metric, String scope, LocalDate from, LocalDate to) {
+        return rollupRepository.sumDailyByMonth(metric, scope, from.format(DAY), to.format(DAY));
+    }
+
+    // Cùng định dạng với LOWER(HEX(users.id)) trong các query dựng lại
+    public static String scopeOf(UUID userId) {
+        return userId.toString().replace("-", "");
+    }
+
+    public static UUID userIdOf(String scope) {
+        return UUID.fromString(scope.replaceFirst(
+                "(\\w{8})(\\w{4})(\\w{4})(\\w{4})(\\w{12})", "$1-$2-$3-$4-$5"));
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        Date value = date != null ? date : new Date();
+        // java.sql.Date không hỗ trợ toInstant()
+        return Instant.ofEpochMilli(value.getTime()).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("ready", ready);
+        metrics.put("pendingDeltas", pending.size());
+        metrics.put("dirtyRooms", dirtyRooms.size());
+        metrics.put("appliedDeltas", appliedDeltas.sum());
+        metrics.put("refreshedLandlords", refreshedLandlords.sum());
+        metrics.put("refreshedProvinces", refreshedProvinces.sum());
+        metrics.put("flushErrors", flushErrors.sum());
+        metrics.put("lastReconcile", lastReconcile);
+        return metrics;
+    }
+}
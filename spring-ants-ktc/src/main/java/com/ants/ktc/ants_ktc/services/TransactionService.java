@@ -13,6 +13,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.ants.ktc.ants_ktc.components.IdGenerator;
 import com.ants.ktc.ants_ktc.dtos.transaction.CreateTransactionRequestDto;
 import com.ants.ktc.ants_ktc.dtos.transaction.PaginationTransactionResponseDto;
 import com.ants.ktc.ants_ktc.dtos.transaction.TransactionResponseDto;
@@ -37,6 +38,12 @@ public class TransactionService {
     @Autowired
     private WalletJpaRepository walletRepository;
 
+    @Autowired
+    private WalletLedgerService walletLedgerService;
+
+    @Autowired
+    private IdGenerator idGenerator;
+
     public TransactionResponseDto convertToDto(Transaction transaction) {
         Wallet wallet = transaction.getWallet();
         WalletResponseDto walletDto = null;
@@ -68,8 +75,32 @@ public class TransactionService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Nạp tiền từ API. Mã giao dịch không bắt buộc: thiếu thì sinh mã mới nên
+     * mỗi lần gọi không kèm mã là 1 lần nạp riêng. Key idempotency gắn với ví
+     * ({@code TXN:{walletId}:{code}}) để 2 user gửi trùng mã không đụng nhau.
+     */
     @Transactional
     public TransactionResponseDto createTransactionByUserId(UUID userId, CreateTransactionRequestDto requestDto) {
+        if (requestDto.getTransactionCode() == null || requestDto.getTransactionCode().isBlank()) {
+            requestDto.setTransactionCode(idGenerator.nextCode());
+        }
+        Wallet wallet = walletOf(userId);
+        return credit(wallet, requestDto, "TXN:" + wallet.getId() + ":" + requestDto.getTransactionCode());
+    }
+
+    /**
+     * Nạp tiền vào ví qua WalletLedgerService. Gọi lại với cùng idempotencyKey
+     * (vd. VNPay gọi confirm 2 lần) không cộng tiền thêm, trả về giao dịch của
+     * lần đầu.
+     */
+    @Transactional
+    public TransactionResponseDto createTransactionByUserId(UUID userId, CreateTransactionRequestDto requestDto,
+            String idempotencyKey) {
+        return credit(walletOf(userId), requestDto, idempotencyKey);
+    }
+
+    private Wallet walletOf(UUID userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
 
@@ -78,14 +109,15 @@ public class TransactionService {
             wallet = new Wallet();
             wallet.setUser(user);
             wallet.setBalance(0.0);
-            wallet = walletRepository.save(wallet);
+            wallet = walletRepository.saveAndFlush(wallet);
             user.setWallet(wallet);
             userRepository.save(user);
         }
+        return wallet;
+    }
 
-        wallet.setBalance(wallet.getBalance() + requestDto.getAmount());
-        walletRepository.save(wallet);
-
+    private TransactionResponseDto credit(Wallet wallet, CreateTransactionRequestDto requestDto,
+            String idempotencyKey) {
         Transaction transaction = new Transaction();
         transaction.setAmount(requestDto.getAmount());
         transaction.setTransactionType(requestDto.getTransactionType());
@@ -94,13 +126,21 @@ public class TransactionService {
         transaction.setTransactionDate(requestDto.getTransactionDate());
         transaction.setDescription(requestDto.getDescription());
         transaction.setStatus(requestDto.getStatus());
-        transaction.setWallet(wallet);
 
-        Transaction savedTransaction = transactionsJpaRepository.save(transaction);
+        WalletLedgerService.Result result = walletLedgerService.credit(wallet, transaction, idempotencyKey);
+        if (!result.applied()) {
+            // Chỉ trả lại giao dịch cũ khi nó thuộc đúng ví này
+            UUID walletId = wallet.getId();
+            return transactionsJpaRepository.findWithWalletById(result.transactionId())
+                    .filter(t -> t.getWallet() != null && walletId.equals(t.getWallet().getId()))
+                    .map(this::convertToDto)
+                    .orElseThrow(() -> new IllegalArgumentException("Transaction already processed"));
+        }
 
-        return transactionsJpaRepository.findWithWalletById(savedTransaction.getId())
-                .map(this::convertToDto)
-                .orElse(convertToDto(savedTransaction));
+        // Entity wallet vẫn giữ số dư trước khi cộng (UPDATE chạy thẳng xuống DB)
+        TransactionResponseDto dto = convertToDto(result.transaction());
+        dto.getWallet().setBalance(walletLedgerService.balanceOf(wallet.getId()));
+        return dto;
     }
 
     // Phân trang cho transaction theo userId
@@ -0,0 +1,424 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.ants.ktc.ants_ktc.models.UploadSession;
+
+/**
+ * Registry cho các phiên chunk upload.
+ *
+ * Mỗi phiên có 1 file dữ liệu {@code {uploadId}.data} được cấp phát trước, chunk
+ * i được ghi thẳng vào vị trí {@code i * chunkSize} nên client có thể gửi các
+ * chunk song song, không theo thứ tự và không cần bước ghép file. Trạng thái
+ * (số chunk, bitmap chunk đã nhận, hash từng chunk) nằm trong Redis với TTL,
+ * nên status/resume không phải liệt kê thư mục. Sweeper định kỳ xóa file của
+ * các phiên đã hết hạn.
+ */
+@Service
+public class UploadSessionService {
+
+    public static final int DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024; // gợi ý 2MB
+    private static final String KEY_PREFIX = "upload_session:";
+    private static final String DATA_SUFFIX = ".data";
+    private static final int HASH_BUFFER_SIZE = 256 * 1024;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${upload.session.ttl-ms:86400000}")
+    private long sessionTtlMs;
+
+    private final Path tempRoot;
+
+    public UploadSessionService() {
+        try {
+            this.tempRoot = Paths.get(System.getProperty("java.io.tmpdir"), "chunks");
+            Files.createDirectories(tempRoot);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create upload directories", e);
+        }
+    }
+
+    public UploadSession create(String filename, int totalChunks, Integer chunkSize, Long totalSize, String fileHash)
+            throws IOException {
+        UploadSession session = UploadSession.builder()
+                .uploadId(UUID.randomUUID().toString())
+                .filename(filename)
+                .totalChunks(totalChunks)
+                .chunkSize(chunkSize != null && chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE)
+                .totalSize(totalSize)
+                .fileHash(fileHash)
+                .createdAt(System.currentTimeMillis())
+                .build();
+
+        // Cấp phát trước file dữ liệu để các chunk ghi song song không phải nới file
+        try (RandomAccessFile raf = new RandomAccessFile(dataFile(session.getUploadId()).toFile(), "rw")) {
+            if (totalSize != null && totalSize > 0) {
+                raf.setLength(totalSize);
+            }
+        }
+        save(session);
+        return session;
+    }
+
+    /**
+     * Tạo phiên cho uploadId do client tự sinh (client cũ không gọi /init).
+     * Dùng kích thước chunk mặc định mà /init gợi ý.
+     */
+    public UploadSession getOrCreate(String uploadId, String filename, int totalChunks) throws IOException {
+        UploadSession session = get(uploadId);
+        if (session != null) {
+            if (session.getTotalChunks() <= 0) {
+                // /init không gửi totalChunks: lấy theo chunk đầu tiên
+                redisTemplate.opsForHash().put(sessionKey(uploadId), "totalChunks", String.valueOf(totalChunks));
+                session.setTotalChunks(totalChunks);
+            }
+            return session;
+        }
+        session = UploadSession.builder()
+                .uploadId(uploadId)
+                .filename(filename)
+                .totalChunks(totalChunks)
+                .chunkSize(DEFAULT_CHUNK_SIZE)
+                .createdAt(System.currentTimeMillis())
+                .build();
+        Files.createDirectories(tempRoot);
+        if (!Files.exists(dataFile(uploadId))) {
+            Files.createFile(dataFile(uploadId));
+        }
+        // HSETNX để 2 chunk đầu tiên tới cùng lúc không ghi đè metadata của nhau
+        Boolean created = redisTemplate.opsForHash().putIfAbsent(sessionKey(uploadId), "uploadId", uploadId);
+        if (Boolean.TRUE.equals(created)) {
+            save(session);
+            return session;
+        }
+        UploadSession existing = get(uploadId);
+        return existing != null ? existing : session;
+    }
+
+    public UploadSession get(String uploadId) {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(sessionKey(uploadId));
+        if (fields == null || fields.isEmpty() || !fields.containsKey("chunkSize")) {
+            return null;
+        }
+        return UploadSession.builder()
+                .uploadId(uploadId)
+                .filename((String) fields.get("filename"))
+                .totalChunks(Integer.parseInt((String) fields.get("totalChunks")))
+                .chunkSize(Integer.parseInt((String) fields.get("chunkSize")))
+                .totalSize(parseLong(fields.get("totalSize")))
+                .fileHash((String) fields.get("fileHash"))
+                .receivedBytes(fields.containsKey("receivedBytes") ? Long.parseLong((String) fields.get("receivedBytes"))
+                        : 0L)
+                .lastChunkSize(parseLong(fields.get("lastChunkSize")))
+                .createdAt(Long.parseLong((String) fields.get("createdAt")))
+                .build();
+    }
+
+    /**
+     * Ghi 1 chunk vào vị trí của nó trong file dữ liệu, tính SHA-256 trong lúc
+     * ghi.
+     *
+     * @return hash của chunk, hoặc null nếu chunk đã có và không cho ghi đè
+     * @throws ChunkHashMismatchException nếu client gửi chunkHash không khớp;
+     *                                    chunk khi đó không được đánh dấu đã nhận
+     */
+    public String writeChunk(UploadSession session, int chunkIndex, MultipartFile chunk, String expectedHash,
+            boolean overwrite) throws IOException {
+        if (chunkIndex < 0 || chunkIndex >= session.getTotalChunks()) {
+            throw new IllegalArgumentException("Chunk index out of range: " + chunkIndex);
+        }
+        boolean lastChunk = chunkIndex == session.getTotalChunks() - 1;
+        if (chunk.getSize() > session.getChunkSize() || (!lastChunk && chunk.getSize() != session.getChunkSize())) {
+            throw new IllegalArgumentException("Chunk " + chunkIndex + " must be " + session.getChunkSize()
+                    + " bytes (last chunk may be smaller), got " + chunk.getSize());
+        }
+        if (!overwrite && hasChunk(session.getUploadId(), chunkIndex)) {
+            return null;
+        }
+
+        MessageDigest digest = newSha256();
+        long position = (long) chunkIndex * session.getChunkSize();
+        try (InputStream in = chunk.getInputStream();
+                FileChannel out = FileChannel.open(dataFile(session.getUploadId()), StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                ByteBuffer wrapped = ByteBuffer.wrap(buffer, 0, read);
+                while (wrapped.hasRemaining()) {
+                    position += out.write(wrapped, position);
+                }
+            }
+        }
+        String hash = toHex(digest.digest());
+        if (expectedHash != null && !expectedHash.trim().isEmpty() && !expectedHash.equalsIgnoreCase(hash)) {
+            throw new ChunkHashMismatchException(expectedHash, hash);
+        }
+
+        String uploadId = session.getUploadId();
+        // SETBIT trả về bit cũ: chỉ cộng receivedBytes cho chunk mới
+        Boolean existed = redisTemplate.opsForValue().setBit(chunksKey(uploadId), chunkIndex, true);
+        redisTemplate.opsForHash().put(hashesKey(uploadId), String.valueOf(chunkIndex), hash);
+        if (!Boolean.TRUE.equals(existed)) {
+            redisTemplate.opsForHash().increment(sessionKey(uploadId), "receivedBytes", chunk.getSize());
+        }
+        if (lastChunk) {
+            redisTemplate.opsForHash().put(sessionKey(uploadId), "lastChunkSize", String.valueOf(chunk.getSize()));
+        }
+        touch(uploadId);
+        return hash;
+    }
+
+    public boolean hasChunk(String uploadId, int chunkIndex) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().getBit(chunksKey(uploadId), chunkIndex));
+    }
+
+    public long receivedCount(String uploadId) {
+        byte[] key = chunksKey(uploadId).getBytes(StandardCharsets.UTF_8);
+        Long count = redisTemplate.execute((RedisCallback<Long>) connection -> connection.stringCommands()
+                .bitCount(key));
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Các chunk đã nhận, đọc từ bitmap (bit 0 là bit cao nhất của byte đầu).
+     */
+    public List<Integer> receivedChunks(UploadSession session) {
+        byte[] key = chunksKey(session.getUploadId()).getBytes(StandardCharsets.UTF_8);
+        byte[] bitmap = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands()
+                .get(key));
+        List<Integer> have = new ArrayList<>();
+        if (bitmap == null) {
+            return have;
+        }
+        for (int i = 0; i < session.getTotalChunks() && i / 8 < bitmap.length; i++) {
+            if ((bitmap[i / 8] & (0x80 >>> (i % 8))) != 0) {
+                have.add(i);
+            }
+        }
+        return have;
+    }
+
+    public List<Integer> missingChunks(UploadSession session) {
+        List<Integer> have = receivedChunks(session);
+        List<Integer> missing = new ArrayList<>();
+        int cursor = 0;
+        for (int i = 0; i < session.getTotalChunks(); i++) {
+            if (cursor < have.size() && have.get(cursor) == i) {
+                cursor++;
+            } else {
+                missing.add(i);
+            }
+        }
+        return missing;
+    }
+
+    public Map<String, String> chunkHashes(String uploadId) {
+        Map<String, String> hashes = new HashMap<>();
+        redisTemplate.opsForHash().entries(hashesKey(uploadId))
+                .forEach((k, v) -> hashes.put((String) k, (String) v));
+        return hashes;
+    }
+
+    public boolean isComplete(UploadSession session) {
+        return receivedCount(session.getUploadId()) >= session.getTotalChunks();
+    }
+
+    /**
+     * Cắt file dữ liệu về đúng kích thước thật (file cấp phát trước có thể dài
+     * hơn) và trả về đường dẫn.
+     */
+    public Path finalizeDataFile(UploadSession session) throws IOException {
+        long length = (long) (session.getTotalChunks() - 1) * session.getChunkSize()
+                + (session.getLastChunkSize() != null ? session.getLastChunkSize() : session.getChunkSize());
+        Path data = dataFile(session.getUploadId());
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+            if (channel.size() > length) {
+                channel.truncate(length);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * SHA-256 của cả file, đọc tuần tự 1 lần qua direct buffer. Chunk tới không
+     * theo thứ tự nên không thể tính dồn lúc ghi.
+     */
+    public String sha256Of(Path file) throws IOException {
+        MessageDigest digest = newSha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Xóa metadata trong Redis và file dữ liệu (nếu còn).
+     *
+     * @return true nếu phiên tồn tại
+     */
+    public boolean delete(String uploadId) {
+        Boolean deleted = redisTemplate.delete(sessionKey(uploadId));
+        redisTemplate.delete(List.of(chunksKey(uploadId), hashesKey(uploadId)));
+        try {
+            Files.deleteIfExists(dataFile(uploadId));
+        } catch (IOException e) {
+            System.err.println("[UploadSession] Failed to delete data file of " + uploadId + ": " + e.getMessage());
+        }
+        return Boolean.TRUE.equals(deleted);
+    }
+
+    /**
+     * Dọn file của các phiên đã hết hạn trong Redis (client bỏ dở) và thư mục
+     * chunk kiểu cũ quá TTL.
+     */
+    @Scheduled(fixedDelayString = "${upload.session.sweep-interval-ms:3600000}")
+    public void sweepExpiredSessions() {
+        int removed = 0;
+        long cutoff = System.currentTimeMillis() - sessionTtlMs;
+        try (var s = Files.list(tempRoot)) {
+            for (Path p : s.toList()) {
+                String name = p.getFileName().toString();
+                try {
+                    if (name.endsWith(DATA_SUFFIX)) {
+                        String uploadId = name.substring(0, name.length() - DATA_SUFFIX.length());
+                        if (!Boolean.TRUE.equals(redisTemplate.hasKey(sessionKey(uploadId)))
+                                && Files.getLastModifiedTime(p).toMillis() < cutoff) {
+                            Files.deleteIfExists(p);
+                            removed++;
+                        }
+                    } else if (Files.isDirectory(p) && Files.getLastModifiedTime(p).toMillis() < cutoff) {
+                        try (var parts = Files.list(p)) {
+                            for (Path part : parts.toList()) {
+                                Files.deleteIfExists(part);
+                            }
+                        }
+                        Files.deleteIfExists(p);
+                        removed++;
+                    }
+                } catch (Exception e) {
+                    System.err.println("[UploadSession] Failed to sweep " + p + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[UploadSession] Sweep failed: " + e.getMessage());
+        }
+        if (removed > 0) {
+            System.out.println("[UploadSession] Swept " + removed + " abandoned uploads");
+        }
+    }
+
+    private void save(UploadSession session) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("uploadId", session.getUploadId());
+        fields.put("filename", session.getFilename());
+        fields.put("totalChunks", String.valueOf(session.getTotalChunks()));
+        fields.put("chunkSize", String.valueOf(session.getChunkSize()));
+        fields.put("createdAt", String.valueOf(session.getCreatedAt()));
+        if (session.getTotalSize() != null) {
+            fields.put("totalSize", String.valueOf(session.getTotalSize()));
+        }
+        if (session.getFileHash() != null) {
+            fields.put("fileHash", session.getFileHash());
+        }
+        redisTemplate.opsForHash().putAll(sessionKey(session.getUploadId()), fields);
+        touch(session.getUploadId());
+    }
+
+    private void touch(String uploadId) {
+        redisTemplate.expire(sessionKey(uploadId), sessionTtlMs, TimeUnit.MILLISECONDS);
+        redisTemplate.expire(chunksKey(uploadId), sessionTtlMs, TimeUnit.MILLISECONDS);
+        redisTemplate.expire(hashesKey(uploadId), sessionTtlMs, TimeUnit.MILLISECONDS);
+    }
+
+    public Path dataFile(String uploadId) {
+        // uploadId đi từ client: chỉ lấy tên file để không thoát ra ngoài tempRoot
+        return tempRoot.resolve(Paths.get(uploadId).getFileName().toString() + DATA_SUFFIX);
+    }
+
+    private static String sessionKey(String uploadId) {
+        return KEY_PREFIX + uploadId;
+    }
+
+    private static String chunksKey(String uploadId) {
+        return KEY_PREFIX + uploadId + ":chunks";
+    }
+
+    private static String hashesKey(String uploadId) {
+        return KEY_PREFIX + uploadId + ":hashes";
+    }
+
+    private static Long parseLong(Object value) {
+        return value == null ? null : Long.valueOf((String) value);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : hash) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) {
+                hexString.append('0');
+            }
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+
+    public static class ChunkHashMismatchException extends RuntimeException {
+        private final String expected;
+        private final String actual;
+
+        public ChunkHashMismatchException(String expected, String actual) {
+            super("Chunk hash verification failed");
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        public String getExpected() {
+            return expected;
+        }
+
+        public String getActual() {
+            return actual;
+        }
+    }
+}
@@ -11,7 +11,7 @@ import java.util.UUID;
 
 import org.apache.tomcat.util.http.fileupload.IOUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -21,6 +21,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import com.ants.ktc.ants_ktc.components.CacheTags;
 import com.ants.ktc.ants_ktc.dtos.address.AddressResponseDto;
 import com.ants.ktc.ants_ktc.dtos.address.DistrictResponseDto;
 import com.ants.ktc.ants_ktc.dtos.address.ProvinceResponseDto;
@@ -39,6 +40,7 @@ import com.ants.ktc.ants_ktc.entities.address.Address;
 import com.ants.ktc.ants_ktc.entities.address.District;
 import com.ants.ktc.ants_ktc.entities.address.Province;
 import com.ants.ktc.ants_ktc.entities.address.Ward;
+import com.ants.ktc.ants_ktc.events.UserRegisteredEvent;
 import com.ants.ktc.ants_ktc.exceptions.HttpException;
 import com.ants.ktc.ants_ktc.repositories.ProfileJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.RoleJpaRepository;
@@ -71,6 +73,12 @@ public class UserService {
         @Autowired
         private CloudinaryService cloudinaryService;
 
+        @Autowired
+        private CacheTags cacheTags;
+
+        @Autowired
+        private ApplicationEventPublisher eventPublisher;
+
         private final RestTemplate restTemplate = new RestTemplate();
 
         // ...existing code...
@@ -161,7 +169,6 @@ public class UserService {
                                 .build();
         }
 
-        @CacheEvict(value = "manage-accounts", allEntries = true)
         public LoginResponseDto googleLogin(GoogleLoginRequestDto requestDto) {
                 String credential = requestDto.getCredential();
                 String url = "https://oauth2.googleapis.com/tokeninfo?id_token=" + credential;
@@ -259,6 +266,9 @@ public class UserService {
                         Role userRole = roleJpaRepository.findByName("Users").orElseThrow();
                         user.setRoles(List.of(userRole));
                         userJpaRepository.save(user);
+                        // Chỉ các trang danh sách tài khoản bị cũ, cache theo từng user giữ nguyên
+                        cacheTags.bump(AccountManagementService.ACCOUNT_LISTS_TAG);
+                        eventPublisher.publishEvent(new UserRegisteredEvent(user.getId(), user.getCreatedDate()));
                 }
 
                 if (user.getIsActive() == 1) {
@@ -304,7 +314,6 @@ public class UserService {
 
         }
 
-        @CacheEvict(value = "manage-accounts", allEntries = true)
         public RegisterResponseDto register(RegisterRequestDto request) {
                 if (userJpaRepository.existsByUsername(request.getUsername())) {
                         throw new IllegalArgumentException("Username already exists");
@@ -335,6 +344,8 @@ public class UserService {
                 // + ", password=" + user.getPassword() + ", accountType="
                 // + request.getAccountType());
                 userJpaRepository.save(user);
+                cacheTags.bump(AccountManagementService.ACCOUNT_LISTS_TAG);
+                eventPublisher.publishEvent(new UserRegisteredEvent(user.getId(), user.getCreatedDate()));
 
                 return RegisterResponseDto.builder()
                                 .username(user.getUsername())
@@ -420,6 +431,12 @@ public class UserService {
                 return user.getId();
         }
 
+        public boolean isAuthenticatedAdministrator() {
+                Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+                return authentication != null && authentication.getAuthorities().stream()
+                                .anyMatch(authority -> "ROLE_Administrators".equals(authority.getAuthority()));
+        }
+
         public boolean changePassword(UUID userId, String password, String newPassword) {
                 User user = userJpaRepository.findById(userId)
                                 .orElseThrow(() -> new UsernameNotFoundException(
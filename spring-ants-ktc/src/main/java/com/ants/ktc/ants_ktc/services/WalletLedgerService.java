@@ -0,0 +1,122 @@
+package com.ants.ktc.ants_ktc.services;
+
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.ants.ktc.ants_ktc.entities.Transaction;
+import com.ants.ktc.ants_ktc.entities.Wallet;
+import com.ants.ktc.ants_ktc.entities.WalletLedgerEntry;
+import com.ants.ktc.ants_ktc.events.TransactionRecordedEvent;
+import com.ants.ktc.ants_ktc.repositories.TransactionsJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.WalletJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.WalletLedgerJpaRepository;
+
+/**
+ * Mọi thay đổi số dư ví đi qua đây. Mỗi thao tác, trong 1 transaction:
+ * <ol>
+ * <li>giữ chỗ idempotency key trong {@code wallet_ledger} (unique index): key
+ * đã có thì bỏ qua, không cộng/trừ lần 2;</li>
+ * <li>cộng/trừ bằng 1 câu UPDATE có điều kiện
+ * ({@code balance = balance - ? WHERE id = ? AND balance >= ?}), không đọc số
+ * dư rồi ghi đè nên không mất cập nhật và không cần khóa bi quan;</li>
+ * <li>lưu Transaction và gắn nó vào dòng ledger.</li>
+ * </ol>
+ * UPDATE chạy thẳng xuống DB nên entity Wallet đang được quản lý giữ số dư cũ:
+ * caller không được {@code setBalance} rồi save Wallet/User, cần số dư mới thì
+ * dùng {@link #balanceOf}.
+ */
+@Service
+public class WalletLedgerService {
+
+    public static final String DEBIT = "DEBIT";
+    public static final String CREDIT = "CREDIT";
+
+    @Autowired
+    private WalletJpaRepository walletJpaRepository;
+
+    @Autowired
+    private WalletLedgerJpaRepository walletLedgerJpaRepository;
+
+    @Autowired
+    private TransactionsJpaRepository transactionsJpaRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * applied = false khi key đã được áp dụng trước đó; khi đó transactionId là
+     * của lần áp dụng đầu và transaction = null.
+     */
+    public record Result(boolean applied, UUID transactionId, Transaction transaction) {
+    }
+
+    // Idempotency key cho các thao tác gắn với phòng, vd. ROOM:{roomId}:REFUND:{id}
+    public static String roomKey(UUID roomId, String operation, Object discriminator) {
+        return "ROOM:" + roomId + ":" + operation + (discriminator != null ? ":" + discriminator : "");
+    }
+
+    public static String vnpayKey(String vnpTransactionNo) {
+        return "VNPAY:" + vnpTransactionNo;
+    }
+
+    /**
+     * Trừ {@code transaction.getAmount()} khỏi ví. Không đủ số dư thì ném
+     * IllegalArgumentException và rollback cả transaction của caller.
+     */
+    @Transactional
+    public Result debit(Wallet wallet, Transaction transaction, String idempotencyKey) {
+        return apply(wallet, transaction, idempotencyKey, DEBIT);
+    }
+
+    // Cộng transaction.getAmount() vào ví (nạp tiền, hoàn tiền)
+    @Transactional
+    public Result credit(Wallet wallet, Transaction transaction, String idempotencyKey) {
+        return apply(wallet, transaction, idempotencyKey, CREDIT);
+    }
+
+    public double balanceOf(UUID walletId) {
+        return walletJpaRepository.findBalanceById(walletId)
+                .orElseThrow(() -> new IllegalArgumentException("Wallet not found"));
+    }
+
+    private Result apply(Wallet wallet, Transaction transaction, String idempotencyKey, String operation) {
+        if (wallet == null || wallet.getId() == null) {
+            throw new IllegalArgumentException("Wallet not found");
+        }
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            throw new IllegalArgumentException("Idempotency key is required");
+        }
+        Double amount = transaction.getAmount();
+        if (amount == null || amount <= 0) {
+            throw new IllegalArgumentException("Amount must be greater than 0");
+        }
+        boolean debit = DEBIT.equals(operation);
+
+        if (walletLedgerJpaRepository.claim(wallet.getId(), operation, debit ? -amount : amount,
+                idempotencyKey) == 0) {
+            UUID transactionId = walletLedgerJpaRepository.findByIdempotencyKey(idempotencyKey)
+                    .map(WalletLedgerEntry::getTransactionId)
+                    .orElse(null);
+            System.out.println("[WalletLedgerService] " + idempotencyKey + " already applied, skipped");
+            return new Result(false, transactionId, null);
+        }
+
+        int updated = debit
+                ? walletJpaRepository.debit(wallet.getId(), amount)
+                : walletJpaRepository.credit(wallet.getId(), amount);
+        if (updated == 0) {
+            // Rollback luôn dòng ledger vừa giữ chỗ
+            throw new IllegalArgumentException(debit ? "Insufficient wallet balance" : "Wallet not found");
+        }
+
+        transaction.setWallet(wallet);
+        Transaction saved = transactionsJpaRepository.save(transaction);
+        walletLedgerJpaRepository.complete(idempotencyKey, saved.getId());
+        eventPublisher.publishEvent(TransactionRecordedEvent.of(saved));
+        return new Result(true, saved.getId(), saved);
+    }
+}
@@ -3,6 +3,7 @@ package com.ants.ktc.ants_ktc.services.address;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import com.ants.ktc.ants_ktc.dtos.address.DistrictResponseDto;
@@ -25,6 +26,7 @@ public class DistrictService {
                 .build();
     }
 
+    @Cacheable(value = "districts", key = "#p0")
     public List<DistrictResponseDto> getDistrictsByProvinceId(Long provinceId) {
         List<District> districts = districtRepository.findByProvinceId(provinceId);
 
@@ -3,6 +3,7 @@ package com.ants.ktc.ants_ktc.services.address;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import com.ants.ktc.ants_ktc.dtos.address.ProvinceResponseDto;
@@ -17,6 +18,7 @@ public class ProvinceService {
         this.provinceRepository = provinceRepository;
     }
 
+    @Cacheable(value = "provinces", key = "'all'")
     public List<ProvinceResponseDto> getAllProvinces() {
         List<Province> provinces = provinceRepository.findAll();
         return provinces.stream()
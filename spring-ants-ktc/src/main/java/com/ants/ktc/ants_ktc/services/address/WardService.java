@@ -3,6 +3,7 @@ package com.ants.ktc.ants_ktc.services.address;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import com.ants.ktc.ants_ktc.dtos.address.WardResponseDto;
@@ -16,6 +17,7 @@ public class WardService {
         this.wardRepository = wardRepository;
     }
 
+    @Cacheable(value = "wards", key = "#p0")
     public List<WardResponseDto> getWardsByDistrictId(Long districtId) {
         return wardRepository.findByDistrictId(districtId)
                 .stream()
@@ -1,6 +1,7 @@
 package com.ants.ktc.ants_ktc.services.auth;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.security.core.GrantedAuthority;
@@ -10,6 +11,7 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import com.ants.ktc.ants_ktc.entities.Role;
 import com.ants.ktc.ants_ktc.entities.User;
 import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
 
@@ -27,19 +29,34 @@ public class CustomUserDetailsService implements UserDetailsService {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
 
-        List<GrantedAuthority> authorities = new ArrayList<>();
-        user.getRoles().forEach(role -> {
-            // Nếu dùng @PreAuthorize("hasAuthority('Administrators')") thì
-            authorities.add(new SimpleGrantedAuthority(role.getName()));
-
-            // Nếu dùng @PreAuthorize("hasRole('Administrators')") thì authorities.add(new
-            authorities.add(new SimpleGrantedAuthority("ROLE_" + role.getName()));
-        });
+        List<String> roleNames = new ArrayList<>();
+        user.getRoles().forEach(role -> roleNames.add(role.getName()));
         String password = user.getPassword() != null ? user.getPassword() : "";
         return org.springframework.security.core.userdetails.User.builder()
                 .username(user.getUsername())
                 .password(password)
-                .authorities(authorities)
+                .authorities(authoritiesOf(roleNames))
+                // is_active = 1 là tài khoản bị khóa
+                .disabled(user.getIsActive() == 1)
                 .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Dùng chung cho principal load từ DB và principal dựng từ claim roles của JWT.
+     */
+    public static List<GrantedAuthority> authoritiesOf(Collection<String> roleNames) {
+        List<GrantedAuthority> authorities = new ArrayList<>(roleNames.size() * 2);
+        for (String roleName : roleNames) {
+            // Nếu dùng @PreAuthorize("hasAuthority('Administrators')") thì
+            authorities.add(new SimpleGrantedAuthority(roleName));
+
+            // Nếu dùng @PreAuthorize("hasRole('Administrators')") thì authorities.add(new
+            authorities.add(new SimpleGrantedAuthority("ROLE_" + roleName));
+        }
+        return authorities;
+    }
+
+    public static List<String> roleNamesOf(User user) {
+        return user.getRoles() != null ? user.getRoles().stream().map(Role::getName).toList() : List.of();
+    }
+}
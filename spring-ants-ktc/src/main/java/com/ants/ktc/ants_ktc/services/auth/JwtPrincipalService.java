@@ -0,0 +1,216 @@
+package com.ants.ktc.ants_ktc.services.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Service;
+
+import io.jsonwebtoken.Claims;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Dựng principal cho JwtAuthenticationFilter từ Claims đã parse.
+ * <ul>
+ * <li>Fast path (auth.jwt.stateless=true): token có claim roles và được cấp
+ * sau lần thu hồi gần nhất của user thì dựng principal thẳng từ claim, không
+ * query DB</li>
+ * <li>Token cũ hơn mốc thu hồi (role/trạng thái tài khoản vừa đổi), token
+ * không có claim roles hoặc tắt stateless: load từ DB qua UserDetailsService,
+ * kết quả giữ trong cache LRU có giới hạn + TTL</li>
+ * </ul>
+ * Mốc thu hồi lưu ở Redis hash {@code auth:revoked} (userId -> epoch ms) và
+ * được publish cho các node khác qua {@code auth:revoked:events}.
+ */
+@Service
+public class JwtPrincipalService {
+
+    private static final String REVOKED_KEY = "auth:revoked";
+    private static final String REVOKED_CHANNEL = "auth:revoked:events";
+    // Bằng hạn access token: mốc thu hồi cũ hơn thì mọi token cấp trước nó đã hết hạn
+    private static final long TOKEN_LIFETIME_MS = 604800000L;
+
+    private final UserDetailsService userDetailsService;
+    private final boolean stateless;
+    private final long cacheTtlMs;
+    private final Map<String, CachedPrincipal> principals;
+    private final Map<String, Long> revokedAt = new ConcurrentHashMap<>();
+
+    private final LongAdder claimHits = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder dbLoads = new LongAdder();
+
+    @Autowired(required = false)
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired(required = false)
+    private RedisMessageListenerContainer chatListenerContainer;
+
+    public JwtPrincipalService(UserDetailsService userDetailsService,
+            @Value("${auth.jwt.stateless:true}") boolean stateless,
+            @Value("${auth.principal-cache.size:10000}") int maxSize,
+            @Value("${auth.principal-cache.ttl-ms:60000}") long cacheTtlMs) {
+        this.userDetailsService = userDetailsService;
+        this.stateless = stateless;
+        this.cacheTtlMs = cacheTtlMs;
+        this.principals = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPrincipal> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    private record CachedPrincipal(UserDetails userDetails, long loadedAt) {
+    }
+
+    @PostConstruct
+    public void subscribeRevocations() {
+        if (chatListenerContainer == null) {
+            return;
+        }
+        chatListenerContainer.addMessageListener(
+                (message, pattern) -> applyRevocation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(REVOKED_CHANNEL));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadRevocations() {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(REVOKED_KEY);
+            entries.forEach((userId, at) -> revokedAt.merge(userId.toString(), Long.parseLong(at.toString()),
+                    Math::max));
+            System.out.println("[JwtPrincipalService] Loaded " + entries.size() + " revocations");
+        } catch (Exception e) {
+            System.err.println("[JwtPrincipalService] Cannot load revocations: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return principal cho token, hoặc null nếu token không có subject
+     */
+    public UserDetails resolve(Claims claims) {
+        String username = claims.getSubject();
+        if (username == null) {
+            return null;
+        }
+        if (stateless) {
+            UserDetails fromClaims = fromClaims(claims);
+            if (fromClaims != null) {
+                claimHits.increment();
+                return fromClaims;
+            }
+        }
+
+        CachedPrincipal cached = principals.get(username);
+        if (cached != null && System.currentTimeMillis() - cached.loadedAt() < cacheTtlMs) {
+            cacheHits.increment();
+            return cached.userDetails();
+        }
+        dbLoads.increment();
+        UserDetails loaded = userDetailsService.loadUserByUsername(username);
+        principals.put(username, new CachedPrincipal(loaded, System.currentTimeMillis()));
+        return loaded;
+    }
+
+    private UserDetails fromClaims(Claims claims) {
+        Object roles = claims.get(JwtService.ROLES_CLAIM);
+        String userId = claims.get("id", String.class);
+        if (!(roles instanceof List<?> roleList) || userId == null || claims.getIssuedAt() == null) {
+            return null;
+        }
+        Long revoked = revokedAt.get(userId);
+        if (revoked != null && claims.getIssuedAt().getTime() <= revoked) {
+            return null;
+        }
+        List<String> roleNames = roleList.stream().map(String::valueOf).toList();
+        // Token chỉ dùng để xác thực, principal không cần mật khẩu
+        return User.withUsername(claims.getSubject())
+                .password("")
+                .authorities(CustomUserDetailsService.authoritiesOf(roleNames))
+                .build();
+    }
+
+    /**
+     * Gọi sau khi role hoặc trạng thái tài khoản đổi: token cấp trước thời điểm
+     * này phải đi qua DB để lấy quyền mới.
+     */
+    public void revoke(UUID userId, String username) {
+        long now = System.currentTimeMillis();
+        String event = userId + "|" + username + "|" + now;
+        applyRevocation(event);
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForHash().put(REVOKED_KEY, userId.toString(), String.valueOf(now));
+            redisTemplate.convertAndSend(REVOKED_CHANNEL, event);
+        } catch (Exception e) {
+            System.err.println("[JwtPrincipalService] Cannot publish revocation: " + e.getMessage());
+        }
+    }
+
+    // event: userId|username|revokedAtMs
+    private void applyRevocation(String event) {
+        String[] parts = event.split("\\|", 3);
+        if (parts.length < 3) {
+            return;
+        }
+        try {
+            revokedAt.merge(parts[0], Long.parseLong(parts[2]), Math::max);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        principals.remove(parts[1]);
+    }
+
+    @Scheduled(fixedDelayString = "${auth.revocation.prune-interval-ms:3600000}")
+    public void pruneRevocations() {
+        long cutoff = System.currentTimeMillis() - TOKEN_LIFETIME_MS;
+        revokedAt.values().removeIf(at -> at < cutoff);
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(REVOKED_KEY);
+            Object[] expired = entries.entrySet().stream()
+                    .filter(e -> Long.parseLong(e.getValue().toString()) < cutoff)
+                    .map(Map.Entry::getKey)
+                    .toArray();
+            if (expired.length > 0) {
+                redisTemplate.opsForHash().delete(REVOKED_KEY, expired);
+            }
+        } catch (Exception e) {
+            System.err.println("[JwtPrincipalService] Prune failed: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        return Map.of(
+                "stateless", stateless,
+                "claimHits", claimHits.sum(),
+                "cacheHits", cacheHits.sum(),
+                "dbLoads", dbLoads.sum(),
+                "cachedPrincipals", principals.size(),
+                "revocations", revokedAt.size());
+    }
+}
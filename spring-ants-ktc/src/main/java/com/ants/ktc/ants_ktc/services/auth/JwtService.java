@@ -13,6 +13,7 @@ import org.springframework.stereotype.Service;
 import com.ants.ktc.ants_ktc.entities.User;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import lombok.RequiredArgsConstructor;
@@ -21,10 +22,15 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class JwtService {
 
+    public static final String ROLES_CLAIM = "roles";
+
+    // Key và parser dựng 1 lần, không decode lại mỗi request
+    private final SecretKey signingKey = Keys.hmacShaKeyFor(
+            io.jsonwebtoken.io.Decoders.BASE64.decode("NBZzu/XN0IgTPw/EfJgOkYD+tK5JdLLhQdNkUsPl2AU="));
+    private final JwtParser parser = Jwts.parser().verifyWith(signingKey).build();
+
     private SecretKey getSigningKey() {
-        String secretKey = "NBZzu/XN0IgTPw/EfJgOkYD+tK5JdLLhQdNkUsPl2AU=";
-        byte[] keyBytes = io.jsonwebtoken.io.Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return signingKey;
     }
 
     private String createToken(Map<String, Object> claims, String subject, long expiration) {
@@ -69,16 +75,29 @@ public class JwtService {
 
         // claims.put("roles", roles);
 
+        // Chỉ đưa tên role (nhỏ) để filter xác thực không cần query DB. Khi role hoặc
+        // trạng thái tài khoản đổi, token cũ bị thu hồi qua JwtPrincipalService.
+        claims.put(ROLES_CLAIM, CustomUserDetailsService.roleNamesOf(user));
+
         long jwtExpiration = 604800000; // 1 week in milliseconds
         return createToken(claims, user.getUsername(), jwtExpiration);
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parser.parseSignedClaims(token).getPayload();
+    }
+
+    /**
+     * Parse + kiểm tra chữ ký/hạn 1 lần, filter dùng lại Claims cho mọi bước sau.
+     */
+    public Claims parseClaims(String token) {
+        return extractAllClaims(token);
+    }
+
+    public boolean isAccessToken(Claims claims) {
+        return "access_token".equals(claims.get("type", String.class))
+                && claims.getExpiration() != null
+                && claims.getExpiration().after(new Date());
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
@@ -0,0 +1,349 @@
+package com.ants.ktc.ants_ktc.services.batch;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ants.ktc.ants_ktc.dtos.batch.BatchJobExecutionDto;
+import com.ants.ktc.ants_ktc.entities.BatchJobExecution;
+import com.ants.ktc.ants_ktc.enums.BatchJobStatus;
+import com.ants.ktc.ants_ktc.repositories.BatchJobExecutionJpaRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Chạy các {@link ChunkJob} theo chunk:
+ * <ul>
+ * <li>Đọc keyset {@code id > lastKey ORDER BY id LIMIT chunk-size} trên luồng
+ * gọi, ghi song song trên pool {@code batch.jobs.threads}, mỗi chunk 1
+ * transaction; tối đa {@code threads * 2} chunk chờ ghi.</li>
+ * <li>Checkpoint = key cuối của dãy chunk liên tiếp đã ghi xong, lưu vào
+ * batch_job_executions sau mỗi chunk. Lần chạy lỗi hoặc node chết thì lần
+ * chạy kế tiếp trong cùng ngày đọc tiếp từ checkpoint.</li>
+ * <li>Chỉ 1 node chạy mỗi job: khóa Redis {@code batch-job:lock:{name}}
+ * (SET NX, gia hạn sau mỗi checkpoint). Redis lỗi thì chạy như chỉ có 1
+ * node.</li>
+ * </ul>
+ */
+@Service
+public class BatchJobService {
+
+    private static final String LOCK_PREFIX = "batch-job:lock:";
+    private static final UUID MIN_KEY = new UUID(0L, 0L);
+    private static final int MAX_HISTORY = 200;
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end "
+                    + "return 0",
+            Long.class);
+
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('DEL', KEYS[1]) end "
+                    + "return 0",
+            Long.class);
+
+    @Autowired
+    private BatchJobExecutionJpaRepository executionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = false)
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private List<ChunkJob<?>> registeredJobs;
+
+    @Value("${batch.jobs.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${batch.jobs.threads:4}")
+    private int threads;
+
+    @Value("${batch.jobs.lock-ttl-ms:1800000}")
+    private long lockTtlMs;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    private Map<String, ChunkJob<?>> jobs;
+    private ThreadPoolTaskExecutor executor;
+    // Luồng chạy job cho runAsync, mỗi job 1 luồng
+    private ThreadPoolTaskExecutor launcher;
+    private TransactionTemplate chunkTransaction;
+
+    private record ChunkResult(long seq, UUID lastKey, int size, int written) {
+    }
+
+    @PostConstruct
+    public void init() {
+        jobs = registeredJobs.stream().collect(Collectors.toMap(ChunkJob::getName, job -> job));
+        chunkTransaction = new TransactionTemplate(transactionManager);
+
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("batch-job-");
+        executor.initialize();
+
+        launcher = new ThreadPoolTaskExecutor();
+        launcher.setCorePoolSize(Math.max(1, jobs.size()));
+        launcher.setMaxPoolSize(Math.max(1, jobs.size()));
+        launcher.setThreadNamePrefix("batch-job-launcher-");
+        launcher.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        launcher.shutdown();
+        executor.shutdown();
+    }
+
+    public Set<String> getJobNames() {
+        return jobs.keySet();
+    }
+
+    /**
+     * Chạy job theo tên trên luồng hiện tại. Trả về null nếu job đang chạy
+     * (trên node này hoặc node khác).
+     */
+    public BatchJobExecutionDto run(String jobName) {
+        ChunkJob<?> job = jobs.get(jobName);
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown batch job: " + jobName);
+        }
+        if (!running.add(jobName)) {
+            return null;
+        }
+        try {
+            if (!acquireLock(jobName)) {
+                System.out.println("[BatchJobService] " + jobName + " is running on another node, skipped");
+                return null;
+            }
+            try {
+                return toDto(execute(job));
+            } finally {
+                releaseLock(jobName);
+            }
+        } finally {
+            running.remove(jobName);
+        }
+    }
+
+    /**
+     * Như {@link #run} nhưng chạy trên luồng riêng của BatchJobService, để
+     * job dài không giữ luồng @Scheduled (mặc định cả app chỉ có 1 luồng cho
+     * mọi tác vụ định kỳ) và các job cùng giờ không phải chờ nhau.
+     */
+    public CompletableFuture<BatchJobExecutionDto> runAsync(String jobName) {
+        if (!jobs.containsKey(jobName)) {
+            throw new IllegalArgumentException("Unknown batch job: " + jobName);
+        }
+        return CompletableFuture.supplyAsync(() -> run(jobName), launcher);
+    }
+
+    public List<BatchJobExecutionDto> getHistory(String jobName, int limit) {
+        PageRequest page = PageRequest.of(0, Math.max(1, Math.min(limit, MAX_HISTORY)));
+        List<BatchJobExecution> executions = jobName == null || jobName.isBlank()
+                ? executionRepository.findAllByOrderByStartedAtDesc(page)
+                : executionRepository.findByJobNameOrderByStartedAtDesc(jobName, page);
+        return executions.stream().map(this::toDto).collect(Collectors.toList());
+    }
+
+    public BatchJobExecutionDto getExecution(UUID id) {
+        return executionRepository.findById(id)
+                .map(this::toDto)
+                .orElseThrow(() -> new IllegalArgumentException("Batch job execution not found"));
+    }
+
+    private <T> BatchJobExecution execute(ChunkJob<T> job) {
+        long start = System.currentTimeMillis();
+        BatchJobExecution execution = new BatchJobExecution();
+        execution.setJobName(job.getName());
+        execution.setRunDate(LocalDate.now().toString());
+        execution.setNodeId(nodeId);
+        execution.setStartedAt(new Date(start));
+
+        // Đang giữ khóa nên lần chạy RUNNING trước đó đã chết giữa chừng
+        UUID cursor = MIN_KEY;
+        BatchJobExecution previous = executionRepository.findFirstByJobNameOrderByStartedAtDesc(job.getName())
+                .orElse(null);
+        if (previous != null && execution.getRunDate().equals(previous.getRunDate())
+                && (previous.getStatus() == BatchJobStatus.RUNNING || previous.getStatus() == BatchJobStatus.FAILED)) {
+            if (previous.getStatus() == BatchJobStatus.RUNNING) {
+                previous.setStatus(BatchJobStatus.ABANDONED);
+                previous.setFinishedAt(new Date());
+                executionRepository.save(previous);
+            }
+            if (previous.getLastKey() != null) {
+                cursor = previous.getLastKey();
+            }
+            execution.setResumedFrom(previous.getId());
+            execution.setLastKey(previous.getLastKey());
+        }
+        execution = executionRepository.save(execution);
+
+        CompletionService<ChunkResult> completion = new ExecutorCompletionService<>(executor);
+        Map<Long, ChunkResult> finished = new HashMap<>();
+        int maxInFlight = Math.max(1, threads * 2);
+        int inFlight = 0;
+        long submitted = 0;
+        long nextSeq = 0;
+        boolean exhausted = false;
+        Throwable failure = null;
+        try {
+            while (true) {
+                // Đọc tiếp cho tới khi đủ số chunk chờ ghi
+                while (!exhausted && failure == null && inFlight < maxInFlight) {
+                    List<T> items = job.read(cursor, chunkSize);
+                    if (items.isEmpty()) {
+                        exhausted = true;
+                        break;
+                    }
+                    cursor = job.keyOf(items.get(items.size() - 1));
+                    exhausted = items.size() < chunkSize;
+                    long seq = submitted++;
+                    UUID lastKey = cursor;
+                    completion.submit(() -> new ChunkResult(seq, lastKey, items.size(),
+                            chunkTransaction.execute(status -> job.write(items))));
+                    inFlight++;
+                }
+                if (inFlight == 0) {
+                    break;
+                }
+
+                Future<ChunkResult> future = completion.take();
+                inFlight--;
+                try {
+                    ChunkResult result = future.get();
+                    finished.put(result.seq(), result);
+                } catch (ExecutionException e) {
+                    // Không đọc thêm, chờ các chunk đang ghi rồi dừng ở checkpoint
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    continue;
+                }
+
+                // Checkpoint chỉ tiến khi mọi chunk trước đó đã ghi xong
+                UUID checkpoint = null;
+                while (finished.containsKey(nextSeq)) {
+                    ChunkResult result = finished.remove(nextSeq++);
+                    execution.setReadCount(execution.getReadCount() + result.size());
+                    execution.setWriteCount(execution.getWriteCount() + result.written());
+                    execution.setChunkCount(execution.getChunkCount() + 1);
+                    checkpoint = result.lastKey();
+                }
+                if (checkpoint != null) {
+                    execution.setLastKey(checkpoint);
+                    execution.setElapsedMs(System.currentTimeMillis() - start);
+                    executionRepository.checkpoint(execution.getId(), checkpoint, execution.getReadCount(),
+                            execution.getWriteCount(), execution.getChunkCount(), execution.getElapsedMs());
+                    renewLock(job.getName());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        execution.setElapsedMs(System.currentTimeMillis() - start);
+        execution.setFinishedAt(new Date());
+        if (failure == null) {
+            execution.setStatus(BatchJobStatus.COMPLETED);
+        } else {
+            execution.setStatus(BatchJobStatus.FAILED);
+            String message = String.valueOf(failure.getMessage());
+            execution.setError(message.length() > 1000 ? message.substring(0, 1000) : message);
+            System.err.println("[BatchJobService] " + job.getName() + " failed at checkpoint "
+                    + execution.getLastKey() + ": " + message);
+        }
+        execution = executionRepository.save(execution);
+        System.out.println("[BatchJobService] " + job.getName() + " " + execution.getStatus() + ": "
+                + execution.getReadCount() + " read, " + execution.getWriteCount() + " written, "
+                + execution.getChunkCount() + " chunks in " + execution.getElapsedMs() + "ms");
+        return execution;
+    }
+
+    private boolean acquireLock(String jobName) {
+        if (redisTemplate == null) {
+            return true;
+        }
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(LOCK_PREFIX + jobName, nodeId,
+                    Duration.ofMillis(lockTtlMs));
+            return Boolean.TRUE.equals(acquired);
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    private void renewLock(String jobName) {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.execute(RENEW_SCRIPT, List.of(LOCK_PREFIX + jobName), nodeId, String.valueOf(lockTtlMs));
+        } catch (Exception e) {
+            System.err.println("[BatchJobService] Cannot renew lock for " + jobName + ": " + e.getMessage());
+        }
+    }
+
+    private void releaseLock(String jobName) {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(LOCK_PREFIX + jobName), nodeId);
+        } catch (Exception e) {
+            // Khóa tự hết hạn sau lock-ttl-ms
+        }
+    }
+
+    private BatchJobExecutionDto toDto(BatchJobExecution execution) {
+        long elapsed = execution.getElapsedMs();
+        return BatchJobExecutionDto.builder()
+                .id(execution.getId())
+                .jobName(execution.getJobName())
+                .runDate(execution.getRunDate())
+                .status(execution.getStatus())
+                .nodeId(execution.getNodeId())
+                .startedAt(execution.getStartedAt())
+                .finishedAt(execution.getFinishedAt())
+                .lastKey(execution.getLastKey())
+                .resumedFrom(execution.getResumedFrom())
+                .readCount(execution.getReadCount())
+                .writeCount(execution.getWriteCount())
+                .chunkCount(execution.getChunkCount())
+                .elapsedMs(elapsed)
+                .itemsPerSecond(elapsed > 0 ? execution.getReadCount() * 1000.0 / elapsed : 0)
+                .error(execution.getError())
+                .build();
+    }
+}
@@ -0,0 +1,25 @@
+package com.ants.ktc.ants_ktc.services.batch;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 1 batch job chạy bởi BatchJobService: đọc theo keyset (id tăng dần) từng
+ * chunk, mỗi chunk được ghi song song trong transaction riêng.
+ * <p>
+ * {@link #write} phải idempotent (UPDATE có điều kiện, INSERT IGNORE với id
+ * cố định...) vì sau khi node chết, các chunk sau checkpoint sẽ được ghi lại.
+ * Bean implement interface này được đăng ký theo {@link #getName()}.
+ */
+public interface ChunkJob<T> {
+
+    String getName();
+
+    // Tối đa limit bản ghi có key > afterKey, sắp theo key tăng dần
+    List<T> read(UUID afterKey, int limit);
+
+    UUID keyOf(T item);
+
+    // Chạy trong transaction của chunk; trả về số bản ghi đã ghi
+    int write(List<T> chunk);
+}
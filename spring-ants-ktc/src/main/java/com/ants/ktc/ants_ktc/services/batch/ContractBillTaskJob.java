@@ -0,0 +1,73 @@
+package com.ants.ktc.ants_ktc.services.batch;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.ants.ktc.ants_ktc.repositories.ContractJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.LandlordTaskJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.ContractStartDateProjection;
+
+/**
+ * Hợp đồng active tròn mỗi 30 ngày kể từ startDate thì tạo task BILL cho
+ * landlord. Chỉ đọc id + startDate, task của cả chunk được tạo bằng 1 câu
+ * INSERT ... SELECT (không load room/landlord từng hợp đồng).
+ */
+@Component
+public class ContractBillTaskJob implements ChunkJob<ContractStartDateProjection> {
+
+    public static final String NAME = "contract-bill-tasks";
+
+    @Autowired
+    private ContractJpaRepository contractJpaRepository;
+
+    @Autowired
+    private LandlordTaskJpaRepository landlordTaskJpaRepository;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<ContractStartDateProjection> read(UUID afterKey, int limit) {
+        return contractJpaRepository.findActiveAfter(afterKey, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public UUID keyOf(ContractStartDateProjection item) {
+        return item.getId();
+    }
+
+    @Override
+    public int write(List<ContractStartDateProjection> chunk) {
+        LocalDate today = LocalDate.now();
+        List<UUID> dueContractIds = new ArrayList<>();
+        for (ContractStartDateProjection contract : chunk) {
+            if (contract.getStartDate() == null) {
+                continue;
+            }
+            LocalDate startDate = contract.getStartDate().toInstant()
+                    .atZone(ZoneId.systemDefault())
+                    .toLocalDate();
+            long days = ChronoUnit.DAYS.between(startDate, today);
+            if (days > 0 && days % 30 == 0) {
+                dueContractIds.add(contract.getId());
+            }
+        }
+        if (dueContractIds.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        return landlordTaskJpaRepository.insertBillTasks(dueContractIds, today.toString(),
+                today.getMonthValue() + "/" + today.getYear(), now, now.plusDays(7));
+    }
+}
@@ -0,0 +1,67 @@
+package com.ants.ktc.ants_ktc.services.batch;
+
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.ants.ktc.ants_ktc.events.RoomChangedEvent;
+import com.ants.ktc.ants_ktc.repositories.BookingJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.BookingRoomKeyProjection;
+
+/**
+ * Booking đang thuê (status = 4) mà hôm nay nằm ngoài [rentalDate,
+ * rentalExpires] thì chuyển phòng về available = 0. Điều kiện lọc nằm trong
+ * query, mỗi chunk đổi phòng bằng 1 câu UPDATE.
+ */
+@Component
+public class RoomAvailabilityCheckJob implements ChunkJob<BookingRoomKeyProjection> {
+
+    public static final String NAME = "room-availability-check";
+
+    @Autowired
+    private BookingJpaRepository bookingJpaRepository;
+
+    @Autowired
+    private RoomJpaRepository roomJpaRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public List<BookingRoomKeyProjection> read(UUID afterKey, int limit) {
+        return bookingJpaRepository.findOutsideRentalPeriodAfter(new Date(), afterKey, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public UUID keyOf(BookingRoomKeyProjection item) {
+        return item.getId();
+    }
+
+    @Override
+    public int write(List<BookingRoomKeyProjection> chunk) {
+        // Nhiều booking có thể trỏ tới cùng 1 phòng
+        Set<UUID> roomIds = new LinkedHashSet<>();
+        for (BookingRoomKeyProjection booking : chunk) {
+            roomIds.add(booking.getRoomId());
+        }
+        int updated = roomJpaRepository.markUnavailable(roomIds);
+        // Listener chạy sau khi transaction của chunk commit
+        for (UUID roomId : roomIds) {
+            eventPublisher.publishEvent(new RoomChangedEvent(roomId));
+        }
+        return updated;
+    }
+}
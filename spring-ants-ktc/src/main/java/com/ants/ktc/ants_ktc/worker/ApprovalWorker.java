@@ -10,57 +10,45 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
 
-import com.ants.ktc.ants_ktc.dtos.approval.ApprovalRequestDto;
+import com.ants.ktc.ants_ktc.components.IdGenerator;
 import com.ants.ktc.ants_ktc.dtos.approval.ApprovalResult;
 import com.ants.ktc.ants_ktc.entities.Room;
 import com.ants.ktc.ants_ktc.entities.Transaction;
 import com.ants.ktc.ants_ktc.entities.User;
+import com.ants.ktc.ants_ktc.events.RoomChangedEvent;
 import com.ants.ktc.ants_ktc.models.ApprovalMessage;
 import com.ants.ktc.ants_ktc.repositories.RoomJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.TransactionsJpaRepository;
-import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
 import com.ants.ktc.ants_ktc.repositories.projection.MailUserProjection;
 import com.ants.ktc.ants_ktc.services.ApprovalQueueService;
 import com.ants.ktc.ants_ktc.services.ApprovalLogService;
+import com.ants.ktc.ants_ktc.services.GeminiApprovalClient;
 import com.ants.ktc.ants_ktc.services.MailService;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ants.ktc.ants_ktc.services.WalletLedgerService;
 
 @Component
 public class ApprovalWorker {
 
-    @Autowired
-    @Qualifier("approvalQueue")
-    private BlockingQueue<ApprovalMessage> approvalQueue;
-
     @Autowired
     private MailService mailService;
 
     @Autowired
     private RoomJpaRepository roomJpaRepository;
 
-    @Autowired
-    private UserJpaRepository userJpaRepository;
-
     @Autowired
     private ApprovalQueueService approvalQueueService;
 
@@ -71,18 +59,23 @@ public class ApprovalWorker {
     @Autowired
     private ApprovalLogService approvalLogService;
 
-    private final RestTemplate restTemplate;
-    private final ObjectMapper objectMapper;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private GeminiApprovalClient geminiApprovalClient;
+
+    @Autowired
+    private WalletLedgerService walletLedgerService;
+
+    @Autowired
+    private IdGenerator idGenerator;
 
     private static final int MAX_RETRY_ATTEMPTS = 3;
     private static final long RETRY_DELAY_MS = 10000; // 10 seconds
-    private static final String GEMINI_API_URL = "http://localhost:5001/ai_approval";
     private static final String APPROVAL_LOG_CSV = "approval_log.csv";
 
     public ApprovalWorker() {
-        this.restTemplate = new RestTemplateBuilder()
-                .build();
-        this.objectMapper = new ObjectMapper();
         initializeCsvFile();
     }
 
@@ -91,7 +84,7 @@ public class ApprovalWorker {
     public void processApprovalQueue() {
         try {
             // Lấy 1 job từ queue (non-blocking)
-            ApprovalMessage job = approvalQueue.poll(1, TimeUnit.SECONDS);
+            ApprovalMessage job = approvalQueueService.claimNext();
             if (job == null) {
                 return; // Không có job nào
             }
@@ -100,11 +93,15 @@ public class ApprovalWorker {
 
             // Gọi Gemini API để duyệt phòng
             try {
-                ApprovalResult result = callGeminiApprovalAPI(job);
+                ApprovalResult result = geminiApprovalClient.submit(job).join();
 
-                if (result != null) {
+                if (result != null && result.getStatus() == 0) {
+                    // Bị rate limit: trả lại queue, không tính là 1 lần retry
+                    approvalQueueService.retryLater(job, RETRY_DELAY_MS);
+                } else if (result != null) {
                     // Cập nhật trạng thái phòng trong database
                     updateRoomApprovalStatus(job.getRoomId(), result);
+                    approvalQueueService.acknowledge(job.getRoomId());
                     System.out.println("[ApprovalWorker] ✅ Room " + job.getRoomId() +
                             " approved with status: " + result.getStatus());
                 } else {
@@ -112,90 +109,18 @@ public class ApprovalWorker {
                     handleApprovalFailure(job, new Exception("Null result from Gemini API"));
                 }
 
+            } catch (CompletionException e) {
+                handleApprovalFailure(job, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
             } catch (Exception e) {
                 handleApprovalFailure(job, e);
             }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("[ApprovalWorker] Worker interrupted");
         } catch (Exception e) {
             System.err.println("[ApprovalWorker] Unexpected error: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    private ApprovalResult callGeminiApprovalAPI(ApprovalMessage job) throws Exception {
-        // Tạo request body theo format API /ai_approval
-        ApprovalRequestDto request = new ApprovalRequestDto();
-        request.setId(job.getRoomId().toString());
-        request.setTitle(job.getTitle());
-        request.setDescription(job.getDescription());
-        request.setPriceMonth(job.getPriceMonth());
-        request.setPriceDeposit(job.getPriceDeposit());
-        request.setArea(job.getArea());
-        request.setLength(job.getLength());
-        request.setWidth(job.getWidth());
-        request.setMaxPeople(job.getMaxPeople());
-        request.setElecPrice(job.getElecPrice());
-        request.setWaterPrice(job.getWaterPrice());
-        request.setFullAddress(job.getFullAddress());
-        request.setConvenients(job.getConvenients());
-        request.setImages(job.getImages());
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        HttpEntity<ApprovalRequestDto> entity = new HttpEntity<>(request, headers);
-
-        System.out.println("[ApprovalWorker] Calling Gemini API for room: " + job.getRoomId());
-
-        ResponseEntity<String> response = restTemplate.exchange(
-                GEMINI_API_URL,
-                HttpMethod.POST,
-                entity,
-                String.class);
-
-        if (response.getStatusCode().is2xxSuccessful()) {
-            // Parse JSON response
-            JsonNode jsonResponse = objectMapper.readTree(response.getBody());
-
-            ApprovalResult result = new ApprovalResult();
-            result.setStatus(jsonResponse.get("status").asInt());
-
-            // Parse content array
-            JsonNode contentNode = jsonResponse.get("content");
-            if (contentNode != null && contentNode.isArray()) {
-                StringBuilder contentBuilder = new StringBuilder();
-                for (JsonNode item : contentNode) {
-                    if (contentBuilder.length() > 0) {
-                        contentBuilder.append("; ");
-                    }
-                    contentBuilder.append(item.asText());
-                }
-                result.setContent(contentBuilder.toString());
-            }
-
-            return result;
-        } else {
-            throw new Exception("API call failed with status: " + response.getStatusCode());
-        }
-    }
-
-    private String generateUniqueTransactionCode(String unusedPrefix, UUID userId) {
-        // Use last 4 digits of timestamp for time uniqueness
-        long timestamp = System.currentTimeMillis();
-        String timestampSuffix = String.valueOf(timestamp).substring(String.valueOf(timestamp).length() - 4);
-
-        // Use 4 digits from user ID hash for user uniqueness
-        int userIdHash = Math.abs(userId.toString().hashCode());
-        String userIdSuffix = String.format("%04d", userIdHash % 10000);
-
-        // Combine to create 8-digit code (no prefix)
-        return timestampSuffix + userIdSuffix;
-
-    }
-
     @Transactional
     private void updateRoomApprovalStatus(UUID roomId, ApprovalResult result) {
         try {
@@ -273,9 +198,6 @@ public class ApprovalWorker {
 
                             if (lastTransaction != null) {
                                 Double refundAmount = lastTransaction.getAmount();
-                                Double balance = user.getWallet().getBalance();
-                                user.getWallet().setBalance(balance + refundAmount);
-                                userJpaRepository.save(user);
 
                                 // Create refund transaction
                                 Transaction refundTransaction = new Transaction();
@@ -284,17 +206,22 @@ public class ApprovalWorker {
                                         "Refund for rejected room post: " + roomWithUserWallet.getTitle());
                                 refundTransaction.setTransactionDate(new Date());
 
-                                // Generate unique 8-digit transaction code
-                                String transactionCode = generateUniqueTransactionCode("REFUND", user.getId());
+                                // Mã giao dịch từ IdGenerator (dùng chung mọi node)
+                                String transactionCode = idGenerator.nextCode();
                                 refundTransaction.setTransactionCode(transactionCode);
                                 refundTransaction.setBankTransactionName("Ants Wallet");
                                 refundTransaction.setStatus(1);
-                                refundTransaction.setWallet(user.getWallet());
                                 refundTransaction.setTransactionType(3);// type 3: hoàn tiền
-                                transactionsJpaRepository.save(refundTransaction);
-
-                                System.out.println("[ApprovalWorker] ✅ Refunded " + refundAmount
-                                        + " VND to user for rejected room: " + roomWithUserWallet.getTitle());
+                                // Cùng key với RoomService.updateApproval: job bị retry hoặc admin
+                                // từ chối lại cũng không hoàn tiền 2 lần
+                                WalletLedgerService.Result refund = walletLedgerService.credit(user.getWallet(),
+                                        refundTransaction,
+                                        WalletLedgerService.roomKey(roomId, "REFUND", lastTransaction.getId()));
+
+                                if (refund.applied()) {
+                                    System.out.println("[ApprovalWorker] ✅ Refunded " + refundAmount
+                                            + " VND to user for rejected room: " + roomWithUserWallet.getTitle());
+                                }
                             } else {
                                 System.err.println(
                                         "[ApprovalWorker] ⚠️ Cannot find original transaction for refund - Room: "
@@ -347,6 +274,7 @@ public class ApprovalWorker {
             }
 
             roomJpaRepository.save(room);
+            eventPublisher.publishEvent(new RoomChangedEvent(roomId));
 
         } catch (Exception e) {
             System.err.println("[ApprovalWorker] Failed to update room " + roomId + ": " + e.getMessage());
@@ -357,39 +285,26 @@ public class ApprovalWorker {
     private void handleApprovalFailure(ApprovalMessage job, Exception e) {
         System.err.println("[ApprovalWorker] Failed to process room " + job.getRoomId() + ": " + e.getMessage());
 
+        if (e instanceof GeminiApprovalClient.CircuitOpenException) {
+            // Chưa gọi được API, không tính là 1 lần retry
+            approvalQueueService.retryLater(job, geminiApprovalClient.getCircuitOpenMs());
+            return;
+        }
+
         job.setRetryCount(job.getRetryCount() + 1);
 
         if (job.getRetryCount() < MAX_RETRY_ATTEMPTS) {
-            // Retry với delay
-            scheduleRetry(job, RETRY_DELAY_MS * job.getRetryCount());
+            // Retry với delay: job nằm lại trong inflight tới hạn rồi được trả về queue
+            approvalQueueService.retryLater(job, RETRY_DELAY_MS * job.getRetryCount());
             System.out.println("[ApprovalWorker] Scheduled retry " + job.getRetryCount() +
                     "/" + MAX_RETRY_ATTEMPTS + " for room " + job.getRoomId());
         } else {
+            // Phòng vẫn approval = 0 nên lượt enqueue định kỳ sau sẽ thêm lại
             System.err.println("[ApprovalWorker] Max retries reached for room " + job.getRoomId());
-
-            try {
-                Room room = roomJpaRepository.findById(job.getRoomId()).orElse(null);
-                if (room != null) {
-                }
-            } catch (Exception dbException) {
-                System.err.println("[ApprovalWorker] Failed to mark room as error: " + dbException.getMessage());
-            }
+            approvalQueueService.acknowledge(job.getRoomId());
         }
     }
 
-    private void scheduleRetry(ApprovalMessage job, long delayMs) {
-        new Thread(() -> {
-            try {
-                Thread.sleep(delayMs);
-                approvalQueue.offer(job);
-                System.out.println("[ApprovalWorker] Re-queued room " + job.getRoomId() + " for retry");
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-                System.err.println("[ApprovalWorker] Retry scheduling interrupted for room: " + job.getRoomId());
-            }
-        }).start();
-    }
-
     /**
      * Schedule để tự động thêm pending rooms vào approval queue
      * Chạy mỗi 10 phút để check phòng mới chờ duyệt
@@ -421,12 +336,6 @@ public class ApprovalWorker {
             var queueStatus = approvalQueueService.getQueueStatus();
             System.out.println("[ApprovalWorker] Queue Status: " + queueStatus.toString());
 
-            // Cảnh báo nếu queue sắp đầy
-            if (queueStatus.getUsagePercentage() > 80) {
-                System.out.println("[ApprovalWorker] WARNING: Approval queue is " +
-                        String.format("%.1f", queueStatus.getUsagePercentage()) + "% full!");
-            }
-
         } catch (Exception e) {
             System.err.println("[ApprovalWorker] Error in queue status report: " + e.getMessage());
         }
@@ -449,18 +358,39 @@ public class ApprovalWorker {
             long startTime = System.currentTimeMillis();
             long timeoutMs = 600000;
 
-            while (!approvalQueue.isEmpty() && (System.currentTimeMillis() - startTime) < timeoutMs) {
-                ApprovalMessage message = approvalQueue.poll(5, TimeUnit.SECONDS);
-                if (message == null) {
+            boolean circuitOpen = false;
+
+            while (!circuitOpen && (System.currentTimeMillis() - startTime) < timeoutMs) {
+                // Claim đủ job cho 1 vòng gửi song song; nhiều instance cùng chạy thì
+                // mỗi instance claim job khác nhau
+                List<ApprovalMessage> jobs = new ArrayList<>();
+                while (jobs.size() < geminiApprovalClient.getWindowSize()) {
+                    ApprovalMessage message = approvalQueueService.claimNext();
+                    if (message == null) {
+                        break;
+                    }
+                    jobs.add(message);
+                }
+                if (jobs.isEmpty()) {
                     break;
                 }
 
-                try {
-                    // Process approval sử dụng logic có sẵn
-                    ApprovalResult result = callGeminiApprovalAPI(message);
+                // Client tự giới hạn tốc độ/concurrency, không cần sleep giữa các job
+                List<CompletableFuture<ApprovalResult>> futures = geminiApprovalClient.submitAll(jobs);
+
+                // Cập nhật DB tuần tự trên thread này
+                for (int i = 0; i < jobs.size(); i++) {
+                    ApprovalMessage message = jobs.get(i);
+                    try {
+                        ApprovalResult result = futures.get(i).join();
+
+                        if (result.getStatus() == 0) {
+                            approvalQueueService.retryLater(message, RETRY_DELAY_MS);
+                            continue;
+                        }
 
-                    if (result != null) {
                         updateRoomApprovalStatus(message.getRoomId(), result);
+                        approvalQueueService.acknowledge(message.getRoomId());
                         processedCount++;
 
                         if (result.getStatus() == 1) {
@@ -471,25 +401,25 @@ public class ApprovalWorker {
 
                         System.out.println("[ApprovalWorker] Auto-processed room: " + message.getTitle() +
                                 " - Status: " + (result.getStatus() == 1 ? "APPROVED" : "REJECTED"));
-                    }
 
-                } catch (Exception e) {
-                    System.err.println("[ApprovalWorker] Error auto-processing room " + message.getRoomId() + ": "
-                            + e.getMessage());
-
-                    // Retry logic - put back in queue if retry count < max
-                    if (message.getRetryCount() < MAX_RETRY_ATTEMPTS) {
-                        message.setRetryCount(message.getRetryCount() + 1);
-                        approvalQueue.offer(message);
-                        System.out.println("[ApprovalWorker] Re-queued room for retry: " + message.getRoomId());
-                    } else {
-                        System.err.println("[ApprovalWorker] Max retries exceeded for room: " + message.getRoomId());
+                    } catch (Exception e) {
+                        Exception cause = e instanceof CompletionException && e.getCause() instanceof Exception
+                                ? (Exception) e.getCause()
+                                : e;
+                        if (cause instanceof GeminiApprovalClient.CircuitOpenException) {
+                            circuitOpen = true;
+                        }
+                        System.err.println("[ApprovalWorker] Error auto-processing room " + message.getRoomId() + ": "
+                                + cause.getMessage());
+                        handleApprovalFailure(message, cause);
                     }
                 }
+            }
 
-                // Small delay để tránh overload API
-                Thread.sleep(2000);
+            if (circuitOpen) {
+                System.err.println("[ApprovalWorker] Gemini circuit open, remaining rooms stay in queue");
             }
+
             // Report kết quả
             System.out.println("[ApprovalWorker] Automatic approval completed:");
             System.out.println("  Total processed: " + processedCount);
@@ -0,0 +1,380 @@
+package com.ants.ktc.ants_ktc.worker;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ants.ktc.ants_ktc.dtos.message.MessageResponseDto;
+import com.ants.ktc.ants_ktc.entities.Messages;
+import com.ants.ktc.ants_ktc.entities.User;
+import com.ants.ktc.ants_ktc.repositories.MessagesJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
+import com.ants.ktc.ants_ktc.services.ChatHistoryCache;
+import com.ants.ktc.ants_ktc.services.ConversationService;
+import com.ants.ktc.ants_ktc.services.MessagesService;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Ghi tin nhắn chat kiểu write-behind.
+ *
+ * - Tin nhắn được XADD vào Redis stream {@code chat:messages} (Lua script kiểm
+ * tra XLEN trước, quá {@code chat.persist.max-pending} thì từ chối =
+ * backpressure cho người gửi).
+ * - 1 thread writer đọc theo consumer group, mỗi lô là 1 transaction: user lấy
+ * bằng getReference (không SELECT), insert theo JDBC batch, bảng conversations
+ * cập nhật 1 lần cho mỗi cặp user. Ghi xong mới XACK + XDEL.
+ * - Restart: writer đọc lại các bản ghi pending của chính nó trước, và định kỳ
+ * nhận lại bản ghi pending quá lâu của consumer khác (node đã chết). Tin đã có
+ * trong DB (theo stream_id) được bỏ qua nên replay không tạo bản trùng.
+ */
+@Component
+public class ChatMessageWriter {
+
+    private static final String STREAM_KEY = "chat:messages";
+    private static final String DEAD_LETTER_KEY = "chat:messages:dead";
+    private static final String GROUP = "chat-writer";
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private static final DefaultRedisScript<String> ENQUEUE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('XLEN', KEYS[1]) >= tonumber(ARGV[1]) then return false end "
+                    + "return redis.call('XADD', KEYS[1], '*', 'from', ARGV[2], 'to', ARGV[3], "
+                    + "'content', ARGV[4], 'sentAt', ARGV[5])",
+            String.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final MessagesJpaRepository messagesRepository;
+    private final UserJpaRepository userRepository;
+    private final ConversationService conversationService;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatHistoryCache chatHistoryCache;
+
+    @Value("${chat.persist.batch-size:200}")
+    private int batchSize;
+
+    @Value("${chat.persist.max-pending:50000}")
+    private long maxPending;
+
+    // Để trống thì tự sinh hostname-pid: mỗi node phải là 1 consumer riêng trong
+    // group, trùng tên thì 2 node đọc chung pending list và claim nhầm tin của nhau
+    @Value("${chat.persist.consumer-name:}")
+    private String consumerName;
+
+    @Value("${chat.persist.claim-idle-ms:60000}")
+    private long claimIdleMs;
+
+    private Thread writer;
+    private volatile boolean running = false;
+    private volatile boolean replayRequested = false;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder skippedDuplicates = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    public ChatMessageWriter(StringRedisTemplate redisTemplate,
+            MessagesJpaRepository messagesRepository,
+            UserJpaRepository userRepository,
+            ConversationService conversationService,
+            TransactionTemplate transactionTemplate,
+            ChatHistoryCache chatHistoryCache) {
+        this.redisTemplate = redisTemplate;
+        this.messagesRepository = messagesRepository;
+        this.userRepository = userRepository;
+        this.conversationService = conversationService;
+        this.transactionTemplate = transactionTemplate;
+        this.chatHistoryCache = chatHistoryCache;
+    }
+
+    /**
+     * @return false nếu buffer đã đầy, người gửi cần thử lại sau
+     */
+    public boolean enqueue(String content, UUID fromUserId, UUID toUserId, LocalDateTime sentAt) {
+        String id = redisTemplate.execute(ENQUEUE_SCRIPT, List.of(STREAM_KEY), String.valueOf(maxPending),
+                fromUserId.toString(), toUserId.toString(), content, sentAt.toString());
+        if (id == null) {
+            rejected.increment();
+            return false;
+        }
+        enqueued.increment();
+        return true;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (consumerName == null || consumerName.isBlank()) {
+            consumerName = defaultConsumerName();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            redisTemplate.opsForStream().createGroup(STREAM_KEY, ReadOffset.from("0"), GROUP);
+        } catch (Exception e) {
+            // Group đã tồn tại (BUSYGROUP)
+        }
+        running = true;
+        writer = Thread.ofPlatform().name("chat-message-writer").daemon().start(this::writeLoop);
+        System.out.println("[ChatMessageWriter] Started as consumer " + consumerName);
+    }
+
+    private static String defaultConsumerName() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = UUID.randomUUID().toString();
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void writeLoop() {
+        Consumer consumer = Consumer.from(GROUP, consumerName);
+        // Lần đầu đọc lại các bản ghi đã nhận nhưng chưa ack (trước khi restart)
+        boolean replaying = true;
+        while (running) {
+            try {
+                if (replayRequested) {
+                    replayRequested = false;
+                    replaying = true;
+                }
+                List<MapRecord<String, Object, Object>> records;
+                if (replaying) {
+                    records = redisTemplate.opsForStream().read(consumer,
+                            StreamReadOptions.empty().count(batchSize),
+                            StreamOffset.create(STREAM_KEY, ReadOffset.from("0")));
+                    if (records == null || records.isEmpty()) {
+                        replaying = false;
+                        continue;
+                    }
+                } else {
+                    records = redisTemplate.opsForStream().read(consumer,
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(STREAM_KEY, ReadOffset.lastConsumed()));
+                    if (records == null || records.isEmpty()) {
+                        continue;
+                    }
+                }
+                persist(records, replaying);
+            } catch (Exception e) {
+                if (!running || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                System.err.println("[ChatMessageWriter] Write loop error: " + e.getMessage());
+                try {
+                    Thread.sleep(RETRY_DELAY_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                // Lô lỗi vẫn pending, đọc lại từ đầu
+                replaying = true;
+            }
+        }
+    }
+
+    private void persist(List<MapRecord<String, Object, Object>> records, boolean replaying) {
+        List<MapRecord<String, Object, Object>> toWrite = records;
+        if (replaying) {
+            toWrite = withoutAlreadyWritten(records);
+        }
+        try {
+            writeBatch(toWrite);
+        } catch (DataIntegrityViolationException e) {
+            // 1 bản ghi hỏng (vd. user không tồn tại) không được chặn cả lô: ghi từng bản.
+            // Lỗi khác (DB down...) thì ném ra, lô vẫn pending và được replay sau.
+            System.err.println("[ChatMessageWriter] Batch of " + toWrite.size() + " failed, writing one by one: "
+                    + e.getMessage());
+            for (MapRecord<String, Object, Object> record : toWrite) {
+                try {
+                    writeBatch(List.of(record));
+                } catch (DataIntegrityViolationException single) {
+                    deadLetter(record, single);
+                }
+            }
+        }
+        acknowledge(records);
+        batches.increment();
+    }
+
+    private void writeBatch(List<MapRecord<String, Object, Object>> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        List<Messages> saved = transactionTemplate.execute(status -> {
+            Map<UUID, User> users = new HashMap<>();
+            List<Messages> messages = new ArrayList<>(records.size());
+            for (MapRecord<String, Object, Object> record : records) {
+                Map<Object, Object> value = record.getValue();
+                Messages message = new Messages();
+                message.setContent((String) value.get("content"));
+                UUID from = UUID.fromString((String) value.get("from"));
+                UUID to = UUID.fromString((String) value.get("to"));
+                message.setFromUser(users.computeIfAbsent(from, userRepository::getReferenceById));
+                message.setToUser(users.computeIfAbsent(to, userRepository::getReferenceById));
+                message.setConversationId(ConversationService.conversationId(from, to));
+                message.setSentAt(LocalDateTime.parse((String) value.get("sentAt")));
+                message.setRead(false);
+                message.setStreamId(record.getId().getValue());
+                messages.add(message);
+            }
+            messagesRepository.saveAll(messages);
+            messagesRepository.flush();
+            conversationService.onMessagesSaved(messages);
+            return messages;
+        });
+        written.add(records.size());
+        appendToHistoryCache(saved);
+    }
+
+    // Đã commit: thêm vào cache tin mới nhất của từng hội thoại (thứ tự cũ -> mới)
+    private void appendToHistoryCache(List<Messages> saved) {
+        Map<UUID, List<MessageResponseDto>> byConversation = new LinkedHashMap<>();
+        for (Messages m : saved) {
+            byConversation.computeIfAbsent(m.getConversationId(), k -> new ArrayList<>())
+                    .add(MessagesService.toDto(m));
+        }
+        for (Map.Entry<UUID, List<MessageResponseDto>> entry : byConversation.entrySet()) {
+            List<MessageResponseDto> messages = entry.getValue();
+            messages.sort(Comparator.comparing(MessageResponseDto::getSentAt));
+            chatHistoryCache.append(entry.getKey(), messages);
+        }
+    }
+
+    private List<MapRecord<String, Object, Object>> withoutAlreadyWritten(
+            List<MapRecord<String, Object, Object>> records) {
+        List<String> ids = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            ids.add(record.getId().getValue());
+        }
+        Set<String> existing = new HashSet<>(messagesRepository.findExistingStreamIds(ids));
+        if (existing.isEmpty()) {
+            return records;
+        }
+        skippedDuplicates.add(existing.size());
+        List<MapRecord<String, Object, Object>> result = new ArrayList<>(records.size() - existing.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            if (!existing.contains(record.getId().getValue())) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    private void acknowledge(List<MapRecord<String, Object, Object>> records) {
+        RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+        redisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, ids);
+        redisTemplate.opsForStream().delete(STREAM_KEY, ids);
+    }
+
+    private void deadLetter(MapRecord<String, Object, Object> record, Exception error) {
+        deadLettered.increment();
+        System.err.println("[ChatMessageWriter] Dropping message " + record.getId() + " to dead letter: "
+                + error.getMessage());
+        try {
+            Map<Object, Object> value = new HashMap<>(record.getValue());
+            value.put("error", String.valueOf(error.getMessage()));
+            redisTemplate.opsForStream().add(DEAD_LETTER_KEY, value);
+        } catch (Exception e) {
+            System.err.println("[ChatMessageWriter] Cannot write dead letter: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Nhận lại bản ghi mà consumer khác (node đã dừng) giữ quá lâu chưa ack, để
+     * lần đọc pending kế tiếp của node này ghi chúng.
+     */
+    @Scheduled(fixedDelayString = "${chat.persist.claim-interval-ms:30000}")
+    public void claimAbandoned() {
+        if (!running) {
+            return;
+        }
+        try {
+            PendingMessages pending = redisTemplate.opsForStream().pending(STREAM_KEY, GROUP, Range.unbounded(),
+                    batchSize);
+            List<RecordId> stale = new ArrayList<>();
+            for (PendingMessage message : pending) {
+                if (!consumerName.equals(message.getConsumerName())
+                        && message.getElapsedTimeSinceLastDelivery().toMillis() >= claimIdleMs) {
+                    stale.add(message.getId());
+                }
+            }
+            if (stale.isEmpty()) {
+                return;
+            }
+            redisTemplate.opsForStream().claim(STREAM_KEY, GROUP, consumerName, Duration.ofMillis(claimIdleMs),
+                    stale.toArray(RecordId[]::new));
+            System.out.println("[ChatMessageWriter] Claimed " + stale.size() + " abandoned messages");
+            // Writer sẽ đọc chúng ở lượt replay kế tiếp
+            replayRequested = true;
+        } catch (Exception e) {
+            System.err.println("[ChatMessageWriter] Claim failed: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Long length = null;
+        try {
+            length = redisTemplate.opsForStream().size(STREAM_KEY);
+        } catch (Exception e) {
+            // Redis lỗi: chỉ trả về bộ đếm local
+        }
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("consumer", consumerName);
+        metrics.put("pending", length);
+        metrics.put("maxPending", maxPending);
+        metrics.put("enqueued", enqueued.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("written", written.sum());
+        metrics.put("batches", batches.sum());
+        metrics.put("skippedDuplicates", skippedDuplicates.sum());
+        metrics.put("deadLettered", deadLettered.sum());
+        return metrics;
+    }
+}
@@ -1,62 +1,265 @@
 package com.ants.ktc.ants_ktc.worker;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.ants.ktc.ants_ktc.entities.Image;
+import com.ants.ktc.ants_ktc.events.RoomChangedEvent;
 import com.ants.ktc.ants_ktc.models.ImageUploadMessage;
 import com.ants.ktc.ants_ktc.repositories.ImageJpaRepository;
 import com.ants.ktc.ants_ktc.services.CloudinaryService;
+import com.ants.ktc.ants_ktc.services.RoomImageService;
 
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 
+/**
+ * Worker upload ảnh phòng lên Cloudinary.
+ *
+ * - 1 thread dispatcher chặn trên BLPOP {@code image_upload_queue}, mỗi job
+ * chạy trên 1 virtual thread, tối đa {@code image-upload.worker.concurrency}
+ * upload cùng lúc (Semaphore).
+ * - URL mới được gom lại và ghi xuống DB theo lô, cùng transaction đó tính lại
+ * {@code rooms.cover_image_url} của các phòng trong lô.
+ * - Job lỗi được đưa vào sorted set {@code image_upload_retry} với score là thời
+ * điểm retry, job định kỳ chuyển các job đến hạn về lại queue.
+ */
 @Component
-@RequiredArgsConstructor
 public class ImageUploadWorker {
     private final RedisTemplate<String, ImageUploadMessage> redisTemplate;
     private final CloudinaryService cloudinaryService;
     private final ImageJpaRepository imageJpaRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final RoomImageService roomImageService;
+    private final ApplicationEventPublisher eventPublisher;
 
     private static final String IMAGE_UPLOAD_QUEUE = "image_upload_queue";
+    private static final String IMAGE_UPLOAD_RETRY_SET = "image_upload_retry";
     private static final int MAX_RETRY_ATTEMPTS = 3;
     private static final long BASE_DELAY_MS = 1000;
+    private static final int LATENCY_SAMPLES = 1024;
 
-    @Scheduled(fixedDelay = 500) // mỗi 0.5s xử lý 1 batch
-    public void processQueue() {
-        ImageUploadMessage job;
-        while ((job = redisTemplate.opsForList().leftPop(IMAGE_UPLOAD_QUEUE, 2, TimeUnit.SECONDS)) != null) {
+    @Value("${image-upload.worker.concurrency:4}")
+    private int concurrency;
+
+    @Value("${image-upload.worker.batch-size:50}")
+    private int batchSize;
+
+    private Semaphore uploadPermits;
+    private ExecutorService uploadExecutor;
+    private Thread dispatcher;
+    private volatile boolean running = false;
+
+    // Upload xong, chờ ghi URL xuống DB
+    private final ConcurrentLinkedQueue<CompletedUpload> completedUploads = new ConcurrentLinkedQueue<>();
+
+    // Metrics
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder uploadedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final long[] latencySamples = new long[LATENCY_SAMPLES];
+    private int latencyCursor = 0;
+    private int latencySize = 0;
+
+    public ImageUploadWorker(@Qualifier("imageRedisTemplate") RedisTemplate<String, ImageUploadMessage> redisTemplate,
+            CloudinaryService cloudinaryService,
+            ImageJpaRepository imageJpaRepository,
+            TransactionTemplate transactionTemplate,
+            RoomImageService roomImageService,
+            ApplicationEventPublisher eventPublisher) {
+        this.redisTemplate = redisTemplate;
+        this.cloudinaryService = cloudinaryService;
+        this.imageJpaRepository = imageJpaRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.roomImageService = roomImageService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        uploadPermits = new Semaphore(Math.max(1, concurrency));
+        uploadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        running = true;
+        dispatcher = Thread.ofPlatform().name("image-upload-dispatcher").daemon().start(this::dispatchLoop);
+        System.out.println("[ImageUploadWorker] Started with concurrency " + concurrency);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdown();
             try {
-                File file = new File(job.getLocalTempPath());
+                uploadExecutor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushCompletedUploads();
+    }
 
-                // Kiểm tra file có tồn tại không
-                if (!file.exists()) {
-                    System.err.println("Temp file not found: " + job.getLocalTempPath());
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                // Chỉ lấy job khi còn slot upload, phần còn lại nằm yên trong Redis
+                uploadPermits.acquire();
+                ImageUploadMessage job;
+                try {
+                    job = redisTemplate.opsForList().leftPop(IMAGE_UPLOAD_QUEUE, 2, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    uploadPermits.release();
+                    System.err.println("[ImageUploadWorker] Failed to pop from queue: " + e.getMessage());
+                    Thread.sleep(BASE_DELAY_MS);
                     continue;
                 }
+                if (job == null) {
+                    uploadPermits.release();
+                    continue;
+                }
+                final ImageUploadMessage current = job;
+                uploadExecutor.execute(() -> {
+                    try {
+                        upload(current);
+                    } finally {
+                        uploadPermits.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
 
-                Map<String, String> uploadResult = cloudinaryService.uploadFile(file);
+    private void upload(ImageUploadMessage job) {
+        File file = new File(job.getLocalTempPath());
 
-                // Update DB
-                Image image = imageJpaRepository.findById(job.getImageId()).orElseThrow();
-                image.setUrl(uploadResult.get("url")); // cập nhật URL từ Cloudinary
-                imageJpaRepository.save(image);
+        // Kiểm tra file có tồn tại không
+        if (!file.exists()) {
+            System.err.println("Temp file not found: " + job.getLocalTempPath());
+            return;
+        }
 
-                // Xóa file tạm sau khi upload thành công
-                boolean deleted = file.delete();
-                if (!deleted) {
-                    System.err.println("Failed to delete temp file: " + job.getLocalTempPath());
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            Map<String, String> uploadResult = cloudinaryService.uploadFile(file);
+            recordLatency(System.nanoTime() - start);
+            uploadedCount.increment();
+            completedUploads.add(new CompletedUpload(job, uploadResult.get("url")));
+        } catch (Exception e) {
+            failedCount.increment();
+            handleUploadFailure(job, e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Ghi URL của các ảnh đã upload xong trong 1 transaction (1 SELECT IN + batch
+     * UPDATE + cập nhật ảnh đại diện), sau đó mới xóa file tạm.
+     */
+    @Scheduled(fixedDelayString = "${image-upload.worker.flush-interval-ms:500}")
+    public void flushCompletedUploads() {
+        List<CompletedUpload> batch = new ArrayList<>();
+        CompletedUpload next;
+        while (batch.size() < batchSize && (next = completedUploads.poll()) != null) {
+            batch.add(next);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<Long, CompletedUpload> byImageId = new HashMap<>();
+        Set<UUID> roomIds = new LinkedHashSet<>();
+        for (CompletedUpload upload : batch) {
+            byImageId.put(upload.job.getImageId(), upload);
+            if (upload.job.getRoomId() != null) {
+                roomIds.add(upload.job.getRoomId());
+            }
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Image> images = imageJpaRepository.findAllById(byImageId.keySet());
+                for (Image image : images) {
+                    image.setUrl(byImageId.get(image.getId()).url); // cập nhật URL từ Cloudinary
                 }
+                imageJpaRepository.saveAllAndFlush(images);
+                // Ảnh đầu tiên của phòng vừa có URL thật -> cover_image_url đổi
+                roomImageService.refreshCovers(roomIds);
+            });
+        } catch (Exception e) {
+            // Giữ lại để lần flush sau ghi tiếp
+            completedUploads.addAll(batch);
+            System.err.println("[ImageUploadWorker] Failed to update " + batch.size() + " image urls: "
+                    + e.getMessage());
+            return;
+        }
 
-                System.out.println("Successfully uploaded image ID: " + job.getImageId() + " to Cloudinary");
+        for (CompletedUpload upload : batch) {
+            // Xóa file tạm sau khi upload thành công
+            File file = new File(upload.job.getLocalTempPath());
+            if (file.exists() && !file.delete()) {
+                System.err.println("Failed to delete temp file: " + upload.job.getLocalTempPath());
+            }
+        }
+        System.out.println("Successfully uploaded " + batch.size() + " images to Cloudinary");
+        // Feed/index đang giữ URL pending của các phòng này
+        for (UUID roomId : roomIds) {
+            eventPublisher.publishEvent(new RoomChangedEvent(roomId));
+        }
+    }
 
-            } catch (Exception e) {
-                handleUploadFailure(job, e);
+    /**
+     * Chuyển các job retry đã đến hạn từ sorted set về lại queue. ZREM trả về
+     * số phần tử đã xóa nên mỗi job chỉ được đẩy lại 1 lần dù chạy nhiều
+     * instance.
+     */
+    @Scheduled(fixedDelayString = "${image-upload.worker.retry-poll-ms:1000}")
+    public void promoteDueRetries() {
+        try {
+            Set<ImageUploadMessage> due = redisTemplate.opsForZSet()
+                    .rangeByScore(IMAGE_UPLOAD_RETRY_SET, 0, System.currentTimeMillis(), 0, 100);
+            if (due == null) {
+                return;
+            }
+            for (ImageUploadMessage job : due) {
+                Long removed = redisTemplate.opsForZSet().remove(IMAGE_UPLOAD_RETRY_SET, job);
+                if (removed != null && removed > 0) {
+                    redisTemplate.opsForList().rightPush(IMAGE_UPLOAD_QUEUE, job);
+                }
             }
+        } catch (Exception e) {
+            System.err.println("[ImageUploadWorker] Failed to promote retries: " + e.getMessage());
         }
     }
 
@@ -71,7 +274,6 @@ public class ImageUploadWorker {
                     " (attempt " + job.getRetryCount() + "/" + MAX_RETRY_ATTEMPTS +
                     "). Will retry in " + delayMs + "ms. Error: " + e.getMessage());
 
-            // Schedule retry với delay
             scheduleRetry(job, delayMs);
         } else {
             // Đã vượt quá số lần retry, xử lý thất bại cuối cùng
@@ -90,6 +292,9 @@ public class ImageUploadWorker {
                 if (image != null) {
                     imageJpaRepository.delete(image); // Xóa luôn record bị lỗi
                     System.out.println("Deleted failed image record ID: " + job.getImageId());
+                    if (job.getRoomId() != null) {
+                        roomImageService.refreshCovers(List.of(job.getRoomId()));
+                    }
                 }
             } catch (Exception dbError) {
                 System.err.println("Failed to delete failed image record: " + dbError.getMessage());
@@ -98,15 +303,71 @@ public class ImageUploadWorker {
     }
 
     private void scheduleRetry(ImageUploadMessage job, long delayMs) {
-        // Sử dụng thread để delay và retry
-        new Thread(() -> {
-            try {
-                Thread.sleep(delayMs);
-                redisTemplate.opsForList().rightPush(IMAGE_UPLOAD_QUEUE, job);
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-                System.err.println("Retry scheduling interrupted for image ID: " + job.getImageId());
-            }
-        }).start();
+        try {
+            redisTemplate.opsForZSet().add(IMAGE_UPLOAD_RETRY_SET, job, System.currentTimeMillis() + delayMs);
+        } catch (Exception ex) {
+            System.err.println("Failed to schedule retry for image ID: " + job.getImageId() + ": "
+                    + ex.getMessage());
+        }
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        latencySamples[latencyCursor] = nanos;
+        latencyCursor = (latencyCursor + 1) % LATENCY_SAMPLES;
+        latencySize = Math.min(latencySize + 1, LATENCY_SAMPLES);
+    }
+
+    private synchronized long p95LatencyMs() {
+        if (latencySize == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencySamples, latencySize);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(0.95 * latencySize) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(index, 0)]);
+    }
+
+    /**
+     * Số liệu để chọn concurrency: độ dài queue, số job chờ retry, số upload
+     * đang chạy và p95 thời gian upload trên {@value #LATENCY_SAMPLES} lần gần
+     * nhất.
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("queueDepth", safeSize(() -> redisTemplate.opsForList().size(IMAGE_UPLOAD_QUEUE)));
+        metrics.put("retryDepth", safeSize(() -> redisTemplate.opsForZSet().zCard(IMAGE_UPLOAD_RETRY_SET)));
+        metrics.put("inFlight", inFlight.get());
+        metrics.put("concurrency", concurrency);
+        metrics.put("pendingDbUpdates", completedUploads.size());
+        metrics.put("uploaded", uploadedCount.sum());
+        metrics.put("failed", failedCount.sum());
+        metrics.put("p95UploadMs", p95LatencyMs());
+        return metrics;
+    }
+
+    @Scheduled(fixedDelayString = "${image-upload.worker.metrics-log-interval-ms:60000}")
+    public void logMetrics() {
+        if (inFlight.get() > 0 || uploadedCount.sum() > 0 || failedCount.sum() > 0) {
+            System.out.println("[ImageUploadWorker] " + getMetrics());
+        }
+    }
+
+    private static long safeSize(Supplier<Long> size) {
+        try {
+            Long value = size.get();
+            return value == null ? 0 : value;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static final class CompletedUpload {
+        private final ImageUploadMessage job;
+        private final String url;
+
+        private CompletedUpload(ImageUploadMessage job, String url) {
+            this.job = job;
+            this.url = url;
+        }
     }
 }
@@ -0,0 +1,146 @@
+package com.ants.ktc.ants_ktc.components;
+
+import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
+import com.ants.ktc.ants_ktc.services.MessagesService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Benchmark đơn luồng (msg/s trên 1 core) cho hot path của ChatHandler, so với
+ * cách xử lý cũ: duyệt toàn bộ session để tìm người gửi, load tên mỗi tin,
+ * dựng ObjectNode. Không cần DB/Redis: repository là stub, registry chỉ đếm.
+ * Chỉ in kết quả, không assert thời gian; gắn tag "benchmark" nên không chạy
+ * trong {@code gradle test}, chạy riêng bằng {@code gradle benchmark}.
+ */
+public class ChatHandlerBenchmarkTest {
+
+    private static final int CONNECTED_USERS = 2000;
+    private static final int WARMUP = 20_000;
+    private static final int MESSAGES = 100_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong sent = new AtomicLong();
+
+    private ChatHandler handler;
+    private UserJpaRepository userJpaRepository;
+    private WebSocketSession senderSession;
+    private Map<String, WebSocketSession> legacySessions;
+    private String fromUserId;
+    private String payload;
+
+    // Registry chỉ đếm số lần gửi, không đụng Redis
+    private class CountingRegistry extends ChatSessionRegistry {
+        @Override
+        public void sendToUser(String userId, String message) {
+            sent.incrementAndGet();
+        }
+    }
+
+    private static class NoopMessagesService extends MessagesService {
+        @Override
+        public boolean saveMessageAsync(String content, UUID fromUserId, UUID toUserId) {
+            return true;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        userJpaRepository = mock(UserJpaRepository.class, withSettings().stubOnly());
+        when(userJpaRepository.findDisplayNameById(any())).thenReturn(Optional.of("Nguyễn Văn A"));
+
+        handler = new ChatHandler();
+        ReflectionTestUtils.setField(handler, "messagesService", new NoopMessagesService());
+        ReflectionTestUtils.setField(handler, "sessionRegistry", new CountingRegistry());
+        ReflectionTestUtils.setField(handler, "displayNameCache", new ChatDisplayNameCache(userJpaRepository, 1000));
+
+        legacySessions = new ConcurrentHashMap<>();
+        for (int i = 0; i < CONNECTED_USERS; i++) {
+            WebSocketSession other = mock(WebSocketSession.class, withSettings().stubOnly());
+            legacySessions.put(UUID.randomUUID().toString(), other);
+        }
+        fromUserId = UUID.randomUUID().toString();
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(ChatHandshakeInterceptor.USER_ID_ATTRIBUTE, fromUserId);
+        senderSession = mock(WebSocketSession.class, withSettings().stubOnly());
+        when(senderSession.getAttributes()).thenReturn(attributes);
+        legacySessions.put(fromUserId, senderSession);
+
+        payload = "{\"type\":\"message\",\"toUserId\":\"" + UUID.randomUUID()
+                + "\",\"message\":\"Phòng này còn trống không ạ?\"}";
+    }
+
+    // Cách cũ: readTree, duyệt map tìm người gửi, load tên, dựng ObjectNode
+    private void legacyHandle(WebSocketSession session, String text) throws Exception {
+        JsonNode json = objectMapper.readTree(text);
+        String toUserId = json.get("toUserId").asText();
+        String msg = json.get("message").asText();
+        String from = null;
+        for (var entry : legacySessions.entrySet()) {
+            if (entry.getValue().equals(session)) {
+                from = entry.getKey();
+                break;
+            }
+        }
+        String fromUserName = userJpaRepository.findDisplayNameById(UUID.fromString(from)).orElse(from);
+        String jsonMsg = objectMapper.createObjectNode()
+                .put("fromUserId", from)
+                .put("fromUserName", fromUserName)
+                .put("toUserId", toUserId)
+                .put("message", msg)
+                .put("sentAt", java.time.LocalDateTime.now().toString())
+                .put("isRead", false)
+                .toString();
+        sent.addAndGet(jsonMsg.isEmpty() ? 0 : 2);
+    }
+
+    private double measure(String label, ThrowingRunnable step) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            step.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            step.run();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double perSecond = MESSAGES / seconds;
+        System.out.printf("[ChatHandlerBenchmarkTest] %s: %.0f msg/s/core%n", label, perSecond);
+        return perSecond;
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkHotPathAgainstLegacyPath() throws Exception {
+        TextMessage message = new TextMessage(payload);
+
+        double before = measure("before (scan sessions + load name + ObjectNode)",
+                () -> legacyHandle(senderSession, payload));
+        sent.set(0);
+        double after = measure("after (session attribute + name cache + streaming JSON)",
+                () -> handler.handleTextMessage(senderSession, message));
+
+        System.out.printf("[ChatHandlerBenchmarkTest] speedup x%.1f%n", after / before);
+        // Mỗi tin: 1 cho người nhận + 1 echo
+        assertEquals(2L * (WARMUP + MESSAGES), sent.get());
+    }
+}
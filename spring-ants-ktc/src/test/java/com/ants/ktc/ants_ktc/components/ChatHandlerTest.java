@@ -0,0 +1,133 @@
+package com.ants.ktc.ants_ktc.components;
+
+import com.ants.ktc.ants_ktc.repositories.UserJpaRepository;
+import com.ants.ktc.ants_ktc.services.MessagesService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Hot path của ChatHandler: người gửi lấy từ attributes của session, tên hiển
+ * thị qua cache, 1 payload cho người nhận + bản echo. Không cần DB/Redis:
+ * repository là mock, registry chỉ ghi lại các lần gửi.
+ */
+public class ChatHandlerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String[]> sent = new ArrayList<>();
+
+    private ChatHandler handler;
+    private UserJpaRepository userJpaRepository;
+    private WebSocketSession senderSession;
+    private String fromUserId;
+    private String toUserId;
+    private boolean accepting = true;
+
+    // Registry chỉ ghi lại (userId, payload), không đụng Redis
+    private class RecordingRegistry extends ChatSessionRegistry {
+        @Override
+        public void sendToUser(String userId, String message) {
+            sent.add(new String[] { userId, message });
+        }
+    }
+
+    private class StubMessagesService extends MessagesService {
+        @Override
+        public boolean saveMessageAsync(String content, UUID fromUserId, UUID toUserId) {
+            return accepting;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        userJpaRepository = mock(UserJpaRepository.class);
+        when(userJpaRepository.findDisplayNameById(any())).thenReturn(Optional.of("Nguyễn Văn A"));
+
+        handler = new ChatHandler();
+        ReflectionTestUtils.setField(handler, "messagesService", new StubMessagesService());
+        ReflectionTestUtils.setField(handler, "sessionRegistry", new RecordingRegistry());
+        ReflectionTestUtils.setField(handler, "displayNameCache", new ChatDisplayNameCache(userJpaRepository, 1000));
+
+        fromUserId = UUID.randomUUID().toString();
+        toUserId = UUID.randomUUID().toString();
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(ChatHandshakeInterceptor.USER_ID_ATTRIBUTE, fromUserId);
+        senderSession = mock(WebSocketSession.class);
+        when(senderSession.getAttributes()).thenReturn(attributes);
+    }
+
+    private TextMessage chat(String text) {
+        return new TextMessage("{\"type\":\"message\",\"toUserId\":\"" + toUserId + "\",\"message\":\"" + text
+                + "\"}");
+    }
+
+    @Test
+    public void testMessageGoesToRecipientAndEchoesToSender() throws Exception {
+        handler.handleTextMessage(senderSession, chat("Phòng này còn trống không ạ?"));
+
+        assertEquals(2, sent.size());
+        assertEquals(toUserId, sent.get(0)[0]);
+        assertEquals(fromUserId, sent.get(1)[0]);
+        // Người nhận và bản echo dùng chung 1 payload
+        assertSame(sent.get(0)[1], sent.get(1)[1]);
+
+        JsonNode payload = objectMapper.readTree(sent.get(0)[1]);
+        assertEquals(fromUserId, payload.get("fromUserId").asText());
+        assertEquals("Nguyễn Văn A", payload.get("fromUserName").asText());
+        assertEquals(toUserId, payload.get("toUserId").asText());
+        assertEquals("Phòng này còn trống không ạ?", payload.get("message").asText());
+        assertFalse(payload.get("isRead").asBoolean());
+    }
+
+    @Test
+    public void testDisplayNameIsLoadedOncePerSender() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            handler.handleTextMessage(senderSession, chat("tin " + i));
+        }
+
+        assertEquals(100, sent.size());
+        verify(userJpaRepository, times(1)).findDisplayNameById(UUID.fromString(fromUserId));
+    }
+
+    @Test
+    public void testFullWriteBufferRepliesBusyAndDoesNotBroadcast() throws Exception {
+        accepting = false;
+
+        handler.handleTextMessage(senderSession, chat("xin chào"));
+
+        assertTrue(sent.isEmpty());
+        verify(senderSession).sendMessage(argThat(m -> m instanceof TextMessage
+                && ((TextMessage) m).getPayload().contains("\"code\":\"busy\"")));
+    }
+
+    @Test
+    public void testStreamingPayloadMatchesObjectNodeOutput() throws Exception {
+        String expected = objectMapper.createObjectNode()
+                .put("fromUserId", "a")
+                .put("fromUserName", "Trần \"B\"")
+                .put("toUserId", "c")
+                .put("message", "xin chào\n")
+                .put("sentAt", "2025-01-01T10:00")
+                .put("isRead", true)
+                .toString();
+
+        String actual = ChatHandler.writeChatPayload("a", "Trần \"B\"", "c", "xin chào\n", "2025-01-01T10:00", true);
+
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,114 @@
+package com.ants.ktc.ants_ktc.components;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Nhiều luồng, nhiều node cùng sinh id: không trùng, tăng dần trong từng luồng.
+ * Throughput (id/s) đo trong test gắn tag "benchmark", chạy bằng
+ * {@code gradle benchmark}.
+ */
+public class IdGeneratorTest {
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 200_000;
+
+    // Mỗi luồng sinh IDS_PER_THREAD id từ generator của node (i % số node)
+    private long[] generate(IdGenerator[] nodes) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                IdGenerator generator = nodes[t % nodes.length];
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    long[] ids = new long[IDS_PER_THREAD];
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        ids[i] = generator.nextId();
+                    }
+                    return ids;
+                }));
+            }
+            start.countDown();
+            long[] all = new long[THREADS * IDS_PER_THREAD];
+            int offset = 0;
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get(60, TimeUnit.SECONDS);
+                for (int i = 1; i < ids.length; i++) {
+                    assertTrue(ids[i] > ids[i - 1], "ids must increase within a thread");
+                }
+                System.arraycopy(ids, 0, all, offset, ids.length);
+                offset += ids.length;
+            }
+            return all;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertNoDuplicates(long[] ids) {
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; i++) {
+            assertNotEquals(sorted[i - 1], sorted[i], "duplicate id " + sorted[i]);
+        }
+    }
+
+    @Test
+    public void testSingleNodeIdsAreUniqueAcrossThreads() throws Exception {
+        long[] ids = generate(new IdGenerator[] { new IdGenerator(1) });
+        assertNoDuplicates(ids);
+    }
+
+    @Test
+    public void testIdsFromDifferentNodesNeverCollide() throws Exception {
+        long[] ids = generate(new IdGenerator[] {
+                new IdGenerator(0), new IdGenerator(7), new IdGenerator(IdGenerator.MAX_NODE_ID) });
+        assertNoDuplicates(ids);
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkThroughputAcrossThreads() throws Exception {
+        IdGenerator[] nodes = { new IdGenerator(0), new IdGenerator(7) };
+        generate(nodes);
+
+        long start = System.nanoTime();
+        long[] ids = generate(nodes);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("[IdGeneratorTest] %d nodes, %d threads: %.0f ids/s%n", nodes.length, THREADS,
+                ids.length / seconds);
+        assertNoDuplicates(ids);
+    }
+
+    @Test
+    public void testCodesAreShortAndUnique() {
+        IdGenerator generator = new IdGenerator(3);
+        Set<String> codes = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            String code = generator.nextCode();
+            assertTrue(code.matches("[0-9A-Z]{1,13}"), code);
+            assertTrue(codes.add(code), "duplicate code " + code);
+        }
+    }
+
+    @Test
+    public void testRejectsNodeIdOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new IdGenerator(-1));
+        assertThrows(IllegalArgumentException.class, () -> new IdGenerator(IdGenerator.MAX_NODE_ID + 1));
+    }
+}
@@ -0,0 +1,107 @@
+package com.ants.ktc.ants_ktc.filters;
+
+import com.ants.ktc.ants_ktc.entities.Role;
+import com.ants.ktc.ants_ktc.entities.User;
+import com.ants.ktc.ants_ktc.services.auth.CustomUserDetailsService;
+import com.ants.ktc.ants_ktc.services.auth.JwtPrincipalService;
+import com.ants.ktc.ants_ktc.services.auth.JwtService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * So sánh số request/giây qua JwtAuthenticationFilter khi principal dựng từ
+ * claim (fast path) và khi mỗi request load user từ DB như trước. DB được giả
+ * lập bằng UserDetailsService ngủ 1ms mỗi lần gọi. Chỉ in kết quả, không
+ * assert thời gian; gắn tag "benchmark" nên chạy bằng {@code gradle benchmark}.
+ */
+public class JwtAuthenticationFilterBenchmarkTest {
+
+    private static final int WARMUP = 200;
+    private static final int REQUESTS = 2000;
+
+    private final JwtService jwtService = new JwtService();
+    private final AtomicInteger dbLoads = new AtomicInteger();
+
+    // Giả lập CustomUserDetailsService với độ trễ của 1 query DB
+    private final UserDetailsService slowDb = username -> {
+        dbLoads.incrementAndGet();
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return org.springframework.security.core.userdetails.User.withUsername(username)
+                .password("")
+                .authorities(CustomUserDetailsService.authoritiesOf(List.of("User")))
+                .build();
+    };
+
+    @AfterEach
+    public void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private User user() {
+        Role role = new Role();
+        role.setName("User");
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setUsername("tenant01");
+        user.setRoles(List.of(role));
+        return user;
+    }
+
+    private Authentication authenticate(JwtAuthenticationFilter filter, String token) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/profile");
+        request.addHeader("Authorization", "Bearer " + token);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    private long requestsPerSecond(JwtAuthenticationFilter filter, String token) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            authenticate(filter, token);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            assertNotNull(authenticate(filter, token));
+        }
+        long elapsedNs = Math.max(1, System.nanoTime() - start);
+        return REQUESTS * 1_000_000_000L / elapsedNs;
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkStatelessFastPathAgainstUserLookup() throws Exception {
+        String token = jwtService.generateAccessToken(user());
+
+        // Như trước: mỗi request load user từ DB
+        JwtAuthenticationFilter legacy = new JwtAuthenticationFilter(jwtService,
+                new JwtPrincipalService(slowDb, false, 10000, 0));
+        long legacyRps = requestsPerSecond(legacy, token);
+        int legacyLoads = dbLoads.getAndSet(0);
+
+        JwtAuthenticationFilter fast = new JwtAuthenticationFilter(jwtService,
+                new JwtPrincipalService(slowDb, true, 10000, 60000));
+        long fastRps = requestsPerSecond(fast, token);
+
+        System.out.println("[JwtAuthenticationFilterBenchmarkTest] " + REQUESTS + " requests: legacy " + legacyRps
+                + " req/s, stateless " + fastRps + " req/s");
+        assertEquals(WARMUP + REQUESTS, legacyLoads);
+        assertEquals(0, dbLoads.get());
+    }
+}
@@ -0,0 +1,146 @@
+package com.ants.ktc.ants_ktc.filters;
+
+import com.ants.ktc.ants_ktc.entities.Role;
+import com.ants.ktc.ants_ktc.entities.User;
+import com.ants.ktc.ants_ktc.services.auth.CustomUserDetailsService;
+import com.ants.ktc.ants_ktc.services.auth.JwtPrincipalService;
+import com.ants.ktc.ants_ktc.services.auth.JwtService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JwtAuthenticationFilter khi principal dựng từ claim (fast path) và khi mỗi
+ * request load user từ DB như trước. DB được giả lập bằng UserDetailsService
+ * đếm số lần gọi.
+ */
+public class JwtAuthenticationFilterTest {
+
+    private static final int REQUESTS = 20;
+
+    private final JwtService jwtService = new JwtService();
+    private final AtomicInteger dbLoads = new AtomicInteger();
+    private final AtomicReference<List<String>> dbRoles = new AtomicReference<>(List.of("User"));
+    private final AtomicReference<Boolean> dbDisabled = new AtomicReference<>(false);
+
+    // Giả lập CustomUserDetailsService, đếm số lần query DB
+    private final UserDetailsService db = username -> {
+        dbLoads.incrementAndGet();
+        return org.springframework.security.core.userdetails.User.withUsername(username)
+                .password("")
+                .authorities(CustomUserDetailsService.authoritiesOf(dbRoles.get()))
+                .disabled(dbDisabled.get())
+                .build();
+    };
+
+    @AfterEach
+    public void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private User user(UUID id, String... roleNames) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername("tenant01");
+        user.setRoles(Arrays.stream(roleNames).map(name -> {
+            Role role = new Role();
+            role.setName(name);
+            return role;
+        }).toList());
+        return user;
+    }
+
+    private Authentication authenticate(JwtAuthenticationFilter filter, String token) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/profile");
+        request.addHeader("Authorization", "Bearer " + token);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    @Test
+    public void testStatelessFastPathSkipsUserLookup() throws Exception {
+        String token = jwtService.generateAccessToken(user(UUID.randomUUID(), "User"));
+
+        // Như trước: mỗi request load user từ DB
+        JwtAuthenticationFilter legacy = new JwtAuthenticationFilter(jwtService,
+                new JwtPrincipalService(db, false, 10000, 0));
+        for (int i = 0; i < REQUESTS; i++) {
+            assertNotNull(authenticate(legacy, token));
+        }
+        assertEquals(REQUESTS, dbLoads.getAndSet(0));
+
+        JwtAuthenticationFilter fast = new JwtAuthenticationFilter(jwtService,
+                new JwtPrincipalService(db, true, 10000, 60000));
+        for (int i = 0; i < REQUESTS; i++) {
+            Authentication auth = authenticate(fast, token);
+            assertEquals("tenant01", auth.getName());
+            assertTrue(auth.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_User")));
+        }
+        assertEquals(0, dbLoads.get());
+    }
+
+    @Test
+    public void testRevokedTokenFallsBackToDatabaseRoles() throws Exception {
+        UUID userId = UUID.randomUUID();
+        String token = jwtService.generateAccessToken(user(userId, "User"));
+        JwtPrincipalService principals = new JwtPrincipalService(db, true, 10000, 60000);
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter(jwtService, principals);
+
+        // Admin đổi role: token cũ không còn được tin claim roles
+        dbRoles.set(List.of("Landlord"));
+        principals.revoke(userId, "tenant01");
+
+        Authentication auth = authenticate(filter, token);
+        assertTrue(auth.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_Landlord")));
+        assertFalse(auth.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_User")));
+        assertEquals(1, dbLoads.get());
+
+        // Lần sau lấy từ cache principal, không query lại
+        authenticate(filter, token);
+        assertEquals(1, dbLoads.get());
+    }
+
+    @Test
+    public void testDisabledAccountIsNotAuthenticatedAfterRevocation() throws Exception {
+        UUID userId = UUID.randomUUID();
+        String token = jwtService.generateAccessToken(user(userId, "User"));
+        JwtPrincipalService principals = new JwtPrincipalService(db, true, 10000, 60000);
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter(jwtService, principals);
+        assertNotNull(authenticate(filter, token));
+
+        dbDisabled.set(true);
+        principals.revoke(userId, "tenant01");
+
+        assertNull(authenticate(filter, token));
+    }
+
+    @Test
+    public void testPrincipalCacheIsBounded() {
+        JwtPrincipalService principals = new JwtPrincipalService(db, false, 2, 60000);
+        for (int i = 0; i < 3; i++) {
+            String token = jwtService.generateAccessToken(user(UUID.randomUUID(), "User"));
+            Claims claims = jwtService.parseClaims(token);
+            claims = Jwts.claims().add(claims).subject("user" + i).build();
+            UserDetails loaded = principals.resolve(claims);
+            assertEquals("user" + i, loaded.getUsername());
+        }
+        assertEquals(2, principals.getMetrics().get("cachedPrincipals"));
+    }
+}
@@ -0,0 +1,171 @@
+package com.ants.ktc.ants_ktc.services;
+
+import com.ants.ktc.ants_ktc.dtos.bill.BillPdfJobResponseDto;
+import com.ants.ktc.ants_ktc.enums.BillPdfJobStatus;
+import com.ants.ktc.ants_ktc.repositories.BillJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.projection.BillInvoiceProjection;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Benchmark số hóa đơn PDF/giây: render tuần tự trên 1 luồng so với render
+ * song song trên pool cố định (như BillPdfBatchService). Không cần DB: dữ liệu
+ * hóa đơn là projection dựng sẵn. Benchmark gắn tag "benchmark", không chạy
+ * trong {@code gradle test}; chạy riêng bằng {@code gradle benchmark}.
+ */
+public class BillPdfServiceBenchmarkTest {
+
+    private static final int WARMUP = 200;
+    private static final int INVOICES = 1000;
+    private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private final BillPdfService billPdfService = new BillPdfService(mock(BillJpaRepository.class));
+
+    private static class Invoice implements BillInvoiceProjection {
+        private final UUID billId = UUID.randomUUID();
+        private final int index;
+
+        Invoice(int index) {
+            this.index = index;
+        }
+
+        public UUID getBillId() { return billId; }
+        public String getMonth() { return "2025-08"; }
+        public Double getElectricityFee() { return 350_000.0 + index; }
+        public Double getWaterFee() { return 120_000.0; }
+        public Double getServiceFee() { return 100_000.0; }
+        public Double getTotalAmount() { return 620_000.0 + index; }
+        public String getTenantName() { return "tenant" + index; }
+        public String getTenantPhone() { return "0901234567"; }
+        public String getRoomName() { return "Room " + index; }
+        public Double getElecPrice() { return 3_500.0; }
+        public Double getWaterPrice() { return 15_000.0; }
+    }
+
+    private static List<BillInvoiceProjection> invoices(int count) {
+        List<BillInvoiceProjection> invoices = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            invoices.add(new Invoice(i));
+        }
+        return invoices;
+    }
+
+    private byte[] render(BillInvoiceProjection invoice) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(16 * 1024);
+        billPdfService.render(invoice, bos);
+        return bos.toByteArray();
+    }
+
+    private static void assertPdf(byte[] pdf) {
+        assertTrue(pdf.length > 0);
+        assertEquals("%PDF", new String(pdf, 0, 4, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkSingleThreadedAgainstPooled() throws Exception {
+        List<BillInvoiceProjection> warmup = invoices(WARMUP);
+        List<BillInvoiceProjection> batch = invoices(INVOICES);
+        for (BillInvoiceProjection invoice : warmup) {
+            render(invoice);
+        }
+
+        long start = System.nanoTime();
+        for (BillInvoiceProjection invoice : batch) {
+            assertPdf(render(invoice));
+        }
+        double single = INVOICES / ((System.nanoTime() - start) / 1e9);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            start = System.nanoTime();
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (BillInvoiceProjection invoice : batch) {
+                futures.add(pool.submit(() -> render(invoice)));
+            }
+            for (Future<byte[]> future : futures) {
+                assertPdf(future.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double pooled = INVOICES / ((System.nanoTime() - start) / 1e9);
+
+        System.out.printf("[BillPdfServiceBenchmarkTest] single thread: %.0f invoices/s%n", single);
+        System.out.printf("[BillPdfServiceBenchmarkTest] pool of %d: %.0f invoices/s (x%.1f)%n", THREADS, pooled,
+                pooled / single);
+    }
+
+    @Test
+    public void testBatchJobWritesOneZipEntryPerInvoice(@TempDir Path dir) throws Exception {
+        BillJpaRepository billJpaRepository = mock(BillJpaRepository.class);
+        when(billJpaRepository.findInvoicesByLandlordIdAndMonth(any(), anyString())).thenReturn(invoices(50));
+
+        BillPdfBatchService batchService = new BillPdfBatchService();
+        ReflectionTestUtils.setField(batchService, "billPdfService", billPdfService);
+        ReflectionTestUtils.setField(batchService, "billJpaRepository", billJpaRepository);
+        ReflectionTestUtils.setField(batchService, "threads", 4);
+        ReflectionTestUtils.setField(batchService, "maxConcurrentJobs", 1);
+        ReflectionTestUtils.setField(batchService, "maxQueuedJobs", 5);
+        ReflectionTestUtils.setField(batchService, "outputDir", dir.toString());
+        batchService.init();
+        try {
+            UUID landlordId = UUID.randomUUID();
+            BillPdfJobResponseDto job = batchService.submit(landlordId, "2025-08", landlordId);
+            long deadline = System.currentTimeMillis() + 60_000;
+            while (job.getStatus() != BillPdfJobStatus.DONE && job.getStatus() != BillPdfJobStatus.FAILED
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+                job = batchService.getStatus(job.getJobId(), landlordId);
+            }
+
+            assertEquals(BillPdfJobStatus.DONE, job.getStatus(), job.getError());
+            assertEquals(50, job.getTotal());
+            assertEquals(50, job.getRendered());
+            assertEquals(0, job.getFailed());
+            assertNotNull(job.getDownloadUrl());
+
+            int entries = 0;
+            try (InputStream in = Files.newInputStream(batchService.getResult(job.getJobId(), landlordId));
+                    ZipInputStream zip = new ZipInputStream(in)) {
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    assertTrue(entry.getName().endsWith(".pdf"), entry.getName());
+                    assertPdf(zip.readAllBytes());
+                    entries++;
+                }
+            }
+            assertEquals(50, entries);
+
+            // Landlord khác không thấy job; admin (ownerId = null) thấy
+            UUID jobId = job.getJobId();
+            assertThrows(IllegalArgumentException.class, () -> batchService.getStatus(jobId, UUID.randomUUID()));
+            assertThrows(IllegalArgumentException.class, () -> batchService.getResult(jobId, UUID.randomUUID()));
+            assertEquals(BillPdfJobStatus.DONE, batchService.getStatus(jobId, null).getStatus());
+        } finally {
+            batchService.shutdown();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.ants.ktc.ants_ktc.services;
+
+import com.ants.ktc.ants_ktc.dtos.approval.ApprovalResult;
+import com.ants.ktc.ants_ktc.models.ApprovalMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Chạy GeminiApprovalClient với 1 stub server local thay cho api_gemini để
+ * kiểm tra concurrency / rate limit / batch / timeout / circuit breaker mà
+ * không dựa vào thời gian chạy.
+ */
+public class GeminiApprovalClientTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private HttpServer server;
+    private String baseUrl;
+
+    private volatile long latencyMs = 50;
+    private final AtomicInteger singleCalls = new AtomicInteger();
+    private final AtomicInteger batchCalls = new AtomicInteger();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    // Nếu có: request giữ lại cho tới khi đủ số request đồng thời
+    private volatile CountDownLatch gate;
+    private final AtomicBoolean gateTimedOut = new AtomicBoolean();
+    private volatile String singleResponse;
+
+    @BeforeEach
+    public void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ai_approval", exchange -> handle(exchange, false));
+        server.createContext("/ai_approval_batch", exchange -> handle(exchange, true));
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void stopStub() {
+        server.stop(0);
+    }
+
+    // Stub: mỗi request ngủ latencyMs rồi duyệt tất cả phòng
+    private void handle(HttpExchange exchange, boolean batch) throws IOException {
+        int now = concurrent.incrementAndGet();
+        maxConcurrent.accumulateAndGet(now, Math::max);
+        try {
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            CountDownLatch latch = gate;
+            if (latch != null && latch.getCount() > 0) {
+                latch.countDown();
+                if (!latch.await(10, TimeUnit.SECONDS)) {
+                    gateTimedOut.set(true);
+                }
+            }
+            Thread.sleep(latencyMs);
+            String response;
+            if (batch) {
+                batchCalls.incrementAndGet();
+                List<String> items = new ArrayList<>();
+                for (JsonNode room : body.get("rooms")) {
+                    items.add("{\"id\":\"" + room.get("id").asText() + "\",\"status\":1,\"content\":[\"ok\"]}");
+                }
+                response = "{\"results\":[" + String.join(",", items) + "]}";
+            } else {
+                singleCalls.incrementAndGet();
+                response = singleResponse != null ? singleResponse
+                        : "{\"status\":1,\"content\":[\"ok\",\"" + body.get("id").asText() + "\"]}";
+            }
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // client đã timeout và đóng kết nối
+        } finally {
+            concurrent.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private GeminiApprovalClient client(double ratePerSecond, int burst, int maxInFlight, int batchSize,
+            long timeoutMs, int failureThreshold) {
+        return new GeminiApprovalClient(baseUrl, ratePerSecond, burst, maxInFlight, batchSize, timeoutMs,
+                failureThreshold, 60000);
+    }
+
+    private List<ApprovalMessage> rooms(int count) {
+        List<ApprovalMessage> rooms = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rooms.add(ApprovalMessage.builder()
+                    .roomId(UUID.randomUUID())
+                    .title("Phòng " + i)
+                    .description("Mô tả")
+                    .priceMonth(3000000L)
+                    .priceDeposit(3000000L)
+                    .area(25.0)
+                    .length(5.0)
+                    .width(5.0)
+                    .maxPeople(2)
+                    .elecPrice(3500L)
+                    .waterPrice(20000L)
+                    .fullAddress("Đà Nẵng")
+                    .convenients(List.of("Wifi"))
+                    .images(List.of())
+                    .build());
+        }
+        return rooms;
+    }
+
+    private List<ApprovalResult> joinAll(List<CompletableFuture<ApprovalResult>> futures) {
+        List<ApprovalResult> results = new ArrayList<>();
+        for (CompletableFuture<ApprovalResult> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    @Test
+    public void testConcurrentRequestsReachButNeverExceedMaxInFlight() {
+        latencyMs = 0;
+        // 8 request đầu chỉ được trả lời khi cả 8 cùng đang chạy
+        gate = new CountDownLatch(8);
+        GeminiApprovalClient client = client(1000, 1000, 8, 1, 15000, 5);
+        try {
+            List<ApprovalMessage> jobs = rooms(40);
+
+            List<ApprovalResult> results = joinAll(client.submitAll(jobs));
+
+            assertEquals(40, results.size());
+            assertTrue(results.stream().allMatch(r -> r.getStatus() == 1));
+            // Kết quả phải khớp đúng phòng
+            assertTrue(results.get(7).getContent().contains(jobs.get(7).getRoomId().toString()));
+            assertEquals(40, singleCalls.get());
+            assertFalse(gateTimedOut.get(), "8 requests were never in flight together");
+            assertEquals(8, maxConcurrent.get());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testTokenBucketHoldsRequestsBeyondBurst() throws InterruptedException {
+        latencyMs = 0;
+        // Burst 2, nạp 1 token/giờ: request thứ 3 không thể được gửi trong lúc test
+        GeminiApprovalClient client = client(1.0 / 3600, 2, 8, 1, 5000, 5);
+        try {
+            List<CompletableFuture<ApprovalResult>> futures = client.submitAll(rooms(3));
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (futures.stream().filter(CompletableFuture::isDone).count() < 2
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(2, futures.stream().filter(CompletableFuture::isDone).count());
+            assertEquals(2, singleCalls.get());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testMissingStatusFailsInsteadOfRejecting() {
+        latencyMs = 0;
+        singleResponse = "{\"content\":[\"no status\"]}";
+        GeminiApprovalClient client = client(1000, 1000, 1, 1, 5000, 5);
+        try {
+            CompletionException error = assertThrows(CompletionException.class,
+                    () -> client.submit(rooms(1).get(0)).join());
+            assertInstanceOf(IllegalStateException.class, error.getCause());
+
+            singleResponse = "{\"status\":\"rejected\",\"content\":[]}";
+            error = assertThrows(CompletionException.class, () -> client.submit(rooms(1).get(0)).join());
+            assertInstanceOf(IllegalStateException.class, error.getCause());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchModeSendsSeveralRoomsPerCall() {
+        GeminiApprovalClient client = client(1000, 1000, 2, 5, 5000, 5);
+        try {
+            List<ApprovalMessage> jobs = rooms(20);
+
+            List<ApprovalResult> results = joinAll(client.submitAll(jobs));
+
+            assertEquals(20, results.size());
+            assertTrue(results.stream().allMatch(r -> r.getStatus() == 1));
+            assertEquals(4, batchCalls.get());
+            assertEquals(0, singleCalls.get());
+            assertEquals(10, client.getWindowSize());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testTimeoutsOpenCircuitAndRemainingJobsFailFast() {
+        latencyMs = 1000;
+        GeminiApprovalClient client = client(1000, 1000, 1, 1, 100, 2);
+        try {
+            List<CompletableFuture<ApprovalResult>> futures = client.submitAll(rooms(6));
+
+            int timedOut = 0;
+            int rejected = 0;
+            for (CompletableFuture<ApprovalResult> future : futures) {
+                CompletionException error = assertThrows(CompletionException.class, future::join);
+                if (error.getCause() instanceof GeminiApprovalClient.CircuitOpenException) {
+                    rejected++;
+                } else {
+                    timedOut++;
+                }
+            }
+
+            // 2 lần timeout, các job còn lại fail nhanh thay vì chờ model chậm
+            assertEquals(2, timedOut);
+            assertEquals(4, rejected);
+            assertEquals("OPEN", client.getMetrics().get("circuitState"));
+        } finally {
+            client.shutdown();
+        }
+    }
+}
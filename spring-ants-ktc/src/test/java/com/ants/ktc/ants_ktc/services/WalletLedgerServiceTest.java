@@ -0,0 +1,211 @@
+package com.ants.ktc.ants_ktc.services;
+
+import com.ants.ktc.ants_ktc.entities.Transaction;
+import com.ants.ktc.ants_ktc.entities.Wallet;
+import com.ants.ktc.ants_ktc.entities.WalletLedgerEntry;
+import com.ants.ktc.ants_ktc.repositories.TransactionsJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.WalletJpaRepository;
+import com.ants.ktc.ants_ktc.repositories.WalletLedgerJpaRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * WalletLedgerService trên MySQL thật (Testcontainers): câu UPDATE có điều
+ * kiện của {@link WalletJpaRepository#debit} và INSERT IGNORE của
+ * {@link WalletLedgerJpaRepository#claim} là SQL riêng của MySQL nên không
+ * giả lập bằng mock/H2. Không chạy trong transaction của test để các luồng
+ * song song commit thật. Bỏ qua khi máy không có Docker. Test đo throughput
+ * gắn tag "benchmark", chỉ chạy bằng {@code gradle benchmark}.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.show-sql=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(WalletLedgerService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+public class WalletLedgerServiceTest {
+
+    private static final int THREADS = 16;
+    private static final int DEBITS = 400;
+    private static final double AMOUNT = 1000.0;
+    // Chỉ đủ cho 300 lệnh, 100 lệnh còn lại phải bị từ chối
+    private static final double INITIAL_BALANCE = 300 * AMOUNT;
+    private static final int BENCHMARK_DEBITS = 5000;
+
+    @Container
+    @ServiceConnection
+    static MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.0");
+
+    @Autowired
+    private WalletLedgerService service;
+
+    @Autowired
+    private WalletJpaRepository walletJpaRepository;
+
+    @Autowired
+    private WalletLedgerJpaRepository walletLedgerJpaRepository;
+
+    @Autowired
+    private TransactionsJpaRepository transactionsJpaRepository;
+
+    private Wallet wallet;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        wallet = new Wallet();
+        wallet.setBalance(INITIAL_BALANCE);
+        wallet = walletJpaRepository.saveAndFlush(wallet);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private Transaction newTransaction() {
+        Transaction transaction = new Transaction();
+        transaction.setAmount(AMOUNT);
+        transaction.setTransactionType(0);
+        transaction.setTransactionCode(UUID.randomUUID().toString());
+        transaction.setStatus(1);
+        return transaction;
+    }
+
+    // Chạy tất cả task cùng lúc, trả về số task thành công (true)
+    private int runConcurrently(List<Callable<Boolean>> tasks) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (Callable<Boolean> task : tasks) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        int succeeded = 0;
+        for (Future<Boolean> future : futures) {
+            if (future.get(120, TimeUnit.SECONDS)) {
+                succeeded++;
+            }
+        }
+        return succeeded;
+    }
+
+    @Test
+    public void testDebitRejectsWhenBalanceIsInsufficient() {
+        assertEquals(1, walletJpaRepository.debit(wallet.getId(), INITIAL_BALANCE));
+        assertEquals(0, walletJpaRepository.debit(wallet.getId(), 1.0));
+        assertEquals(0.0, service.balanceOf(wallet.getId()));
+    }
+
+    @Test
+    public void testClaimIgnoresDuplicateKey() {
+        String key = WalletLedgerService.vnpayKey(UUID.randomUUID().toString());
+
+        assertEquals(1, walletLedgerJpaRepository.claim(wallet.getId(), WalletLedgerService.CREDIT, AMOUNT, key));
+        assertEquals(0, walletLedgerJpaRepository.claim(wallet.getId(), WalletLedgerService.CREDIT, AMOUNT, key));
+
+        WalletLedgerEntry entry = walletLedgerJpaRepository.findByIdempotencyKey(key).orElseThrow();
+        assertEquals(wallet.getId(), entry.getWalletId());
+        assertEquals(AMOUNT, entry.getAmount().doubleValue());
+    }
+
+    @Test
+    public void testParallelDebitsNeverLoseUpdatesOrOverdraw() throws Exception {
+        String prefix = "ROOM:" + UUID.randomUUID() + ":EXTEND:";
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < DEBITS; i++) {
+            String key = prefix + i;
+            tasks.add(() -> {
+                try {
+                    return service.debit(wallet, newTransaction(), key).applied();
+                } catch (IllegalArgumentException insufficient) {
+                    return false;
+                }
+            });
+        }
+
+        int succeeded = runConcurrently(tasks);
+
+        assertEquals(300, succeeded);
+        assertEquals(0.0, service.balanceOf(wallet.getId()));
+        // Lệnh bị từ chối rollback cả dòng ledger đã giữ chỗ và không lưu Transaction
+        assertEquals(300, transactionsJpaRepository.findAll().stream()
+                .filter(t -> t.getWallet() != null && wallet.getId().equals(t.getWallet().getId()))
+                .count());
+        for (int i = 0; i < DEBITS; i++) {
+            walletLedgerJpaRepository.findByIdempotencyKey(prefix + i)
+                    .ifPresent(entry -> assertNotNull(entry.getTransactionId()));
+        }
+    }
+
+    @Test
+    public void testDuplicateIdempotencyKeysApplyOnce() throws Exception {
+        String prefix = UUID.randomUUID().toString();
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        // Mỗi key được gửi 4 lần song song, vd. VNPay gọi confirm lặp lại
+        for (int i = 0; i < 100; i++) {
+            String key = WalletLedgerService.vnpayKey(prefix + ":" + i);
+            for (int copy = 0; copy < 4; copy++) {
+                tasks.add(() -> service.credit(wallet, newTransaction(), key).applied());
+            }
+        }
+
+        int applied = runConcurrently(tasks);
+
+        assertEquals(100, applied);
+        assertEquals(INITIAL_BALANCE + 100 * AMOUNT, service.balanceOf(wallet.getId()));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void benchmarkParallelDebitsOnOneWallet() throws Exception {
+        // Ví đủ tiền cho mọi lệnh, nên chỉ đo tranh chấp trên cùng 1 dòng wallets
+        Wallet hot = new Wallet();
+        hot.setBalance(BENCHMARK_DEBITS * AMOUNT);
+        Wallet target = walletJpaRepository.saveAndFlush(hot);
+        String prefix = "ROOM:" + UUID.randomUUID() + ":BENCH:";
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < BENCHMARK_DEBITS; i++) {
+            String key = prefix + i;
+            tasks.add(() -> service.debit(target, newTransaction(), key).applied());
+        }
+
+        long start = System.nanoTime();
+        int succeeded = runConcurrently(tasks);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("[WalletLedgerServiceTest] MySQL, %d threads: %d debits on 1 wallet, %.0f debits/s%n",
+                THREADS, succeeded, BENCHMARK_DEBITS / seconds);
+
+        assertEquals(BENCHMARK_DEBITS, succeeded);
+        assertEquals(0.0, service.balanceOf(target.getId()));
+    }
+}